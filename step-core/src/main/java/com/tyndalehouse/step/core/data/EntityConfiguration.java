@@ -44,6 +44,8 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
@@ -73,6 +75,7 @@ public class EntityConfiguration {
     private String path;
     private final String entityHome;
     private final Injector injector;
+    private String configChecksum;
 
     /**
      * Creates an entity configuration from a file.
@@ -182,9 +185,12 @@ public class EntityConfiguration {
     private Properties loadProperties(final String entityName) {
         InputStream resourceAsStream = null;
         try {
-            resourceAsStream = getClass().getResourceAsStream(entityName + ".properties");
+            final CheckedInputStream checkedStream = new CheckedInputStream(getClass().getResourceAsStream(
+                    entityName + ".properties"), new CRC32());
+            resourceAsStream = checkedStream;
             final Properties properties = new Properties();
             properties.load(resourceAsStream);
+            this.configChecksum = Long.toHexString(checkedStream.getChecksum().getValue());
             return properties;
         } catch (final IOException e) {
             throw new StepInternalException("Unable to load entity configuration " + entityName, e);
@@ -229,6 +235,13 @@ public class EntityConfiguration {
         return this.luceneFieldConfiguration.get(fieldName);
     }
 
+    /**
+     * @return the checksum of the configuration file, used to detect changes to the entity definition
+     */
+    public String getConfigChecksum() {
+        return this.configChecksum;
+    }
+
     /**
      * @return the luceneFieldConfiguration
      */
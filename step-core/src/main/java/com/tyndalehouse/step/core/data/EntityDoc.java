@@ -52,4 +52,16 @@ public class EntityDoc implements Serializable {
         }
         return allFields;
     }
+
+    /**
+     * @return an estimate of the memory taken by the stored values of the document, in bytes
+     */
+    public long estimateSize() {
+        long size = 64;
+        for (final Fieldable field : this.doc.getFields()) {
+            final String value = field.stringValue();
+            size += 48 + (value != null ? value.length() * 2 : 0);
+        }
+        return size;
+    }
 }
@@ -0,0 +1,454 @@
+package com.tyndalehouse.step.core.data;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.lucene.util.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.utils.IOUtils;
+
+/**
+ * A bundle of prebuilt entity indexes, packaged as a single zip file. The bundle carries a manifest recording the
+ * data version, the Lucene version, the configuration checksum of each entity and a checksum of every file, so
+ * that a node can check the bundle is compatible and intact before using it.
+ * <p/>
+ * Bundles are installed by extracting them next to the entity indexes, verifying every file, and only then
+ * swapping each extracted index in place of the current index of the same entity. Indexes of entities that aren't
+ * in the bundle are kept as they are. A bundle that fails verification leaves the existing indexes untouched.
+ * Bundles must be installed before any reader of the indexes is opened.
+ *
+ * @author chrisburrell
+ */
+public class EntityIndexBundle {
+    public static final String BUNDLE_MANIFEST = "bundle.manifest";
+    private static final Logger LOGGER = LoggerFactory.getLogger(EntityIndexBundle.class);
+    private static final String FORMAT_VERSION = "1";
+    private static final String KEY_FORMAT = "bundle.version";
+    private static final String KEY_ID = "bundle.id";
+    private static final String KEY_DATA_VERSION = "data.version";
+    private static final String KEY_LUCENE_VERSION = "lucene.version";
+    private static final String ENTITY_PREFIX = "entity.";
+    private static final String FILE_PREFIX = "file.";
+    private static final String STAGING_SUFFIX = ".staging";
+    private static final String PREVIOUS_SUFFIX = ".previous";
+    private static final int BUFFER_SIZE = 65536;
+
+    private final EntityManager entityManager;
+    private final File entitiesDirectory;
+    private final String dataVersion;
+
+    /**
+     * @param entityManager     the entity manager, giving access to the current entity configurations
+     * @param entitiesDirectory the directory holding all the entity indexes
+     * @param dataVersion       the version of the data, i.e. the version of the application
+     */
+    public EntityIndexBundle(final EntityManager entityManager, final File entitiesDirectory,
+                             final String dataVersion) {
+        this.entityManager = entityManager;
+        this.entitiesDirectory = entitiesDirectory;
+        this.dataVersion = dataVersion;
+    }
+
+    /**
+     * Packages all the entity indexes that are up to date with the current entity configuration into a bundle.
+     *
+     * @param bundleFile the bundle to create
+     * @return the number of entities in the bundle
+     */
+    public int export(final File bundleFile) {
+        final File[] directories = this.entitiesDirectory.listFiles();
+        if (directories == null) {
+            throw new StepInternalException("No entity indexes found in " + this.entitiesDirectory);
+        }
+
+        final Map<String, String> entries = new TreeMap<String, String>();
+        final Properties manifest = new Properties();
+        ZipOutputStream zip = null;
+        int entities = 0;
+        try {
+            zip = new ZipOutputStream(new FileOutputStream(bundleFile));
+            for (final File directory : directories) {
+                final EntityIndexManifest entityManifest = EntityIndexManifest.read(directory);
+                if (!directory.isDirectory() || entityManifest == null) {
+                    continue;
+                }
+
+                final String entityName = directory.getName();
+                final String configChecksum = this.entityManager.getConfig(entityName).getConfigChecksum();
+                if (!configChecksum.equals(entityManifest.getConfigChecksum())) {
+                    LOGGER.warn("Not bundling [{}] as it was built with a different configuration", entityName);
+                    continue;
+                }
+
+                final File[] files = directory.listFiles();
+                for (final File file : files) {
+                    if (file.isFile()) {
+                        final String entryName = entityName + '/' + file.getName();
+                        entries.put(entryName, addEntry(zip, entryName, file));
+                    }
+                }
+                manifest.setProperty(ENTITY_PREFIX + entityName, configChecksum);
+                entities++;
+            }
+
+            manifest.setProperty(KEY_FORMAT, FORMAT_VERSION);
+            manifest.setProperty(KEY_DATA_VERSION, this.dataVersion);
+            manifest.setProperty(KEY_LUCENE_VERSION, Constants.LUCENE_MAIN_VERSION);
+            final CRC32 bundleId = new CRC32();
+            for (final Map.Entry<String, String> entry : entries.entrySet()) {
+                manifest.setProperty(FILE_PREFIX + entry.getKey(), entry.getValue());
+                bundleId.update((entry.getKey() + '=' + entry.getValue()).getBytes("UTF-8"));
+            }
+            manifest.setProperty(KEY_ID, Long.toHexString(bundleId.getValue()));
+
+            zip.putNextEntry(new ZipEntry(BUNDLE_MANIFEST));
+            manifest.store(zip, "STEP entity index bundle");
+            zip.closeEntry();
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to write entity bundle " + bundleFile.getAbsolutePath(), e);
+        } finally {
+            IOUtils.closeQuietly(zip);
+        }
+
+        LOGGER.info("Bundled [{}] entities into [{}]", entities, bundleFile.getAbsolutePath());
+        return entities;
+    }
+
+    /**
+     * Installs the indexes of the bundle in place of the current indexes of the same entities, unless the bundle is
+     * already installed, or it was built for a different version of the data, of Lucene or of the entity
+     * configurations.
+     *
+     * @param bundleFile the bundle to install
+     * @return true if the bundle was installed
+     * @throws IOException           if the bundle can't be read or extracted, in which case the current indexes are
+     *                               kept
+     * @throws StepInternalException if the bundle is corrupt or an index can't be swapped in, in which case the
+     *                               current index of that entity is kept
+     */
+    public boolean install(final File bundleFile) throws IOException {
+        final Set<String> entityNames;
+        ZipFile zip = null;
+        try {
+            zip = new ZipFile(bundleFile);
+            final Properties manifest = readManifest(zip);
+            if (!isCompatible(manifest, bundleFile) || isInstalled(manifest)) {
+                return false;
+            }
+
+            final File staging = new File(this.entitiesDirectory.getParentFile(), this.entitiesDirectory.getName()
+                    + STAGING_SUFFIX);
+            deleteRecursively(staging);
+            try {
+                extract(zip, manifest, staging);
+                if (!this.entitiesDirectory.isDirectory() && !this.entitiesDirectory.mkdirs()) {
+                    throw new StepInternalException("Unable to create " + this.entitiesDirectory.getAbsolutePath());
+                }
+
+                entityNames = getEntityNames(manifest);
+                for (final String entityName : entityNames) {
+                    swap(new File(staging, entityName), new File(this.entitiesDirectory, entityName));
+                }
+
+                // the bundle is only marked as installed once all its indexes are in place
+                swap(new File(staging, BUNDLE_MANIFEST), new File(this.entitiesDirectory, BUNDLE_MANIFEST));
+            } finally {
+                deleteRecursively(staging);
+            }
+        } finally {
+            IOUtils.closeQuietly(zip);
+        }
+
+        for (final String entityName : entityNames) {
+            this.entityManager.refresh(entityName);
+        }
+        LOGGER.info("Installed entity bundle [{}]", bundleFile.getAbsolutePath());
+        return true;
+    }
+
+    /**
+     * @param manifest   the manifest of the bundle
+     * @param bundleFile the bundle file, for logging purposes
+     * @return true if the bundle was built for the current data, Lucene version and entity configurations
+     */
+    private boolean isCompatible(final Properties manifest, final File bundleFile) {
+        if (!FORMAT_VERSION.equals(manifest.getProperty(KEY_FORMAT))) {
+            LOGGER.warn("Entity bundle [{}] has an unknown format", bundleFile.getAbsolutePath());
+            return false;
+        }
+
+        if (!this.dataVersion.equals(manifest.getProperty(KEY_DATA_VERSION))) {
+            LOGGER.warn("Entity bundle [{}] is for data version [{}], but running [{}]", new Object[] {
+                    bundleFile.getAbsolutePath(), manifest.getProperty(KEY_DATA_VERSION), this.dataVersion });
+            return false;
+        }
+
+        if (!Constants.LUCENE_MAIN_VERSION.equals(manifest.getProperty(KEY_LUCENE_VERSION))) {
+            LOGGER.warn("Entity bundle [{}] was built with Lucene [{}]", bundleFile.getAbsolutePath(),
+                    manifest.getProperty(KEY_LUCENE_VERSION));
+            return false;
+        }
+
+        for (final String entityName : getEntityNames(manifest)) {
+            final String configChecksum = this.entityManager.getConfig(entityName).getConfigChecksum();
+            if (!configChecksum.equals(manifest.getProperty(ENTITY_PREFIX + entityName))) {
+                LOGGER.warn("Entity bundle [{}] has a different configuration for [{}]",
+                        bundleFile.getAbsolutePath(), entityName);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param manifest the manifest of the bundle
+     * @return true if the very same bundle has already been installed
+     */
+    private boolean isInstalled(final Properties manifest) {
+        final Properties installed = readInstalledManifest();
+        if (installed != null && manifest.getProperty(KEY_ID).equals(installed.getProperty(KEY_ID))) {
+            LOGGER.info("Entity bundle [{}] is already installed", manifest.getProperty(KEY_ID));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Extracts the bundle to the staging directory, checking every file against the manifest. As the manifest comes
+     * from the bundle itself, files that would be extracted outside the staging directory are rejected as well.
+     *
+     * @param zip      the bundle
+     * @param manifest the manifest of the bundle
+     * @param staging  the directory to extract to
+     * @throws IOException if the bundle can't be read or the staging directory written
+     */
+    private void extract(final ZipFile zip, final Properties manifest, final File staging) throws IOException {
+        final Set<String> expected = new HashSet<String>();
+        for (final String key : manifest.stringPropertyNames()) {
+            if (key.startsWith(FILE_PREFIX)) {
+                expected.add(key.substring(FILE_PREFIX.length()));
+            }
+        }
+
+        final String stagingPath = staging.getCanonicalPath() + File.separator;
+        final Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            final ZipEntry entry = entries.nextElement();
+            final String name = entry.getName();
+            if (entry.isDirectory() || BUNDLE_MANIFEST.equals(name)) {
+                continue;
+            }
+
+            if (!expected.remove(name)) {
+                throw new StepInternalException("Entity bundle contains unexpected file " + name);
+            }
+
+            final File target = new File(staging, name);
+            if (!target.getCanonicalPath().startsWith(stagingPath)) {
+                throw new StepInternalException("Entity bundle contains file outside its directory " + name);
+            }
+
+            if (!target.getParentFile().isDirectory() && !target.getParentFile().mkdirs()) {
+                throw new StepInternalException("Unable to create " + target.getParentFile().getAbsolutePath());
+            }
+
+            final String checksum = copy(zip.getInputStream(entry), target);
+            if (!checksum.equals(manifest.getProperty(FILE_PREFIX + name))) {
+                throw new StepInternalException("Entity bundle is corrupt, checksum mismatch for " + name);
+            }
+        }
+
+        if (!expected.isEmpty()) {
+            throw new StepInternalException("Entity bundle is missing files " + expected);
+        }
+
+        OutputStream stream = null;
+        try {
+            stream = new FileOutputStream(new File(staging, BUNDLE_MANIFEST));
+            manifest.store(stream, "STEP entity index bundle");
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+
+    /**
+     * Moves the current index of an entity out of the way, puts the staged one in its place, and removes the old
+     * one. If the staged index can't be moved in, the current index is restored.
+     *
+     * @param staged  the verified index, or the bundle manifest
+     * @param current the index or manifest it replaces
+     */
+    private void swap(final File staged, final File current) {
+        final File previous = new File(current.getParentFile(), current.getName() + PREVIOUS_SUFFIX);
+        deleteRecursively(previous);
+
+        final boolean hadIndex = current.exists();
+        if (hadIndex && !current.renameTo(previous)) {
+            throw new StepInternalException("Unable to move current entity index to " + previous.getAbsolutePath());
+        }
+
+        if (!staged.renameTo(current)) {
+            if (hadIndex && !previous.renameTo(current)) {
+                LOGGER.error("Unable to restore entity index from [{}]", previous.getAbsolutePath());
+            }
+            throw new StepInternalException("Unable to move entity bundle into " + current.getAbsolutePath());
+        }
+        deleteRecursively(previous);
+    }
+
+    /**
+     * @return the manifest of the bundle currently installed, or null if the indexes weren't installed from a bundle
+     */
+    private Properties readInstalledManifest() {
+        final File file = new File(this.entitiesDirectory, BUNDLE_MANIFEST);
+        if (!file.exists()) {
+            return null;
+        }
+
+        InputStream stream = null;
+        try {
+            stream = new FileInputStream(file);
+            final Properties properties = new Properties();
+            properties.load(stream);
+            return properties;
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to read installed bundle manifest [{}]", file.getAbsolutePath());
+            LOGGER.trace("Trace for exception:", e);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+
+    /**
+     * @param zip the bundle
+     * @return the manifest of the bundle
+     * @throws IOException if the manifest can't be read
+     */
+    private Properties readManifest(final ZipFile zip) throws IOException {
+        final ZipEntry entry = zip.getEntry(BUNDLE_MANIFEST);
+        if (entry == null) {
+            throw new StepInternalException("Entity bundle has no manifest: " + zip.getName());
+        }
+
+        InputStream stream = null;
+        try {
+            stream = zip.getInputStream(entry);
+            final Properties properties = new Properties();
+            properties.load(stream);
+            return properties;
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+
+    /**
+     * @param manifest the manifest of a bundle, possibly null
+     * @return the names of the entities contained in the bundle
+     */
+    private Set<String> getEntityNames(final Properties manifest) {
+        final Set<String> names = new HashSet<String>();
+        if (manifest != null) {
+            for (final String key : manifest.stringPropertyNames()) {
+                if (key.startsWith(ENTITY_PREFIX)) {
+                    names.add(key.substring(ENTITY_PREFIX.length()));
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @param zip       the zip being written
+     * @param entryName the name of the entry
+     * @param file      the file to add
+     * @return the checksum of the file
+     * @throws IOException if the file can't be read, or the entry written
+     */
+    private String addEntry(final ZipOutputStream zip, final String entryName, final File file) throws IOException {
+        zip.putNextEntry(new ZipEntry(entryName));
+        final CRC32 crc = new CRC32();
+        InputStream stream = null;
+        try {
+            stream = new FileInputStream(file);
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+                zip.write(buffer, 0, read);
+            }
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+        zip.closeEntry();
+        return checksum(crc, file.length());
+    }
+
+    /**
+     * @param source the stream to copy, closed once copied
+     * @param target the file to write
+     * @return the checksum of the data copied
+     * @throws IOException if the stream can't be read or the file written
+     */
+    private String copy(final InputStream source, final File target) throws IOException {
+        final CRC32 crc = new CRC32();
+        long length = 0;
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(target);
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = source.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+                length += read;
+            }
+        } finally {
+            IOUtils.closeQuietly(source);
+            IOUtils.closeQuietly(out);
+        }
+        return checksum(crc, length);
+    }
+
+    /**
+     * @param crc    the crc of the file
+     * @param length the length of the file
+     * @return the checksum as recorded in the manifest
+     */
+    private String checksum(final CRC32 crc, final long length) {
+        return Long.toHexString(crc.getValue()) + ':' + length;
+    }
+
+    /**
+     * @param file the file or directory to delete, along with everything in it
+     */
+    private void deleteRecursively(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                deleteRecursively(child);
+            }
+        }
+
+        if (file.exists() && !file.delete()) {
+            LOGGER.warn("Unable to delete [{}]", file.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.tyndalehouse.step.core.data;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tyndalehouse.step.core.data.create.ModuleLoader;
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.utils.IOUtils;
+
+/**
+ * A manifest stamped into each entity index once it has been written. It records the checksums of the source
+ * files and of the entity configuration that were used to build the index, so that the loader can tell whether
+ * the index on disk is still up to date.
+ *
+ * @author chrisburrell
+ */
+public class EntityIndexManifest {
+    public static final String MANIFEST_FILE = "entity.manifest";
+    private static final Logger LOGGER = LoggerFactory.getLogger(EntityIndexManifest.class);
+    private static final String FORMAT_VERSION = "1";
+    private static final String KEY_FORMAT = "manifest.version";
+    private static final String KEY_ENTITY = "entity.name";
+    private static final String KEY_CONFIG = "entity.config";
+    private static final String KEY_ENTRIES = "entity.entries";
+    private static final String SOURCE_PREFIX = "source.";
+    private static final int BUFFER_SIZE = 8192;
+
+    private final String entityName;
+    private final String configChecksum;
+    private final Map<String, String> sourceChecksums = new TreeMap<String, String>();
+    private int entries;
+
+    /**
+     * @param entityName     the name of the entity
+     * @param configChecksum the checksum of the entity configuration
+     */
+    public EntityIndexManifest(final String entityName, final String configChecksum) {
+        this.entityName = entityName;
+        this.configChecksum = configChecksum;
+    }
+
+    /**
+     * Creates the manifest that an index built from the given sources would carry
+     *
+     * @param config    the entity configuration
+     * @param resources the classpath resources the index is built from
+     * @return the expected manifest
+     */
+    public static EntityIndexManifest forSources(final EntityConfiguration config, final Iterable<String> resources) {
+        final EntityIndexManifest manifest = new EntityIndexManifest(config.getName(), config.getConfigChecksum());
+        for (final String resource : resources) {
+            manifest.sourceChecksums.put(resource, checksumResource(resource));
+        }
+        return manifest;
+    }
+
+    /**
+     * Reads the manifest held in the index directory
+     *
+     * @param indexDirectory the directory of the entity index
+     * @return the manifest, or null if there isn't one, or it can't be read
+     */
+    public static EntityIndexManifest read(final File indexDirectory) {
+        final File file = new File(indexDirectory, MANIFEST_FILE);
+        if (!file.exists()) {
+            return null;
+        }
+
+        InputStream stream = null;
+        try {
+            stream = new FileInputStream(file);
+            final Properties properties = new Properties();
+            properties.load(stream);
+            if (!FORMAT_VERSION.equals(properties.getProperty(KEY_FORMAT))) {
+                return null;
+            }
+
+            final EntityIndexManifest manifest = new EntityIndexManifest(properties.getProperty(KEY_ENTITY),
+                    properties.getProperty(KEY_CONFIG));
+            manifest.entries = Integer.parseInt(properties.getProperty(KEY_ENTRIES, "0"));
+            for (final String key : properties.stringPropertyNames()) {
+                if (key.startsWith(SOURCE_PREFIX)) {
+                    manifest.sourceChecksums.put(key.substring(SOURCE_PREFIX.length()), properties.getProperty(key));
+                }
+            }
+            return manifest;
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to read manifest [{}]", file.getAbsolutePath());
+            LOGGER.trace("Trace for exception:", e);
+            return null;
+        } catch (final NumberFormatException e) {
+            LOGGER.warn("Corrupt manifest [{}]", file.getAbsolutePath());
+            return null;
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+
+    /**
+     * Writes the manifest into the index directory
+     *
+     * @param indexDirectory the directory of the entity index
+     */
+    public void write(final File indexDirectory) {
+        final Properties properties = new Properties();
+        properties.setProperty(KEY_FORMAT, FORMAT_VERSION);
+        properties.setProperty(KEY_ENTITY, this.entityName);
+        properties.setProperty(KEY_CONFIG, this.configChecksum);
+        properties.setProperty(KEY_ENTRIES, Integer.toString(this.entries));
+        for (final Map.Entry<String, String> source : this.sourceChecksums.entrySet()) {
+            properties.setProperty(SOURCE_PREFIX + source.getKey(), source.getValue());
+        }
+
+        OutputStream stream = null;
+        try {
+            stream = new FileOutputStream(new File(indexDirectory, MANIFEST_FILE));
+            properties.store(stream, "STEP entity index manifest");
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to write manifest for " + this.entityName, e);
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+
+    /**
+     * Removes the manifest from an index directory, marking the index as stale
+     *
+     * @param indexDirectory the directory of the entity index
+     */
+    public static void delete(final File indexDirectory) {
+        final File file = new File(indexDirectory, MANIFEST_FILE);
+        if (file.exists() && !file.delete()) {
+            LOGGER.warn("Unable to remove manifest [{}]", file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * @param other the manifest found on disk, possibly null
+     * @return true if the other manifest was built from the same configuration and sources
+     */
+    public boolean matches(final EntityIndexManifest other) {
+        return other != null
+                && this.entityName.equals(other.entityName)
+                && this.configChecksum.equals(other.configChecksum)
+                && this.sourceChecksums.equals(other.sourceChecksums);
+    }
+
+    /**
+     * Computes the checksum of a classpath resource, as read by the module loaders
+     *
+     * @param resource the classpath resource
+     * @return the checksum in hexadecimal form
+     */
+    public static String checksumResource(final String resource) {
+        final InputStream stream = ModuleLoader.class.getResourceAsStream(resource);
+        if (stream == null) {
+            throw new StepInternalException("Unable to read resource: " + resource);
+        }
+
+        try {
+            final CRC32 crc = new CRC32();
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+            return Long.toHexString(crc.getValue());
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to compute checksum of " + resource, e);
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+
+    /**
+     * @return the name of the entity
+     */
+    public String getEntityName() {
+        return this.entityName;
+    }
+
+    /**
+     * @return the checksum of the entity configuration the index was built with
+     */
+    public String getConfigChecksum() {
+        return this.configChecksum;
+    }
+
+    /**
+     * @return the number of entries in the index
+     */
+    public int getEntries() {
+        return this.entries;
+    }
+
+    /**
+     * @param entries the number of entries in the index
+     */
+    public void setEntries(final int entries) {
+        this.entries = entries;
+    }
+}
@@ -7,6 +7,7 @@ import java.util.Set;
 
 import com.tyndalehouse.step.core.data.common.TermsAndMaxCount;
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.queryParser.QueryParser;
 import org.apache.lucene.queryParser.QueryParser.Operator;
 import org.apache.lucene.search.BooleanQuery;
@@ -38,6 +39,29 @@ public interface EntityIndexReader extends Closeable {
      */
     void close();
 
+    /**
+     * Warms up the index by loading its term dictionary and norms, and running a query against each indexed field,
+     * so that the first user of the index doesn't pay for it.
+     */
+    void warm();
+
+    /**
+     * @return the size of the index in bytes, which is mapped into memory when reading it
+     */
+    long getIndexSize();
+
+    /**
+     * @return the number of times the index has been opened, 0 if it hasn't been opened yet. Allows services holding
+     *         data read from the index to notice when it has been refreshed.
+     */
+    int getGeneration();
+
+    /**
+     * @return the reader of the index, or null if the index hasn't been opened. The reader is closed when the index is
+     *         refreshed, so it should only be held for as long as it takes to read it.
+     */
+    IndexReader getIndexReader();
+
     /**
      * Searches by a single field for multiple values, expecting each value to return just one result
      *
@@ -57,6 +81,16 @@ public interface EntityIndexReader extends Closeable {
      */
     EntityDoc[] searchUniqueBySingleField(String fieldName, String... values);
 
+    /**
+     * Looks up the document of each value in a single pass over the index, without scoring or sorting. Each value is
+     * expected to be held by at most one document.
+     *
+     * @param fieldName the field name, which must not be tokenized
+     * @param values    the list of values to be retrieved
+     * @return the document of each value, in the same order as the values, null where no document holds the value
+     */
+    EntityDoc[] lookupUniqueBySingleField(String fieldName, String... values);
+
     /**
      * Searches for a particular value across multiple fields
      *
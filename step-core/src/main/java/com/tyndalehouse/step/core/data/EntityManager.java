@@ -32,6 +32,12 @@ public interface EntityManager {
      */
     void close();
 
+    /**
+     * Opens and warms up the readers of all the entities configured to be loaded eagerly, so that the first
+     * requests don't pay for it.
+     */
+    void warmUp();
+
     /**
      * @param entity the entity name
      * @return entity writer
@@ -0,0 +1,247 @@
+package com.tyndalehouse.step.core.data.create;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+
+/**
+ * Runs the loading of entity indexes on a bounded pool of threads. Each entity is written to its own index, so
+ * loads run concurrently unless an entity has been declared as depending on another one. An entity is only
+ * started once all its dependencies have loaded successfully.
+ * <p/>
+ * Progress, timings and failures are reported per entity to the main loader. Note, this object is not
+ * thread-safe, and is intended to be run once.
+ *
+ * @author chrisburrell
+ */
+class EntityLoadScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EntityLoadScheduler.class);
+    private final Loader mainLoader;
+    private final int threads;
+    private final Map<String, EntityLoad> loads = new LinkedHashMap<String, EntityLoad>();
+
+    /**
+     * @param mainLoader the loader to which to write updates
+     * @param threads    the maximum number of entities to load at the same time
+     */
+    EntityLoadScheduler(final Loader mainLoader, final int threads) {
+        this.mainLoader = mainLoader;
+        this.threads = threads;
+    }
+
+    /**
+     * Adds an entity to be loaded. Entities are started in the order in which they were added, as long as their
+     * dependencies have been loaded.
+     *
+     * @param entityName   the name of the entity
+     * @param load         the load of the entity, returning the number of entries loaded
+     * @param dependencies the entities that need to be loaded beforehand, which must already have been added
+     */
+    void add(final String entityName, final Callable<Integer> load, final String... dependencies) {
+        for (final String dependency : dependencies) {
+            if (!this.loads.containsKey(dependency)) {
+                throw new StepInternalException(String.format(
+                        "Entity [%s] depends on [%s], which has not been scheduled", entityName, dependency));
+            }
+        }
+        this.loads.put(entityName, new EntityLoad(entityName, load, dependencies));
+    }
+
+    /**
+     * Loads all entities, waiting for all of them to complete.
+     *
+     * @throws StepInternalException if any of the entities failed to load
+     */
+    void run() {
+        if (this.loads.isEmpty()) {
+            return;
+        }
+
+        final int poolSize = Math.max(1, Math.min(this.threads, this.loads.size()));
+        LOGGER.info("Loading [{}] entities with [{}] threads", this.loads.size(), poolSize);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(poolSize, new LoaderThreadFactory());
+        final CompletionService<EntityLoad> completion = new ExecutorCompletionService<EntityLoad>(executor);
+        final Map<Future<EntityLoad>, EntityLoad> running = new HashMap<Future<EntityLoad>, EntityLoad>();
+        final List<EntityLoad> pending = new ArrayList<EntityLoad>(this.loads.values());
+        final Set<String> completed = new HashSet<String>();
+        final Map<String, Throwable> failures = new LinkedHashMap<String, Throwable>();
+
+        try {
+            while (!pending.isEmpty() || !running.isEmpty()) {
+                submitReadyLoads(completion, running, pending, completed, failures);
+                if (running.isEmpty()) {
+                    // nothing left that can run
+                    break;
+                }
+
+                final Future<EntityLoad> done = completion.take();
+                final EntityLoad load = running.remove(done);
+                try {
+                    done.get();
+                    completed.add(load.getEntityName());
+                    this.mainLoader.incrementProgress();
+                    LOGGER.info("Loaded [{}] entries for [{}] in [{}]ms", new Object[] {
+                            load.getEntries(), load.getEntityName(), load.getTimeTaken() });
+                    this.mainLoader.addUpdate("install_entity_complete", load.getEntityName(),
+                            load.getEntries(), load.getTimeTaken());
+                } catch (final ExecutionException e) {
+                    final Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    failures.put(load.getEntityName(), cause);
+                    LOGGER.error(String.format("Failed to load [%s]", load.getEntityName()), cause);
+                    this.mainLoader.addUpdate("install_entity_failed", load.getEntityName(), cause.getMessage());
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StepInternalException("Interrupted while loading entities", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (!failures.isEmpty()) {
+            throw new StepInternalException("Unable to load entities " + failures.keySet(),
+                    failures.values().iterator().next());
+        }
+    }
+
+    /**
+     * Submits all the loads whose dependencies have completed. Loads depending on a failed entity are marked as
+     * failed themselves.
+     *
+     * @param completion the completion service to submit to
+     * @param running    the loads that are currently running, keyed by their future
+     * @param pending    the loads that haven't yet been started
+     * @param completed  the entities that have been loaded successfully
+     * @param failures   the entities that have failed to load
+     */
+    private void submitReadyLoads(final CompletionService<EntityLoad> completion,
+                                  final Map<Future<EntityLoad>, EntityLoad> running,
+                                  final List<EntityLoad> pending, final Set<String> completed,
+                                  final Map<String, Throwable> failures) {
+        final Iterator<EntityLoad> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            final EntityLoad load = iterator.next();
+            final String failedDependency = getFailedDependency(load, failures);
+            if (failedDependency != null) {
+                iterator.remove();
+                failures.put(load.getEntityName(), new StepInternalException(String.format(
+                        "Not loading [%s] as [%s] failed to load", load.getEntityName(), failedDependency)));
+                this.mainLoader.addUpdate("install_entity_failed", load.getEntityName(), failedDependency);
+                continue;
+            }
+
+            if (completed.containsAll(load.getDependencies())) {
+                iterator.remove();
+                running.put(completion.submit(load), load);
+            }
+        }
+    }
+
+    /**
+     * @param load     the load
+     * @param failures the entities that have failed so far
+     * @return the name of the first dependency that has failed, or null if none have
+     */
+    private String getFailedDependency(final EntityLoad load, final Map<String, Throwable> failures) {
+        for (final String dependency : load.getDependencies()) {
+            if (failures.containsKey(dependency)) {
+                return dependency;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The load of a single entity, keeping track of how long it took
+     */
+    private static final class EntityLoad implements Callable<EntityLoad> {
+        private final String entityName;
+        private final Callable<Integer> load;
+        private final List<String> dependencies;
+        private volatile int entries;
+        private volatile long timeTaken;
+
+        /**
+         * @param entityName   the name of the entity
+         * @param load         the load itself
+         * @param dependencies the entities this one depends on
+         */
+        private EntityLoad(final String entityName, final Callable<Integer> load, final String[] dependencies) {
+            this.entityName = entityName;
+            this.load = load;
+            this.dependencies = Arrays.asList(dependencies);
+        }
+
+        @Override
+        public EntityLoad call() throws Exception {
+            final long start = System.currentTimeMillis();
+            final Integer loaded = this.load.call();
+            this.entries = loaded == null ? 0 : loaded;
+            this.timeTaken = System.currentTimeMillis() - start;
+            return this;
+        }
+
+        /**
+         * @return the name of the entity
+         */
+        String getEntityName() {
+            return this.entityName;
+        }
+
+        /**
+         * @return the entities this one depends on
+         */
+        List<String> getDependencies() {
+            return this.dependencies;
+        }
+
+        /**
+         * @return the number of entries loaded
+         */
+        int getEntries() {
+            return this.entries;
+        }
+
+        /**
+         * @return the time taken to load the entity, in milliseconds
+         */
+        long getTimeTaken() {
+            return this.timeTaken;
+        }
+    }
+
+    /**
+     * Names the loader threads, so that they can be told apart in the logs
+     */
+    private static final class LoaderThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "step-entity-loader-" + this.count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
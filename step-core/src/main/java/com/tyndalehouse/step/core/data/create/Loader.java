@@ -32,9 +32,13 @@
  ******************************************************************************/
 package com.tyndalehouse.step.core.data.create;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -44,6 +48,7 @@ import com.tyndalehouse.step.core.exceptions.StepInternalException;
 import com.tyndalehouse.step.core.service.AppManagerService;
 import com.tyndalehouse.step.core.utils.StringUtils;
 import org.crosswire.common.progress.JobManager;
+import org.crosswire.common.util.CWProject;
 import org.crosswire.common.progress.WorkEvent;
 import org.crosswire.common.progress.WorkListener;
 import org.crosswire.jsword.book.Book;
@@ -52,8 +57,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.inject.ProvisionException;
+import com.tyndalehouse.step.core.data.EntityConfiguration;
+import com.tyndalehouse.step.core.data.EntityIndexBundle;
+import com.tyndalehouse.step.core.data.EntityIndexManifest;
 import com.tyndalehouse.step.core.data.EntityManager;
 import com.tyndalehouse.step.core.data.entities.impl.EntityIndexWriterImpl;
+import com.tyndalehouse.step.core.data.loaders.AbstractClasspathBasedModuleLoader;
 import com.tyndalehouse.step.core.data.loaders.GeoStreamingCsvModuleLoader;
 import com.tyndalehouse.step.core.data.loaders.StreamingCsvModuleLoader;
 import com.tyndalehouse.step.core.data.loaders.TimelineStreamingCsvModuleLoader;
@@ -65,7 +74,7 @@ import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
  * The object that will be responsible for loading all the data into Lucene and downloading key versions of
  * the Bible.
  * <p/>
- * Note, this object is not thread-safe.
+ * Note, this object is not thread-safe, although entities are loaded concurrently internally.
  *
  * @author chrisburrell
  */
@@ -83,9 +92,12 @@ public class Loader {
     private String runningAppVersion;
     private AppManagerService appManager;
     private WorkListener workListener;
-    private int totalProgress = 0;
-    private int totalItems = 6;
+    private final AtomicInteger totalProgress = new AtomicInteger();
+    private int totalItems = 10;
     private boolean inProgress = false;
+    private final boolean forceRebuild;
+    private final int loaderThreads;
+    private volatile Locale progressLocale;
 
     /**
      * The loader is given a connection source to load the data.
@@ -113,6 +125,28 @@ public class Loader {
         for (String module : specificModules) {
             this.appSpecificModules.add(module);
         }
+        this.forceRebuild = Boolean.getBoolean("step.forceIndexRebuild")
+                || Boolean.parseBoolean(coreProperties.getProperty("app.index.forceRebuild"));
+
+        this.loaderThreads = getLoaderThreads(coreProperties.getProperty("app.index.loaderThreads"));
+    }
+
+    /**
+     * @param threads the configured number of threads, possibly blank
+     * @return the number of threads loading the entity indexes, one per processor unless a positive number is given
+     */
+    private static int getLoaderThreads(final String threads) {
+        if (!StringUtils.isBlank(threads)) {
+            try {
+                final int configured = Integer.parseInt(threads.trim());
+                if (configured > 0) {
+                    return configured;
+                }
+            } catch (final NumberFormatException ex) {
+                LOGGER.warn("Ignoring app.index.loaderThreads of [{}], which is not a number", threads);
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
     }
 
     /**
@@ -122,7 +156,7 @@ public class Loader {
         if (this.inProgress) {
             return;
         }
-        this.totalProgress = 0;
+        this.totalProgress.set(0);
         try {
             this.inProgress = true;
             listenInJobs();
@@ -189,10 +223,10 @@ public class Loader {
      */
     private void installAndIndex(final String version) {
         syncInstall(version);
-        this.totalProgress += 1;
+        this.totalProgress.incrementAndGet();
         this.addUpdate("install_making_version_searchable", version);
         this.jswordModule.reIndex(version);
-        this.totalProgress += 1;
+        this.totalProgress.incrementAndGet();
     }
 
     /**
@@ -229,27 +263,82 @@ public class Loader {
     }
 
     /**
-     * Loads the data into the database
+     * Loads the data into the database. Entity indexes whose sources haven't changed since they were last built
+     * are kept as they are, unless a rebuild is forced with app.index.forceRebuild.
      */
     private void loadData() {
         LOGGER.info("Loading initial data");
-        loadNave();
-        this.totalProgress += 1;
-        loadLexiconDefinitions();
-        this.totalProgress += 1;
-        loadSpecificForms();
-        this.totalProgress += 1;
-        loadRobinsonMorphology();
-        this.totalProgress += 1;
-        loadVersionInformation();
-        this.totalProgress += 1;
-        loadAlternativeTranslations();
-        this.totalProgress += 1;
-        loadOpenBibleGeography();
-
-        loadHotSpots();
-        loadTimeline();
-        loadAugmentedStrongs();
+
+        // loads run on other threads, which can't see the client session
+        this.progressLocale = getProgressLocale();
+        try {
+            final EntityLoadScheduler scheduler = new EntityLoadScheduler(this, this.loaderThreads);
+
+            // largest entities first, so that they don't hold up the end of the run
+            scheduler.add("definition", new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return loadLexiconDefinitions();
+                }
+            });
+            scheduler.add("specificForm", new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return loadSpecificForms();
+                }
+            });
+            scheduler.add("nave", new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return loadNave();
+                }
+            });
+            scheduler.add("augmentedStrongs", new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return loadAugmentedStrongs();
+                }
+            });
+            scheduler.add("alternativeTranslations", new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return loadAlternativeTranslations();
+                }
+            });
+            scheduler.add("obplace", new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return loadOpenBibleGeography();
+                }
+            });
+            scheduler.add("timelineEvent", new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return loadTimeline();
+                }
+            });
+            scheduler.add("morphology", new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return loadRobinsonMorphology();
+                }
+            });
+            scheduler.add("versionInfo", new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return loadVersionInformation();
+                }
+            });
+            scheduler.add("hotspot", new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return loadHotSpots();
+                }
+            });
+            scheduler.run();
+        } finally {
+            this.progressLocale = null;
+        }
         LOGGER.info("Finished loading...");
     }
 
@@ -257,10 +346,16 @@ public class Loader {
         LOGGER.debug("Indexing augmented strongs");
         this.addUpdate("install_augmented_strongs");
 
+        final String resource = this.coreProperties.getProperty("test.data.path.augmentedstrongs");
+        final EntityIndexManifest manifest = getManifest("augmentedStrongs", resource);
+        if (isUpToDate(manifest)) {
+            return manifest.getEntries();
+        }
+
         final EntityIndexWriterImpl writer = this.entityManager.getNewWriter("augmentedStrongs");
+        writer.setManifest(manifest);
 
-        final HeadwordLineBasedLoader loader = new HeadwordLineBasedLoader(writer,
-                this.coreProperties.getProperty("test.data.path.augmentedstrongs"));
+        final HeadwordLineBasedLoader loader = new HeadwordLineBasedLoader(writer, resource);
         loader.init(this);
 
         final int close = writer.close();
@@ -278,10 +373,16 @@ public class Loader {
         LOGGER.debug("Indexing Alternative versions");
         this.addUpdate("install_alternative_meanings");
 
+        final String resource = this.coreProperties.getProperty("test.data.path.alternatives.translations");
+        final EntityIndexManifest manifest = getManifest("alternativeTranslations", resource);
+        if (isUpToDate(manifest)) {
+            return manifest.getEntries();
+        }
+
         final EntityIndexWriterImpl writer = this.entityManager.getNewWriter("alternativeTranslations");
+        writer.setManifest(manifest);
 
-        final HeadwordLineBasedLoader loader = new HeadwordLineBasedLoader(writer,
-                this.coreProperties.getProperty("test.data.path.alternatives.translations"));
+        final HeadwordLineBasedLoader loader = new HeadwordLineBasedLoader(writer, resource);
         loader.init(this);
 
         LOGGER.debug("Writing Alternative Versions index");
@@ -301,10 +402,16 @@ public class Loader {
         LOGGER.debug("Indexing nave subjects");
         this.addUpdate("install_subject_search");
 
+        final String resource = this.coreProperties.getProperty("test.data.path.subjects.nave");
+        final EntityIndexManifest manifest = getManifest("nave", resource);
+        if (isUpToDate(manifest)) {
+            return manifest.getEntries();
+        }
+
         final EntityIndexWriterImpl writer = this.entityManager.getNewWriter("nave");
+        writer.setManifest(manifest);
 
-        final HeadwordLineBasedLoader loader = new HeadwordLineBasedLoader(writer,
-                this.coreProperties.getProperty("test.data.path.subjects.nave"));
+        final HeadwordLineBasedLoader loader = new HeadwordLineBasedLoader(writer, resource);
         loader.init(this);
 
         LOGGER.debug("Writing Nave index");
@@ -325,9 +432,15 @@ public class Loader {
 
         LOGGER.debug("Loading hotspots");
 
+        final String resource = this.coreProperties.getProperty("test.data.path.timeline.hotspots");
+        final EntityIndexManifest manifest = getManifest("hotspot", resource);
+        if (isUpToDate(manifest)) {
+            return manifest.getEntries();
+        }
+
         final EntityIndexWriterImpl writer = this.entityManager.getNewWriter("hotspot");
-        new StreamingCsvModuleLoader(writer,
-                this.coreProperties.getProperty("test.data.path.timeline.hotspots")).init(this);
+        writer.setManifest(manifest);
+        new StreamingCsvModuleLoader(writer, resource).init(this);
         return writer.close();
     }
 
@@ -340,9 +453,15 @@ public class Loader {
         this.addUpdate("install_grammar");
 
         LOGGER.debug("Loading robinson morphology");
+        final String resource = this.coreProperties.getProperty("test.data.path.morphology.robinson");
+        final EntityIndexManifest manifest = getManifest("morphology", resource);
+        if (isUpToDate(manifest)) {
+            return manifest.getEntries();
+        }
+
         final EntityIndexWriterImpl writer = this.entityManager.getNewWriter("morphology");
-        new StreamingCsvModuleLoader(writer,
-                this.coreProperties.getProperty("test.data.path.morphology.robinson")).init(this);
+        writer.setManifest(manifest);
+        new StreamingCsvModuleLoader(writer, resource).init(this);
 
         final int total = writer.close();
         LOGGER.debug("End of morphology");
@@ -361,9 +480,15 @@ public class Loader {
         this.addUpdate("install_descriptions");
 
         LOGGER.debug("Loading version information");
+        final String resource = this.coreProperties.getProperty("test.data.path.versions.info");
+        final EntityIndexManifest manifest = getManifest("versionInfo", resource);
+        if (isUpToDate(manifest)) {
+            return manifest.getEntries();
+        }
+
         final EntityIndexWriterImpl writer = this.entityManager.getNewWriter("versionInfo");
-        new StreamingCsvModuleLoader(writer, this.coreProperties.getProperty("test.data.path.versions.info"))
-                .init(this);
+        writer.setManifest(manifest);
+        new StreamingCsvModuleLoader(writer, resource).init(this);
         final int close = writer.close();
 
         this.addUpdate("install_descriptions_complete", close);
@@ -380,11 +505,16 @@ public class Loader {
         this.addUpdate("install_timeline");
 
         LOGGER.debug("Loading timeline");
+        final String resource = this.coreProperties.getProperty("test.data.path.timeline.events.directory");
+        final EntityIndexManifest manifest = getManifest("timelineEvent", resource);
+        if (isUpToDate(manifest)) {
+            return manifest.getEntries();
+        }
+
         final EntityIndexWriterImpl writer = this.entityManager.getNewWriter("timelineEvent");
+        writer.setManifest(manifest);
 
-        new TimelineStreamingCsvModuleLoader(writer,
-                this.coreProperties.getProperty("test.data.path.timeline.events.directory"), this.jsword)
-                .init(this);
+        new TimelineStreamingCsvModuleLoader(writer, resource, this.jsword).init(this);
         final int close = writer.close();
 
         this.addUpdate("intall_timeline_complete", close);
@@ -402,10 +532,15 @@ public class Loader {
 
         LOGGER.debug("Loading Open Bible geography");
 
+        final String resource = this.coreProperties.getProperty("test.data.path.geography.openbible");
+        final EntityIndexManifest manifest = getManifest("obplace", resource);
+        if (isUpToDate(manifest)) {
+            return manifest.getEntries();
+        }
+
         final EntityIndexWriterImpl writer = this.entityManager.getNewWriter("obplace");
-        new GeoStreamingCsvModuleLoader(writer,
-                this.coreProperties.getProperty("test.data.path.geography.openbible"), this.jsword)
-                .init(this);
+        writer.setManifest(manifest);
+        new GeoStreamingCsvModuleLoader(writer, resource, this.jsword).init(this);
 
         final int close = writer.close();
 
@@ -422,18 +557,24 @@ public class Loader {
         this.addUpdate("install_hebrew_definitions");
 
         LOGGER.debug("Indexing lexicon");
+        final String greekLexicon = this.coreProperties.getProperty("test.data.path.lexicon.definitions.greek");
+        final String hebrewLexicon = this.coreProperties
+                .getProperty("test.data.path.lexicon.definitions.hebrew");
+        final EntityIndexManifest manifest = getManifest("definition", greekLexicon, hebrewLexicon);
+        if (isUpToDate(manifest)) {
+            return manifest.getEntries();
+        }
+
         final EntityIndexWriterImpl writer = this.entityManager.getNewWriter("definition");
+        writer.setManifest(manifest);
 
         LOGGER.debug("-Indexing greek");
         this.addUpdate("install_greek_definitions");
-        HeadwordLineBasedLoader lexiconLoader = new HeadwordLineBasedLoader(writer,
-                this.coreProperties.getProperty("test.data.path.lexicon.definitions.greek"));
+        HeadwordLineBasedLoader lexiconLoader = new HeadwordLineBasedLoader(writer, greekLexicon);
         lexiconLoader.init(this);
 
         LOGGER.debug("-Indexing hebrew");
         this.addUpdate("install_hebrew_definitions");
-        final String hebrewLexicon = this.coreProperties
-                .getProperty("test.data.path.lexicon.definitions.hebrew");
         if (hebrewLexicon != null) {
             lexiconLoader = new HeadwordLineBasedLoader(writer, hebrewLexicon);
         }
@@ -458,15 +599,91 @@ public class Loader {
         LOGGER.debug("Loading lexical forms");
         this.addUpdate("install_original_word_forms");
 
+        final String resource = this.coreProperties.getProperty("test.data.path.lexicon.forms");
+        final EntityIndexManifest manifest = getManifest("specificForm", resource);
+        if (isUpToDate(manifest)) {
+            return manifest.getEntries();
+        }
+
         final EntityIndexWriterImpl writer = this.entityManager.getNewWriter("specificForm");
-        new SpecificFormsLoader(writer, this.coreProperties.getProperty("test.data.path.lexicon.forms"))
-                .init(this);
+        writer.setManifest(manifest);
+        new SpecificFormsLoader(writer, resource).init(this);
         final int close = writer.close();
 
         this.addUpdate("install_original_word_forms_complete", close);
         return close;
     }
 
+    /**
+     * Computes the manifest that the entity index would carry if it was built from the given resources.
+     *
+     * @param entityName    the name of the entity
+     * @param resourcePaths the configured resource paths, null paths are ignored
+     * @return the manifest for the current sources
+     */
+    private EntityIndexManifest getManifest(final String entityName, final String... resourcePaths) {
+        final List<String> resources = new ArrayList<String>();
+        for (final String path : resourcePaths) {
+            if (path != null) {
+                resources.addAll(AbstractClasspathBasedModuleLoader.resolveResources(path));
+            }
+        }
+        return EntityIndexManifest.forSources(this.entityManager.getConfig(entityName), resources);
+    }
+
+    /**
+     * Compares the manifest of the current sources with the one stamped in the index on disk. Indexes are always
+     * considered stale if a rebuild has been forced.
+     *
+     * @param manifest the manifest of the current sources, updated with the number of entries if up to date
+     * @return true if the index on disk was built from the same sources and configuration
+     */
+    private boolean isUpToDate(final EntityIndexManifest manifest) {
+        if (this.forceRebuild) {
+            return false;
+        }
+
+        final EntityConfiguration config = this.entityManager.getConfig(manifest.getEntityName());
+        final EntityIndexManifest existing = EntityIndexManifest.read(new File(config.getLocation()));
+        if (!manifest.matches(existing)) {
+            return false;
+        }
+
+        LOGGER.info("Index for [{}] is up to date, skipping.", manifest.getEntityName());
+        manifest.setEntries(existing.getEntries());
+        this.addUpdate("install_entity_up_to_date", manifest.getEntityName(), existing.getEntries());
+        return true;
+    }
+
+    /**
+     * Loads all the entity indexes from the source data and packages them into a bundle, which can then be installed
+     * on other nodes.
+     *
+     * @param bundleFile the bundle to create
+     * @return the number of entities in the bundle
+     */
+    public int exportBundle(final File bundleFile) {
+        if (StringUtils.isBlank(this.runningAppVersion)) {
+            throw new StepInternalException("app.version must be set to stamp the bundle with the data version");
+        }
+        loadData();
+        return getBundle().export(bundleFile);
+    }
+
+    /**
+     * @return the bundle of the entity indexes for the running version of the data, the indexes of a bundle being
+     * installed by the entity manager before it opens any reader
+     */
+    private EntityIndexBundle getBundle() {
+        try {
+            final File entitiesDirectory = new File(CWProject.instance().getWriteableProjectSubdir(
+                    this.coreProperties.getProperty("app.index.path"), true));
+            return new EntityIndexBundle(this.entityManager, entitiesDirectory, this.runningAppVersion);
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to create step directory", e);
+        }
+    }
+
     /**
      * Reads the progress and empties the values therein
      *
@@ -485,7 +702,14 @@ public class Loader {
      * @return the the total amount of progress of the installation so far
      */
     public int getTotalProgress() {
-        return (int) ((double) this.totalProgress / this.totalItems * 100);
+        return (int) ((double) this.totalProgress.get() / this.totalItems * 100);
+    }
+
+    /**
+     * Marks one more item as processed
+     */
+    void incrementProgress() {
+        this.totalProgress.incrementAndGet();
     }
 
     /**
@@ -495,16 +719,23 @@ public class Loader {
      * @param args the args the arguments to use in the format
      */
     void addUpdate(final String key, final Object... args) {
-        Locale locale;
+        final Locale locale = this.progressLocale != null ? this.progressLocale : getProgressLocale();
+        this.progress.offer(String.format(ResourceBundle.getBundle("SetupBundle", locale).getString(key),
+                args));
+    }
+
+    /**
+     * @return the locale of the user watching the installation, or English if there isn't one
+     */
+    private Locale getProgressLocale() {
         try {
-            locale = this.clientSessionProvider.get().getLocale();
+            final ClientSession session = this.clientSessionProvider.get();
+            return session != null ? session.getLocale() : Locale.ENGLISH;
         } catch (final ProvisionException ex) {
             LOGGER.debug("Loader can't get client session");
             LOGGER.trace("Unable to provision", ex);
-            locale = Locale.ENGLISH;
+            return Locale.ENGLISH;
         }
-        this.progress.offer(String.format(ResourceBundle.getBundle("SetupBundle", locale).getString(key),
-                args));
     }
 
     /**
@@ -518,7 +749,7 @@ public class Loader {
      * @param totalProgress the total amount of progress so far
      */
     void setTotalProgress(final int totalProgress) {
-        this.totalProgress = totalProgress;
+        this.totalProgress.set(totalProgress);
     }
 
     /**
@@ -2,8 +2,6 @@ package com.tyndalehouse.step.core.data.create;
 
 import static com.tyndalehouse.step.core.utils.IOUtils.closeQuietly;
 
-import java.io.BufferedReader;
-import java.io.IOException;
 import java.io.Reader;
 
 import org.slf4j.Logger;
@@ -11,6 +9,7 @@ import org.slf4j.LoggerFactory;
 
 import com.tyndalehouse.step.core.data.entities.impl.EntityIndexWriterImpl;
 import com.tyndalehouse.step.core.data.loaders.AbstractClasspathBasedModuleLoader;
+import com.tyndalehouse.step.core.data.loaders.CsvRowReader;
 
 /**
  * Loads up all lexical forms
@@ -33,29 +32,19 @@ public class SpecificFormsLoader extends AbstractClasspathBasedModuleLoader {
 
     @Override
     protected void parseFile(final Reader reader, int skipLines) {
-        final BufferedReader bufferedReader = new BufferedReader(reader);
-        String line = null;
-
-        int leftOverSkip = skipLines;
+        final CsvRowReader csvReader = new CsvRowReader(reader, ',', CsvRowReader.NO_QUOTE, skipLines);
         int lines = 0;
         try {
-            while ((line = bufferedReader.readLine()) != null) {
-                leftOverSkip--;
-                if(leftOverSkip >= 0) {
-                    continue;
-                }
-
-                parseLine(line);
+            while (csvReader.next()) {
+                parseLine(csvReader);
                 lines++;
 
                 if (lines % 10000 == 0) {
                     getMainLoader().addUpdate("install_original_word_forms_progress", lines);
                 }
             }
-        } catch (final IOException io) {
-            LOGGER.warn(io.getMessage(), io);
         } finally {
-            closeQuietly(bufferedReader);
+            closeQuietly(csvReader);
         }
         LOGGER.info("Finished loading [{}] specific forms", lines);
     }
@@ -63,16 +52,21 @@ public class SpecificFormsLoader extends AbstractClasspathBasedModuleLoader {
     /**
      * parses a line into SQL
      * 
-     * @param line the line
+     * @param row the current row, holding the strong number and the form
      */
-    private void parseLine(final String line) {
-        final String[] split = line.split("[,]");
-        if (split.length < 2 || split[0].contains("|")) {
+    private void parseLine(final CsvRowReader row) {
+        if (row.getColumnCount() < 2 || row.getLength(1) == 0) {
+            return;
+        }
+
+        // strong numbers repeat for every form, so share the same instance
+        final String strongNumber = row.getInternedString(0);
+        if (strongNumber.indexOf('|') != -1) {
             return;
         }
 
-        this.writer.addFieldToCurrentDocument("strongNumber", split[0]);
-        this.writer.addFieldToCurrentDocument("originalForm", split[1]);
+        this.writer.addFieldToCurrentDocument("strongNumber", strongNumber);
+        this.writer.addFieldToCurrentDocument("originalForm", row.getString(1));
         this.writer.save();
     }
 }
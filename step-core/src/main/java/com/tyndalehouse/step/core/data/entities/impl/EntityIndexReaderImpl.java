@@ -10,13 +10,17 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.tyndalehouse.step.core.data.common.TermsAndMaxCount;
 import com.tyndalehouse.step.core.utils.LuceneUtils;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.TermAttribute;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
 import org.apache.lucene.queryParser.MultiFieldQueryParser;
 import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.queryParser.QueryParser;
@@ -43,7 +47,8 @@ import com.tyndalehouse.step.core.utils.IOUtils;
  */
 public class EntityIndexReaderImpl implements EntityIndexReader {
     private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(EntityIndexReaderImpl.class);
-    private IndexSearcher searcher;
+    private volatile IndexSearcher searcher;
+    private final AtomicInteger generation = new AtomicInteger();
     private Directory directory;
     private final EntityConfiguration config;
     private boolean memoryMapped;
@@ -82,6 +87,7 @@ public class EntityIndexReaderImpl implements EntityIndexReader {
             openDirectory(this.config, this.memoryMapped);
             if (this.directory != null) {
                 this.searcher = new IndexSearcher(this.directory, true);
+                this.generation.incrementAndGet();
             }
         } catch (final IOException e) {
             LOGGER.warn("Index not readable - it may not yet have been created.");
@@ -101,6 +107,70 @@ public class EntityIndexReaderImpl implements EntityIndexReader {
         IOUtils.closeQuietly(this.directory);
     }
 
+    @Override
+    public void warm() {
+        final IndexSearcher currentSearcher = this.searcher;
+        if (currentSearcher == null) {
+            return;
+        }
+
+        try {
+            final IndexReader reader = currentSearcher.getIndexReader();
+            for (final String field : reader.getFieldNames(IndexReader.FieldOption.INDEXED)) {
+                if (reader.hasNorms(field)) {
+                    reader.norms(field);
+                }
+
+                // seeking into the field loads the term dictionary, searching the first term loads the postings
+                final TermEnum terms = reader.terms(new Term(field, ""));
+                try {
+                    final Term first = terms.term();
+                    if (first != null && field.equals(first.field())) {
+                        currentSearcher.search(new TermQuery(first), 1);
+                    }
+                } finally {
+                    terms.close();
+                }
+            }
+
+            if (reader.maxDoc() > 0) {
+                currentSearcher.doc(0);
+            }
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to warm up index for [{}]", this.config.getName());
+            LOGGER.trace("Trace for exception:", e);
+        }
+    }
+
+    @Override
+    public int getGeneration() {
+        return this.generation.get();
+    }
+
+    @Override
+    public IndexReader getIndexReader() {
+        final IndexSearcher currentSearcher = this.searcher;
+        return currentSearcher == null ? null : currentSearcher.getIndexReader();
+    }
+
+    @Override
+    public long getIndexSize() {
+        final Directory currentDirectory = this.directory;
+        if (currentDirectory == null) {
+            return 0;
+        }
+
+        long size = 0;
+        try {
+            for (final String file : currentDirectory.listAll()) {
+                size += currentDirectory.fileLength(file);
+            }
+        } catch (final IOException e) {
+            LOGGER.trace("Unable to compute index size", e);
+        }
+        return size;
+    }
+
     /**
      * Gets the best implementation of the directory
      *
@@ -138,6 +208,32 @@ public class EntityIndexReaderImpl implements EntityIndexReader {
         return search(query, values.length, null, null);
     }
 
+    @Override
+    public EntityDoc[] lookupUniqueBySingleField(final String fieldName, final String... values) {
+        final EntityDoc[] docs = new EntityDoc[values.length];
+        final IndexSearcher currentSearcher = this.searcher;
+        TermDocs termDocs = null;
+        try {
+            termDocs = currentSearcher.getIndexReader().termDocs();
+            final Term field = new Term(fieldName);
+            for (int ii = 0; ii < values.length; ii++) {
+                if (values[ii] == null) {
+                    continue;
+                }
+
+                termDocs.seek(field.createTerm(values[ii]));
+                if (termDocs.next()) {
+                    docs[ii] = new EntityDoc(currentSearcher.doc(termDocs.doc()));
+                }
+            }
+            return docs;
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to look up values of " + fieldName, e);
+        } finally {
+            IOUtils.closeQuietly(termDocs);
+        }
+    }
+
     @Override
     public EntityDoc[] search(final String[] fieldNames, final String value) {
         return search(fieldNames, value, null, null, false, null, null);
@@ -20,6 +20,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.tyndalehouse.step.core.data.EntityConfiguration;
+import com.tyndalehouse.step.core.data.EntityIndexManifest;
 import com.tyndalehouse.step.core.data.EntityManager;
 import com.tyndalehouse.step.core.data.FieldConfig;
 import com.tyndalehouse.step.core.data.create.PostProcessor;
@@ -40,6 +41,7 @@ public class EntityIndexWriterImpl {
 
     private Document doc;
     private final EntityManager manager;
+    private EntityIndexManifest manifest;
 
     /**
      * Responsible for writing items to an index.
@@ -100,6 +102,9 @@ public class EntityIndexWriterImpl {
             // we've finished writing entries now, so close our writer
             this.writer.close();
 
+            // the index is about to be replaced, so it is stale until we write the new manifest
+            EntityIndexManifest.delete(file);
+
             // open up a location on disk
             destination = FSDirectory.open(file);
 
@@ -110,6 +115,11 @@ public class EntityIndexWriterImpl {
             fsWriter.close();
             destination.close();
             this.ramDirectory.close();
+
+            if (this.manifest != null) {
+                this.manifest.setEntries(numEntries);
+                this.manifest.write(file);
+            }
             this.manager.refresh(this.config.getName());
         } catch (final IOException e) {
             throw new StepInternalException("Unable to write index", e);
@@ -117,6 +127,22 @@ public class EntityIndexWriterImpl {
         return numEntries;
     }
 
+    /**
+     * @param manifest the manifest to stamp into the index once it has been written
+     */
+    public void setManifest(final EntityIndexManifest manifest) {
+        this.manifest = manifest;
+    }
+
+    /**
+     * @param fieldName the raw name of the field, as found in the source data
+     * @return true if the field is configured for this entity, false if it would be skipped
+     */
+    public boolean isFieldConfigured(final String fieldName) {
+        final List<FieldConfig> fieldConfigs = this.luceneFieldConfigurationByRaw.get(fieldName);
+        return fieldConfigs != null && !fieldConfigs.isEmpty();
+    }
+
     /**
      * @return the writer of the index into RAM
      */
@@ -33,42 +33,95 @@
 package com.tyndalehouse.step.core.data.entities.impl;
 
 import java.io.Closeable;
-import java.util.HashMap;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.crosswire.common.util.CWProject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.google.inject.Injector;
 import com.tyndalehouse.step.core.data.EntityConfiguration;
+import com.tyndalehouse.step.core.data.EntityIndexBundle;
 import com.tyndalehouse.step.core.data.EntityIndexReader;
 import com.tyndalehouse.step.core.data.EntityManager;
+import com.tyndalehouse.step.core.utils.StringUtils;
 
 /**
+ * Holds the configuration and readers of all entities. Readers are opened once per entity, either on first use or
+ * when the manager is warmed up at startup, and are shared by all threads. The prebuilt indexes of the bundle
+ * configured with app.index.bundle, if any, are installed before the first reader is opened.
+ *
  * @author chrisburrell
  * 
  */
 @Singleton
 public class EntityManagerImpl implements Closeable, EntityManager {
-    private final Map<String, EntityConfiguration> configs = new HashMap<String, EntityConfiguration>();
+    private static final Logger LOGGER = LoggerFactory.getLogger(EntityManagerImpl.class);
+    private final ConcurrentMap<String, EntityConfiguration> configs = new ConcurrentHashMap<String, EntityConfiguration>();
+    private final ConcurrentMap<String, Object> entityLocks = new ConcurrentHashMap<String, Object>();
     private final boolean memoryMapped;
     private final String indexPath;
-    private Map<String, EntityIndexReader> indexReaders = new HashMap<String, EntityIndexReader>();
+    private final String[] eagerEntities;
+    private final int warmThreads;
+    private final String bundlePath;
+    private final String dataVersion;
+    private final Object bundleLock = new Object();
+    private volatile boolean bundleChecked;
+    private Map<String, EntityIndexReader> indexReaders = new ConcurrentHashMap<String, EntityIndexReader>();
     private final Injector injector;
 
+    /**
+     * Constructs the entity manager, opening all readers lazily.
+     * 
+     * @param memoryMapped true to indicate indexes should be stored in memory
+     * @param indexPath path to index
+     * @param injector the injector
+     */
+    public EntityManagerImpl(final boolean memoryMapped, final String indexPath, final Injector injector) {
+        this(memoryMapped, indexPath, "", 1, "", null, injector);
+    }
+
     /**
      * Constructs the entity manager.
      * 
      * @param memoryMapped true to indicate indexes should be stored in memory
      * @param indexPath path to index
+     * @param eagerEntities comma-separated list of entities opened and warmed up at startup
+     * @param warmThreads the number of entities warmed up at the same time, 0 for one per processor
+     * @param bundlePath the bundle of prebuilt indexes to install, if any
+     * @param dataVersion the version of the data, which the bundle must have been built for
      * @param injector the injector
      */
     @Inject
     public EntityManagerImpl(@Named("app.index.memoryMapped") final boolean memoryMapped,
-            @Named("app.index.path") final String indexPath, final Injector injector) {
+            @Named("app.index.path") final String indexPath,
+            @Named("app.index.warm") final String eagerEntities,
+            @Named("app.index.warmThreads") final int warmThreads,
+            @Named("app.index.bundle") final String bundlePath,
+            @Named("app.version") final String dataVersion, final Injector injector) {
         this.memoryMapped = memoryMapped;
         this.indexPath = indexPath;
+        this.eagerEntities = StringUtils.split(eagerEntities, ",");
+        this.warmThreads = warmThreads > 0 ? warmThreads : Runtime.getRuntime().availableProcessors();
+        this.bundlePath = bundlePath;
+        this.dataVersion = dataVersion;
         this.injector = injector;
     }
 
@@ -77,8 +130,13 @@ public class EntityManagerImpl implements Closeable, EntityManager {
         EntityConfiguration entityConfiguration = this.configs.get(entityName);
 
         if (entityConfiguration == null) {
-            entityConfiguration = new EntityConfiguration(this.indexPath, entityName, this.injector);
-            this.configs.put(entityName, entityConfiguration);
+            synchronized (getLock(entityName)) {
+                entityConfiguration = this.configs.get(entityName);
+                if (entityConfiguration == null) {
+                    entityConfiguration = new EntityConfiguration(this.indexPath, entityName, this.injector);
+                    this.configs.put(entityName, entityConfiguration);
+                }
+            }
         }
         return entityConfiguration;
     }
@@ -87,7 +145,9 @@ public class EntityManagerImpl implements Closeable, EntityManager {
     public void refresh(final String entity) {
         final EntityIndexReader entityIndexReader = this.indexReaders.get(entity);
         if (entityIndexReader != null) {
-            entityIndexReader.refresh();
+            synchronized (getLock(entity)) {
+                entityIndexReader.refresh();
+            }
         }
     }
 
@@ -95,8 +155,17 @@ public class EntityManagerImpl implements Closeable, EntityManager {
     public EntityIndexReader getReader(final String entity) {
         EntityIndexReader entityIndexReader = this.indexReaders.get(entity);
         if (entityIndexReader == null) {
-            entityIndexReader = new EntityIndexReaderImpl(getConfig(entity), this.memoryMapped);
-            this.indexReaders.put(entity, entityIndexReader);
+            // outside of the entity lock, as installing takes the locks of the entities in the bundle
+            installBundle();
+
+            // only one thread opens the index, other threads wanting the same entity wait for it
+            synchronized (getLock(entity)) {
+                entityIndexReader = this.indexReaders.get(entity);
+                if (entityIndexReader == null) {
+                    entityIndexReader = new EntityIndexReaderImpl(getConfig(entity), this.memoryMapped);
+                    this.indexReaders.put(entity, entityIndexReader);
+                }
+            }
         }
         return entityIndexReader;
     }
@@ -106,6 +175,122 @@ public class EntityManagerImpl implements Closeable, EntityManager {
         return new EntityIndexWriterImpl(this, entity);
     }
 
+    @Override
+    public void warmUp() {
+        if (this.eagerEntities.length == 0) {
+            return;
+        }
+
+        final long start = System.currentTimeMillis();
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(this.warmThreads, this.eagerEntities.length), new WarmerThreadFactory());
+        try {
+            final List<Future<?>> warming = new ArrayList<Future<?>>();
+            for (final String entity : this.eagerEntities) {
+                warming.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        warmUp(entity.trim());
+                        return null;
+                    }
+                }));
+            }
+
+            for (final Future<?> future : warming) {
+                try {
+                    future.get();
+                } catch (final ExecutionException e) {
+                    LOGGER.warn("Unable to warm up entity", e.getCause());
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted while warming up entities");
+        } finally {
+            executor.shutdownNow();
+        }
+        LOGGER.info("Warmed up [{}] entities in [{}]ms", this.eagerEntities.length,
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Opens and warms up a single entity, reporting how long it took and how big the index is
+     * 
+     * @param entity the name of the entity
+     */
+    private void warmUp(final String entity) {
+        final long start = System.currentTimeMillis();
+        final EntityIndexReader reader = getReader(entity);
+        final long opened = System.currentTimeMillis();
+        reader.warm();
+        final long warmed = System.currentTimeMillis();
+
+        LOGGER.info("Entity [{}] opened in [{}]ms, warmed up in [{}]ms, index of [{}]KB", new Object[] { entity,
+                opened - start, warmed - opened, reader.getIndexSize() / 1024 });
+    }
+
+    /**
+     * @param entity the name of the entity
+     * @return the lock guarding the opening and refreshing of the entity
+     */
+    private Object getLock(final String entity) {
+        Object lock = this.entityLocks.get(entity);
+        if (lock == null) {
+            final Object newLock = new Object();
+            lock = this.entityLocks.putIfAbsent(entity, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        return lock;
+    }
+
+    /**
+     * Installs the bundle of prebuilt indexes, once, before any reader is opened, so that no index is replaced while
+     * it is being read. A bundle that can't be installed is ignored, leaving the current indexes in place.
+     */
+    private void installBundle() {
+        if (this.bundleChecked) {
+            return;
+        }
+
+        synchronized (this.bundleLock) {
+            if (this.bundleChecked) {
+                return;
+            }
+            this.bundleChecked = true;
+
+            if (StringUtils.isBlank(this.bundlePath)) {
+                return;
+            }
+
+            final File bundleFile = new File(this.bundlePath);
+            if (!bundleFile.isFile()) {
+                LOGGER.warn("Entity bundle [{}] does not exist", bundleFile.getAbsolutePath());
+                return;
+            }
+
+            if (StringUtils.isBlank(this.dataVersion)) {
+                LOGGER.warn("Not installing entity bundle [{}] as app.version is not set",
+                        bundleFile.getAbsolutePath());
+                return;
+            }
+
+            try {
+                final long start = System.currentTimeMillis();
+                final File entitiesDirectory = new File(CWProject.instance().getWriteableProjectSubdir(
+                        this.indexPath, true));
+                if (new EntityIndexBundle(this, entitiesDirectory, this.dataVersion).install(bundleFile)) {
+                    LOGGER.info("Installed entity bundle in [{}] ms", System.currentTimeMillis() - start);
+                }
+            } catch (final IOException ex) {
+                LOGGER.error("Unable to read entity bundle, data will be loaded from source", ex);
+            } catch (final RuntimeException ex) {
+                LOGGER.error("Unable to install entity bundle, data will be loaded from source", ex);
+            }
+        }
+    }
+
     @Override
     public void close() {
         for (final EntityIndexReader reader : this.indexReaders.values()) {
@@ -119,4 +304,18 @@ public class EntityManagerImpl implements Closeable, EntityManager {
     void setIndexReaders(final Map<String, EntityIndexReader> indexReaders) {
         this.indexReaders = indexReaders;
     }
+
+    /**
+     * Names the warm up threads, so that they can be told apart in the logs
+     */
+    private static final class WarmerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "step-entity-warmer-" + this.count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
@@ -36,6 +36,9 @@ import static com.tyndalehouse.step.core.utils.IOUtils.closeQuietly;
 
 import java.io.*;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import com.tyndalehouse.step.core.utils.IOUtils;
 import org.slf4j.Logger;
@@ -75,33 +78,42 @@ public abstract class AbstractClasspathBasedModuleLoader implements ModuleLoader
     private void readDataFile() {
         LOG.debug("Reading resource [{}]", this.resourcePath);
 
-        if (this.resourcePath == null) {
+        for (final String resource : resolveResources(this.resourcePath)) {
+            parseSingleFile(resource);
+        }
+    }
+
+    /**
+     * Resolves the list of files that make up a resource. Resources ending in index.txt are treated as
+     * directories, listing one file per line. Lines starting with -- are ignored.
+     *
+     * @param resourcePath the resource path, as configured
+     * @return the list of classpath resources to be read
+     */
+    public static List<String> resolveResources(final String resourcePath) {
+        if (resourcePath == null) {
             throw new StepInternalException("Unable to locate resource.");
         }
 
-        if (this.resourcePath.endsWith("index.txt")) {
-            // then we're dealing with a directory, so parse multiple files
-            parseMultipleCsvFiles();
-            return;
+        if (!resourcePath.endsWith("index.txt")) {
+            return Collections.singletonList(resourcePath);
         }
 
-        parseSingleFile(this.resourcePath);
-    }
+        // then we're dealing with a directory, so list multiple files
+        final List<String> resources = new ArrayList<String>();
+        final String directory = resourcePath.substring(0, resourcePath.lastIndexOf('/') + 1);
+        final InputStream stream = ModuleLoader.class.getResourceAsStream(resourcePath);
+        if (stream == null) {
+            throw new StepInternalException("Unable to read resource: " + resourcePath);
+        }
 
-    /**
-     * parses multiple files held in a index.txt file
-     */
-    private void parseMultipleCsvFiles() {
-        // read files one by one
-        final String directory = this.resourcePath.substring(0, this.resourcePath.lastIndexOf('/') + 1);
-        final InputStream stream = ModuleLoader.class.getResourceAsStream(this.resourcePath);
         BufferedReader reader = null;
         try {
             reader = new BufferedReader(new InputStreamReader(stream));
             String line = null;
             while ((line = reader.readLine()) != null) {
                 if (!line.startsWith("--")) {
-                    parseSingleFile(directory + line);
+                    resources.add(directory + line);
                 }
             }
         } catch (final IOException e) {
@@ -109,6 +121,7 @@ public abstract class AbstractClasspathBasedModuleLoader implements ModuleLoader
         } finally {
             closeQuietly(reader);
         }
+        return resources;
     }
 
     /**
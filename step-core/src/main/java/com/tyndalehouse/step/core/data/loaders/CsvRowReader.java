@@ -0,0 +1,358 @@
+package com.tyndalehouse.step.core.data.loaders;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+
+/**
+ * A streaming reader for the CSV files used by the entity loaders. Rows are read one at a time into a single buffer
+ * that is reused for the whole file, and columns are only turned into strings when asked for, so that columns that
+ * aren't needed cost nothing. Short values that repeat throughout a file, such as codes and reference prefixes, can
+ * be interned so that each distinct value is only allocated once.
+ * <p/>
+ * Values of the current row are only valid until the next call to {@link #next()}. Blank lines are skipped. Note,
+ * this object is not thread-safe.
+ *
+ * @author chrisburrell
+ */
+public class CsvRowReader implements Closeable {
+    /**
+     * indicates that fields are never quoted
+     */
+    public static final char NO_QUOTE = '\0';
+    private static final int BUFFER_SIZE = 65536;
+    private static final int INITIAL_ROW_SIZE = 1024;
+    private static final int INITIAL_COLUMNS = 16;
+    private static final int MAX_INTERNED_LENGTH = 32;
+    private static final int MAX_INTERNED_VALUES = 65536;
+
+    private final Reader reader;
+    private final char separator;
+    private final char quote;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    private char[] row = new char[INITIAL_ROW_SIZE];
+    private int rowLength;
+    private int[] columnStarts = new int[INITIAL_COLUMNS];
+    private int[] columnEnds = new int[INITIAL_COLUMNS];
+    private int columns;
+
+    private String[] internedValues = new String[1024];
+    private int internedCount;
+    private final Map<String, Integer> headerIndexes = new HashMap<String, Integer>();
+
+    /**
+     * @param reader    the source of the characters, which is read in large blocks
+     * @param separator the column separator
+     * @param quote     the quote character, or {@link #NO_QUOTE}
+     * @param skipLines the number of lines to skip at the start of the file, such as comments
+     */
+    public CsvRowReader(final Reader reader, final char separator, final char quote, final int skipLines) {
+        this.reader = reader;
+        this.separator = separator;
+        this.quote = quote;
+        skipLines(skipLines);
+    }
+
+    /**
+     * Reads the next row as the header of the file, allowing columns to be looked up by name
+     *
+     * @return the headers, or null if the file is empty
+     */
+    public String[] readHeader() {
+        if (!next()) {
+            return null;
+        }
+
+        final String[] headers = new String[this.columns];
+        for (int ii = 0; ii < this.columns; ii++) {
+            headers[ii] = getString(ii);
+            if (!this.headerIndexes.containsKey(headers[ii])) {
+                this.headerIndexes.put(headers[ii], ii);
+            }
+        }
+        return headers;
+    }
+
+    /**
+     * Advances to the next non-blank row
+     *
+     * @return true if a row was read, false at the end of the file
+     */
+    public boolean next() {
+        do {
+            if (!readRow()) {
+                return false;
+            }
+        } while (this.columns == 1 && this.columnStarts[0] == this.columnEnds[0]);
+        return true;
+    }
+
+    /**
+     * @return the number of columns in the current row
+     */
+    public int getColumnCount() {
+        return this.columns;
+    }
+
+    /**
+     * @param header the name of the column, as found in the header row
+     * @return the index of the column, or -1 if there is no such column
+     */
+    public int getColumnIndex(final String header) {
+        final Integer index = this.headerIndexes.get(header);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @param column the index of the column
+     * @return a view of the value in the current row, valid until the next row is read
+     */
+    public CharSequence getColumn(final int column) {
+        if (column >= this.columns) {
+            return "";
+        }
+        return CharBuffer.wrap(this.row, this.columnStarts[column],
+                this.columnEnds[column] - this.columnStarts[column]);
+    }
+
+    /**
+     * @param column the index of the column
+     * @return the length of the value in the current row, 0 if the row is shorter
+     */
+    public int getLength(final int column) {
+        return column < this.columns ? this.columnEnds[column] - this.columnStarts[column] : 0;
+    }
+
+    /**
+     * @param column the index of the column
+     * @return the value in the current row, the empty string if the row is shorter
+     */
+    public String getString(final int column) {
+        final int length = getLength(column);
+        if (length == 0) {
+            return "";
+        }
+        return new String(this.row, this.columnStarts[column], length);
+    }
+
+    /**
+     * @param header the name of the column, as found in the header row
+     * @return the value in the current row, the empty string if there is no such column
+     */
+    public String getString(final String header) {
+        final int column = getColumnIndex(header);
+        return column == -1 ? "" : getString(column);
+    }
+
+    /**
+     * Returns the value of a column, sharing the same instance with all previous identical values. Values that are
+     * too long to be repeated are returned as new strings.
+     *
+     * @param column the index of the column
+     * @return the value in the current row, the empty string if the row is shorter
+     */
+    public String getInternedString(final int column) {
+        final int length = getLength(column);
+        if (length == 0) {
+            return "";
+        }
+
+        if (length > MAX_INTERNED_LENGTH) {
+            return getString(column);
+        }
+
+        final int start = this.columnStarts[column];
+        int hash = 0;
+        for (int ii = start; ii < start + length; ii++) {
+            hash = 31 * hash + this.row[ii];
+        }
+
+        final int mask = this.internedValues.length - 1;
+        int slot = hash & mask;
+        String value;
+        while ((value = this.internedValues[slot]) != null) {
+            if (value.hashCode() == hash && matches(value, start, length)) {
+                return value;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        value = new String(this.row, start, length);
+        if (this.internedCount < MAX_INTERNED_VALUES) {
+            this.internedValues[slot] = value;
+            this.internedCount++;
+            if (this.internedCount * 2 > this.internedValues.length) {
+                growInternedValues();
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.reader.close();
+    }
+
+    /**
+     * Reads a row into the row buffer, splitting it into columns
+     *
+     * @return false if the end of the file was reached before reading any character
+     */
+    private boolean readRow() {
+        this.rowLength = 0;
+        this.columns = 0;
+
+        int c = read();
+        if (c == -1) {
+            return false;
+        }
+
+        boolean quoted = false;
+        int columnStart = 0;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    // unterminated quote, keep whatever we have
+                    break;
+                }
+
+                if (c == this.quote) {
+                    c = read();
+                    if (c != this.quote) {
+                        // closing quote, continue with the character that followed it
+                        quoted = false;
+                        continue;
+                    }
+                }
+                append((char) c);
+            } else if (c == -1 || c == '\n') {
+                break;
+            } else if (c == '\r') {
+                c = read();
+                if (c != '\n' && c != -1) {
+                    this.position--;
+                }
+                break;
+            } else if (c == this.separator) {
+                endColumn(columnStart);
+                columnStart = this.rowLength;
+            } else if (c == this.quote && this.quote != NO_QUOTE) {
+                quoted = true;
+            } else {
+                append((char) c);
+            }
+            c = read();
+        }
+        endColumn(columnStart);
+        return true;
+    }
+
+    /**
+     * @param lines the number of lines to skip
+     */
+    private void skipLines(final int lines) {
+        for (int ii = 0; ii < lines; ii++) {
+            int c;
+            while ((c = read()) != -1 && c != '\n') {
+                // skip the rest of the line
+            }
+        }
+    }
+
+    /**
+     * @return the next character, or -1 at the end of the file
+     */
+    private int read() {
+        if (this.position == this.limit) {
+            try {
+                int read;
+                do {
+                    read = this.reader.read(this.buffer, 0, this.buffer.length);
+                } while (read == 0);
+
+                if (read == -1) {
+                    return -1;
+                }
+                this.position = 0;
+                this.limit = read;
+            } catch (final IOException e) {
+                throw new StepInternalException("Failed to read file", e);
+            }
+        }
+        return this.buffer[this.position++];
+    }
+
+    /**
+     * @param c the character to add to the current column
+     */
+    private void append(final char c) {
+        if (this.rowLength == this.row.length) {
+            final char[] larger = new char[this.row.length * 2];
+            System.arraycopy(this.row, 0, larger, 0, this.rowLength);
+            this.row = larger;
+        }
+        this.row[this.rowLength++] = c;
+    }
+
+    /**
+     * @param columnStart the start of the column that has just ended
+     */
+    private void endColumn(final int columnStart) {
+        if (this.columns == this.columnStarts.length) {
+            final int[] starts = new int[this.columns * 2];
+            final int[] ends = new int[this.columns * 2];
+            System.arraycopy(this.columnStarts, 0, starts, 0, this.columns);
+            System.arraycopy(this.columnEnds, 0, ends, 0, this.columns);
+            this.columnStarts = starts;
+            this.columnEnds = ends;
+        }
+        this.columnStarts[this.columns] = columnStart;
+        this.columnEnds[this.columns] = this.rowLength;
+        this.columns++;
+    }
+
+    /**
+     * @param value  an interned value
+     * @param start  the start of the column in the row buffer
+     * @param length the length of the column
+     * @return true if the value has the same characters as the column
+     */
+    private boolean matches(final String value, final int start, final int length) {
+        if (value.length() != length) {
+            return false;
+        }
+
+        for (int ii = 0; ii < length; ii++) {
+            if (value.charAt(ii) != this.row[start + ii]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Doubles the size of the table of interned values
+     */
+    private void growInternedValues() {
+        final String[] values = new String[this.internedValues.length * 2];
+        final int mask = values.length - 1;
+        for (final String value : this.internedValues) {
+            if (value != null) {
+                int slot = value.hashCode() & mask;
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                values[slot] = value;
+            }
+        }
+        this.internedValues = values;
+    }
+}
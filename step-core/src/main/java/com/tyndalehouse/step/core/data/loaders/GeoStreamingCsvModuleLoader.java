@@ -41,17 +41,17 @@ public class GeoStreamingCsvModuleLoader extends StreamingCsvModuleLoader {
     }
 
     @Override
-    protected void processFields(final String[] line, final String[] headerLine) {
+    protected void processFields(final CsvRowReader row, final String[] headerLine) {
         reset();
 
-        getWriter().addFieldToCurrentDocument("esvName", line[0]);
-        getWriter().addFieldToCurrentDocument("root", line[1]);
-        processCoordinate("latitude", line[2]);
-        processCoordinate("longitude", line[3]);
+        getWriter().addFieldToCurrentDocument("esvName", row.getString(0));
+        getWriter().addFieldToCurrentDocument("root", row.getInternedString(1));
+        processCoordinate("latitude", row.getString(2));
+        processCoordinate("longitude", row.getString(3));
         getWriter().addFieldToCurrentDocument("precision", this.precisionType);
 
         getWriter().addFieldToCurrentDocument("references",
-                this.jsword.getAllReferences(line[4].replace("Sng", "Song"), "ESV_th").replace(',', ';'));
+                this.jsword.getAllReferences(row.getString(4).replace("Sng", "Song"), "ESV_th").replace(',', ';'));
     }
 
     /**
@@ -34,18 +34,12 @@ package com.tyndalehouse.step.core.data.loaders;
 
 import static com.tyndalehouse.step.core.utils.IOUtils.closeQuietly;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.IOException;
 import java.io.Reader;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import au.com.bytecode.opencsv.CSVReader;
-
 import com.tyndalehouse.step.core.data.entities.impl.EntityIndexWriterImpl;
-import com.tyndalehouse.step.core.exceptions.StepInternalException;
 
 /**
  * Loads modules straight from a CSV file to a database form
@@ -56,6 +50,7 @@ public class StreamingCsvModuleLoader extends AbstractClasspathBasedModuleLoader
     private static final Logger LOG = LoggerFactory.getLogger(StreamingCsvModuleLoader.class);
     private char separator = ',';
     private final EntityIndexWriterImpl writer;
+    private boolean[] configuredColumns;
 
     /**
      * @param writer       the writer to the index
@@ -68,10 +63,10 @@ public class StreamingCsvModuleLoader extends AbstractClasspathBasedModuleLoader
 
     @Override
     protected void parseFile(final Reader reader, int skipLines) {
-        CSVReader csvReader = null;
+        CsvRowReader csvReader = null;
         try {
-            LOG.debug("Parsing file with a CsvReader");
-            csvReader = new CSVReader(reader, this.separator, '"', skipLines);
+            LOG.debug("Parsing file with a CsvRowReader");
+            csvReader = new CsvRowReader(reader, this.separator, '"', skipLines);
             parseCsvFile(csvReader);
         } finally {
             closeQuietly(csvReader);
@@ -83,28 +78,34 @@ public class StreamingCsvModuleLoader extends AbstractClasspathBasedModuleLoader
      *
      * @param csvReader the csv reader
      */
-    protected void parseCsvFile(final CSVReader csvReader) {
-        String[] line = null;
+    protected void parseCsvFile(final CsvRowReader csvReader) {
+        final String[] headerLine = csvReader.readHeader();
+        if (headerLine == null) {
+            return;
+        }
 
-        String[] headerLine;
-        try {
-            headerLine = csvReader.readNext();
-            while ((line = csvReader.readNext()) != null) {
-                processFields(line, headerLine);
-                this.writer.save();
-            }
-        } catch (final IOException e) {
-            throw new StepInternalException("Failed to read file", e);
+        // work out once which columns the index wants, so that the others are never read into strings
+        this.configuredColumns = new boolean[headerLine.length];
+        for (int ii = 0; ii < headerLine.length; ii++) {
+            this.configuredColumns[ii] = this.writer.isFieldConfigured(headerLine[ii]);
+        }
+
+        while (csvReader.next()) {
+            processFields(csvReader, headerLine);
+            this.writer.save();
         }
     }
 
     /**
-     * @param line       line read from a csv file
+     * @param row        the current row of the csv file
      * @param headerLine the headers
      */
-    protected void processFields(final String[] line, final String[] headerLine) {
-        for (int ii = 0; ii < line.length; ii++) {
-            this.writer.addFieldToCurrentDocument(headerLine[ii], line[ii]);
+    protected void processFields(final CsvRowReader row, final String[] headerLine) {
+        final int columns = Math.min(row.getColumnCount(), headerLine.length);
+        for (int ii = 0; ii < columns; ii++) {
+            if (this.configuredColumns[ii]) {
+                this.writer.addFieldToCurrentDocument(headerLine[ii], row.getInternedString(ii));
+            }
         }
     }
 
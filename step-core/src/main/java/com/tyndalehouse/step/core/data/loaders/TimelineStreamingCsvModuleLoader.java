@@ -30,17 +30,18 @@ public class TimelineStreamingCsvModuleLoader extends StreamingCsvModuleLoader {
     }
 
     @Override
-    protected void processFields(final String[] line, final String[] headerLine) {
-        getWriter().addFieldToCurrentDocument("id", line[0]);
-        getWriter().addFieldToCurrentDocument("name", line[1]);
-        doPartialDate(line[2], "fromDate", "fromPrecision");
-        doPartialDate(line[3], "toDate", "toPrecision");
-        getWriter().addFieldToCurrentDocument("certainty", line[7]);
-        getWriter().addFieldToCurrentDocument("flags", line[8]);
+    protected void processFields(final CsvRowReader row, final String[] headerLine) {
+        getWriter().addFieldToCurrentDocument("id", row.getString(0));
+        getWriter().addFieldToCurrentDocument("name", row.getString(1));
+        doPartialDate(row.getString(2), "fromDate", "fromPrecision");
+        doPartialDate(row.getString(3), "toDate", "toPrecision");
+        getWriter().addFieldToCurrentDocument("certainty", row.getInternedString(7));
+        getWriter().addFieldToCurrentDocument("flags", row.getInternedString(8));
 
         // do references
-        getWriter().addFieldToCurrentDocument("storedReferences", line[12]);
-        getWriter().addFieldToCurrentDocument("references", this.jsword.getAllReferences(line[12], "ESV_th"));
+        final String references = row.getString(12);
+        getWriter().addFieldToCurrentDocument("storedReferences", references);
+        getWriter().addFieldToCurrentDocument("references", this.jsword.getAllReferences(references, "ESV_th"));
     }
 
     /**
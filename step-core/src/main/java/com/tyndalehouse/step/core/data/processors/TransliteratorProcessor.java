@@ -19,6 +19,7 @@ import org.apache.lucene.document.Field;
 public class TransliteratorProcessor implements PostProcessor {
     private static final String STEP_SIMPLIFIED_TRANSLITERATION = "simplifiedStepTransliteration";
     private static final String STEP_TRANSLITERATION = "stepTransliteration";
+    private static final String EXACT_FORM = "exactForm";
 
     @Override
     public void process(final EntityConfiguration config, final Document doc) {
@@ -33,6 +34,11 @@ public class TransliteratorProcessor implements PostProcessor {
 
         doStepTransliteration(config, doc, transliteration);
         doSimplifiedStepTransliterations(doc, isHebrew, transliteration, config);
+
+        // entities that index their exact forms have their transliterations looked up by form at runtime
+        if (config.getField(EXACT_FORM) != null) {
+            doc.add(config.getField(EXACT_FORM, accentedUnicode));
+        }
     }
 
     /**
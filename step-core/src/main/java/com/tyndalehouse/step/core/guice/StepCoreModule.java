@@ -39,11 +39,16 @@ import com.tyndalehouse.step.core.data.create.Loader;
 import com.tyndalehouse.step.core.data.entities.impl.EntityManagerImpl;
 import com.tyndalehouse.step.core.guice.providers.DefaultInstallersProvider;
 import com.tyndalehouse.step.core.guice.providers.DefaultVersionsProvider;
+import com.tyndalehouse.step.core.guice.providers.JobHandlersProvider;
 import com.tyndalehouse.step.core.guice.providers.OfflineInstallersProvider;
 import com.tyndalehouse.step.core.service.jsword.impl.StepConfigValueInterceptor;
 import com.tyndalehouse.step.core.service.*;
+import com.tyndalehouse.step.core.service.helpers.BackgroundBuilder;
 import com.tyndalehouse.step.core.service.helpers.VersionResolver;
 import com.tyndalehouse.step.core.service.impl.*;
+import com.tyndalehouse.step.core.service.jobs.JobHandler;
+import com.tyndalehouse.step.core.service.jobs.JobService;
+import com.tyndalehouse.step.core.service.jobs.impl.JobServiceImpl;
 import com.tyndalehouse.step.core.service.impl.suggestion.GreekAncientLanguageServiceImpl;
 import com.tyndalehouse.step.core.service.impl.suggestion.GreekAncientMeaningServiceImpl;
 import com.tyndalehouse.step.core.service.impl.suggestion.HebrewAncientLanguageServiceImpl;
@@ -122,6 +127,7 @@ public class StepCoreModule extends AbstractStepGuiceModule {
         bind(TimelineService.class).to(TimelineServiceImpl.class);
         bind(GeographyService.class).to(GeographyServiceImpl.class);
         bind(Loader.class);
+        bind(BackgroundBuilder.class);
         bind(UserService.class).to(UserServiceImpl.class);
         bind(LexiconDefinitionService.class).to(LexiconDefinitionServiceImpl.class);
         bind(SubjectSearchService.class).to(SubjectSearchServiceImpl.class);
@@ -130,6 +136,16 @@ public class StepCoreModule extends AbstractStepGuiceModule {
         bind(OriginalWordSuggestionService.class).to(OriginalWordSuggestionServiceImpl.class);
         bind(SupportRequestService.class).to(SupportRequestServiceImpl.class);
         bind(JSwordRelatedVersesService.class).to(JSwordRelatedVersesServiceImpl.class);
+        bind(JSwordRelatedVerseIndexService.class).to(JSwordRelatedVerseIndexServiceImpl.class);
+        bind(JSwordStrongCountService.class).to(JSwordStrongCountServiceImpl.class);
+        bind(JSwordInterlinearAlignmentService.class).to(JSwordInterlinearAlignmentServiceImpl.class);
+        bind(JSwordWordStatsService.class).to(JSwordWordStatsServiceImpl.class);
+        bind(JSwordConcordanceService.class).to(JSwordConcordanceServiceImpl.class);
+        bind(JSwordCollocationService.class).to(JSwordCollocationServiceImpl.class);
+        bind(JobService.class).to(JobServiceImpl.class);
+
+        bind(new TypeLiteral<List<JobHandler>>() {
+        }).toProvider(JobHandlersProvider.class);
                 
         bind(new TypeLiteral<List<String>>() {
         }).annotatedWith(Names.named("defaultVersions")).toProvider(DefaultVersionsProvider.class);
@@ -0,0 +1,42 @@
+package com.tyndalehouse.step.core.guice.providers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import com.tyndalehouse.step.core.service.jobs.JobHandler;
+import com.tyndalehouse.step.core.service.jobs.impl.AnalyseStatsJobHandler;
+import com.tyndalehouse.step.core.service.jobs.impl.CollocationsJobHandler;
+import com.tyndalehouse.step.core.service.jobs.impl.RelatedVersesJobHandler;
+
+/**
+ * Provides the handlers of the types of jobs that can be run in the background
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class JobHandlersProvider implements Provider<List<JobHandler>> {
+    private final List<JobHandler> handlers = new ArrayList<JobHandler>();
+
+    /**
+     * @param analyseStats  runs the statistics of a passage
+     * @param collocations  runs the collocations of a strong number
+     * @param relatedVerses runs the related verses of a passage
+     */
+    @Inject
+    public JobHandlersProvider(final AnalyseStatsJobHandler analyseStats,
+                               final CollocationsJobHandler collocations,
+                               final RelatedVersesJobHandler relatedVerses) {
+        this.handlers.add(analyseStats);
+        this.handlers.add(collocations);
+        this.handlers.add(relatedVerses);
+    }
+
+    @Override
+    public List<JobHandler> get() {
+        return this.handlers;
+    }
+}
@@ -0,0 +1,15 @@
+package com.tyndalehouse.step.core.models.jobs;
+
+/**
+ * @author chrisburrell
+ */
+public enum JobState {
+    /** waiting for a worker */
+    QUEUED,
+    /** being run */
+    RUNNING,
+    /** finished, with a result */
+    COMPLETE,
+    /** finished, without a result */
+    FAILED
+}
@@ -0,0 +1,215 @@
+package com.tyndalehouse.step.core.models.jobs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The state of a background job, as held in the job table and as returned to the client polling it
+ *
+ * @author chrisburrell
+ */
+public class JobStatus {
+    private String id;
+    private String type;
+    private List<String> arguments;
+    private JobState state;
+    private int progress;
+    private String message;
+    private long submitted;
+    private long started;
+    private long finished;
+    private long resultSize;
+    private int attempts;
+
+    /**
+     * Creates an empty status, as read back from the job table
+     */
+    public JobStatus() {
+        // no fields set
+    }
+
+    /**
+     * @param id        the id of the job
+     * @param type      the type of the job
+     * @param arguments the arguments of the job
+     * @param submitted the time at which the job was submitted
+     */
+    public JobStatus(final String id, final String type, final List<String> arguments, final long submitted) {
+        this.id = id;
+        this.type = type;
+        this.arguments = new ArrayList<String>(arguments);
+        this.state = JobState.QUEUED;
+        this.submitted = submitted;
+    }
+
+    /**
+     * @param other the status to copy, so that it can be returned while the job carries on
+     */
+    public JobStatus(final JobStatus other) {
+        this.id = other.id;
+        this.type = other.type;
+        this.arguments = other.arguments;
+        this.state = other.state;
+        this.progress = other.progress;
+        this.message = other.message;
+        this.submitted = other.submitted;
+        this.started = other.started;
+        this.finished = other.finished;
+        this.resultSize = other.resultSize;
+        this.attempts = other.attempts;
+    }
+
+    /**
+     * @return the id of the job
+     */
+    public String getId() {
+        return this.id;
+    }
+
+    /**
+     * @param id the id of the job
+     */
+    public void setId(final String id) {
+        this.id = id;
+    }
+
+    /**
+     * @return the type of the job
+     */
+    public String getType() {
+        return this.type;
+    }
+
+    /**
+     * @param type the type of the job
+     */
+    public void setType(final String type) {
+        this.type = type;
+    }
+
+    /**
+     * @return the arguments of the job
+     */
+    public List<String> getArguments() {
+        return this.arguments;
+    }
+
+    /**
+     * @param arguments the arguments of the job
+     */
+    public void setArguments(final List<String> arguments) {
+        this.arguments = arguments;
+    }
+
+    /**
+     * @return the state of the job
+     */
+    public JobState getState() {
+        return this.state;
+    }
+
+    /**
+     * @param state the state of the job
+     */
+    public void setState(final JobState state) {
+        this.state = state;
+    }
+
+    /**
+     * @return the progress of the job, as a percentage
+     */
+    public int getProgress() {
+        return this.progress;
+    }
+
+    /**
+     * @param progress the progress of the job, as a percentage
+     */
+    public void setProgress(final int progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * @return the reason the job failed, if it did
+     */
+    public String getMessage() {
+        return this.message;
+    }
+
+    /**
+     * @param message the reason the job failed, if it did
+     */
+    public void setMessage(final String message) {
+        this.message = message;
+    }
+
+    /**
+     * @return the time at which the job was submitted
+     */
+    public long getSubmitted() {
+        return this.submitted;
+    }
+
+    /**
+     * @param submitted the time at which the job was submitted
+     */
+    public void setSubmitted(final long submitted) {
+        this.submitted = submitted;
+    }
+
+    /**
+     * @return the time at which the job started, or 0
+     */
+    public long getStarted() {
+        return this.started;
+    }
+
+    /**
+     * @param started the time at which the job started
+     */
+    public void setStarted(final long started) {
+        this.started = started;
+    }
+
+    /**
+     * @return the time at which the job finished, or 0
+     */
+    public long getFinished() {
+        return this.finished;
+    }
+
+    /**
+     * @param finished the time at which the job finished
+     */
+    public void setFinished(final long finished) {
+        this.finished = finished;
+    }
+
+    /**
+     * @return the size of the result kept, in bytes
+     */
+    public long getResultSize() {
+        return this.resultSize;
+    }
+
+    /**
+     * @param resultSize the size of the result kept, in bytes
+     */
+    public void setResultSize(final long resultSize) {
+        this.resultSize = resultSize;
+    }
+
+    /**
+     * @return the number of times the job has been started, including runs cut short by the server stopping
+     */
+    public int getAttempts() {
+        return this.attempts;
+    }
+
+    /**
+     * @param attempts the number of times the job has been started
+     */
+    public void setAttempts(final int attempts) {
+        this.attempts = attempts;
+    }
+}
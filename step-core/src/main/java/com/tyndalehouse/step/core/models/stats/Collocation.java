@@ -0,0 +1,44 @@
+package com.tyndalehouse.step.core.models.stats;
+
+/**
+ * A strong number occurring with another, and how strongly
+ *
+ * @author chrisburrell
+ */
+public class Collocation {
+    private final String strongNumber;
+    private final int count;
+    private final double score;
+
+    /**
+     * @param strongNumber the strong number occurring with the other
+     * @param count        the number of times they occur together
+     * @param score        the score by which collocations are ranked
+     */
+    public Collocation(final String strongNumber, final int count, final double score) {
+        this.strongNumber = strongNumber;
+        this.count = count;
+        this.score = score;
+    }
+
+    /**
+     * @return the strong number occurring with the other
+     */
+    public String getStrongNumber() {
+        return this.strongNumber;
+    }
+
+    /**
+     * @return the number of times they occur together
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * @return the score by which collocations are ranked
+     */
+    public double getScore() {
+        return this.score;
+    }
+}
@@ -0,0 +1,13 @@
+package com.tyndalehouse.step.core.models.stats;
+
+/**
+ * @author chrisburrell
+ */
+public enum CollocationMeasure {
+    /** the number of times the strong numbers occur together */
+    COUNT,
+    /** pointwise mutual information, how much more often they occur together than by chance */
+    PMI,
+    /** log-likelihood, how surely they occur together more often than by chance */
+    LOG_LIKELIHOOD
+}
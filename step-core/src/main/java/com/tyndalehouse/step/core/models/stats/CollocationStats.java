@@ -0,0 +1,90 @@
+package com.tyndalehouse.step.core.models.stats;
+
+import java.util.List;
+import java.util.Map;
+
+import com.tyndalehouse.step.core.models.KeyWrapper;
+import com.tyndalehouse.step.core.models.LexiconSuggestion;
+
+/**
+ * The strong numbers occurring most strongly with a strong number, with their definitions
+ *
+ * @author chrisburrell
+ */
+public class CollocationStats {
+    private String strongNumber;
+    private CollocationMeasure measure;
+    private KeyWrapper reference;
+    private List<Collocation> collocations;
+    private Map<String, LexiconSuggestion> lexiconWords;
+
+    /**
+     * @return the strong number whose collocations these are
+     */
+    public String getStrongNumber() {
+        return this.strongNumber;
+    }
+
+    /**
+     * @param strongNumber the strong number whose collocations these are
+     */
+    public void setStrongNumber(final String strongNumber) {
+        this.strongNumber = strongNumber;
+    }
+
+    /**
+     * @return the measure the collocations are ranked by
+     */
+    public CollocationMeasure getMeasure() {
+        return this.measure;
+    }
+
+    /**
+     * @param measure the measure the collocations are ranked by
+     */
+    public void setMeasure(final CollocationMeasure measure) {
+        this.measure = measure;
+    }
+
+    /**
+     * @return the passage the collocations were found in, or null for the whole version
+     */
+    public KeyWrapper getReference() {
+        return this.reference;
+    }
+
+    /**
+     * @param reference the passage the collocations were found in, or null for the whole version
+     */
+    public void setReference(final KeyWrapper reference) {
+        this.reference = reference;
+    }
+
+    /**
+     * @return the collocations, strongest first
+     */
+    public List<Collocation> getCollocations() {
+        return this.collocations;
+    }
+
+    /**
+     * @param collocations the collocations, strongest first
+     */
+    public void setCollocations(final List<Collocation> collocations) {
+        this.collocations = collocations;
+    }
+
+    /**
+     * @return the definitions of the strong numbers
+     */
+    public Map<String, LexiconSuggestion> getLexiconWords() {
+        return this.lexiconWords;
+    }
+
+    /**
+     * @param lexiconWords the definitions of the strong numbers
+     */
+    public void setLexiconWords(final Map<String, LexiconSuggestion> lexiconWords) {
+        this.lexiconWords = lexiconWords;
+    }
+}
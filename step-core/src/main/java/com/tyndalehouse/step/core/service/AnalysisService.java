@@ -1,5 +1,7 @@
 package com.tyndalehouse.step.core.service;
 
+import com.tyndalehouse.step.core.models.stats.CollocationMeasure;
+import com.tyndalehouse.step.core.models.stats.CollocationStats;
 import com.tyndalehouse.step.core.models.stats.ScopeType;
 import com.tyndalehouse.step.core.models.stats.StatType;
 import com.tyndalehouse.step.core.models.stats.CombinedPassageStats;
@@ -23,4 +25,18 @@ public interface AnalysisService {
      */
     CombinedPassageStats getStatsForPassage(String version, String reference, final StatType statType, final ScopeType scopeType, boolean nextChapter);
 
+    /**
+     * Obtains the strong numbers occurring most strongly with a strong number, from precomputed collocations
+     *
+     * @param version   the tagged version
+     * @param strong    the strong number
+     * @param reference the passage to look in, or blank for the whole version
+     * @param scopeType restricts to the passage/chapter/1 chapter either side/book
+     * @param measure   the measure to rank by
+     * @param window    the number of tagged words either side to look in, or 0 for the whole verse
+     * @return the collocations, with their definitions
+     */
+    CollocationStats getCollocations(String version, String strong, String reference, ScopeType scopeType,
+                                     CollocationMeasure measure, int window);
+
 }
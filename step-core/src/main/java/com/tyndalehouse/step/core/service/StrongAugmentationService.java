@@ -16,6 +16,23 @@ public interface StrongAugmentationService {
      */
     AugmentedStrongs augment(final String version, String reference, String[] keys);
 
+    /**
+     * Augments all the strong numbers of a passage at once, such as all the words of a chapter. Unlike
+     * {@link #augment(String, String, String[])}, repeated strong numbers are kept so that they can be counted.
+     *
+     * @param version   the version that anchors the reference
+     * @param reference the reference of the whole passage
+     * @param keys      the strong numbers of the passage
+     * @return the augmented form of each strong number, in the same order as the keys
+     */
+    String[] augmentPassage(String version, String reference, String[] keys);
+
+    /**
+     * @param strong a strong number, padded
+     * @return true if the strong number is a Hebrew strong number that may be augmented depending on the reference
+     */
+    boolean isAugmentable(String strong);
+
     /**
      *
      * @param strong the strong that is being examined. The basic check is to see if the strong number finishes with a letter
@@ -109,4 +109,15 @@ public interface VocabularyService {
      * @return the lexicon definitions that were found
      */
     EntityDoc[] getLexiconDefinitions(String vocabIdentifiers, String version, String reference);
+
+    /**
+     * returns the lexicon definitions of several words at once, looking up all the definitions that aren't cached
+     * in a single pass over the index
+     *
+     * @param version the version that ancors the references
+     * @param references the reference in which each word can be found
+     * @param vocabIdentifiers the identifiers of each word
+     * @return the lexicon definitions of each word, in the same order
+     */
+    EntityDoc[][] getLexiconDefinitions(String version, String[] references, String[] vocabIdentifiers);
 }
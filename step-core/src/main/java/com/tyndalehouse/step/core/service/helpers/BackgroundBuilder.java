@@ -0,0 +1,59 @@
+package com.tyndalehouse.step.core.service.helpers;
+
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * Builds the data precomputed from each version, such as its concordance or chapter counts, on a small pool of
+ * threads shared by every service keeping such data, so that however many versions are asked for at once, only a
+ * few full scans of a version run at the same time. Each build is submitted once per version, so the queue is not
+ * bounded.
+ * <p/>
+ * A thread that can't carry on without the data, such as a background job, runs the build itself rather than
+ * waiting for a thread of the pool, so that builds depending on other builds never wait on each other.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class BackgroundBuilder {
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param threads the number of builds run at the same time
+     */
+    @Inject
+    public BackgroundBuilder(@Named("app.builds.threads") final int threads) {
+        final int poolSize = Math.max(1, threads);
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "step-build-" + this.count.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues a build. Should the build have been run by another thread by the time it is taken off the queue, it
+     * isn't run again.
+     *
+     * @param build the build
+     */
+    public void submit(final FutureTask<?> build) {
+        this.executor.execute(build);
+    }
+}
@@ -0,0 +1,270 @@
+package com.tyndalehouse.step.core.service.helpers;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.utils.IOUtils;
+
+/**
+ * The subjects of each chapter and book, read once from the nave index. Subjects are held in the order a subject
+ * search sorts them, by root and then heading, and each chapter holds the positions of its subjects, so that the
+ * subjects of many chapters are found by merging a few arrays, rather than running a query expanding to every verse
+ * of the chapters.
+ * <p/>
+ * A chapter, as in Gen.1, holds the subjects referring to any of its verses, and a book, as in Gen, the subjects
+ * referring to any of its chapters or verses, matching the wildcard queries Gen.1.* and Gen.* respectively.
+ *
+ * @author chrisburrell
+ */
+public final class SubjectChapterIndex {
+    private static final String REFERENCES_FIELD = "expandedReferences";
+    private static final String ROOT_FIELD = "root";
+    private static final String HEADING_FIELD = "fullHeader";
+    private static final String ALTERNATE_FIELD = "alternate";
+    private static final int[] NO_SUBJECTS = new int[0];
+
+    private final int generation;
+    private final String[] roots;
+    private final String[] headings;
+    private final String[] alternates;
+    private final Map<String, int[]> subjectsByChapter;
+
+    /**
+     * @param generation        the generation of the index the subjects were read from
+     * @param roots             the root of each subject
+     * @param headings          the heading of each subject
+     * @param alternates        the subjects to see instead, for each subject
+     * @param subjectsByChapter the position of the subjects of each chapter and book, in lower case
+     */
+    private SubjectChapterIndex(final int generation, final String[] roots, final String[] headings,
+                                final String[] alternates, final Map<String, int[]> subjectsByChapter) {
+        this.generation = generation;
+        this.roots = roots;
+        this.headings = headings;
+        this.alternates = alternates;
+        this.subjectsByChapter = subjectsByChapter;
+    }
+
+    /**
+     * @return the generation of the index the subjects were read from
+     */
+    public int getGeneration() {
+        return this.generation;
+    }
+
+    /**
+     * @param chapters the chapters and books, as in Gen.1 or Gen
+     * @return the positions of the subjects of any of the chapters, in the order of a subject search
+     */
+    public int[] getSubjects(final Collection<String> chapters) {
+        if (chapters.size() == 1) {
+            return getChapterSubjects(chapters.iterator().next()).clone();
+        }
+
+        final BitSet subjects = new BitSet(this.roots.length);
+        for (final String chapter : chapters) {
+            for (final int subject : getChapterSubjects(chapter)) {
+                subjects.set(subject);
+            }
+        }
+
+        final int[] found = new int[subjects.cardinality()];
+        int count = 0;
+        for (int ii = subjects.nextSetBit(0); ii >= 0; ii = subjects.nextSetBit(ii + 1)) {
+            found[count++] = ii;
+        }
+        return found;
+    }
+
+    /**
+     * @param subject the position of the subject
+     * @return the root of the subject
+     */
+    public String getRoot(final int subject) {
+        return this.roots[subject];
+    }
+
+    /**
+     * @param subject the position of the subject
+     * @return the heading of the subject
+     */
+    public String getHeading(final int subject) {
+        return this.headings[subject];
+    }
+
+    /**
+     * @param subject the position of the subject
+     * @return the subjects to see instead
+     */
+    public String getAlternate(final int subject) {
+        return this.alternates[subject];
+    }
+
+    /**
+     * @param chapter the chapter or book
+     * @return the positions of its subjects
+     */
+    private int[] getChapterSubjects(final String chapter) {
+        final int[] subjects = this.subjectsByChapter.get(chapter.toLowerCase());
+        return subjects == null ? NO_SUBJECTS : subjects;
+    }
+
+    /**
+     * Reads the subjects of every chapter from the nave index
+     *
+     * @param reader     the reader of the nave index
+     * @param generation the generation of the index
+     * @return the subjects of every chapter
+     */
+    public static SubjectChapterIndex read(final IndexReader reader, final int generation) {
+        final int maxDoc = reader.maxDoc();
+        final String[] docRoots = new String[maxDoc];
+        final String[] docHeadings = new String[maxDoc];
+        final String[] docAlternates = new String[maxDoc];
+        final Map<String, BitSet> docsByChapter = new HashMap<String, BitSet>(2048);
+
+        TermEnum terms = null;
+        TermDocs termDocs = null;
+        try {
+            final MapFieldSelector fields = new MapFieldSelector(new String[]{ROOT_FIELD, HEADING_FIELD,
+                    ALTERNATE_FIELD});
+            for (int ii = 0; ii < maxDoc; ii++) {
+                if (!reader.isDeleted(ii)) {
+                    final Document doc = reader.document(ii, fields);
+                    docRoots[ii] = doc.get(ROOT_FIELD);
+                    docHeadings[ii] = doc.get(HEADING_FIELD);
+                    docAlternates[ii] = doc.get(ALTERNATE_FIELD);
+                }
+            }
+
+            terms = reader.terms(new Term(REFERENCES_FIELD, ""));
+            termDocs = reader.termDocs();
+            do {
+                final Term term = terms.term();
+                if (term == null || !REFERENCES_FIELD.equals(term.field())) {
+                    break;
+                }
+
+                // references are indexed in lower case, as in gen.1.1
+                final String reference = term.text();
+                final int bookEnd = reference.indexOf('.');
+                if (bookEnd == -1) {
+                    continue;
+                }
+
+                final int chapterEnd = reference.indexOf('.', bookEnd + 1);
+                final BitSet bookDocs = getDocs(docsByChapter, reference.substring(0, bookEnd), maxDoc);
+                final BitSet chapterDocs = chapterEnd == -1 ? null
+                        : getDocs(docsByChapter, reference.substring(0, chapterEnd), maxDoc);
+                termDocs.seek(terms);
+                while (termDocs.next()) {
+                    bookDocs.set(termDocs.doc());
+                    if (chapterDocs != null) {
+                        chapterDocs.set(termDocs.doc());
+                    }
+                }
+            } while (terms.next());
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to read subjects by chapter", e);
+        } finally {
+            IOUtils.closeQuietly(terms);
+            IOUtils.closeQuietly(termDocs);
+        }
+
+        return sort(generation, docRoots, docHeadings, docAlternates, docsByChapter);
+    }
+
+    /**
+     * @param docsByChapter the documents of each chapter
+     * @param chapter       the chapter
+     * @param maxDoc        the number of documents
+     * @return the documents of the chapter
+     */
+    private static BitSet getDocs(final Map<String, BitSet> docsByChapter, final String chapter, final int maxDoc) {
+        BitSet docs = docsByChapter.get(chapter);
+        if (docs == null) {
+            docs = new BitSet(maxDoc);
+            docsByChapter.put(chapter, docs);
+        }
+        return docs;
+    }
+
+    /**
+     * Orders the subjects as a subject search does, by root and then heading, the subjects without one first
+     *
+     * @param generation    the generation of the index
+     * @param docRoots      the root of each document
+     * @param docHeadings   the heading of each document
+     * @param docAlternates the subjects to see instead, for each document
+     * @param docsByChapter the documents of each chapter
+     * @return the subjects of every chapter
+     */
+    private static SubjectChapterIndex sort(final int generation, final String[] docRoots,
+                                            final String[] docHeadings, final String[] docAlternates,
+                                            final Map<String, BitSet> docsByChapter) {
+        final Integer[] order = new Integer[docRoots.length];
+        for (int ii = 0; ii < order.length; ii++) {
+            order[ii] = ii;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer o1, final Integer o2) {
+                final int byRoot = compareValues(docRoots[o1], docRoots[o2]);
+                if (byRoot != 0) {
+                    return byRoot;
+                }
+                final int byHeading = compareValues(docHeadings[o1], docHeadings[o2]);
+                return byHeading != 0 ? byHeading : o1.compareTo(o2);
+            }
+        });
+
+        final int[] positions = new int[order.length];
+        final String[] roots = new String[order.length];
+        final String[] headings = new String[order.length];
+        final String[] alternates = new String[order.length];
+        for (int ii = 0; ii < order.length; ii++) {
+            positions[order[ii]] = ii;
+            roots[ii] = docRoots[order[ii]];
+            headings[ii] = docHeadings[order[ii]];
+            alternates[ii] = docAlternates[order[ii]];
+        }
+
+        final Map<String, int[]> subjectsByChapter = new HashMap<String, int[]>(docsByChapter.size() * 2);
+        for (final Map.Entry<String, BitSet> chapter : docsByChapter.entrySet()) {
+            final BitSet docs = chapter.getValue();
+            final int[] subjects = new int[docs.cardinality()];
+            int count = 0;
+            for (int doc = docs.nextSetBit(0); doc >= 0; doc = docs.nextSetBit(doc + 1)) {
+                subjects[count++] = positions[doc];
+            }
+            Arrays.sort(subjects);
+            subjectsByChapter.put(chapter.getKey(), subjects);
+        }
+        return new SubjectChapterIndex(generation, roots, headings, alternates, subjectsByChapter);
+    }
+
+    /**
+     * @param first  the first value, or null
+     * @param second the second value, or null
+     * @return the order of the values, null first
+     */
+    private static int compareValues(final String first, final String second) {
+        if (first == null) {
+            return second == null ? 0 : -1;
+        }
+        return second == null ? 1 : first.compareTo(second);
+    }
+}
@@ -32,18 +32,29 @@
  ******************************************************************************/
 package com.tyndalehouse.step.core.service.impl;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
 
+import com.tyndalehouse.step.core.data.EntityIndexReader;
+import com.tyndalehouse.step.core.data.EntityManager;
 import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.models.ClientSession;
 import com.tyndalehouse.step.core.models.KeyWrapper;
 import com.tyndalehouse.step.core.models.LexiconSuggestion;
+import com.tyndalehouse.step.core.models.stats.Collocation;
+import com.tyndalehouse.step.core.models.stats.CollocationMeasure;
+import com.tyndalehouse.step.core.models.stats.CollocationStats;
 import com.tyndalehouse.step.core.models.stats.ScopeType;
 import com.tyndalehouse.step.core.models.stats.StatType;
 import com.tyndalehouse.step.core.models.search.ExpandableSubjectHeadingEntry;
@@ -57,25 +68,49 @@ import com.tyndalehouse.step.core.service.jsword.JSwordAnalysisService;
 import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
 import com.tyndalehouse.step.core.service.jsword.impl.JSwordAnalysisServiceImpl;
 import com.tyndalehouse.step.core.service.search.SubjectSearchService;
+import com.tyndalehouse.step.core.utils.BoundedCache;
+import com.tyndalehouse.step.core.utils.StringConversionUtils;
 import com.tyndalehouse.step.core.utils.StringUtils;
+import org.crosswire.jsword.book.Books;
+import org.crosswire.jsword.book.BooksEvent;
+import org.crosswire.jsword.book.BooksListener;
 import org.crosswire.jsword.passage.Key;
 import org.crosswire.jsword.passage.Verse;
 
 /**
  * A service able to retrieve various kinds of statistics, delegates to {@link JSwordAnalysisServiceImpl} for
  * some operations.
+ * <p/>
+ * Passage statistics are cached, keyed by the passage they resolve to rather than by the reference as typed, and by
+ * the user's locale, as the names of the books in the statistics are localised. Failures are cached as well as
+ * results, though for a shorter time. The cache is cleared whenever a module is
+ * installed or removed, and whenever the subjects or the lexicon are refreshed.
  *
  * @author chrisburrell
  */
+@Singleton
 public class AnalysisServiceImpl implements AnalysisService {
     public static final String OSIS_CHAPTER_STARTS_WITH = ".* ";
     public static final Pattern CLEAN_UP_DIGITS = Pattern.compile("[0-9]+\\.?\\w?");
+    private static final char KEY_SEPARATOR = '|';
+    private static final BoundedCache.Weigher<CachedStats> STATS_WEIGHER = new BoundedCache.Weigher<CachedStats>() {
+        @Override
+        public long weigh(final CachedStats cached) {
+            return cached.estimateSize();
+        }
+    };
     private final Set<String> stopSubjects;
     private int maxWords;
     private final SubjectSearchService subjects;
     private final LexiconDefinitionService definitions;
     private JSwordPassageService jSwordPassageService;
     private final JSwordAnalysisService jswordAnalysis;
+    private final BoundedCache<String, CachedStats> statsCache;
+    private final long failureTimeToLive;
+    private final EntityIndexReader naves;
+    private final EntityIndexReader definitionIndex;
+    private final AtomicLong entityGenerations = new AtomicLong();
+    private final Provider<ClientSession> clientSessionProvider;
 
     /**
      * Creates a service able to retrieve various stats.
@@ -83,6 +118,12 @@ public class AnalysisServiceImpl implements AnalysisService {
      * @param jswordAnalysis the jsword analysis
      * @param subjects       the subjects
      * @param definitions    the definitions
+     * @param cacheMaxEntries   the maximum number of passage statistics cached, 0 for no limit
+     * @param cacheMaxKilobytes the maximum size of the passage statistics cached, 0 for no limit
+     * @param cacheTimeToLive   the number of seconds passage statistics are cached for, 0 for no limit
+     * @param failureTimeToLive the number of seconds failures are cached for
+     * @param entityManager     the entity manager, giving the subjects and the lexicon the statistics depend on
+     * @param clientSessionProvider the client session, giving the locale of the user
      */
     @Inject
     public AnalysisServiceImpl(final JSwordAnalysisServiceImpl jswordAnalysis,
@@ -90,26 +131,124 @@ public class AnalysisServiceImpl implements AnalysisService {
                                @Named("analysis.stopSubjects") String stopSubjects,
                                final SubjectSearchService subjects,
                                final LexiconDefinitionService definitions,
-                               JSwordPassageService jSwordPassageService) {
+                               JSwordPassageService jSwordPassageService,
+                               @Named("app.cache.analysis.maxEntries") final int cacheMaxEntries,
+                               @Named("app.cache.analysis.maxKilobytes") final int cacheMaxKilobytes,
+                               @Named("app.cache.analysis.ttlSeconds") final int cacheTimeToLive,
+                               @Named("app.cache.analysis.failureTtlSeconds") final int failureTimeToLive,
+                               final EntityManager entityManager,
+                               final Provider<ClientSession> clientSessionProvider) {
         this.jswordAnalysis = jswordAnalysis;
         this.maxWords = maxWords;
         this.subjects = subjects;
         this.definitions = definitions;
         this.jSwordPassageService = jSwordPassageService;
+        this.clientSessionProvider = clientSessionProvider;
         this.stopSubjects = StringUtils.createSet(stopSubjects);
+        this.statsCache = new BoundedCache<String, CachedStats>("analysis", cacheMaxEntries,
+                cacheMaxKilobytes * 1024L, cacheTimeToLive * 1000L, STATS_WEIGHER);
+        this.failureTimeToLive = failureTimeToLive * 1000L;
+        this.naves = entityManager.getReader("nave");
+        this.definitionIndex = entityManager.getReader("definition");
+
+        //statistics depend on the text of the modules, so anything cached is stale once they change
+        Books.installed().addBooksListener(new BooksListener() {
+            @Override
+            public void bookAdded(final BooksEvent ev) {
+                AnalysisServiceImpl.this.statsCache.clear();
+            }
+
+            @Override
+            public void bookRemoved(final BooksEvent ev) {
+                AnalysisServiceImpl.this.statsCache.clear();
+            }
+        });
     }
 
     @Override
     public CombinedPassageStats getStatsForPassage(
             final String version, final String reference,
             final StatType statType, final ScopeType scopeType, boolean nextChapter) {
-        
-        
+        //book names are localised, so the statistics of one locale can't be served to another
+        final String locale = this.clientSessionProvider.get().getLocale().toString();
+
+        //references that can't be resolved are cached as typed, as there is no passage to key them by
+        final String requestKey = new StringBuilder(64).append(locale).append(KEY_SEPARATOR).append(version)
+                .append(KEY_SEPARATOR).append(reference).append(KEY_SEPARATOR).append(statType)
+                .append(KEY_SEPARATOR).append(scopeType).append(KEY_SEPARATOR).append(nextChapter).toString();
+        clearIfEntitiesRefreshed();
+        final CachedStats unresolved = getCached(requestKey);
+        if (unresolved != null) {
+            return unresolved.get();
+        }
+
         final String keyResolutionVersion = statType == StatType.TEXT ? version : JSwordPassageService.REFERENCE_BOOK;
-        final KeyWrapper centralReference = nextChapter ? 
-                jSwordPassageService.getSiblingChapter(reference, keyResolutionVersion , false): 
-                jSwordPassageService.getKeyInfo(reference, keyResolutionVersion, keyResolutionVersion);
-        
+        final KeyWrapper centralReference;
+        try {
+            centralReference = nextChapter ?
+                    jSwordPassageService.getSiblingChapter(reference, keyResolutionVersion , false):
+                    jSwordPassageService.getKeyInfo(reference, keyResolutionVersion, keyResolutionVersion);
+        } catch (final StepInternalException ex) {
+            this.statsCache.put(requestKey, new CachedStats(null, ex));
+            throw ex;
+        }
+
+        //word stats are read from the reference book whatever the version
+        final String statsKey = new StringBuilder(64).append(locale).append(KEY_SEPARATOR).append(statType)
+                .append(KEY_SEPARATOR).append(scopeType).append(KEY_SEPARATOR)
+                .append(statType == StatType.WORD ? "" : version).append(KEY_SEPARATOR)
+                .append(centralReference.getKey().getOsisRef()).toString();
+        final CachedStats cached = getCached(statsKey);
+        if (cached != null) {
+            return cached.get();
+        }
+
+        try {
+            final CombinedPassageStats stats = getStatsForPassage(version, centralReference, statType, scopeType);
+            this.statsCache.put(statsKey, new CachedStats(stats, null));
+            return stats;
+        } catch (final StepInternalException ex) {
+            this.statsCache.put(statsKey, new CachedStats(null, ex));
+            throw ex;
+        }
+    }
+
+    /**
+     * @param key the key
+     * @return the cached stats, or null if there are none, or they are a failure cached for too long
+     */
+    private CachedStats getCached(final String key) {
+        final CachedStats cached = this.statsCache.get(key);
+        if (cached == null || cached.failure == null
+                || System.currentTimeMillis() - cached.cachedAt < this.failureTimeToLive) {
+            return cached;
+        }
+        return null;
+    }
+
+    /**
+     * Clears the cache if the subjects or the lexicon have been refreshed since it was filled, as the statistics
+     * include subjects and definitions
+     */
+    private void clearIfEntitiesRefreshed() {
+        final long generations = ((long) this.naves.getGeneration() << 32)
+                | (this.definitionIndex.getGeneration() & 0xFFFFFFFFL);
+        if (this.entityGenerations.getAndSet(generations) != generations) {
+            this.statsCache.clear();
+        }
+    }
+
+    /**
+     * Works out the stats of a resolved passage
+     *
+     * @param version          the version
+     * @param centralReference the passage
+     * @param statType         the type of analysis
+     * @param scopeType        the scope around the passage
+     * @return the stats
+     */
+    private CombinedPassageStats getStatsForPassage(final String version, final KeyWrapper centralReference,
+                                                    final StatType statType, final ScopeType scopeType) {
         final CombinedPassageStats statsForPassage = new CombinedPassageStats();
         PassageStat stat;
         switch (statType) {
@@ -134,6 +273,32 @@ public class AnalysisServiceImpl implements AnalysisService {
         return statsForPassage;
     }
 
+    @Override
+    public CollocationStats getCollocations(final String version, final String strong, final String reference,
+                                            final ScopeType scopeType, final CollocationMeasure measure,
+                                            final int window) {
+        final CollocationStats stats = new CollocationStats();
+        Key key = null;
+        if (StringUtils.isNotBlank(reference)) {
+            final KeyWrapper wrapper = this.jSwordPassageService.getKeyInfo(reference, version, version);
+            stats.setReference(wrapper);
+            key = wrapper.getKey();
+        }
+
+        final List<Collocation> collocations = this.jswordAnalysis.getCollocations(
+                version, strong, key, scopeType, measure, window);
+        final Set<String> strongNumbers = new HashSet<String>(collocations.size() * 2);
+        for (final Collocation collocation : collocations) {
+            strongNumbers.add(collocation.getStrongNumber());
+        }
+
+        stats.setStrongNumber(StringConversionUtils.getStrongPaddedKey(strong));
+        stats.setMeasure(measure);
+        stats.setCollocations(collocations);
+        stats.setLexiconWords(this.definitions.lookup(strongNumbers));
+        return stats;
+    }
+
     /**
      * Converts the stats from numbers to their equivalent definition
      *
@@ -155,7 +320,7 @@ public class AnalysisServiceImpl implements AnalysisService {
      * @return the passage stat
      */
     private PassageStat getSubjectStats(final String version, final String reference, final ScopeType scopeType) {
-        final SearchResult subjectResults = this.subjects.searchByReference(getReferenceSyntax(reference, version, scopeType));
+        final SearchResult subjectResults = this.subjects.searchByChapters(getChapters(reference, version, scopeType));
         final PassageStat stat = new PassageStat();
         
         //we duplicate the set here because we'd like to keep the casing...
@@ -183,18 +348,18 @@ public class AnalysisServiceImpl implements AnalysisService {
 
 
     /**
-     * Creates a lucene query to allow search for multiple chapters/entire books, without generating
-     * thousands of boolean queries, because we're expanding a book into all its verses!
+     * Lists the chapters, or the book, to search for subjects, without generating thousands of boolean
+     * queries, because we're expanding a book into all its verses!
      *
      * @param version   the version in which look up the key
      * @param scopeType the scope type
+     * @return the chapters, as in Gen.1, or the book, as in Gen
      */
-
-    private String getReferenceSyntax(final String reference, final String version, final ScopeType scopeType) {
+    private List<String> getChapters(final String reference, final String version, final ScopeType scopeType) {
         final KeyWrapper key = this.jSwordPassageService.getKeyInfo(reference, version, version);
         final Key total = key.getKey();
 
-        StringBuilder sb = new StringBuilder(32);
+        final List<String> chapters = new ArrayList<String>(8);
 
 
         switch (scopeType) {
@@ -221,10 +386,7 @@ public class AnalysisServiceImpl implements AnalysisService {
 
                         int currentChapter = v.getChapter();
                         if (currentChapter != maxChapter) {
-                            sb.append(v.getBook().getOSIS());
-                            sb.append('.');
-                            sb.append(v.getChapter());
-                            sb.append(".* ");
+                            chapters.add(v.getBook().getOSIS() + '.' + v.getChapter());
                         }
                         maxChapter = v.getChapter();
                     }
@@ -233,29 +395,84 @@ public class AnalysisServiceImpl implements AnalysisService {
 
                 //need to add +1 and -1
                 if (scopeType == ScopeType.NEAR_BY_CHAPTER) {
-                    sb.append(firstVerse.getBook().getOSIS());
-                    sb.append('.');
-                    sb.append(minChapter - 1);
-                    sb.append(".* ");
-
-                    sb.append(lastVerse.getBook().getOSIS());
-                    sb.append('.');
-                    sb.append(minChapter - 1);
-                    sb.append(".* ");
+                    chapters.add(firstVerse.getBook().getOSIS() + '.' + (minChapter - 1));
+                    chapters.add(lastVerse.getBook().getOSIS() + '.' + (minChapter - 1));
                 }
                 break;
             case BOOK:
                 Key k = key.getKey().get(0);
                 if (k instanceof Verse) {
-                    sb.append(((Verse) k).getBook().getOSIS());
-                    sb.append(OSIS_CHAPTER_STARTS_WITH);
+                    chapters.add(((Verse) k).getBook().getOSIS());
                 }
                 break;
             default:
                 throw new StepInternalException("Unsupported option.");
         }
 
-        return sb.toString();
+        return chapters;
     }
 
+    /**
+     * The stats of a passage, or the reason they couldn't be worked out
+     */
+    private static final class CachedStats {
+        private final CombinedPassageStats stats;
+        private final StepInternalException failure;
+        private final long cachedAt = System.currentTimeMillis();
+
+        /**
+         * @param stats   the stats, or null if they couldn't be worked out
+         * @param failure the reason they couldn't be worked out
+         */
+        private CachedStats(final CombinedPassageStats stats, final StepInternalException failure) {
+            this.stats = stats;
+            this.failure = failure;
+        }
+
+        /**
+         * @return the stats
+         * @throws StepInternalException the failure, if the stats couldn't be worked out
+         */
+        private CombinedPassageStats get() {
+            if (this.failure != null) {
+                throw this.failure;
+            }
+            return this.stats;
+        }
+
+        /**
+         * @return the estimated size of the stats, in bytes
+         */
+        private long estimateSize() {
+            long size = 64;
+            if (this.failure != null) {
+                final String message = this.failure.getMessage();
+                return size + (message == null ? 0 : message.length() * 2L);
+            }
+
+            final PassageStat passageStat = this.stats.getPassageStat();
+            if (passageStat != null) {
+                for (final String word : passageStat.getStats().keySet()) {
+                    size += 64 + word.length() * 2L;
+                }
+            }
+
+            final Map<String, LexiconSuggestion> lexiconWords = this.stats.getLexiconWords();
+            if (lexiconWords != null) {
+                for (final LexiconSuggestion suggestion : lexiconWords.values()) {
+                    size += 96 + 2L * (length(suggestion.getStrongNumber()) + length(suggestion.getGloss())
+                            + length(suggestion.getMatchingForm()) + length(suggestion.getStepTransliteration()));
+                }
+            }
+            return size;
+        }
+
+        /**
+         * @param value the value, possibly null
+         * @return its length
+         */
+        private static int length(final String value) {
+            return value == null ? 0 : value.length();
+        }
+    }
 }
@@ -53,6 +53,7 @@ import com.tyndalehouse.step.core.service.jsword.JSwordMetadataService;
 import com.tyndalehouse.step.core.service.jsword.JSwordModuleService;
 import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
 import com.tyndalehouse.step.core.service.jsword.JSwordSearchService;
+import com.tyndalehouse.step.core.service.jsword.JSwordStrongCountService;
 import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
 import com.tyndalehouse.step.core.service.jsword.helpers.JSwordStrongNumberHelper;
 import com.tyndalehouse.step.core.utils.StringUtils;
@@ -102,6 +103,7 @@ public class BibleInformationServiceImpl implements BibleInformationService {
     private final JSwordVersificationService jswordVersification;
     private final VersionResolver resolver;
     private final StrongAugmentationService strongAugmentationService;
+    private final JSwordStrongCountService strongCountService;
 
     /**
      * The bible information service, retrieving content and meta data.
@@ -115,6 +117,7 @@ public class BibleInformationServiceImpl implements BibleInformationService {
      * @param entityManager             the entity manager
      * @param jswordVersification       the jsword versification
      * @param strongAugmentationService to augment strong numbers
+     * @param strongCountService        to count strong numbers in the tagged versions
      */
     @Inject
     public BibleInformationServiceImpl(@Named("defaultVersions") final List<String> defaultVersions,
@@ -123,6 +126,7 @@ public class BibleInformationServiceImpl implements BibleInformationService {
                                        final JSwordMetadataService jswordMetadata, final JSwordSearchService jswordSearch,
                                        final EntityManager entityManager, final JSwordVersificationService jswordVersification,
                                        final StrongAugmentationService strongAugmentationService,
+                                       final JSwordStrongCountService strongCountService,
                                        final VersionResolver resolver) {
         this.optionsValidationService = optionsValidationService;
         this.jswordPassage = jswordPassage;
@@ -133,6 +137,7 @@ public class BibleInformationServiceImpl implements BibleInformationService {
         this.entityManager = entityManager;
         this.jswordVersification = jswordVersification;
         this.strongAugmentationService = strongAugmentationService;
+        this.strongCountService = strongCountService;
         this.resolver = resolver;
     }
 
@@ -267,7 +272,8 @@ public class BibleInformationServiceImpl implements BibleInformationService {
         }
 
         final StrongCountsAndSubjects verseStrongs = new JSwordStrongNumberHelper(this.entityManager,
-                key, this.jswordVersification, this.jswordSearch, this.strongAugmentationService).getVerseStrongs();
+                key, this.jswordVersification, this.jswordSearch, this.strongCountService,
+                this.strongAugmentationService).getVerseStrongs();
         verseStrongs.setVerse(key.getName());
         verseStrongs.setMultipleVerses(true);
         return verseStrongs;
@@ -6,8 +6,10 @@ import com.tyndalehouse.step.core.service.BibleInformationService;
 import com.tyndalehouse.step.core.service.JSwordRelatedVersesService;
 import com.tyndalehouse.step.core.service.jsword.JSwordMetadataService;
 import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
+import com.tyndalehouse.step.core.service.jsword.JSwordRelatedVerseIndexService;
 import com.tyndalehouse.step.core.service.jsword.JSwordSearchService;
 import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
+import com.tyndalehouse.step.core.service.jsword.helpers.RelatedVerseIndex;
 import com.tyndalehouse.step.core.utils.JSwordUtils;
 import com.tyndalehouse.step.core.utils.StringConversionUtils;
 import com.tyndalehouse.step.core.utils.StringUtils;
@@ -27,33 +29,42 @@ import org.crosswire.jsword.index.lucene.LuceneIndex;
 import org.crosswire.jsword.passage.Key;
 import org.crosswire.jsword.passage.KeyUtil;
 import org.crosswire.jsword.passage.NoSuchKeyException;
+import org.crosswire.jsword.versification.Versification;
 import org.crosswire.jsword.versification.VersificationsMapper;
 import org.jdom2.Element;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import javax.inject.Singleton;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
+ * Finds the verses related to a passage. The related verses of every verse are worked out once from the index of
+ * each strong-tagged version, so that looking them up is only a matter of reading them. Until they are available,
+ * the index is queried instead.
+ *
  * @author chrisburrell
  */
+@Singleton
 public class JSwordRelatedVersesServiceImpl implements JSwordRelatedVersesService {
     private static final Logger LOG = LoggerFactory.getLogger(JSwordRelatedVersesServiceImpl.class);
-    private static final int SIGNIFICANT_CUT_OFF = 200;
     private final JSwordSearchService jSwordSearchService;
     private final JSwordVersificationService jSwordVersificationService;
     private final JSwordMetadataService jSwordMetadataService;
+    private final JSwordRelatedVerseIndexService relatedVerseIndexService;
 
     @Inject
     public JSwordRelatedVersesServiceImpl(final JSwordSearchService jSwordSearchService,
                                           final JSwordVersificationService jSwordVersificationService,
-                                          final JSwordMetadataService jSwordMetadataService) {
+                                          final JSwordMetadataService jSwordMetadataService,
+                                          final JSwordRelatedVerseIndexService relatedVerseIndexService) {
         this.jSwordSearchService = jSwordSearchService;
         this.jSwordVersificationService = jSwordVersificationService;
         this.jSwordMetadataService = jSwordMetadataService;
+        this.relatedVerseIndexService = relatedVerseIndexService;
     }
 
 
@@ -67,7 +78,14 @@ public class JSwordRelatedVersesServiceImpl implements JSwordRelatedVersesServic
 
             //target and strong key
             final Key targetKey = targetBook.getKey(key);
-            final Key strongKey = VersificationsMapper.instance().map(KeyUtil.getPassage(targetKey), jSwordVersificationService.getVersificationForVersion(strongBook));
+            final Versification strongV11n = jSwordVersificationService.getVersificationForVersion(strongBook);
+            final Key strongKey = VersificationsMapper.instance().map(KeyUtil.getPassage(targetKey), strongV11n);
+
+            //look up the related verses worked out for each verse
+            final RelatedVerseIndex index = this.relatedVerseIndexService.getRelatedVerseIndex(strongBook.getInitials());
+            if (index != null) {
+                return targetBook.getKey(getRelatedVerseReference(strongKey, strongV11n, index));
+            }
 
             //get list of strong numbers
             final String[] strongs = this.getStrongsFromKey(new BookData(strongBook, strongKey));
@@ -90,7 +108,7 @@ public class JSwordRelatedVersesServiceImpl implements JSwordRelatedVersesServic
         final List<String> keepList = new ArrayList<String>(strongs.length);
         try {
             for (String s : strongs) {
-                if (is.docFreq(new Term(LuceneIndex.FIELD_STRONG, s)) < SIGNIFICANT_CUT_OFF) {
+                if (is.docFreq(new Term(LuceneIndex.FIELD_STRONG, s)) < RelatedVerseIndex.SIGNIFICANT_CUT_OFF) {
                     keepList.add(StringConversionUtils.getStrongPaddedKey(s));
                 }
             }
@@ -100,6 +118,32 @@ public class JSwordRelatedVersesServiceImpl implements JSwordRelatedVersesServic
         }
     }
 
+    /**
+     * Gets the related verses worked out for each verse of the key, as a string to be passed to JSword
+     *
+     * @param strongKey the key, in the versification of the strong-tagged version
+     * @param v11n      the versification of the strong-tagged version
+     * @param index     the related verses of every verse
+     * @return the related verses
+     */
+    private String getRelatedVerseReference(final Key strongKey, final Versification v11n,
+                                            final RelatedVerseIndex index) {
+        final int[] ordinals = new int[strongKey.getCardinality()];
+        int count = 0;
+        for (final Key verse : strongKey) {
+            ordinals[count++] = KeyUtil.getVerse(verse).getOrdinal();
+        }
+
+        final StringBuilder refs = new StringBuilder(512);
+        for (final int ordinal : index.getRelatedVerses(ordinals, RelatedVerseIndex.MAX_RELATED)) {
+            if (refs.length() > 0) {
+                refs.append(' ');
+            }
+            refs.append(v11n.decodeOrdinal(ordinal).getOsisID());
+        }
+        return refs.toString();
+    }
+
     /**
      * Gets the list of all references as a string to be passed to JSword
      *
@@ -110,7 +154,7 @@ public class JSwordRelatedVersesServiceImpl implements JSwordRelatedVersesServic
     private String getRelatedVerseReference(final List<String> strongs, final IndexSearcher is) {
         try {
             final BooleanQuery bq = getRelatedLuceneQuery(strongs);
-            final TopScoreDocCollector collector = TopScoreDocCollector.create(50, true);
+            final TopScoreDocCollector collector = TopScoreDocCollector.create(RelatedVerseIndex.MAX_RELATED, true);
             is.search(bq, collector);
             final TopDocs topDocs = collector.topDocs();
             final ScoreDoc[] scoreDocs = topDocs.scoreDocs;
@@ -32,14 +32,19 @@
  ******************************************************************************/
 package com.tyndalehouse.step.core.service.impl;
 
+import static com.tyndalehouse.step.core.utils.StringUtils.isBlank;
 import static com.tyndalehouse.step.core.utils.StringUtils.split;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import org.apache.lucene.search.MatchAllDocsQuery;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,7 +54,8 @@ import com.tyndalehouse.step.core.data.EntityManager;
 import com.tyndalehouse.step.core.service.MorphologyService;
 
 /**
- * Provides quick access to the morphology from a code found in the xsl transformation
+ * Provides quick access to the morphology from a code found in the xsl transformation. The morphology codes are few
+ * and never change, so the whole table is read into memory, and read again whenever the index is refreshed.
  * 
  * @author chrisburrell
  * 
@@ -61,7 +67,10 @@ public class MorphologyServiceImpl implements MorphologyService {
     private static final String ROBINSON_PREFIX = "robinson:";
     private static final int ROBINSON_PREFIX_LENGTH = ROBINSON_PREFIX.length();
     private static final String NON_BREAKING_SPACE = "&nbsp;";
+    private static final MorphologyTable EMPTY_TABLE = new MorphologyTable(0,
+            Collections.<String, EntityDoc> emptyMap(), Collections.<String, String> emptyMap());
     private final EntityIndexReader morphology;
+    private volatile MorphologyTable table = EMPTY_TABLE;
 
     /**
      * @param manager the entity manager
@@ -69,17 +78,18 @@ public class MorphologyServiceImpl implements MorphologyService {
     @Inject
     public MorphologyServiceImpl(final EntityManager manager) {
         this.morphology = manager.getReader("morphology");
+        getTable();
     }
 
     @Override
     public List<EntityDoc> getMorphology(final String code) {
+        final MorphologyTable currentTable = getTable();
+
         // split code into keys
         final String[] codes = split(code, SPACE_SEPARATOR);
         final List<EntityDoc> morphs = new ArrayList<EntityDoc>(codes.length);
         for (final String c : codes) {
-            // check cache for key, otherwise obtain from database
-            final EntityDoc item = retrieveMorphologyByLongName(c);
-
+            final EntityDoc item = currentTable.morphologies.get(getKey(c));
             if (item != null) {
                 morphs.add(item);
             }
@@ -93,33 +103,108 @@ public class MorphologyServiceImpl implements MorphologyService {
         return getMorphology(code);
     }
 
-    /**
-     * Cache-based method, retrieves morphology information
-     * 
-     * @param code long code including scheme (e.g. robinson:) to the morphology item
-     * @return the morphology of interest
-     */
-    @SuppressWarnings("PMD")
-    private EntityDoc retrieveMorphologyByLongName(final String code) {
-        final String key = code.startsWith(ROBINSON_PREFIX) ? code.substring(ROBINSON_PREFIX_LENGTH) : code;
-
-        final long currentTimeNanos = System.nanoTime();
-        final EntityDoc[] entry = this.morphology.searchExactTermBySingleField("code", 1, key);
-        LOGGER.debug("Took [{}] nano-seconds", System.nanoTime() - currentTimeNanos);
-        return entry.length > 0 ? entry[0] : null;
-    }
-
     /**
      * @param code the code encountered during the xsl transformation
      * @return the string to be displayed to the user
      */
     public String getDisplayMorphology(final String code) {
-        final List<EntityDoc> morphologies = getMorphology(code);
+        if (isBlank(code)) {
+            return "";
+        }
+
+        final MorphologyTable currentTable = getTable();
+
+        // most words have a single code, whose display is ready to go
+        if (code.indexOf(' ') == -1) {
+            final String display = currentTable.displays.get(getKey(code));
+            return display != null ? display : "";
+        }
+
+        final String[] codes = split(code, SPACE_SEPARATOR);
         final StringBuilder sb = new StringBuilder(128);
-        for (final EntityDoc m : morphologies) {
-            sb.append(m.get("inlineHtml"));
-            sb.append(NON_BREAKING_SPACE);
+        for (final String c : codes) {
+            final String display = currentTable.displays.get(getKey(c));
+            if (display != null) {
+                sb.append(display);
+            }
         }
         return sb.toString();
     }
+
+    /**
+     * @param code long code including scheme (e.g. robinson:) to the morphology item
+     * @return the code as held in the index
+     */
+    private String getKey(final String code) {
+        return code.startsWith(ROBINSON_PREFIX) ? code.substring(ROBINSON_PREFIX_LENGTH) : code;
+    }
+
+    /**
+     * @return the morphology table, read again from the index if the index has been refreshed since
+     */
+    private MorphologyTable getTable() {
+        final MorphologyTable currentTable = this.table;
+        final int generation = this.morphology.getGeneration();
+        if (currentTable.generation == generation || generation == 0) {
+            return currentTable;
+        }
+
+        synchronized (this) {
+            if (this.table.generation != this.morphology.getGeneration()) {
+                this.table = readTable();
+            }
+            return this.table;
+        }
+    }
+
+    /**
+     * Reads all morphology codes from the index, rendering what is displayed for each one
+     * 
+     * @return the morphology table
+     */
+    private MorphologyTable readTable() {
+        final long start = System.currentTimeMillis();
+
+        // read the generation first, so that a refresh while reading causes another read
+        final int generation = this.morphology.getGeneration();
+        final EntityDoc[] docs = this.morphology.search(new MatchAllDocsQuery());
+        final Map<String, EntityDoc> morphologies = new HashMap<String, EntityDoc>(docs.length * 2);
+        final Map<String, String> displays = new HashMap<String, String>(docs.length * 2);
+        for (final EntityDoc doc : docs) {
+            final String code = doc.get("code");
+            if (code == null) {
+                continue;
+            }
+
+            final String key = code.intern();
+            morphologies.put(key, doc);
+            final String inlineHtml = doc.get("inlineHtml");
+            displays.put(key, (inlineHtml != null ? inlineHtml : "") + NON_BREAKING_SPACE);
+        }
+
+        LOGGER.info("Read [{}] morphology codes in [{}] ms", morphologies.size(), System.currentTimeMillis() - start);
+        return new MorphologyTable(generation, Collections.unmodifiableMap(morphologies),
+                Collections.unmodifiableMap(displays));
+    }
+
+    /**
+     * An immutable copy of the morphology index, keyed by code
+     */
+    private static final class MorphologyTable {
+        private final int generation;
+        private final Map<String, EntityDoc> morphologies;
+        private final Map<String, String> displays;
+
+        /**
+         * @param generation    the generation of the index the table was read from
+         * @param morphologies  the morphology entities, by code
+         * @param displays      the html displayed for each code
+         */
+        private MorphologyTable(final int generation, final Map<String, EntityDoc> morphologies,
+                                final Map<String, String> displays) {
+            this.generation = generation;
+            this.morphologies = morphologies;
+            this.displays = displays;
+        }
+    }
 }
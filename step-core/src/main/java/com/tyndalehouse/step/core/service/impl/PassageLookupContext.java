@@ -0,0 +1,267 @@
+package com.tyndalehouse.step.core.service.impl;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.crosswire.jsword.book.OSISUtil;
+import org.jdom2.Content;
+import org.jdom2.Element;
+
+import com.tyndalehouse.step.core.data.EntityDoc;
+import com.tyndalehouse.step.core.models.LookupOption;
+import com.tyndalehouse.step.core.service.VocabularyService;
+import com.tyndalehouse.step.core.utils.StringUtils;
+import com.tyndalehouse.step.core.xsl.impl.ColorCoderProviderImpl;
+
+/**
+ * The vocabulary, morphology and colour coding of the words of a single passage, for use by the stylesheets. Rather
+ * than looking up each word as it is rendered, the passage is scanned first, and all its distinct strong numbers and
+ * morphology codes are looked up together. Words that weren't found by the scan are looked up as they are asked for,
+ * and then kept for the rest of the passage.
+ * <p/>
+ * A context lives for a single transformation, and is not thread-safe.
+ *
+ * @author chrisburrell
+ */
+public class PassageLookupContext {
+    private static final char KEY_SEPARATOR = '|';
+
+    private final VocabularyService vocabulary;
+    private final MorphologyServiceImpl morphology;
+    private final ColorCoderProviderImpl colorCoder;
+    private final String version;
+    private final Map<String, EntityDoc[]> definitions = new HashMap<String, EntityDoc[]>(256);
+    private final Map<String, String> morphologies = new HashMap<String, String>(128);
+    private final Map<String, String> colorClasses = new HashMap<String, String>(128);
+    private final Map<String, String> transliterations = new HashMap<String, String>(256);
+
+    /**
+     * @param vocabulary the vocabulary service
+     * @param morphology the morphology service
+     * @param colorCoder the colour coder
+     * @param version    the version of the passage, as passed to the stylesheet
+     */
+    public PassageLookupContext(final VocabularyService vocabulary, final MorphologyServiceImpl morphology,
+                                final ColorCoderProviderImpl colorCoder, final String version) {
+        this.vocabulary = vocabulary;
+        this.morphology = morphology;
+        this.colorCoder = colorCoder;
+        this.version = version;
+    }
+
+    /**
+     * @param options the options of the passage
+     * @return true if any of the options require words to be looked up while rendering
+     */
+    public static boolean isRequired(final List<LookupOption> options) {
+        for (final LookupOption option : options) {
+            switch (option) {
+                case ENGLISH_VOCAB:
+                case GREEK_VOCAB:
+                case TRANSLITERATION:
+                case TRANSLITERATE_ORIGINAL:
+                case MORPHOLOGY:
+                case COLOUR_CODE:
+                    return true;
+                default:
+                    break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Scans the passage, looking up the definitions, morphology and colour coding of all its words, as required by
+     * the options
+     *
+     * @param osis    the OSIS of the passage
+     * @param options the options of the passage
+     */
+    public void prefetch(final Element osis, final List<LookupOption> options) {
+        final boolean withDefinitions = options.contains(LookupOption.ENGLISH_VOCAB)
+                || options.contains(LookupOption.GREEK_VOCAB) || options.contains(LookupOption.TRANSLITERATION);
+        final boolean withMorphology = options.contains(LookupOption.MORPHOLOGY);
+        final boolean withColours = options.contains(LookupOption.COLOUR_CODE);
+        if (!withDefinitions && !withMorphology && !withColours) {
+            return;
+        }
+
+        final Map<String, String[]> words = new LinkedHashMap<String, String[]>(256);
+        final Set<String> morphs = new LinkedHashSet<String>(128);
+        scan(osis, "", words, morphs);
+
+        if (withDefinitions && !words.isEmpty()) {
+            final String[] references = new String[words.size()];
+            final String[] lemmas = new String[words.size()];
+            int ii = 0;
+            for (final String[] word : words.values()) {
+                references[ii] = word[0];
+                lemmas[ii] = word[1];
+                ii++;
+            }
+
+            final EntityDoc[][] docs = this.vocabulary.getLexiconDefinitions(this.version, references, lemmas);
+            ii = 0;
+            for (final String key : words.keySet()) {
+                this.definitions.put(key, docs[ii++]);
+            }
+        }
+
+        for (final String morph : morphs) {
+            if (withMorphology) {
+                this.morphologies.put(morph, this.morphology.getDisplayMorphology(morph));
+            }
+            if (withColours) {
+                this.colorClasses.put(morph, this.colorCoder.getColorClass(morph));
+            }
+        }
+    }
+
+    /**
+     * Collects the strong numbers and morphology codes of all the words in an element. The reference of a word is
+     * that of its outermost ancestor with an osisID, which is what the stylesheet passes in.
+     *
+     * @param element   the element
+     * @param reference the reference of the element's ancestors, the empty string if there is none
+     * @param words     the reference and strong numbers of each word, keyed as they will be looked up
+     * @param morphs    the morphology codes
+     */
+    private void scan(final Element element, final String reference, final Map<String, String[]> words,
+                      final Set<String> morphs) {
+        if (OSISUtil.OSIS_ELEMENT_W.equals(element.getName())) {
+            final String lemma = element.getAttributeValue(OSISUtil.ATTRIBUTE_W_LEMMA);
+            if (StringUtils.isNotBlank(lemma)) {
+                words.put(getKey(reference, lemma), new String[]{reference, lemma});
+            }
+
+            final String morph = element.getAttributeValue(OSISUtil.ATTRIBUTE_W_MORPH);
+            if (StringUtils.isNotBlank(morph)) {
+                morphs.add(morph);
+            }
+            return;
+        }
+
+        String childReference = reference;
+        if (reference.length() == 0) {
+            final String osisID = element.getAttributeValue(OSISUtil.OSIS_ATTR_OSISID);
+            if (osisID != null) {
+                childReference = osisID;
+            }
+        }
+
+        for (final Content content : element.getContent()) {
+            if (content instanceof Element) {
+                scan((Element) content, childReference, words, morphs);
+            }
+        }
+    }
+
+    /**
+     * @param version          the version that ancors the reference
+     * @param reference        the reference in which the strongs can be found
+     * @param vocabIdentifiers the vocab identifiers
+     * @return the English vocab of the word
+     */
+    public String getEnglishVocab(final String version, final String reference, final String vocabIdentifiers) {
+        return VocabularyServiceImpl.getDataFromLexiconDefinition(
+                getDefinitions(version, reference, vocabIdentifiers), vocabIdentifiers,
+                VocabularyServiceImpl.ENGLISH_VOCAB_PROVIDER);
+    }
+
+    /**
+     * @param version          the version that ancors the reference
+     * @param reference        the reference in which the strongs can be found
+     * @param vocabIdentifiers the vocab identifiers
+     * @return the Greek or Hebrew vocab of the word
+     */
+    public String getGreekVocab(final String version, final String reference, final String vocabIdentifiers) {
+        return VocabularyServiceImpl.getDataFromLexiconDefinition(
+                getDefinitions(version, reference, vocabIdentifiers), vocabIdentifiers,
+                VocabularyServiceImpl.GREEK_VOCAB_PROVIDER);
+    }
+
+    /**
+     * @param version          the version that ancors the reference
+     * @param reference        the reference in which the strongs can be found
+     * @param vocabIdentifiers the vocab identifiers
+     * @return the transliteration of the word
+     */
+    public String getDefaultTransliteration(final String version, final String reference,
+                                            final String vocabIdentifiers) {
+        return VocabularyServiceImpl.getDataFromLexiconDefinition(
+                getDefinitions(version, reference, vocabIdentifiers), vocabIdentifiers,
+                VocabularyServiceImpl.TRANSLITERATION_PROVIDER);
+    }
+
+    /**
+     * @param originalText the original text
+     * @return the transliterated text
+     */
+    public String getTransliteration(final String originalText) {
+        String transliteration = this.transliterations.get(originalText);
+        if (transliteration == null) {
+            transliteration = this.vocabulary.getTransliteration(originalText);
+            this.transliterations.put(originalText, transliteration);
+        }
+        return transliteration;
+    }
+
+    /**
+     * @param code the morphology code of the word
+     * @return the morphology to be displayed
+     */
+    public String getDisplayMorphology(final String code) {
+        String display = this.morphologies.get(code);
+        if (display == null) {
+            display = this.morphology.getDisplayMorphology(code);
+            this.morphologies.put(code, display);
+        }
+        return display;
+    }
+
+    /**
+     * @param morph the morphology code of the word
+     * @return the colour class of the word
+     */
+    public String getColorClass(final String morph) {
+        String colorClass = this.colorClasses.get(morph);
+        if (colorClass == null) {
+            colorClass = this.colorCoder.getColorClass(morph);
+            this.colorClasses.put(morph, colorClass);
+        }
+        return colorClass;
+    }
+
+    /**
+     * @param version          the version that ancors the reference
+     * @param reference        the reference in which the strongs can be found
+     * @param vocabIdentifiers the vocab identifiers
+     * @return the definitions of the word, looked up now if the scan didn't find it
+     */
+    private EntityDoc[] getDefinitions(final String version, final String reference, final String vocabIdentifiers) {
+        if (!this.version.equals(version)) {
+            return this.vocabulary.getLexiconDefinitions(vocabIdentifiers, version, reference);
+        }
+
+        final String key = getKey(reference, vocabIdentifiers);
+        EntityDoc[] docs = this.definitions.get(key);
+        if (docs == null) {
+            docs = this.vocabulary.getLexiconDefinitions(vocabIdentifiers, version, reference);
+            this.definitions.put(key, docs);
+        }
+        return docs;
+    }
+
+    /**
+     * @param reference        the reference
+     * @param vocabIdentifiers the vocab identifiers
+     * @return the key of the word's definitions
+     */
+    private static String getKey(final String reference, final String vocabIdentifiers) {
+        return reference + KEY_SEPARATOR + vocabIdentifiers;
+    }
+}
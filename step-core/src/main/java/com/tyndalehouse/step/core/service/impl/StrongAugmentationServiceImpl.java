@@ -10,6 +10,7 @@ import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
 import com.tyndalehouse.step.core.service.jsword.impl.JSwordPassageServiceImpl;
 import com.tyndalehouse.step.core.utils.StringConversionUtils;
 import com.tyndalehouse.step.core.utils.StringUtils;
+import org.apache.lucene.search.MatchAllDocsQuery;
 import org.crosswire.jsword.passage.Key;
 import org.crosswire.jsword.passage.NoSuchKeyException;
 import org.crosswire.jsword.passage.PassageKeyFactory;
@@ -18,17 +19,26 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Strong augmentation service to provide better context/definitions to the end user.
  */
+@Singleton
 public class StrongAugmentationServiceImpl implements StrongAugmentationService {
     public static final String AS_REFERENCES = "references";
     private static final Logger LOGGER = LoggerFactory.getLogger(StrongAugmentationServiceImpl.class);
     private final EntityIndexReader augmentedStrongs;
     private final JSwordVersificationService versificationService;
+    private volatile AugmentationIndex index = new AugmentationIndex(0, new HashMap<String, AugmentedStrong[]>());
 
     @Inject
     public StrongAugmentationServiceImpl(final EntityManager manager, final JSwordVersificationService versificationService) {
@@ -43,88 +53,176 @@ public class StrongAugmentationServiceImpl implements StrongAugmentationService
 
     @Override
     public AugmentedStrongs augment(final String version, final String reference, final String[] keys) {
-        final Map<String, String> augmentedStrongs = new HashMap<>((keys.length + 4) * 2);
         if(StringUtils.isBlank(version) || StringUtils.isBlank(reference)) {
             //won't be able to resolve so just return the keys as is
-            for(String k : keys) {
-                augmentedStrongs.put(k, k);
-            }
             return new AugmentedStrongs(keys, new EntityDoc[0]);
         }
 
-        //for each key, we see if there is an augment strong number
-        final StringBuilder query = new StringBuilder(keys.length * 10 + 16);
-        query.append("(");
-        for (int i = 0; i < keys.length; i++) {
-            //if Hebrew and not augmented
-            if (isNonAugmentedHebrew(keys[i])) {
-                //then we're looking at Hebrew, so look up the augmentedStrongs data
-                //and we're looking for the first of any strong number
-                //build the lucene query...
-                query.append(StringConversionUtils.getStrongPaddedKey(keys[i]));
-                query.append("? ");
+        //each key is augmented once, keeping the order in which they were given
+        final Map<String, String> augmentedStrongs = new LinkedHashMap<>((keys.length + 4) * 2);
+        final Set<EntityDoc> docs = new LinkedHashSet<>(8);
+        VerseMatcher verses = null;
+        for (final String key : keys) {
+            if (augmentedStrongs.containsKey(key)) {
+                continue;
+            }
+
+            AugmentedStrong augmented = null;
+            if (isAugmentable(key)) {
+                //we only work out the verses if there is at least one Hebrew word that may be augmented
+                if (verses == null) {
+                    verses = getVerses(version, reference);
+                }
+                augmented = findAugmentedStrong(key, verses);
+            }
+
+            if (augmented != null) {
+                augmentedStrongs.put(key, augmented.augmentedStrong);
+                docs.add(augmented.doc);
             } else {
-                //add directly to the augmented list
-                augmentedStrongs.put(keys[i], keys[i]);
+                augmentedStrongs.put(key, key);
             }
         }
 
-        final EntityDoc[] docs;
-        if (query.length() > 1) {
+        final Set<String> strongList = new LinkedHashSet<>(augmentedStrongs.values());
+        return new AugmentedStrongs(strongList.toArray(new String[strongList.size()]), docs.toArray(new EntityDoc[docs.size()]));
+    }
 
-            //add the reference in the query. We may have several due to versifications mapping, so we're going to look for documents where at least 1 of the verses is in the doc
-            query.append(") AND (");
-            String[] individualVerses = StringUtils.split(this.versificationService.convertReference(reference, version, JSwordPassageService.OT_BOOK).getKey().getOsisID());
-            //a single chapter can be optimized, also JSword returns the key as Gen.1 rather than expanded
-            boolean queryAppended = false;
-            if(individualVerses.length == 1) {
-                int countSeparators = 0;
-                for(int ii = 0; ii < individualVerses[0].length() && countSeparators < 2; ii++) {
-                    if(individualVerses[0].charAt(ii) == '.') {
-                        countSeparators++;
-                    }
-                }
-                if(countSeparators < 2) {
-                    query.append("references:");
-                    query.append(individualVerses[0]);
-                    query.append(".*");
-                    query.append(' ');
-                    queryAppended = true;
+    @Override
+    public String[] augmentPassage(final String version, final String reference, final String[] keys) {
+        final String[] augmented = new String[keys.length];
+        final boolean canResolve = !StringUtils.isBlank(version) && !StringUtils.isBlank(reference);
+        VerseMatcher verses = null;
+        for (int ii = 0; ii < keys.length; ii++) {
+            AugmentedStrong augmentedStrong = null;
+            if (canResolve && isAugmentable(keys[ii])) {
+                if (verses == null) {
+                    verses = getVerses(version, reference);
                 }
+                augmentedStrong = findAugmentedStrong(keys[ii], verses);
             }
+            augmented[ii] = augmentedStrong != null ? augmentedStrong.augmentedStrong : keys[ii];
+        }
+        return augmented;
+    }
 
-            if(!queryAppended) {
-                for (String v : individualVerses) {
-                    query.append("references:");
-                    query.append(v);
-                    query.append(' ');
-                }
+    /**
+     * @param key    the Hebrew strong number
+     * @param verses the verses the strong number is found in
+     * @return the first augmented form of the strong number that applies to one of the verses, or null if none
+     */
+    private AugmentedStrong findAugmentedStrong(final String key, final VerseMatcher verses) {
+        final AugmentedStrong[] variants = getIndex().variantsByStrong.get(StringConversionUtils.getStrongPaddedKey(key));
+        if (variants == null) {
+            return null;
+        }
+
+        for (final AugmentedStrong variant : variants) {
+            if (verses.matches(variant)) {
+                return variant;
             }
-            query.append(")");
+        }
+        return null;
+    }
 
-            //run the query for the hebrew words and add them to the list
-            docs = this.augmentedStrongs.search("augmentedStrong", query.toString());
-            for (EntityDoc d : docs) {
-                final String augmentedStrong = d.get("augmentedStrong");
-                augmentedStrongs.put(augmentedStrong.substring(0, augmentedStrong.length() - 1).toLowerCase(), augmentedStrong);
+    /**
+     * Converts the reference to the versification of the augmented strong data. We may have several verses due to
+     * versification mapping, and JSword returns a whole chapter or book as Gen.1 or Gen rather than expanding it.
+     *
+     * @param version   the version that anchors the reference
+     * @param reference the reference
+     * @return the verses, chapters and books of the reference
+     */
+    private VerseMatcher getVerses(final String version, final String reference) {
+        return new VerseMatcher(StringUtils.split(this.versificationService.convertReference(
+                reference, version, JSwordPassageService.OT_BOOK).getKey().getOsisID()));
+    }
+
+    /**
+     * @return the augmented strongs, read again from the index if it has been refreshed since
+     */
+    private AugmentationIndex getIndex() {
+        final AugmentationIndex currentIndex = this.index;
+        final int generation = this.augmentedStrongs.getGeneration();
+        if (currentIndex.generation == generation || generation == 0) {
+            return currentIndex;
+        }
+
+        synchronized (this) {
+            final int latestGeneration = this.augmentedStrongs.getGeneration();
+            if (this.index.generation != latestGeneration) {
+                this.index = readIndex(latestGeneration);
+            }
+            return this.index;
+        }
+    }
+
+    /**
+     * Reads all augmented strongs, keyed by the strong number they augment, along with the verses they apply to.
+     * References are shared between augmented strongs so that each verse is only held once.
+     *
+     * @param generation the generation of the index being read
+     * @return the index
+     */
+    private AugmentationIndex readIndex(final int generation) {
+        final long start = System.currentTimeMillis();
+        final EntityDoc[] docs = this.augmentedStrongs.search(new MatchAllDocsQuery());
+        final Map<String, List<AugmentedStrong>> variants = new HashMap<>(docs.length * 2);
+        final Map<String, String> sharedReferences = new HashMap<>(65536);
+        for (final EntityDoc doc : docs) {
+            final String augmentedStrong = doc.get("augmentedStrong");
+            if (StringUtils.isBlank(augmentedStrong) || getAugmentedStrongSuffix(augmentedStrong) == null) {
+                continue;
             }
 
-            //now we need to work out which strongs were not augmented and add them to the list
-            //check which strongs didn't make it
-            for (String k : keys) {
-                final String keyingStrong = StringConversionUtils.getStrongPaddedKey(k).toLowerCase();
-                if (!augmentedStrongs.containsKey(keyingStrong)) {
-                    augmentedStrongs.put(keyingStrong, k);
+            final Set<String> verses = new HashSet<>();
+            final Set<String> chapters = new HashSet<>();
+            final Set<String> books = new HashSet<>();
+            for (final String verse : StringUtils.split(doc.get(AS_REFERENCES))) {
+                verses.add(share(sharedReferences, verse));
+                final int lastDot = verse.lastIndexOf('.');
+                final int firstDot = verse.indexOf('.');
+                if (firstDot != -1) {
+                    books.add(share(sharedReferences, verse.substring(0, firstDot)));
+                    if (lastDot != firstDot) {
+                        chapters.add(share(sharedReferences, verse.substring(0, lastDot)));
+                    }
                 }
             }
-        } else {
-            docs = new EntityDoc[0];
+
+            final String base = reduce(augmentedStrong).toUpperCase();
+            List<AugmentedStrong> baseVariants = variants.get(base);
+            if (baseVariants == null) {
+                baseVariants = new ArrayList<>(2);
+                variants.put(base, baseVariants);
+            }
+            baseVariants.add(new AugmentedStrong(augmentedStrong, doc, verses, chapters, books));
         }
-        final String[] augmented = new String[augmentedStrongs.size()];
-        return new AugmentedStrongs(augmentedStrongs.values().toArray(augmented), docs);
+
+        final Map<String, AugmentedStrong[]> variantsByStrong = new HashMap<>(variants.size() * 2);
+        for (final Map.Entry<String, List<AugmentedStrong>> entry : variants.entrySet()) {
+            variantsByStrong.put(entry.getKey(), entry.getValue().toArray(new AugmentedStrong[entry.getValue().size()]));
+        }
+        LOGGER.info("Read [{}] augmented strongs in [{}] ms", docs.length, System.currentTimeMillis() - start);
+        return new AugmentationIndex(generation, variantsByStrong);
     }
 
-    private boolean isNonAugmentedHebrew(final String key) {
+    /**
+     * @param shared the values seen so far
+     * @param value  the value
+     * @return the same instance as any equal value seen before
+     */
+    private static String share(final Map<String, String> shared, final String value) {
+        final String existing = shared.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        shared.put(value, value);
+        return value;
+    }
+
+    @Override
+    public boolean isAugmentable(final String key) {
         return key.charAt(0) == 'H' && Character.isDigit(key.charAt(key.length() - 1));
     }
 
@@ -168,4 +266,103 @@ public class StrongAugmentationServiceImpl implements StrongAugmentationService
     private Versification getOTBookVersification() {
         return this.versificationService.getVersificationForVersion(JSwordPassageServiceImpl.OT_BOOK);
     }
+
+    /**
+     * The augmented strongs, keyed by the strong number they augment
+     */
+    private static final class AugmentationIndex {
+        private final int generation;
+        private final Map<String, AugmentedStrong[]> variantsByStrong;
+
+        /**
+         * @param generation       the generation of the index the augmented strongs were read from
+         * @param variantsByStrong the augmented strongs, keyed by the padded strong number
+         */
+        private AugmentationIndex(final int generation, final Map<String, AugmentedStrong[]> variantsByStrong) {
+            this.generation = generation;
+            this.variantsByStrong = variantsByStrong;
+        }
+    }
+
+    /**
+     * An augmented strong, with the verses, chapters and books it applies to
+     */
+    private static final class AugmentedStrong {
+        private final String augmentedStrong;
+        private final EntityDoc doc;
+        private final Set<String> verses;
+        private final Set<String> chapters;
+        private final Set<String> books;
+
+        /**
+         * @param augmentedStrong the augmented strong number
+         * @param doc             the entity it was read from
+         * @param verses          the verses it applies to
+         * @param chapters        the chapters of those verses
+         * @param books           the books of those verses
+         */
+        private AugmentedStrong(final String augmentedStrong, final EntityDoc doc, final Set<String> verses,
+                                final Set<String> chapters, final Set<String> books) {
+            this.augmentedStrong = augmentedStrong;
+            this.doc = doc;
+            this.verses = verses;
+            this.chapters = chapters;
+            this.books = books;
+        }
+    }
+
+    /**
+     * Matches augmented strongs against the verses, whole chapters and whole books of a reference
+     */
+    private static final class VerseMatcher {
+        private final List<String> verses = new ArrayList<>();
+        private final List<String> chapters = new ArrayList<>();
+        private final List<String> books = new ArrayList<>();
+
+        /**
+         * @param osisIds the OSIS IDs of the reference
+         */
+        private VerseMatcher(final String[] osisIds) {
+            for (final String osisId : osisIds) {
+                int separators = 0;
+                for (int ii = 0; ii < osisId.length(); ii++) {
+                    if (osisId.charAt(ii) == '.') {
+                        separators++;
+                    }
+                }
+
+                if (separators == 0) {
+                    this.books.add(osisId);
+                } else if (separators == 1) {
+                    this.chapters.add(osisId);
+                } else {
+                    this.verses.add(osisId);
+                }
+            }
+        }
+
+        /**
+         * @param augmentedStrong the augmented strong
+         * @return true if the augmented strong applies to at least one of the verses
+         */
+        private boolean matches(final AugmentedStrong augmentedStrong) {
+            return containsAny(augmentedStrong.verses, this.verses)
+                    || containsAny(augmentedStrong.chapters, this.chapters)
+                    || containsAny(augmentedStrong.books, this.books);
+        }
+
+        /**
+         * @param set    the set
+         * @param values the values
+         * @return true if the set contains at least one of the values
+         */
+        private static boolean containsAny(final Set<String> set, final List<String> values) {
+            for (final String value : values) {
+                if (set.contains(value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
 }
@@ -41,20 +41,25 @@ import com.tyndalehouse.step.core.models.VocabResponse;
 import com.tyndalehouse.step.core.service.StrongAugmentationService;
 import com.tyndalehouse.step.core.service.VocabularyService;
 import com.tyndalehouse.step.core.service.helpers.OriginalWordUtils;
+import com.tyndalehouse.step.core.utils.BoundedCache;
 import com.tyndalehouse.step.core.utils.SortingUtils;
 import com.tyndalehouse.step.core.utils.StringConversionUtils;
 import com.tyndalehouse.step.core.utils.StringUtils;
-import org.codehaus.jackson.map.util.LRUMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
@@ -75,23 +80,36 @@ public class VocabularyServiceImpl implements VocabularyService {
     private static final String HIGHER_STRONG = "STRONG:";
     private static final String LOWER_STRONG = "strong:";
     private static final int START_STRONG_KEY = HIGHER_STRONG.length();
-    private static final LRUMap<String, EntityDoc[]> DEFINITIION_CACHE = new LRUMap<>(128, 256);
+    private static final EntityDoc[] NO_DEFINITIONS = new EntityDoc[0];
+    private static final BoundedCache.Weigher<EntityDoc[]> DEFINITIONS_WEIGHER = new BoundedCache.Weigher<EntityDoc[]>() {
+        @Override
+        public long weigh(final EntityDoc[] docs) {
+            long size = 16;
+            for (final EntityDoc doc : docs) {
+                size += doc.estimateSize();
+            }
+            return size;
+        }
+    };
     private final EntityIndexReader definitions;
+    private final EntityIndexReader specificForms;
+    private final BoundedCache<String, EntityDoc[]> definitionCache;
+    private volatile int cacheGeneration;
 
     // define a few extraction methods
-    private final LexiconDataProvider transliterationProvider = new LexiconDataProvider() {
+    static final LexiconDataProvider TRANSLITERATION_PROVIDER = new LexiconDataProvider() {
         @Override
         public String getData(final EntityDoc l) {
             return l.get("stepTransliteration");
         }
     };
-    private final LexiconDataProvider englishVocabProvider = new LexiconDataProvider() {
+    static final LexiconDataProvider ENGLISH_VOCAB_PROVIDER = new LexiconDataProvider() {
         @Override
         public String getData(final EntityDoc l) {
             return l.get("stepGloss");
         }
     };
-    private final LexiconDataProvider greekVocabProvider = new LexiconDataProvider() {
+    static final LexiconDataProvider GREEK_VOCAB_PROVIDER = new LexiconDataProvider() {
         @Override
         public String getData(final EntityDoc l) {
             return l.get("accentedUnicode");
@@ -100,13 +118,23 @@ public class VocabularyServiceImpl implements VocabularyService {
     private final StrongAugmentationService strongAugmentationService;
 
     /**
-     * @param manager the entity manager
+     * @param manager                   the entity manager
+     * @param strongAugmentationService the service augmenting strong numbers with their homonym suffixes
+     * @param cacheMaxEntries           the maximum number of lookups held in the definition cache, 0 for no limit
+     * @param cacheMaxKilobytes         the maximum size of the definition cache, 0 for no limit
+     * @param cacheTimeToLive           the number of seconds definitions are cached for, 0 for no limit
      */
     @Inject
     public VocabularyServiceImpl(final EntityManager manager,
-                                 final StrongAugmentationService strongAugmentationService) {
+                                 final StrongAugmentationService strongAugmentationService,
+                                 @Named("app.cache.definitions.maxEntries") final int cacheMaxEntries,
+                                 @Named("app.cache.definitions.maxKilobytes") final int cacheMaxKilobytes,
+                                 @Named("app.cache.definitions.ttlSeconds") final int cacheTimeToLive) {
         this.strongAugmentationService = strongAugmentationService;
         this.definitions = manager.getReader("definition");
+        this.specificForms = manager.getReader("specificForm");
+        this.definitionCache = new BoundedCache<String, EntityDoc[]>("definitions", cacheMaxEntries,
+                cacheMaxKilobytes * 1024L, cacheTimeToLive * 1000L, DEFINITIONS_WEIGHER);
     }
 
     /**
@@ -146,13 +174,9 @@ public class VocabularyServiceImpl implements VocabularyService {
     @Override
     public VocabResponse getDefinitions(final String version, final String reference, final String vocabIdentifiers) {
         notBlank(vocabIdentifiers, "Vocab identifiers was null", UserExceptionType.SERVICE_VALIDATION_ERROR);
-        final String[] strongList = this.strongAugmentationService.augment(version, reference, getKeys(vocabIdentifiers)).getStrongList();
-
-        if (strongList.length != 0) {
-            final EntityDoc[] strongDefs = this.definitions.searchUniqueBySingleField("strongNumber",
-                    strongList);
+        final EntityDoc[] definitions = getLexiconDefinitions(vocabIdentifiers, version, reference);
 
-            final EntityDoc[] definitions = reOrder(strongList, strongDefs);
+        if (definitions.length != 0) {
             final Map<String, List<LexiconSuggestion>> relatedWords = readRelatedWords(definitions);
             return new VocabResponse(definitions, relatedWords);
         }
@@ -172,27 +196,28 @@ public class VocabularyServiceImpl implements VocabularyService {
         final Map<String, SortedSet<LexiconSuggestion>> relatedWords = new HashMap<String, SortedSet<LexiconSuggestion>>(
                 defs.length * 2);
 
-        // to avoid doing lookups twice, we key each short definition by its code as well
-        final Map<String, LexiconSuggestion> lookedUpWords = new HashMap<>(
-                defs.length * 2);
+        // collect all related words first, so that they can be looked up together
+        final String[][] relatedNumbersByDef = new String[defs.length][];
+        final Map<String, LexiconSuggestion> lookedUpWords = new LinkedHashMap<>(defs.length * 8);
+        for (int ii = 0; ii < defs.length; ii++) {
+            relatedNumbersByDef[ii] = split(defs[ii].get("relatedNumbers"), "[ ,]+");
+            for (final String relatedWord : relatedNumbersByDef[ii]) {
+                lookedUpWords.put(relatedWord, null);
+            }
+        }
 
-        for (final EntityDoc doc : defs) {
-            final String sourceNumber = doc.get("strongNumber");
-            final String relatedWordNumbers = doc.get("relatedNumbers");
-            final String[] allRelatedWords = split(relatedWordNumbers, "[ ,]+");
-            for (final String relatedWord : allRelatedWords) {
-                LexiconSuggestion shortLexiconDefinition = lookedUpWords.get(relatedWord);
-
-                // look up related word from index
-                if (shortLexiconDefinition == null) {
-                    final EntityDoc[] relatedDoc = this.definitions.searchUniqueBySingleField("strongNumber",
-                            relatedWord);
-                    // assume first doc
-                    if (relatedDoc.length > 0) {
-                        shortLexiconDefinition = OriginalWordUtils.convertToSuggestion(relatedDoc[0]);
-                        lookedUpWords.put(relatedWord, shortLexiconDefinition);
-                    }
-                }
+        final String[] relatedNumbers = lookedUpWords.keySet().toArray(new String[lookedUpWords.size()]);
+        final EntityDoc[] relatedDocs = lookupDefinitions(relatedNumbers);
+        for (int ii = 0; ii < relatedNumbers.length; ii++) {
+            if (relatedDocs[ii] != null) {
+                lookedUpWords.put(relatedNumbers[ii], OriginalWordUtils.convertToSuggestion(relatedDocs[ii]));
+            }
+        }
+
+        for (int ii = 0; ii < defs.length; ii++) {
+            final String sourceNumber = defs[ii].get("strongNumber");
+            for (final String relatedWord : relatedNumbersByDef[ii]) {
+                final LexiconSuggestion shortLexiconDefinition = lookedUpWords.get(relatedWord);
 
                 // store as a link to its source number
                 if (shortLexiconDefinition != null) {
@@ -210,6 +235,42 @@ public class VocabularyServiceImpl implements VocabularyService {
         return convertToListMap(relatedWords);
     }
 
+    /**
+     * Looks up the definition of each strong number, from the cache where possible, and otherwise from the index in a
+     * single pass.
+     *
+     * @param strongNumbers the strong numbers, as held in the index
+     * @return the definition of each strong number, in the same order, null where there is none
+     */
+    private EntityDoc[] lookupDefinitions(final String[] strongNumbers) {
+        final EntityDoc[] docs = new EntityDoc[strongNumbers.length];
+        final String[] missing = new String[strongNumbers.length];
+        int missingCount = 0;
+        for (int ii = 0; ii < strongNumbers.length; ii++) {
+            final EntityDoc[] cached = getCached(getCacheKey(null, null, new String[]{strongNumbers[ii]}));
+            if (cached == null) {
+                missing[ii] = strongNumbers[ii];
+                missingCount++;
+            } else if (cached.length > 0) {
+                docs[ii] = cached[0];
+            }
+        }
+
+        if (missingCount == 0) {
+            return docs;
+        }
+
+        final EntityDoc[] found = this.definitions.lookupUniqueBySingleField("strongNumber", missing);
+        for (int ii = 0; ii < strongNumbers.length; ii++) {
+            if (missing[ii] != null) {
+                docs[ii] = found[ii];
+                this.definitionCache.put(getCacheKey(null, null, new String[]{missing[ii]}),
+                        found[ii] != null ? new EntityDoc[]{found[ii]} : NO_DEFINITIONS);
+            }
+        }
+        return docs;
+    }
+
     /**
      * Convert to list map, from a map of sets to a map of lists. This also orders the definitions.
      *
@@ -226,37 +287,39 @@ public class VocabularyServiceImpl implements VocabularyService {
     }
 
     /**
-     * Re-orders based on the input.
+     * Re-orders based on the input. Definitions that can't be matched to the input are kept at the end.
      *
      * @param strongList the order list of stongs
      * @param strongDefs the definitions that have been found
      * @return the entity doc[]
      */
     private EntityDoc[] reOrder(final String[] strongList, final EntityDoc[] strongDefs) {
-        final Map<String, EntityDoc> entitiesByStrong = new HashMap<>(strongList.length * 2);
+        final Map<String, EntityDoc> entitiesByStrong = new LinkedHashMap<>(strongDefs.length * 2);
         for (final EntityDoc def : strongDefs) {
             entitiesByStrong.put(def.get("strongNumber"), def);
         }
 
-        final EntityDoc[] results = new EntityDoc[strongDefs.length];
+        final EntityDoc[] results = new EntityDoc[entitiesByStrong.size()];
         int current = 0;
         for (final String strong : strongList) {
-            final EntityDoc entityDoc = entitiesByStrong.get(strong);
+            final EntityDoc entityDoc = entitiesByStrong.remove(strong);
             if (entityDoc != null) {
                 results[current++] = entityDoc;
             }
         }
 
+        for (final EntityDoc entityDoc : entitiesByStrong.values()) {
+            results[current++] = entityDoc;
+        }
         return results;
     }
 
     @Override
     public VocabResponse getQuickDefinitions(final String version, final String reference, final String vocabIdentifiers) {
         notBlank(vocabIdentifiers, "Vocab identifiers was null", UserExceptionType.SERVICE_VALIDATION_ERROR);
-        final String[] strongList = this.strongAugmentationService.augment(version, reference, getKeys(vocabIdentifiers)).getStrongList();
+        final EntityDoc[] strongNumbers = getLexiconDefinitions(vocabIdentifiers, version, reference);
 
-        if (strongList.length != 0) {
-            EntityDoc[] strongNumbers = this.definitions.searchUniqueBySingleField("strongNumber", strongList);
+        if (strongNumbers.length != 0) {
             return new VocabResponse(strongNumbers);
         }
         return new VocabResponse();
@@ -264,22 +327,34 @@ public class VocabularyServiceImpl implements VocabularyService {
 
     @Override
     public String getTransliteration(final String originalText) {
+        if (isBlank(originalText)) {
+            return StringConversionUtils.transliterate(originalText);
+        }
+
+        // the transliterations of all the forms in the lexicon were computed when the forms were loaded
+        final EntityDoc form = this.specificForms.lookupUniqueBySingleField("exactForm", originalText)[0];
+        if (form != null) {
+            final String transliteration = form.get("stepTransliteration");
+            if (transliteration != null) {
+                return transliteration;
+            }
+        }
         return StringConversionUtils.transliterate(originalText);
     }
 
     @Override
     public String getEnglishVocab(final String version, final String reference, final String vocabIdentifiers) {
-        return getDataFromLexiconDefinition(version, reference, vocabIdentifiers, this.englishVocabProvider);
+        return getDataFromLexiconDefinition(version, reference, vocabIdentifiers, ENGLISH_VOCAB_PROVIDER);
     }
 
     @Override
     public String getGreekVocab(final String version, final String reference, final String vocabIdentifiers) {
-        return getDataFromLexiconDefinition(version, reference, vocabIdentifiers, this.greekVocabProvider);
+        return getDataFromLexiconDefinition(version, reference, vocabIdentifiers, GREEK_VOCAB_PROVIDER);
     }
 
     @Override
     public String getDefaultTransliteration(final String version, final String reference, final String vocabIdentifiers) {
-        return getDataFromLexiconDefinition(version, reference, vocabIdentifiers, this.transliterationProvider);
+        return getDataFromLexiconDefinition(version, reference, vocabIdentifiers, TRANSLITERATION_PROVIDER);
     }
 
     /**
@@ -292,10 +367,20 @@ public class VocabularyServiceImpl implements VocabularyService {
      */
     private String getDataFromLexiconDefinition(final String version, final String reference, final String vocabIdentifiers,
                                                 final LexiconDataProvider provider) {
+        return getDataFromLexiconDefinition(getLexiconDefinitions(vocabIdentifiers, version, reference),
+                vocabIdentifiers, provider);
+    }
 
-        // else we lookup and concatenate
-        final EntityDoc[] lds = getLexiconDefinitions(vocabIdentifiers, version, reference);
-
+    /**
+     * gets data from lexicon definitions that have already been looked up
+     *
+     * @param lds              the lexicon definitions
+     * @param vocabIdentifiers the identifiers, returned if there are no definitions
+     * @param provider         the provider used to get data from it
+     * @return the data in String form
+     */
+    static String getDataFromLexiconDefinition(final EntityDoc[] lds, final String vocabIdentifiers,
+                                               final LexiconDataProvider provider) {
         if (lds.length == 0) {
             return vocabIdentifiers;
         }
@@ -321,33 +406,138 @@ public class VocabularyServiceImpl implements VocabularyService {
 
     @Override
     public EntityDoc[] getLexiconDefinitions(final String vocabIdentifiers, final String version, final String reference) {
-        final String[] keys = this.strongAugmentationService.augment(version, reference, getKeys(vocabIdentifiers)).getStrongList();
+        final String[] keys = getKeys(vocabIdentifiers);
         if (keys.length == 0) {
-            return new EntityDoc[0];
+            return NO_DEFINITIONS;
         }
 
-        final String cacheKey = getCacheKey(version, reference, vocabIdentifiers);
-
-        final EntityDoc[] entityDocs = DEFINITIION_CACHE.get(cacheKey);
+        // the cache is looked up before augmenting, as augmenting runs a query of its own
+        final String cacheKey = getCacheKey(version, reference, keys);
+        final EntityDoc[] entityDocs = getCached(cacheKey);
         if (entityDocs != null) {
-            return entityDocs;
+            return entityDocs.clone();
         }
 
-        final EntityDoc[] strongNumbers = this.definitions.searchUniqueBySingleField("strongNumber", keys);
-        DEFINITIION_CACHE.put(cacheKey, strongNumbers);
-        return strongNumbers;
+        final String[] strongList = this.strongAugmentationService.augment(version, reference, keys).getStrongList();
+        final EntityDoc[] strongNumbers = strongList.length == 0 ? NO_DEFINITIONS :
+                reOrder(strongList, this.definitions.searchUniqueBySingleField("strongNumber", strongList));
+        this.definitionCache.put(cacheKey, strongNumbers);
+        return strongNumbers.clone();
+    }
+
+    @Override
+    public EntityDoc[][] getLexiconDefinitions(final String version, final String[] references,
+                                               final String[] vocabIdentifiers) {
+        final EntityDoc[][] results = new EntityDoc[vocabIdentifiers.length][];
+        final String[] cacheKeys = new String[vocabIdentifiers.length];
+        final String[][] strongLists = new String[vocabIdentifiers.length][];
+        final Set<String> missingStrongs = new LinkedHashSet<>(vocabIdentifiers.length * 2);
+        for (int ii = 0; ii < vocabIdentifiers.length; ii++) {
+            final String[] keys = getKeys(vocabIdentifiers[ii]);
+            if (keys.length == 0) {
+                results[ii] = NO_DEFINITIONS;
+                continue;
+            }
+
+            cacheKeys[ii] = getCacheKey(version, references[ii], keys);
+            results[ii] = getCached(cacheKeys[ii]);
+            if (results[ii] != null) {
+                results[ii] = results[ii].clone();
+            } else {
+                strongLists[ii] = this.strongAugmentationService.augment(version, references[ii], keys).getStrongList();
+                Collections.addAll(missingStrongs, strongLists[ii]);
+            }
+        }
+
+        // all the definitions that weren't cached are read together
+        final String[] strongs = missingStrongs.toArray(new String[missingStrongs.size()]);
+        final EntityDoc[] found = strongs.length == 0 ? NO_DEFINITIONS
+                : this.definitions.lookupUniqueBySingleField("strongNumber", strongs);
+        final Map<String, EntityDoc> definitionsByStrong = new HashMap<>(strongs.length * 2);
+        for (int ii = 0; ii < strongs.length; ii++) {
+            if (found[ii] != null) {
+                definitionsByStrong.put(strongs[ii], found[ii]);
+            }
+        }
+
+        for (int ii = 0; ii < results.length; ii++) {
+            if (strongLists[ii] != null) {
+                results[ii] = selectDefinitions(strongLists[ii], definitionsByStrong);
+                this.definitionCache.put(cacheKeys[ii], results[ii].clone());
+            }
+        }
+        return results;
     }
 
     /**
-     * Simple cache key that concatenates all the variables passed in
+     * Reads the cache, emptying it first if the definitions have been reopened since it was filled, as happens when
+     * the index is rebuilt or a bundle of indexes installed. Cached arrays are shared, so are copied before being
+     * handed out.
      *
-     * @param version          the version
-     * @param reference        the reference
-     * @param vocabIdentifiers the vocabulary identifiers
+     * @param cacheKey the cache key
+     * @return the cached definitions, or null if they aren't cached
+     */
+    private EntityDoc[] getCached(final String cacheKey) {
+        final int generation = this.definitions.getGeneration();
+        if (generation != this.cacheGeneration) {
+            synchronized (this.definitionCache) {
+                if (generation != this.cacheGeneration) {
+                    this.definitionCache.clear();
+                    this.cacheGeneration = generation;
+                }
+            }
+        }
+        return this.definitionCache.get(cacheKey);
+    }
+
+    /**
+     * @param strongList          the strong numbers of a word, in order
+     * @param definitionsByStrong the definitions that were found
+     * @return the definitions of the word, in the order of its strong numbers, without repeats
+     */
+    private EntityDoc[] selectDefinitions(final String[] strongList, final Map<String, EntityDoc> definitionsByStrong) {
+        final Map<String, EntityDoc> selected = new LinkedHashMap<>(strongList.length * 2);
+        for (final String strong : strongList) {
+            final EntityDoc doc = definitionsByStrong.get(strong);
+            if (doc != null) {
+                selected.put(strong, doc);
+            }
+        }
+        return selected.isEmpty() ? NO_DEFINITIONS : selected.values().toArray(new EntityDoc[selected.size()]);
+    }
+
+    /**
+     * Builds the cache key from the normalized strong numbers. The version and reference are only part of the key
+     * if one of the strong numbers may be augmented, since they make no difference to the other strong numbers.
+     *
+     * @param version   the version
+     * @param reference the reference
+     * @param keys      the normalized strong numbers
      * @return the cache key
      */
-    private String getCacheKey(final String version, final String reference, final String vocabIdentifiers) {
-        return new StringBuilder(32).append(version).append('-').append(reference).append('-').append(vocabIdentifiers).toString();
+    private String getCacheKey(final String version, final String reference, final String[] keys) {
+        final StringBuilder cacheKey = new StringBuilder(keys.length * 8 + 32);
+        if (!isBlank(version) && !isBlank(reference) && isAugmentable(keys)) {
+            cacheKey.append(version).append('|').append(reference.trim()).append('|');
+        }
+
+        for (final String key : keys) {
+            cacheKey.append(key).append(' ');
+        }
+        return cacheKey.toString();
+    }
+
+    /**
+     * @param keys the normalized strong numbers
+     * @return true if at least one of the keys may be augmented depending on the reference
+     */
+    private boolean isAugmentable(final String[] keys) {
+        for (final String key : keys) {
+            if (this.strongAugmentationService.isAugmentable(key)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
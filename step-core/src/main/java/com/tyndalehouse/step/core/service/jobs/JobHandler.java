@@ -0,0 +1,23 @@
+package com.tyndalehouse.step.core.service.jobs;
+
+import java.util.List;
+
+/**
+ * Runs one type of background job. The result must be serialisable to JSON, as it is kept on disk until it is
+ * collected.
+ *
+ * @author chrisburrell
+ */
+public interface JobHandler {
+    /**
+     * @return the type of job run by this handler
+     */
+    String getType();
+
+    /**
+     * @param arguments the arguments the job was submitted with
+     * @param progress  the progress of the job, to be updated as the job goes along
+     * @return the result of the job
+     */
+    Object run(List<String> arguments, JobProgress progress);
+}
@@ -0,0 +1,14 @@
+package com.tyndalehouse.step.core.service.jobs;
+
+/**
+ * Receives the progress of a running job
+ *
+ * @author chrisburrell
+ */
+public interface JobProgress {
+    /**
+     * @param done  the units of work done so far
+     * @param total the units of work in the whole job
+     */
+    void update(int done, int total);
+}
@@ -0,0 +1,36 @@
+package com.tyndalehouse.step.core.service.jobs;
+
+import java.util.List;
+
+import org.codehaus.jackson.JsonNode;
+
+import com.tyndalehouse.step.core.models.jobs.JobStatus;
+
+/**
+ * Runs long analyses in the background, away from the request threads. Jobs are kept in a table on disk, so that
+ * jobs that were waiting or running when the server stopped are run again when it starts.
+ *
+ * @author chrisburrell
+ */
+public interface JobService {
+    /**
+     * Submits a job, or returns the job already waiting or running with the same type and arguments
+     *
+     * @param type      the type of job
+     * @param arguments the arguments of the job
+     * @return the status of the job
+     */
+    JobStatus submit(String type, List<String> arguments);
+
+    /**
+     * @param jobId the id of the job
+     * @return the status of the job
+     */
+    JobStatus getStatus(String jobId);
+
+    /**
+     * @param jobId the id of a completed job
+     * @return the result of the job
+     */
+    JsonNode getResult(String jobId);
+}
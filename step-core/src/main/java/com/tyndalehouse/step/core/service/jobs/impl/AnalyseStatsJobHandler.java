@@ -0,0 +1,45 @@
+package com.tyndalehouse.step.core.service.jobs.impl;
+
+import java.util.List;
+
+import javax.inject.Inject;
+
+import com.tyndalehouse.step.core.models.stats.ScopeType;
+import com.tyndalehouse.step.core.models.stats.StatType;
+import com.tyndalehouse.step.core.service.AnalysisService;
+import com.tyndalehouse.step.core.service.jobs.JobHandler;
+import com.tyndalehouse.step.core.service.jobs.JobProgress;
+
+/**
+ * Works out the statistics of a passage in the background, for the scopes too large to be answered during a
+ * request. Takes the version, reference, type of statistics, scope and whether to look at the next chapter.
+ *
+ * @author chrisburrell
+ */
+public class AnalyseStatsJobHandler implements JobHandler {
+    public static final String TYPE = "analyseStats";
+    private final AnalysisService analysis;
+
+    /**
+     * @param analysis the analysis service
+     */
+    @Inject
+    public AnalyseStatsJobHandler(final AnalysisService analysis) {
+        this.analysis = analysis;
+    }
+
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    @Override
+    public Object run(final List<String> arguments, final JobProgress progress) {
+        progress.update(0, 1);
+        final Object stats = this.analysis.getStatsForPassage(arguments.get(0), arguments.get(1),
+                StatType.valueOf(arguments.get(2)), ScopeType.valueOf(arguments.get(3)),
+                Boolean.parseBoolean(arguments.get(4)));
+        progress.update(1, 1);
+        return stats;
+    }
+}
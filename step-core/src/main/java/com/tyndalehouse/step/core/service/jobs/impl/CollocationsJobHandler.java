@@ -0,0 +1,56 @@
+package com.tyndalehouse.step.core.service.jobs.impl;
+
+import java.util.List;
+
+import javax.inject.Inject;
+
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.models.stats.CollocationMeasure;
+import com.tyndalehouse.step.core.models.stats.ScopeType;
+import com.tyndalehouse.step.core.service.AnalysisService;
+import com.tyndalehouse.step.core.service.jobs.JobHandler;
+import com.tyndalehouse.step.core.service.jobs.JobProgress;
+import com.tyndalehouse.step.core.service.jsword.JSwordCollocationService;
+
+/**
+ * Ranks the collocations of a strong number in the background, building the concordance and collocations of the
+ * version first if they aren't available yet. Takes the version, strong number, reference, scope, measure and window.
+ *
+ * @author chrisburrell
+ */
+public class CollocationsJobHandler implements JobHandler {
+    public static final String TYPE = "collocations";
+    private final AnalysisService analysis;
+    private final JSwordCollocationService collocationService;
+
+    /**
+     * @param analysis           the analysis service
+     * @param collocationService the service providing the collocations of each version
+     */
+    @Inject
+    public CollocationsJobHandler(final AnalysisService analysis,
+                                  final JSwordCollocationService collocationService) {
+        this.analysis = analysis;
+        this.collocationService = collocationService;
+    }
+
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    @Override
+    public Object run(final List<String> arguments, final JobProgress progress) {
+        progress.update(0, 2);
+        if (this.collocationService.awaitCollocations(arguments.get(0)) == null) {
+            throw new StepInternalException("Unable to build the collocations of " + arguments.get(0));
+        }
+
+        progress.update(1, 2);
+        final Object collocations = this.analysis.getCollocations(arguments.get(0), arguments.get(1),
+                arguments.get(2), ScopeType.valueOf(arguments.get(3)), CollocationMeasure.valueOf(arguments.get(4)),
+                Integer.parseInt(arguments.get(5)));
+        progress.update(2, 2);
+        return collocations;
+    }
+}
@@ -0,0 +1,448 @@
+package com.tyndalehouse.step.core.service.jobs.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.type.TypeReference;
+import org.crosswire.common.util.CWProject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.models.jobs.JobState;
+import com.tyndalehouse.step.core.models.jobs.JobStatus;
+import com.tyndalehouse.step.core.service.jobs.JobHandler;
+import com.tyndalehouse.step.core.service.jobs.JobProgress;
+import com.tyndalehouse.step.core.service.jobs.JobService;
+
+/**
+ * Runs jobs on a bounded pool of workers, with a bounded queue, so that a burst of heavy requests waits its turn
+ * rather than taking over the server. The job table is written to disk each time a job changes state, and the
+ * result of each job is written alongside it, until it is older than the retention period, or until newer results
+ * need the space.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class JobServiceImpl implements JobService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JobServiceImpl.class);
+    private static final String TABLE_FILE = "jobs.json";
+    private static final String RESULT_EXTENSION = ".result";
+    private static final char KEY_SEPARATOR = '\u0000';
+    private final Map<String, JobHandler> handlers = new HashMap<String, JobHandler>();
+    private final File directory;
+    private final long retentionMillis;
+    private final long maxResultBytes;
+    private final int maxAttempts;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ThreadPoolExecutor executor;
+
+    // both guarded by this, the jobs in the order they were submitted
+    private final Map<String, JobStatus> jobs = new LinkedHashMap<String, JobStatus>();
+    private final Map<String, String> inFlight = new HashMap<String, String>();
+
+    /**
+     * @param handlers         the handlers of each type of job
+     * @param jobsPath         the directory holding the job table and results, relative to the STEP home directory
+     * @param threads          the number of jobs run at the same time
+     * @param maxQueued        the number of jobs that may be waiting, beyond which submissions are refused
+     * @param retentionMinutes the number of minutes results are kept once a job has finished
+     * @param maxResultKB      the total size of the results kept, in KB
+     * @param maxAttempts      the number of times a job is started before it is failed, should it stop the server
+     */
+    @Inject
+    public JobServiceImpl(final List<JobHandler> handlers,
+                          @Named("app.jobs.path") final String jobsPath,
+                          @Named("app.jobs.threads") final int threads,
+                          @Named("app.jobs.maxQueued") final int maxQueued,
+                          @Named("app.jobs.retentionMinutes") final int retentionMinutes,
+                          @Named("app.jobs.maxResultKB") final int maxResultKB,
+                          @Named("app.jobs.maxAttempts") final int maxAttempts) {
+        this(handlers, getDirectory(jobsPath), threads, maxQueued, TimeUnit.MINUTES.toMillis(retentionMinutes),
+                maxResultKB * 1024L, maxAttempts);
+    }
+
+    /**
+     * @param handlers        the handlers of each type of job
+     * @param directory       the directory holding the job table and results
+     * @param threads         the number of jobs run at the same time
+     * @param maxQueued       the number of jobs that may be waiting, beyond which submissions are refused
+     * @param retentionMillis the time results are kept once a job has finished
+     * @param maxResultBytes  the total size of the results kept
+     * @param maxAttempts     the number of times a job is started before it is failed, should it stop the server
+     */
+    JobServiceImpl(final List<JobHandler> handlers, final File directory, final int threads, final int maxQueued,
+                   final long retentionMillis, final long maxResultBytes, final int maxAttempts) {
+        for (final JobHandler handler : handlers) {
+            this.handlers.put(handler.getType(), handler);
+        }
+        this.directory = directory;
+        this.retentionMillis = retentionMillis;
+        this.maxResultBytes = maxResultBytes;
+        this.maxAttempts = Math.max(1, maxAttempts);
+
+        final int poolSize = Math.max(1, threads);
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(Math.max(1, maxQueued)), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "step-job-" + this.count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+        restore();
+    }
+
+    @Override
+    public synchronized JobStatus submit(final String type, final List<String> arguments) {
+        if (!this.handlers.containsKey(type)) {
+            throw new StepInternalException("Unknown type of job: " + type);
+        }
+
+        final String key = getKey(type, arguments);
+        final String existing = this.inFlight.get(key);
+        if (existing != null) {
+            return new JobStatus(this.jobs.get(existing));
+        }
+
+        final JobStatus job = new JobStatus(UUID.randomUUID().toString(), type, arguments,
+                System.currentTimeMillis());
+        this.jobs.put(job.getId(), job);
+        this.inFlight.put(key, job.getId());
+        try {
+            schedule(job);
+        } catch (final RejectedExecutionException ex) {
+            this.jobs.remove(job.getId());
+            this.inFlight.remove(key);
+            throw new StepInternalException("Too many jobs are waiting to run, please try again later", ex);
+        }
+
+        save();
+        return new JobStatus(job);
+    }
+
+    @Override
+    public synchronized JobStatus getStatus(final String jobId) {
+        return new JobStatus(getJob(jobId));
+    }
+
+    @Override
+    public JsonNode getResult(final String jobId) {
+        synchronized (this) {
+            final JobStatus job = getJob(jobId);
+            if (job.getState() != JobState.COMPLETE) {
+                throw new StepInternalException(String.format("Job [%s] has not completed", jobId));
+            }
+        }
+
+        try {
+            return this.mapper.readTree(getResultFile(jobId));
+        } catch (final IOException e) {
+            throw new StepInternalException(String.format("The result of job [%s] is no longer available", jobId), e);
+        }
+    }
+
+    /**
+     * @param jobId the id of the job
+     * @return the job
+     */
+    private JobStatus getJob(final String jobId) {
+        final JobStatus job = this.jobs.get(jobId);
+        if (job == null) {
+            throw new StepInternalException(String.format("Unknown job [%s]", jobId));
+        }
+        return job;
+    }
+
+    /**
+     * @param job the job to run on one of the workers
+     */
+    private void schedule(final JobStatus job) {
+        this.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                runJob(job);
+            }
+        });
+    }
+
+    /**
+     * Runs the job, keeping its result on disk
+     *
+     * @param job the job
+     */
+    private void runJob(final JobStatus job) {
+        synchronized (this) {
+            job.setState(JobState.RUNNING);
+            job.setStarted(System.currentTimeMillis());
+            job.setAttempts(job.getAttempts() + 1);
+            save();
+        }
+
+        JobState state = JobState.FAILED;
+        String message = null;
+        long resultSize = 0;
+        try {
+            final Object result = this.handlers.get(job.getType()).run(job.getArguments(), new Progress(job));
+            resultSize = writeResult(job.getId(), result);
+            if (resultSize > this.maxResultBytes) {
+                deleteResult(job.getId());
+                message = "The result is too large to be kept";
+            } else {
+                state = JobState.COMPLETE;
+            }
+        } catch (final RuntimeException ex) {
+            LOGGER.error("Job [{}] of type [{}] failed", new Object[]{job.getId(), job.getType(), ex});
+            message = ex.getMessage();
+        } finally {
+            synchronized (this) {
+                job.setState(state);
+                job.setMessage(message);
+                if (state == JobState.COMPLETE) {
+                    job.setProgress(100);
+                    job.setResultSize(resultSize);
+                }
+                job.setFinished(System.currentTimeMillis());
+                this.inFlight.remove(getKey(job.getType(), job.getArguments()));
+                prune();
+                save();
+            }
+        }
+    }
+
+    /**
+     * @param jobId  the id of the job
+     * @param result the result of the job
+     * @return the size of the result on disk
+     */
+    private long writeResult(final String jobId, final Object result) {
+        final File file = getResultFile(jobId);
+        final File temporary = new File(file.getPath() + ".tmp");
+        try {
+            this.mapper.writeValue(temporary, result);
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to write the result of job " + jobId, e);
+        }
+
+        if (file.exists() && !file.delete() || !temporary.renameTo(file)) {
+            throw new StepInternalException("Unable to replace " + file);
+        }
+        return file.length();
+    }
+
+    /**
+     * Drops the jobs that finished before the retention period, and then the oldest results until the results
+     * kept fit within their limit
+     */
+    private void prune() {
+        final long expired = System.currentTimeMillis() - this.retentionMillis;
+        long totalSize = 0;
+        final Iterator<JobStatus> iterator = this.jobs.values().iterator();
+        while (iterator.hasNext()) {
+            final JobStatus job = iterator.next();
+            if (job.getFinished() != 0 && job.getFinished() < expired) {
+                deleteResult(job.getId());
+                iterator.remove();
+            } else {
+                totalSize += job.getResultSize();
+            }
+        }
+
+        final Iterator<JobStatus> oldestFirst = this.jobs.values().iterator();
+        while (totalSize > this.maxResultBytes && oldestFirst.hasNext()) {
+            final JobStatus job = oldestFirst.next();
+            if (job.getResultSize() != 0) {
+                totalSize -= job.getResultSize();
+                deleteResult(job.getId());
+                oldestFirst.remove();
+            }
+        }
+    }
+
+    /**
+     * Writes the job table to disk, replacing the previous table in one go
+     */
+    private void save() {
+        final File file = new File(this.directory, TABLE_FILE);
+        final File temporary = new File(file.getPath() + ".tmp");
+        try {
+            this.mapper.writeValue(temporary, new ArrayList<JobStatus>(this.jobs.values()));
+            if (file.exists() && !file.delete() || !temporary.renameTo(file)) {
+                LOGGER.warn("Unable to replace the job table [{}]", file);
+            }
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to write the job table [{}]: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the job table back, running again the jobs that were waiting or running when the server stopped, unless
+     * they have been started too many times already, and deleting any results no longer in the table
+     */
+    private synchronized void restore() {
+        final File file = new File(this.directory, TABLE_FILE);
+        if (file.exists()) {
+            try {
+                final List<JobStatus> saved = this.mapper.readValue(file, new TypeReference<List<JobStatus>>() {
+                });
+                for (final JobStatus job : saved) {
+                    restore(job);
+                }
+            } catch (final IOException e) {
+                LOGGER.warn("Unable to read the job table [{}], starting afresh: {}", file, e.getMessage());
+                this.jobs.clear();
+                this.inFlight.clear();
+            }
+        }
+
+        final Set<String> kept = new HashSet<String>();
+        for (final String jobId : this.jobs.keySet()) {
+            kept.add(jobId + RESULT_EXTENSION);
+        }
+
+        final File[] files = this.directory.listFiles();
+        if (files != null) {
+            for (final File f : files) {
+                if (f.getName().endsWith(RESULT_EXTENSION) && !kept.contains(f.getName()) && !f.delete()) {
+                    LOGGER.debug("Unable to delete [{}]", f);
+                }
+            }
+        }
+
+        prune();
+        save();
+    }
+
+    /**
+     * @param job a job read from the job table
+     */
+    private void restore(final JobStatus job) {
+        final boolean unfinished = job.getState() == JobState.QUEUED || job.getState() == JobState.RUNNING;
+        if (!unfinished) {
+            if (job.getState() != JobState.COMPLETE || getResultFile(job.getId()).exists()) {
+                this.jobs.put(job.getId(), job);
+            }
+            return;
+        }
+
+        this.jobs.put(job.getId(), job);
+        if (!this.handlers.containsKey(job.getType())) {
+            job.setState(JobState.FAILED);
+            job.setMessage("Unknown type of job: " + job.getType());
+            job.setFinished(System.currentTimeMillis());
+            return;
+        }
+
+        // a job that was running each time the server stopped may well be what stopped it
+        if (job.getState() == JobState.RUNNING && job.getAttempts() >= this.maxAttempts) {
+            LOGGER.warn("Job [{}] of type [{}] was still running after {} attempts, and won't be run again",
+                    new Object[]{job.getId(), job.getType(), job.getAttempts()});
+            job.setState(JobState.FAILED);
+            job.setMessage("The job was interrupted too many times");
+            job.setFinished(System.currentTimeMillis());
+            return;
+        }
+
+        job.setState(JobState.QUEUED);
+        job.setProgress(0);
+        job.setStarted(0);
+        this.inFlight.put(getKey(job.getType(), job.getArguments()), job.getId());
+        try {
+            schedule(job);
+        } catch (final RejectedExecutionException ex) {
+            this.inFlight.remove(getKey(job.getType(), job.getArguments()));
+            job.setState(JobState.FAILED);
+            job.setMessage("Too many jobs were waiting to run when the server restarted");
+            job.setFinished(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * @param jobId the id of the job
+     */
+    private void deleteResult(final String jobId) {
+        final File file = getResultFile(jobId);
+        if (file.exists() && !file.delete()) {
+            LOGGER.warn("Unable to delete the result [{}]", file);
+        }
+    }
+
+    /**
+     * @param jobId the id of the job
+     * @return the file holding its result
+     */
+    private File getResultFile(final String jobId) {
+        return new File(this.directory, jobId + RESULT_EXTENSION);
+    }
+
+    /**
+     * @param type      the type of job
+     * @param arguments the arguments of the job
+     * @return the key under which identical jobs are recognised
+     */
+    private static String getKey(final String type, final List<String> arguments) {
+        final StringBuilder key = new StringBuilder(type);
+        for (final String argument : arguments) {
+            key.append(KEY_SEPARATOR).append(argument);
+        }
+        return key.toString();
+    }
+
+    /**
+     * @param jobsPath the directory holding the job table and results, relative to the STEP home directory
+     * @return the directory
+     */
+    private static File getDirectory(final String jobsPath) {
+        try {
+            return new File(CWProject.instance().getWriteableProjectSubdir(jobsPath, true));
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to create directory for jobs", e);
+        }
+    }
+
+    /**
+     * Records the progress of a job, which is returned when the job is polled but not written to the job table
+     */
+    private final class Progress implements JobProgress {
+        private final JobStatus job;
+
+        /**
+         * @param job the job
+         */
+        private Progress(final JobStatus job) {
+            this.job = job;
+        }
+
+        @Override
+        public void update(final int done, final int total) {
+            synchronized (JobServiceImpl.this) {
+                this.job.setProgress(total <= 0 ? 0 : (int) Math.min(99, done * 100L / total));
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.tyndalehouse.step.core.service.jobs.impl;
+
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.crosswire.jsword.book.Book;
+
+import com.tyndalehouse.step.core.service.JSwordRelatedVersesService;
+import com.tyndalehouse.step.core.service.jobs.JobHandler;
+import com.tyndalehouse.step.core.service.jobs.JobProgress;
+import com.tyndalehouse.step.core.service.jsword.JSwordMetadataService;
+import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
+import com.tyndalehouse.step.core.service.jsword.JSwordRelatedVerseIndexService;
+import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
+
+/**
+ * Finds the verses related to a passage in the background, working out the related verses of the version first if
+ * they aren't available yet. Takes the version and reference, and returns the related verses as an OSIS reference.
+ *
+ * @author chrisburrell
+ */
+public class RelatedVersesJobHandler implements JobHandler {
+    public static final String TYPE = "relatedVerses";
+    private final JSwordRelatedVersesService relatedVerses;
+    private final JSwordRelatedVerseIndexService relatedVerseIndexService;
+    private final JSwordVersificationService versificationService;
+    private final JSwordMetadataService metadataService;
+
+    /**
+     * @param relatedVerses            the related verses service
+     * @param relatedVerseIndexService the service providing the related verses of every verse of each version
+     * @param versificationService     the versification service, to look up the version
+     * @param metadataService          the metadata service, to tell whether the version is tagged
+     */
+    @Inject
+    public RelatedVersesJobHandler(final JSwordRelatedVersesService relatedVerses,
+                                   final JSwordRelatedVerseIndexService relatedVerseIndexService,
+                                   final JSwordVersificationService versificationService,
+                                   final JSwordMetadataService metadataService) {
+        this.relatedVerses = relatedVerses;
+        this.relatedVerseIndexService = relatedVerseIndexService;
+        this.versificationService = versificationService;
+        this.metadataService = metadataService;
+    }
+
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    @Override
+    public Object run(final List<String> arguments, final JobProgress progress) {
+        // related verses are found in the version itself if it is tagged, and otherwise in the reference version
+        progress.update(0, 2);
+        final Book book = this.versificationService.getBookFromVersion(arguments.get(0));
+        final Book strongBook = this.metadataService.supportsStrongs(book) ? book
+                : this.versificationService.getBookFromVersion(JSwordPassageService.REFERENCE_BOOK);
+        this.relatedVerseIndexService.awaitRelatedVerseIndex(strongBook.getInitials());
+
+        progress.update(1, 2);
+        final String related = this.relatedVerses.getRelatedVerses(arguments.get(0), arguments.get(1)).getOsisRef();
+        progress.update(2, 2);
+        return related;
+    }
+}
@@ -1,5 +1,9 @@
 package com.tyndalehouse.step.core.service.jsword;
 
+import java.util.List;
+
+import com.tyndalehouse.step.core.models.stats.Collocation;
+import com.tyndalehouse.step.core.models.stats.CollocationMeasure;
 import com.tyndalehouse.step.core.models.stats.ScopeType;
 import com.tyndalehouse.step.core.models.stats.PassageStat;
 import org.crosswire.jsword.passage.Key;
@@ -30,4 +34,18 @@ public interface JSwordAnalysisService {
      * @return the word stats
      */
     PassageStat getTextStats(String version, Key reference, final ScopeType scopeType);
+
+    /**
+     * Ranks the strong numbers occurring with a strong number.
+     *
+     * @param version   the tagged version
+     * @param strong    the strong number
+     * @param reference the passage to look in, or null for the whole version
+     * @param scopeType the scope, whether passage, chapter, near by chapters, or whole book
+     * @param measure   the measure to rank by
+     * @param window    the number of tagged words either side to look in, or 0 for the whole verse
+     * @return the collocations, strongest first
+     */
+    List<Collocation> getCollocations(String version, String strong, Key reference, ScopeType scopeType,
+                                      CollocationMeasure measure, int window);
 }
@@ -0,0 +1,28 @@
+package com.tyndalehouse.step.core.service.jsword;
+
+import com.tyndalehouse.step.core.service.jsword.helpers.CollocationMatrix;
+
+/**
+ * Provides the strong numbers occurring together in a tagged version
+ *
+ * @author chrisburrell
+ */
+public interface JSwordCollocationService {
+    /**
+     * Returns the collocations of a version. They are built in the background from the version's concordance the
+     * first time they are asked for, and again each time the index is re-created.
+     *
+     * @param version the tagged version
+     * @return the collocations, or null if they aren't available yet, or if the version's index can't be read
+     */
+    CollocationMatrix getCollocations(String version);
+
+    /**
+     * Returns the collocations of a version, building them in the calling thread if they aren't available yet.
+     * Meant for background jobs.
+     *
+     * @param version the tagged version
+     * @return the collocations, or null if the version's index can't be read or they can't be built
+     */
+    CollocationMatrix awaitCollocations(String version);
+}
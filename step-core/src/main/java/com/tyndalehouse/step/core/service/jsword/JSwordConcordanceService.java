@@ -0,0 +1,28 @@
+package com.tyndalehouse.step.core.service.jsword;
+
+import com.tyndalehouse.step.core.service.jsword.helpers.Concordance;
+
+/**
+ * Provides the verses and positions at which each strong number and word occurs in a version
+ *
+ * @author chrisburrell
+ */
+public interface JSwordConcordanceService {
+    /**
+     * Returns the concordance of a version. It is built in the background from the version's index the first time it
+     * is asked for, and again each time the index is re-created.
+     *
+     * @param version the version
+     * @return the concordance, or null if it isn't available yet, or if the version's index can't be read
+     */
+    Concordance getConcordance(String version);
+
+    /**
+     * Returns the concordance of a version, building it in the calling thread if it isn't available yet. Meant for
+     * background jobs and for data built from the concordance.
+     *
+     * @param version the version
+     * @return the concordance, or null if the version's index can't be read or the concordance can't be built
+     */
+    Concordance awaitConcordance(String version);
+}
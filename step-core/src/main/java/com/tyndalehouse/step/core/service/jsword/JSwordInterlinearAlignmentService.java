@@ -0,0 +1,24 @@
+package com.tyndalehouse.step.core.service.jsword;
+
+import com.tyndalehouse.step.core.service.jsword.helpers.InterlinearAlignment;
+import com.tyndalehouse.step.core.xsl.impl.InterlinearVersion;
+
+/**
+ * Provides the precomputed interlinear alignments of versions, and the state of each interlinear version that is
+ * shared across requests
+ *
+ * @author chrisburrell
+ */
+public interface JSwordInterlinearAlignmentService {
+    /**
+     * @param version the interlinear version
+     * @return the alignment, or null if none has been built for the installed module
+     */
+    InterlinearAlignment getAlignment(String version);
+
+    /**
+     * @param version the interlinear version
+     * @return the state of the version shared by all interlinears, or null if the version is not installed
+     */
+    InterlinearVersion getInterlinearVersion(String version);
+}
@@ -0,0 +1,28 @@
+package com.tyndalehouse.step.core.service.jsword;
+
+import com.tyndalehouse.step.core.service.jsword.helpers.RelatedVerseIndex;
+
+/**
+ * Provides the related verses of every verse of a strong-tagged version
+ *
+ * @author chrisburrell
+ */
+public interface JSwordRelatedVerseIndexService {
+    /**
+     * Returns the related verses of a version. They are worked out in the background from the version's index the
+     * first time they are asked for, and again each time the index is re-created.
+     *
+     * @param version the strong-tagged version
+     * @return the related verses, or null if they aren't available yet, or if the version's index can't be read
+     */
+    RelatedVerseIndex getRelatedVerseIndex(String version);
+
+    /**
+     * Returns the related verses of a version, working them out in the calling thread if they aren't available yet.
+     * Meant for background jobs.
+     *
+     * @param version the strong-tagged version
+     * @return the related verses, or null if the version's index can't be read or they can't be worked out
+     */
+    RelatedVerseIndex awaitRelatedVerseIndex(String version);
+}
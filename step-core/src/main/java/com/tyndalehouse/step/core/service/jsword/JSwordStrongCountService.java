@@ -0,0 +1,19 @@
+package com.tyndalehouse.step.core.service.jsword;
+
+import com.tyndalehouse.step.core.service.jsword.helpers.StrongCountMatrix;
+
+/**
+ * Provides the number of occurrences of strong numbers in a tagged version, by book and across the whole version
+ *
+ * @author chrisburrell
+ */
+public interface JSwordStrongCountService {
+    /**
+     * Returns the counts of a version. They are built in the background from the version's index the first time they
+     * are asked for, and again each time the index is re-created.
+     *
+     * @param version the tagged version
+     * @return the counts, or null if they aren't available yet, or if the version's index can't be read
+     */
+    StrongCountMatrix getCounts(String version);
+}
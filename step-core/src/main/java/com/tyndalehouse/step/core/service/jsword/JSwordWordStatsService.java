@@ -0,0 +1,30 @@
+package com.tyndalehouse.step.core.service.jsword;
+
+import com.tyndalehouse.step.core.service.jsword.helpers.ChapterCounts;
+import com.tyndalehouse.step.core.service.jsword.helpers.StopWords;
+
+/**
+ * Provides the number of occurrences of strong numbers, and of words, in each chapter of a version, from which the
+ * statistics of any range of chapters are worked out
+ *
+ * @author chrisburrell
+ */
+public interface JSwordWordStatsService {
+    /**
+     * Returns the strong number counts of the reference version. The first time they are needed, and again each time
+     * the module is upgraded, the counts are built in the background, in which case they are not available until they
+     * are built.
+     *
+     * @return the counts, or null if they are not available yet
+     */
+    ChapterCounts getStrongCounts();
+
+    /**
+     * Returns the word counts of a version, built in the background in the same way as the strong number counts.
+     *
+     * @param version   the version
+     * @param stopWords the words left out of the counts
+     * @return the counts, or null if they are not available yet
+     */
+    ChapterCounts getTextCounts(String version, StopWords stopWords);
+}
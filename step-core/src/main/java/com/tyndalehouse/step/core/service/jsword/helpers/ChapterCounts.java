@@ -0,0 +1,415 @@
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+
+/**
+ * The number of occurrences of each word, or strong number, in each chapter of a version. Chapters are numbered in
+ * the order of the versification, book by book and then chapter by chapter from chapter 1, so that any contiguous
+ * range of chapters, such as a few chapters either side of a passage, or a whole book, is a range of indexes.
+ * <p/>
+ * The counts are held twice: by chapter, and by word as running totals in chapter order. A short range is counted
+ * by summing the rows of its chapters. A long range is counted by subtracting the running total of each word before
+ * the range from its running total at the end of the range, which costs the same whatever the length of the range.
+ * The counts are written to a file once per version of the module, which is then memory-mapped.
+ *
+ * @author chrisburrell
+ */
+public final class ChapterCounts {
+    private static final int MAGIC = 0x53545753;
+    private static final int FORMAT_VERSION = 2;
+
+    private final String key;
+    private final int[] firstChapters;
+    private final int[] lastChapters;
+    private final String[] words;
+    private final IntBuffer chapterOffsets;
+    private final IntBuffer entries;
+    private final IntBuffer wordOffsets;
+    private final IntBuffer totals;
+
+    /**
+     * @param key            identifies what the counts were built from, such as the version of the module
+     * @param firstChapters  the index of the first chapter of each book, by ordinal, -1 if not in the versification
+     * @param lastChapters   the number of chapters of each book, by ordinal
+     * @param words          the words
+     * @param chapterOffsets the first entry of each chapter, followed by the number of entries
+     * @param entries        the index of a word and its count, for each chapter
+     * @param wordOffsets    the first running total of each word, followed by the number of running totals
+     * @param totals         the index of a chapter and the running total of the word up to that chapter, for each
+     *                       chapter containing the word
+     */
+    private ChapterCounts(final String key, final int[] firstChapters, final int[] lastChapters,
+                          final String[] words, final IntBuffer chapterOffsets, final IntBuffer entries,
+                          final IntBuffer wordOffsets, final IntBuffer totals) {
+        this.key = key;
+        this.firstChapters = firstChapters;
+        this.lastChapters = lastChapters;
+        this.words = words;
+        this.chapterOffsets = chapterOffsets;
+        this.entries = entries;
+        this.wordOffsets = wordOffsets;
+        this.totals = totals;
+    }
+
+    /**
+     * @return identifies what the counts were built from, such as the version of the module
+     */
+    public String getKey() {
+        return this.key;
+    }
+
+    /**
+     * @param book    the book
+     * @param chapter the chapter, starting at 1
+     * @return the index of the chapter, or -1 if it isn't in the versification
+     */
+    public int getChapterIndex(final BibleBook book, final int chapter) {
+        final int first = this.firstChapters[book.ordinal()];
+        if (first == -1 || chapter < 1 || chapter > this.lastChapters[book.ordinal()]) {
+            return -1;
+        }
+        return first + chapter - 1;
+    }
+
+    /**
+     * @param firstChapter the index of the first chapter
+     * @param lastChapter  the index of the last chapter, inclusive
+     * @return the number of occurrences of each word in the chapters
+     */
+    public Map<String, Integer> getCounts(final int firstChapter, final int lastChapter) {
+        final int[] counts = sum(firstChapter, lastChapter);
+        final Map<String, Integer> found = new HashMap<String, Integer>(128);
+        for (int ii = 0; ii < counts.length; ii++) {
+            if (counts[ii] != 0) {
+                found.put(this.words[ii], counts[ii]);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Counts the words of the chapters, keeping only the most frequent ones. As when trimming a
+     * {@link com.tyndalehouse.step.core.models.stats.PassageStat}, words are kept if they occur more often than the
+     * word ranked maxWords, so that words that occur equally often are either all kept or all left out.
+     *
+     * @param firstChapter the index of the first chapter
+     * @param lastChapter  the index of the last chapter, inclusive
+     * @param maxWords     the number of words below which all words are kept, at least 1
+     * @param excluded     the words to leave out, in upper case
+     * @return the number of occurrences of the most frequent words in the chapters
+     */
+    public Map<String, Integer> getTopCounts(final int firstChapter, final int lastChapter, final int maxWords,
+                                             final Set<String> excluded) {
+        final int[] counts = sum(firstChapter, lastChapter);
+
+        // a min-heap of the maxWords highest counts
+        final int[] heap = new int[maxWords];
+        int heapSize = 0;
+        for (int ii = 0; ii < counts.length; ii++) {
+            if (counts[ii] == 0) {
+                continue;
+            }
+
+            if (!excluded.isEmpty() && excluded.contains(this.words[ii].toUpperCase())) {
+                counts[ii] = 0;
+                continue;
+            }
+
+            if (heapSize < maxWords) {
+                heap[heapSize] = counts[ii];
+                siftUp(heap, heapSize++);
+            } else if (counts[ii] > heap[0]) {
+                heap[0] = counts[ii];
+                siftDown(heap, heapSize);
+            }
+        }
+
+        final int threshold = heapSize < maxWords ? 0 : heap[0];
+        final Map<String, Integer> found = new HashMap<String, Integer>(maxWords * 2);
+        for (int ii = 0; ii < counts.length; ii++) {
+            if (counts[ii] > threshold) {
+                found.put(this.words[ii], counts[ii]);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @param firstChapter the index of the first chapter
+     * @param lastChapter  the index of the last chapter, inclusive
+     * @return the count of each word in the chapters, by index
+     */
+    private int[] sum(final int firstChapter, final int lastChapter) {
+        final int[] counts = new int[this.words.length];
+        final int start = this.chapterOffsets.get(firstChapter);
+        final int end = this.chapterOffsets.get(lastChapter + 1);
+        if (end - start <= this.words.length) {
+            for (int ii = start; ii < end; ii++) {
+                counts[this.entries.get(ii * 2)] += this.entries.get(ii * 2 + 1);
+            }
+            return counts;
+        }
+
+        for (int ii = 0; ii < counts.length; ii++) {
+            counts[ii] = getRunningTotal(ii, lastChapter) - getRunningTotal(ii, firstChapter - 1);
+        }
+        return counts;
+    }
+
+    /**
+     * @param word    the index of the word
+     * @param chapter the index of the chapter
+     * @return the number of occurrences of the word up to the end of the chapter
+     */
+    private int getRunningTotal(final int word, final int chapter) {
+        int low = this.wordOffsets.get(word);
+        int high = this.wordOffsets.get(word + 1) - 1;
+        int total = 0;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            if (this.totals.get(middle * 2) <= chapter) {
+                total = this.totals.get(middle * 2 + 1);
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @param heap     the heap
+     * @param position the position of the value just added
+     */
+    private static void siftUp(final int[] heap, final int position) {
+        int child = position;
+        while (child > 0) {
+            final int parent = (child - 1) >>> 1;
+            if (heap[parent] <= heap[child]) {
+                return;
+            }
+            swap(heap, parent, child);
+            child = parent;
+        }
+    }
+
+    /**
+     * @param heap the heap, whose smallest value has just been replaced
+     * @param size the size of the heap
+     */
+    private static void siftDown(final int[] heap, final int size) {
+        int parent = 0;
+        while (true) {
+            final int left = parent * 2 + 1;
+            if (left >= size) {
+                return;
+            }
+
+            final int right = left + 1;
+            final int smallest = right < size && heap[right] < heap[left] ? right : left;
+            if (heap[parent] <= heap[smallest]) {
+                return;
+            }
+            swap(heap, parent, smallest);
+            parent = smallest;
+        }
+    }
+
+    /**
+     * @param heap   the heap
+     * @param first  the first position
+     * @param second the second position
+     */
+    private static void swap(final int[] heap, final int first, final int second) {
+        final int value = heap[first];
+        heap[first] = heap[second];
+        heap[second] = value;
+    }
+
+    /**
+     * @param v11n          the versification
+     * @param firstChapters the index of the first chapter of each book, by ordinal
+     * @param lastChapters  the number of chapters of each book, by ordinal
+     * @return the number of chapters in the versification
+     */
+    private static int indexChapters(final Versification v11n, final int[] firstChapters, final int[] lastChapters) {
+        Arrays.fill(firstChapters, -1);
+        int chapters = 0;
+        for (final BibleBook book : v11n.getBooks()) {
+            firstChapters[book.ordinal()] = chapters;
+            lastChapters[book.ordinal()] = v11n.getLastChapter(book);
+            chapters += lastChapters[book.ordinal()];
+        }
+        return chapters;
+    }
+
+    /**
+     * Reads the counts, mapping them into memory
+     *
+     * @param file the file written by {@link #write(File, String, List)}
+     * @param v11n the versification the counts were built with
+     * @return the counts, or null if the file was written in another format, or for another versification
+     */
+    public static ChapterCounts read(final File file, final Versification v11n) {
+        final MappedByteBuffer buffer = MappedFiles.map(file, MAGIC, FORMAT_VERSION);
+        if (buffer == null) {
+            return null;
+        }
+
+        final String key = MappedFiles.readString(buffer);
+        final int chapterCount = buffer.getInt();
+        final int entryCount = buffer.getInt();
+        final String[] words = new String[buffer.getInt()];
+        for (int ii = 0; ii < words.length; ii++) {
+            words[ii] = MappedFiles.readString(buffer);
+        }
+
+        final int[] firstChapters = new int[BibleBook.values().length];
+        final int[] lastChapters = new int[BibleBook.values().length];
+        if (indexChapters(v11n, firstChapters, lastChapters) != chapterCount) {
+            return null;
+        }
+
+        MappedFiles.align(buffer);
+        final IntBuffer ints = buffer.slice().asIntBuffer();
+        final IntBuffer chapterOffsets = MappedFiles.slice(ints, chapterCount + 1);
+        final IntBuffer entries = MappedFiles.slice(ints, entryCount * 2);
+        final IntBuffer wordOffsets = MappedFiles.slice(ints, words.length + 1);
+        final IntBuffer totals = MappedFiles.slice(ints, entryCount * 2);
+        return new ChapterCounts(key, firstChapters, lastChapters, words, chapterOffsets, entries,
+                wordOffsets, totals);
+    }
+
+    /**
+     * Writes the counts to a temporary file first, so that readers never see half-written counts
+     *
+     * @param file     the file to write
+     * @param key      identifies what the counts were built from, such as the version of the module
+     * @param chapters the counts of each chapter, in the order of the versification, null for chapters missing from
+     *                 the version
+     */
+    public static void write(final File file, final String key, final List<Map<String, Integer>> chapters) {
+        final Map<String, Integer> wordIndexes = new HashMap<String, Integer>(16384);
+        final List<String> words = new ArrayList<String>(16384);
+        int entryCount = 0;
+        for (final Map<String, Integer> chapter : chapters) {
+            if (chapter == null) {
+                continue;
+            }
+
+            for (final String word : chapter.keySet()) {
+                if (!wordIndexes.containsKey(word)) {
+                    wordIndexes.put(word, words.size());
+                    words.add(word);
+                }
+            }
+            entryCount += chapter.size();
+        }
+
+        final int totalEntries = entryCount;
+        MappedFiles.write(file, MAGIC, FORMAT_VERSION, new MappedFiles.Contents() {
+            @Override
+            public void write(final DataOutputStream out) throws IOException {
+                MappedFiles.writeString(out, key);
+                out.writeInt(chapters.size());
+                out.writeInt(totalEntries);
+                out.writeInt(words.size());
+                for (final String word : words) {
+                    MappedFiles.writeString(out, word);
+                }
+
+                MappedFiles.align(out);
+                writeRows(out, chapters, wordIndexes);
+                writeRunningTotals(out, chapters, wordIndexes, words.size(), totalEntries);
+            }
+        });
+    }
+
+    /**
+     * @param out         the output
+     * @param chapters    the counts of each chapter
+     * @param wordIndexes the index of each word
+     * @throws IOException if the rows can't be written
+     */
+    private static void writeRows(final DataOutputStream out, final List<Map<String, Integer>> chapters,
+                                  final Map<String, Integer> wordIndexes) throws IOException {
+        int offset = 0;
+        for (final Map<String, Integer> chapter : chapters) {
+            out.writeInt(offset);
+            offset += chapter == null ? 0 : chapter.size();
+        }
+        out.writeInt(offset);
+
+        for (final Map<String, Integer> chapter : chapters) {
+            if (chapter == null) {
+                continue;
+            }
+
+            for (final Map.Entry<String, Integer> count : chapter.entrySet()) {
+                out.writeInt(wordIndexes.get(count.getKey()));
+                out.writeInt(count.getValue());
+            }
+        }
+    }
+
+    /**
+     * @param out         the output
+     * @param chapters    the counts of each chapter
+     * @param wordIndexes the index of each word
+     * @param wordCount   the number of words
+     * @param entryCount  the number of entries across all chapters
+     * @throws IOException if the running totals can't be written
+     */
+    private static void writeRunningTotals(final DataOutputStream out, final List<Map<String, Integer>> chapters,
+                                           final Map<String, Integer> wordIndexes, final int wordCount,
+                                           final int entryCount) throws IOException {
+        final int[] wordOffsets = new int[wordCount + 1];
+        for (final Map<String, Integer> chapter : chapters) {
+            if (chapter != null) {
+                for (final String word : chapter.keySet()) {
+                    wordOffsets[wordIndexes.get(word) + 1]++;
+                }
+            }
+        }
+        for (int ii = 0; ii < wordCount; ii++) {
+            wordOffsets[ii + 1] += wordOffsets[ii];
+        }
+
+        final int[] totals = new int[entryCount * 2];
+        final int[] next = Arrays.copyOf(wordOffsets, wordCount);
+        final int[] runningTotals = new int[wordCount];
+        for (int chapter = 0; chapter < chapters.size(); chapter++) {
+            if (chapters.get(chapter) == null) {
+                continue;
+            }
+
+            for (final Map.Entry<String, Integer> count : chapters.get(chapter).entrySet()) {
+                final int word = wordIndexes.get(count.getKey());
+                runningTotals[word] += count.getValue();
+                totals[next[word] * 2] = chapter;
+                totals[next[word] * 2 + 1] = runningTotals[word];
+                next[word]++;
+            }
+        }
+
+        for (final int offset : wordOffsets) {
+            out.writeInt(offset);
+        }
+        for (final int value : totals) {
+            out.writeInt(value);
+        }
+    }
+}
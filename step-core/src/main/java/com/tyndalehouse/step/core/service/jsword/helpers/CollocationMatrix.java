@@ -0,0 +1,599 @@
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.crosswire.jsword.index.lucene.LuceneIndex;
+
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.models.stats.Collocation;
+import com.tyndalehouse.step.core.models.stats.CollocationMeasure;
+
+/**
+ * The strong numbers occurring together in the verses of a version. The matrix holds, for each strong number, the
+ * number of verses it shares with every other strong number, so that the collocations of a strong number across the
+ * whole version are read from a single row. It also holds the verses of each strong number and the strong numbers of
+ * each verse, in order, from which the collocations within a passage, or within a window of words, are counted
+ * without going back to the index.
+ * <p/>
+ * Windows are counted in tagged words, the positions of the strong numbers in the index, rather than in all the
+ * words of the text.
+ *
+ * @author chrisburrell
+ */
+public final class CollocationMatrix {
+    private static final int MAGIC = 0x5354434C;
+    private static final int FORMAT_VERSION = 1;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int MAX_KEY_LENGTH = 0xFFFF;
+    /**
+     * pointwise mutual information favours strong numbers seen only once, so those are left out of its rankings
+     */
+    private static final int MIN_PMI_COUNT = 2;
+
+    private final long indexVersion;
+    private final Map<String, Integer> terms;
+    private final String[] strongs;
+    private final IntBuffer data;
+    private final int ordinalCount;
+    private final int verseCount;
+    private final int tokenCount;
+    private final int verseCountsAt;
+    private final int tokenCountsAt;
+    private final int rowOffsetsAt;
+    private final int pairTermsAt;
+    private final int pairCountsAt;
+    private final int postingOffsetsAt;
+    private final int postingsAt;
+    private final int verseOffsetsAt;
+    private final int tokenTermsAt;
+    private final int tokenPositionsAt;
+
+    /**
+     * @param indexVersion the version of the Lucene index the matrix was built from
+     * @param strongs      the strong numbers
+     * @param data         the sections of the matrix
+     * @param ordinalCount the number of verse ordinals
+     * @param pairCount    the number of pairs of strong numbers sharing a verse
+     * @param verseCount   the number of verses with strong numbers
+     * @param tokenCount   the number of tagged words
+     */
+    private CollocationMatrix(final long indexVersion, final String[] strongs, final IntBuffer data,
+                              final int ordinalCount, final int pairCount, final int verseCount,
+                              final int tokenCount) {
+        this.indexVersion = indexVersion;
+        this.strongs = strongs;
+        this.data = data;
+        this.ordinalCount = ordinalCount;
+        this.verseCount = verseCount;
+        this.tokenCount = tokenCount;
+        this.terms = new HashMap<String, Integer>(strongs.length * 2);
+        for (int ii = 0; ii < strongs.length; ii++) {
+            this.terms.put(strongs[ii], ii);
+        }
+
+        final int termCount = strongs.length;
+        this.verseCountsAt = 0;
+        this.tokenCountsAt = this.verseCountsAt + termCount;
+        this.rowOffsetsAt = this.tokenCountsAt + termCount;
+        this.pairTermsAt = this.rowOffsetsAt + termCount + 1;
+        this.pairCountsAt = this.pairTermsAt + pairCount;
+        this.postingOffsetsAt = this.pairCountsAt + pairCount;
+        this.postingsAt = this.postingOffsetsAt + termCount + 1;
+        this.verseOffsetsAt = this.postingsAt + data.get(this.postingOffsetsAt + termCount);
+        this.tokenTermsAt = this.verseOffsetsAt + ordinalCount + 1;
+        this.tokenPositionsAt = this.tokenTermsAt + tokenCount;
+    }
+
+    /**
+     * @return the version of the Lucene index the matrix was built from
+     */
+    public long getIndexVersion() {
+        return this.indexVersion;
+    }
+
+    /**
+     * Ranks the strong numbers occurring with a strong number, in the same verse or, if a window is given, within
+     * that many tagged words of it.
+     *
+     * @param strong   the strong number, as indexed
+     * @param scope    the ordinals of the verses to look in, or null for the whole version
+     * @param window   the number of tagged words either side to look in, or 0 for the whole verse
+     * @param measure  the measure to rank by
+     * @param max      the number of collocations to return
+     * @param excluded the strong numbers to leave out, in upper case
+     * @return the collocations, strongest first
+     */
+    public List<Collocation> getCollocations(final String strong, final BitSet scope, final int window,
+                                             final CollocationMeasure measure, final int max,
+                                             final Set<String> excluded) {
+        final Integer focus = this.terms.get(strong);
+        if (focus == null) {
+            return new ArrayList<Collocation>(0);
+        }
+
+        final Tally tally;
+        if (window <= 0 && scope == null) {
+            tally = countRow(focus);
+        } else if (window <= 0) {
+            tally = countVerses(focus, scope);
+        } else {
+            tally = countWindows(focus, scope, window);
+        }
+
+        final List<Collocation> collocations = new ArrayList<Collocation>();
+        for (int ii = 0; ii < tally.joint.length; ii++) {
+            final int count = tally.joint[ii];
+            if (count == 0 || ii == focus || excluded.contains(this.strongs[ii].toUpperCase())
+                    || measure == CollocationMeasure.PMI && count < MIN_PMI_COUNT) {
+                continue;
+            }
+            collocations.add(new Collocation(this.strongs[ii], count,
+                    score(measure, count, tally.focusUnits, tally.marginals[ii], tally.units)));
+        }
+
+        Collections.sort(collocations, new Comparator<Collocation>() {
+            @Override
+            public int compare(final Collocation o1, final Collocation o2) {
+                final int byScore = Double.compare(o2.getScore(), o1.getScore());
+                if (byScore != 0) {
+                    return byScore;
+                }
+                return o1.getCount() != o2.getCount() ? o2.getCount() - o1.getCount()
+                        : o1.getStrongNumber().compareTo(o2.getStrongNumber());
+            }
+        });
+        return collocations.size() > max ? new ArrayList<Collocation>(collocations.subList(0, max)) : collocations;
+    }
+
+    /**
+     * @param measure    the measure
+     * @param count      the number of times the strong numbers occur together
+     * @param focusUnits the number of verses, or words within the window, of the first strong number
+     * @param marginal   the number of verses, or words, of the second strong number
+     * @param units      the number of verses, or words, looked in
+     * @return the score
+     */
+    static double score(final CollocationMeasure measure, final double count, final double focusUnits,
+                        final double marginal, final double units) {
+        switch (measure) {
+            case COUNT:
+                return count;
+            case PMI:
+                return Math.log(count * units / (focusUnits * marginal)) / Math.log(2);
+            case LOG_LIKELIHOOD:
+                final double k11 = count;
+                final double k12 = Math.max(focusUnits - count, 0);
+                final double k21 = Math.max(marginal - count, 0);
+                final double k22 = Math.max(units - focusUnits - marginal + count, 0);
+                final double g2 = 2 * (xLogX(k11) + xLogX(k12) + xLogX(k21) + xLogX(k22)
+                        - xLogX(k11 + k12) - xLogX(k21 + k22) - xLogX(k11 + k21) - xLogX(k12 + k22)
+                        + xLogX(k11 + k12 + k21 + k22));
+
+                // strong numbers occurring together less often than by chance rank last
+                return count * units < focusUnits * marginal ? -g2 : g2;
+            default:
+                throw new StepInternalException("Unsupported collocation measure " + measure);
+        }
+    }
+
+    /**
+     * @param x the value
+     * @return x ln x, 0 for 0
+     */
+    private static double xLogX(final double x) {
+        return x <= 0 ? 0 : x * Math.log(x);
+    }
+
+    /**
+     * @param focus the strong number
+     * @return the verses shared with every other strong number, across the whole version
+     */
+    private Tally countRow(final int focus) {
+        final int termCount = this.strongs.length;
+        final Tally tally = new Tally(termCount);
+        final int end = this.data.get(this.rowOffsetsAt + focus + 1);
+        for (int ii = this.data.get(this.rowOffsetsAt + focus); ii < end; ii++) {
+            tally.joint[this.data.get(this.pairTermsAt + ii)] = this.data.get(this.pairCountsAt + ii);
+        }
+        for (int ii = 0; ii < termCount; ii++) {
+            tally.marginals[ii] = this.data.get(this.verseCountsAt + ii);
+        }
+        tally.units = this.verseCount;
+        tally.focusUnits = this.data.get(this.verseCountsAt + focus);
+        return tally;
+    }
+
+    /**
+     * @param focus the strong number
+     * @param scope the verses to look in
+     * @return the verses shared with every other strong number, within the scope
+     */
+    private Tally countVerses(final int focus, final BitSet scope) {
+        final Tally tally = new Tally(this.strongs.length);
+        final int[] stamps = new int[this.strongs.length];
+        int stamp = 0;
+        for (int verse = scope.nextSetBit(0); verse >= 0 && verse < this.ordinalCount;
+             verse = scope.nextSetBit(verse + 1)) {
+            final int start = this.data.get(this.verseOffsetsAt + verse);
+            final int end = this.data.get(this.verseOffsetsAt + verse + 1);
+            if (start == end) {
+                continue;
+            }
+
+            tally.units++;
+            stamp++;
+            boolean hasFocus = false;
+            for (int ii = start; ii < end; ii++) {
+                final int term = this.data.get(this.tokenTermsAt + ii);
+                if (stamps[term] != stamp) {
+                    stamps[term] = stamp;
+                    tally.marginals[term]++;
+                    hasFocus |= term == focus;
+                }
+            }
+
+            if (hasFocus) {
+                tally.focusUnits++;
+                for (int ii = start; ii < end; ii++) {
+                    final int term = this.data.get(this.tokenTermsAt + ii);
+                    if (stamps[term] == stamp) {
+                        // each strong number counted once in the verse
+                        stamps[term] = -stamp;
+                        tally.joint[term]++;
+                    }
+                }
+            }
+        }
+        return tally;
+    }
+
+    /**
+     * @param focus  the strong number
+     * @param scope  the verses to look in, or null for the whole version
+     * @param window the number of tagged words either side
+     * @return the words of every other strong number within the window of the strong number
+     */
+    private Tally countWindows(final int focus, final BitSet scope, final int window) {
+        final int termCount = this.strongs.length;
+        final Tally tally = new Tally(termCount);
+        long focusCount = 0;
+        if (scope == null) {
+            for (int ii = 0; ii < termCount; ii++) {
+                tally.marginals[ii] = this.data.get(this.tokenCountsAt + ii);
+            }
+            tally.units = this.tokenCount;
+            focusCount = tally.marginals[focus];
+        } else {
+            for (int verse = scope.nextSetBit(0); verse >= 0 && verse < this.ordinalCount;
+                 verse = scope.nextSetBit(verse + 1)) {
+                final int end = this.data.get(this.verseOffsetsAt + verse + 1);
+                for (int ii = this.data.get(this.verseOffsetsAt + verse); ii < end; ii++) {
+                    tally.marginals[this.data.get(this.tokenTermsAt + ii)]++;
+                    tally.units++;
+                }
+            }
+            focusCount = tally.marginals[focus];
+        }
+
+        final int postingsEnd = this.data.get(this.postingOffsetsAt + focus + 1);
+        for (int posting = this.data.get(this.postingOffsetsAt + focus); posting < postingsEnd; posting++) {
+            final int verse = this.data.get(this.postingsAt + posting);
+            if (scope != null && !scope.get(verse)) {
+                continue;
+            }
+
+            final int start = this.data.get(this.verseOffsetsAt + verse);
+            final int end = this.data.get(this.verseOffsetsAt + verse + 1);
+            for (int ii = start; ii < end; ii++) {
+                final int term = this.data.get(this.tokenTermsAt + ii);
+                if (term != focus && isNear(focus, this.data.get(this.tokenPositionsAt + ii), start, end, window)) {
+                    tally.joint[term]++;
+                }
+            }
+        }
+
+        tally.focusUnits = Math.min(tally.units, focusCount * 2 * window);
+        return tally;
+    }
+
+    /**
+     * @param focus    the strong number
+     * @param position the position of a word
+     * @param start    the first word of the verse
+     * @param end      the word after the last word of the verse
+     * @param window   the number of tagged words either side
+     * @return true if the strong number occurs within the window of the word
+     */
+    private boolean isNear(final int focus, final int position, final int start, final int end, final int window) {
+        for (int ii = start; ii < end; ii++) {
+            if (this.data.get(this.tokenTermsAt + ii) == focus
+                    && Math.abs(this.data.get(this.tokenPositionsAt + ii) - position) <= window) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The counts from which collocations are scored
+     */
+    private static final class Tally {
+        private final int[] joint;
+        private final int[] marginals;
+        private long units;
+        private long focusUnits;
+
+        /**
+         * @param termCount the number of strong numbers
+         */
+        private Tally(final int termCount) {
+            this.joint = new int[termCount];
+            this.marginals = new int[termCount];
+        }
+    }
+
+    /**
+     * Reads a matrix, mapping it into memory
+     *
+     * @param file the file written by {@link #write(File, Concordance)}
+     * @return the matrix, or null if the file was written in another format
+     */
+    public static CollocationMatrix read(final File file) {
+        final MappedByteBuffer buffer = MappedFiles.map(file, MAGIC, FORMAT_VERSION);
+        if (buffer == null) {
+            return null;
+        }
+
+        final long indexVersion = buffer.getLong();
+        final int termCount = buffer.getInt();
+        final int ordinalCount = buffer.getInt();
+        final int pairCount = buffer.getInt();
+        final int verseCount = buffer.getInt();
+        final int tokenCount = buffer.getInt();
+        final String[] strongs = new String[termCount];
+        for (int ii = 0; ii < termCount; ii++) {
+            strongs[ii] = MappedFiles.readString(buffer);
+        }
+
+        MappedFiles.align(buffer);
+        return new CollocationMatrix(indexVersion, strongs, buffer.slice().asIntBuffer(), ordinalCount,
+                pairCount, verseCount, tokenCount);
+    }
+
+    /**
+     * Builds the matrix from the strong numbers of a concordance, writing it to a temporary file first so that
+     * readers never see a half-written matrix
+     *
+     * @param file        the file to write
+     * @param concordance the concordance of the version
+     */
+    public static void write(final File file, final Concordance concordance) {
+        final List<String> strongs = new ArrayList<String>();
+        for (final String strong : concordance.getTerms(LuceneIndex.FIELD_STRONG)) {
+            if (strong.getBytes(UTF8).length <= MAX_KEY_LENGTH) {
+                strongs.add(strong);
+            }
+        }
+
+        // the verses of each strong number, and the number of its words
+        final int termCount = strongs.size();
+        final int[][] termVerses = new int[termCount][];
+        final int[] tokenCounts = new int[termCount];
+        int maxOrdinal = -1;
+        for (int term = 0; term < termCount; term++) {
+            final Concordance.Occurrences occurrences =
+                    concordance.getOccurrences(LuceneIndex.FIELD_STRONG, strongs.get(term));
+            termVerses[term] = new int[occurrences.getVerseCount()];
+            for (int ii = 0; occurrences.nextVerse(); ii++) {
+                termVerses[term][ii] = occurrences.getVerse();
+                tokenCounts[term] += occurrences.getFrequency();
+                maxOrdinal = Math.max(maxOrdinal, occurrences.getVerse());
+            }
+        }
+
+        final int ordinalCount = maxOrdinal + 1;
+        final int[] verseOffsets = new int[ordinalCount + 1];
+        for (int term = 0; term < termCount; term++) {
+            final Concordance.Occurrences occurrences =
+                    concordance.getOccurrences(LuceneIndex.FIELD_STRONG, strongs.get(term));
+            while (occurrences.nextVerse()) {
+                verseOffsets[occurrences.getVerse() + 1] += occurrences.getFrequency();
+            }
+        }
+
+        int verseCount = 0;
+        for (int ii = 0; ii < ordinalCount; ii++) {
+            verseCount += verseOffsets[ii + 1] > 0 ? 1 : 0;
+            verseOffsets[ii + 1] += verseOffsets[ii];
+        }
+
+        // the strong numbers of each verse, in the order of their words
+        final int tokenCount = verseOffsets[ordinalCount];
+        final int[] tokenTerms = new int[tokenCount];
+        final int[] tokenPositions = new int[tokenCount];
+        final int[] next = Arrays.copyOf(verseOffsets, ordinalCount);
+        for (int term = 0; term < termCount; term++) {
+            final Concordance.Occurrences occurrences =
+                    concordance.getOccurrences(LuceneIndex.FIELD_STRONG, strongs.get(term));
+            while (occurrences.nextVerse()) {
+                int position;
+                while ((position = occurrences.nextPosition()) != -1) {
+                    final int token = next[occurrences.getVerse()]++;
+                    tokenTerms[token] = term;
+                    tokenPositions[token] = position;
+                }
+            }
+        }
+        for (int verse = 0; verse < ordinalCount; verse++) {
+            sortByPosition(tokenTerms, tokenPositions, verseOffsets[verse], verseOffsets[verse + 1]);
+        }
+
+        // the verses shared by each pair of strong numbers
+        final int[] rowOffsets = new int[termCount + 1];
+        final IntList pairTerms = new IntList();
+        final IntList pairCounts = new IntList();
+        final int[] counts = new int[termCount];
+        final int[] stamps = new int[termCount];
+        final int[] touched = new int[termCount];
+        int stamp = 0;
+        for (int term = 0; term < termCount; term++) {
+            int touchedCount = 0;
+            for (final int verse : termVerses[term]) {
+                stamp++;
+                for (int ii = verseOffsets[verse]; ii < verseOffsets[verse + 1]; ii++) {
+                    final int other = tokenTerms[ii];
+                    if (other != term && stamps[other] != stamp) {
+                        stamps[other] = stamp;
+                        if (counts[other]++ == 0) {
+                            touched[touchedCount++] = other;
+                        }
+                    }
+                }
+            }
+
+            Arrays.sort(touched, 0, touchedCount);
+            for (int ii = 0; ii < touchedCount; ii++) {
+                pairTerms.add(touched[ii]);
+                pairCounts.add(counts[touched[ii]]);
+                counts[touched[ii]] = 0;
+            }
+            rowOffsets[term + 1] = pairTerms.size();
+        }
+
+        writeFile(file, concordance.getIndexVersion(), strongs, termVerses, tokenCounts, rowOffsets, pairTerms,
+                pairCounts, verseOffsets, tokenTerms, tokenPositions, verseCount);
+    }
+
+    /**
+     * Sorts the words of a verse by position
+     *
+     * @param tokenTerms     the strong number of each word
+     * @param tokenPositions the position of each word
+     * @param start          the first word of the verse
+     * @param end            the word after the last word of the verse
+     */
+    private static void sortByPosition(final int[] tokenTerms, final int[] tokenPositions, final int start,
+                                       final int end) {
+        for (int ii = start + 1; ii < end; ii++) {
+            final int term = tokenTerms[ii];
+            final int position = tokenPositions[ii];
+            int jj = ii - 1;
+            while (jj >= start && tokenPositions[jj] > position) {
+                tokenTerms[jj + 1] = tokenTerms[jj];
+                tokenPositions[jj + 1] = tokenPositions[jj];
+                jj--;
+            }
+            tokenTerms[jj + 1] = term;
+            tokenPositions[jj + 1] = position;
+        }
+    }
+
+    /**
+     * @param file           the file to write
+     * @param indexVersion   the version of the index
+     * @param strongs        the strong numbers
+     * @param termVerses     the verses of each strong number
+     * @param tokenCounts    the number of words of each strong number
+     * @param rowOffsets     the start of the row of each strong number
+     * @param pairTerms      the other strong number of each pair
+     * @param pairCounts     the verses shared by each pair
+     * @param verseOffsets   the first word of each verse
+     * @param tokenTerms     the strong number of each word
+     * @param tokenPositions the position of each word
+     * @param verseCount     the number of verses with strong numbers
+     */
+    private static void writeFile(final File file, final long indexVersion, final List<String> strongs,
+                                  final int[][] termVerses, final int[] tokenCounts, final int[] rowOffsets,
+                                  final IntList pairTerms, final IntList pairCounts, final int[] verseOffsets,
+                                  final int[] tokenTerms, final int[] tokenPositions, final int verseCount) {
+        MappedFiles.write(file, MAGIC, FORMAT_VERSION, new MappedFiles.Contents() {
+            @Override
+            public void write(final DataOutputStream out) throws IOException {
+                out.writeLong(indexVersion);
+                out.writeInt(strongs.size());
+                out.writeInt(verseOffsets.length - 1);
+                out.writeInt(pairTerms.size());
+                out.writeInt(verseCount);
+                out.writeInt(tokenTerms.length);
+                for (final String strong : strongs) {
+                    MappedFiles.writeString(out, strong);
+                }
+
+                MappedFiles.align(out);
+                for (final int[] verses : termVerses) {
+                    out.writeInt(verses.length);
+                }
+                writeInts(out, tokenCounts, tokenCounts.length);
+                writeInts(out, rowOffsets, rowOffsets.length);
+                writeInts(out, pairTerms.values, pairTerms.size());
+                writeInts(out, pairCounts.values, pairCounts.size());
+
+                int postingOffset = 0;
+                out.writeInt(postingOffset);
+                for (final int[] verses : termVerses) {
+                    postingOffset += verses.length;
+                    out.writeInt(postingOffset);
+                }
+                for (final int[] verses : termVerses) {
+                    writeInts(out, verses, verses.length);
+                }
+
+                writeInts(out, verseOffsets, verseOffsets.length);
+                writeInts(out, tokenTerms, tokenTerms.length);
+                writeInts(out, tokenPositions, tokenPositions.length);
+            }
+        });
+    }
+
+    /**
+     * @param out    the output
+     * @param values the values
+     * @param length the number of values to write
+     * @throws IOException if the values can't be written
+     */
+    private static void writeInts(final DataOutputStream out, final int[] values, final int length)
+            throws IOException {
+        for (int ii = 0; ii < length; ii++) {
+            out.writeInt(values[ii]);
+        }
+    }
+
+    /**
+     * A growing array of ints
+     */
+    private static final class IntList {
+        private int[] values = new int[1 << 16];
+        private int size;
+
+        /**
+         * @param value the value to add
+         */
+        private void add(final int value) {
+            if (this.size == this.values.length) {
+                this.values = Arrays.copyOf(this.values, this.values.length * 2);
+            }
+            this.values[this.size++] = value;
+        }
+
+        /**
+         * @return the number of values
+         */
+        private int size() {
+            return this.size;
+        }
+    }
+}
@@ -0,0 +1,492 @@
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.index.TermPositions;
+import org.crosswire.jsword.index.lucene.LuceneIndex;
+import org.crosswire.jsword.passage.NoSuchVerseException;
+import org.crosswire.jsword.passage.VerseFactory;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.utils.IOUtils;
+
+/**
+ * Where each strong number and word of a version occurs: the verses, by ordinal, and the positions within each verse.
+ * The concordance is built once from the version's index and written to a file, which is then memory-mapped, so
+ * that occurrences are read from a single compact structure rather than from the postings and stored documents of
+ * the index.
+ * <p/>
+ * The occurrences of each term are compressed as the gaps between successive verses and positions, each written in
+ * as few bytes as it needs, seven bits to a byte.
+ *
+ * @author chrisburrell
+ */
+public final class Concordance {
+    private static final int MAGIC = 0x5354434F;
+    private static final int FORMAT_VERSION = 1;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int TERM_INTS = 3;
+    private static final String[] FIELDS = new String[]{LuceneIndex.FIELD_STRONG, LuceneIndex.FIELD_BODY};
+
+    private final long indexVersion;
+    private final Map<String, Integer> terms;
+    private final IntBuffer termInfo;
+    private final ByteBuffer postings;
+
+    /**
+     * @param indexVersion the version of the Lucene index the concordance was built from
+     * @param terms        the index of each term, keyed by field and text
+     * @param termInfo     the start of the occurrences, the number of occurrences and the number of verses of each
+     *                     term
+     * @param postings     the compressed occurrences
+     */
+    private Concordance(final long indexVersion, final Map<String, Integer> terms, final IntBuffer termInfo,
+                        final ByteBuffer postings) {
+        this.indexVersion = indexVersion;
+        this.terms = terms;
+        this.termInfo = termInfo;
+        this.postings = postings;
+    }
+
+    /**
+     * @return the version of the Lucene index the concordance was built from
+     */
+    public long getIndexVersion() {
+        return this.indexVersion;
+    }
+
+    /**
+     * @param field the field of the index, such as {@link LuceneIndex#FIELD_STRONG}
+     * @param term  the strong number or word, as indexed
+     * @return the number of occurrences in the version
+     */
+    public int getCount(final String field, final String term) {
+        final Integer index = this.terms.get(getKey(field, term));
+        return index == null ? 0 : this.termInfo.get(index * TERM_INTS + 1);
+    }
+
+    /**
+     * @param field the field of the index
+     * @param term  the strong number or word, as indexed
+     * @return the number of verses it occurs in
+     */
+    public int getVerseCount(final String field, final String term) {
+        final Integer index = this.terms.get(getKey(field, term));
+        return index == null ? 0 : this.termInfo.get(index * TERM_INTS + 2);
+    }
+
+    /**
+     * @param field the field of the index
+     * @return the strong numbers or words of the field, in order
+     */
+    public List<String> getTerms(final String field) {
+        final String prefix = field + ':';
+        final List<String> fieldTerms = new ArrayList<String>();
+        for (final String key : this.terms.keySet()) {
+            if (key.startsWith(prefix)) {
+                fieldTerms.add(key.substring(prefix.length()));
+            }
+        }
+        Collections.sort(fieldTerms);
+        return fieldTerms;
+    }
+
+    /**
+     * @param field the field of the index
+     * @param term  the strong number or word, as indexed
+     * @return the ordinals of the verses it occurs in, in order
+     */
+    public int[] getVerses(final String field, final String term) {
+        final Occurrences occurrences = getOccurrences(field, term);
+        final int[] verses = new int[occurrences.getVerseCount()];
+        for (int ii = 0; occurrences.nextVerse(); ii++) {
+            verses[ii] = occurrences.getVerse();
+        }
+        return verses;
+    }
+
+    /**
+     * @param field the field of the index
+     * @param term  the strong number or word, as indexed
+     * @param v11n  the versification of the version
+     * @return the number of occurrences in each book, by the ordinal of the book
+     */
+    public int[] getBookCounts(final String field, final String term, final Versification v11n) {
+        final int[] counts = new int[BibleBook.values().length];
+        final Occurrences occurrences = getOccurrences(field, term);
+        while (occurrences.nextVerse()) {
+            counts[v11n.getBook(occurrences.getVerse()).ordinal()] += occurrences.getFrequency();
+        }
+        return counts;
+    }
+
+    /**
+     * @param field the field of the index
+     * @param term  the strong number or word, as indexed
+     * @return the occurrences, to be iterated through verse by verse
+     */
+    public Occurrences getOccurrences(final String field, final String term) {
+        final Integer index = this.terms.get(getKey(field, term));
+        if (index == null) {
+            return new Occurrences(this.postings, 0, 0);
+        }
+        return new Occurrences(this.postings, this.termInfo.get(index * TERM_INTS),
+                this.termInfo.get(index * TERM_INTS + 2));
+    }
+
+    /**
+     * @param field the field
+     * @param term  the term
+     * @return the key of the term
+     */
+    private static String getKey(final String field, final String term) {
+        return field + ':' + term;
+    }
+
+    /**
+     * Iterates through the occurrences of a term, verse by verse, and within each verse position by position. Not
+     * thread-safe, but cheap to create.
+     */
+    public static final class Occurrences {
+        private final ByteBuffer postings;
+        private final int verseCount;
+        private int position;
+        private int versesRead;
+        private int verse;
+        private int frequency;
+        private int positionsLeft;
+        private int wordPosition;
+
+        /**
+         * @param postings   the compressed occurrences
+         * @param start      the start of the occurrences of the term
+         * @param verseCount the number of verses the term occurs in
+         */
+        private Occurrences(final ByteBuffer postings, final int start, final int verseCount) {
+            this.postings = postings;
+            this.position = start;
+            this.verseCount = verseCount;
+        }
+
+        /**
+         * @return the number of verses the term occurs in
+         */
+        public int getVerseCount() {
+            return this.verseCount;
+        }
+
+        /**
+         * Moves to the next verse, skipping any positions not read in the current verse
+         *
+         * @return true if there is another verse
+         */
+        public boolean nextVerse() {
+            while (this.positionsLeft > 0) {
+                nextPosition();
+            }
+
+            if (this.versesRead == this.verseCount) {
+                return false;
+            }
+
+            this.verse += readVarInt();
+            this.frequency = readVarInt();
+            this.positionsLeft = this.frequency;
+            this.wordPosition = 0;
+            this.versesRead++;
+            return true;
+        }
+
+        /**
+         * @return the ordinal of the current verse
+         */
+        public int getVerse() {
+            return this.verse;
+        }
+
+        /**
+         * @return the number of occurrences in the current verse
+         */
+        public int getFrequency() {
+            return this.frequency;
+        }
+
+        /**
+         * @return the position of the next occurrence in the current verse, counted in words, or -1 if there are no
+         * more occurrences in the verse
+         */
+        public int nextPosition() {
+            if (this.positionsLeft == 0) {
+                return -1;
+            }
+
+            this.positionsLeft--;
+            this.wordPosition += readVarInt();
+            return this.wordPosition;
+        }
+
+        /**
+         * @return the next compressed value
+         */
+        private int readVarInt() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = this.postings.get(this.position++);
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+
+    /**
+     * Reads a concordance, mapping its occurrences into memory
+     *
+     * @param file the file written by {@link #write(File, IndexReader, Versification)}
+     * @return the concordance, or null if the file was written in another format
+     */
+    public static Concordance read(final File file) {
+        final MappedByteBuffer buffer = MappedFiles.map(file, MAGIC, FORMAT_VERSION);
+        if (buffer == null) {
+            return null;
+        }
+
+        final long indexVersion = buffer.getLong();
+        final int termCount = buffer.getInt();
+        final Map<String, Integer> terms = new HashMap<String, Integer>(termCount * 2);
+        for (int ii = 0; ii < termCount; ii++) {
+            terms.put(MappedFiles.readString(buffer), ii);
+        }
+
+        MappedFiles.align(buffer);
+        final IntBuffer termInfo = MappedFiles.slice(buffer, termCount * TERM_INTS * 4).asIntBuffer();
+        return new Concordance(indexVersion, terms, termInfo, buffer.slice());
+    }
+
+    /**
+     * Reads the occurrences of every strong number and word in the index, writing the concordance to a temporary file
+     * first so that readers never see a half-written concordance
+     *
+     * @param file   the file to write
+     * @param reader the reader of the version's index
+     * @param v11n   the versification of the version
+     */
+    public static void write(final File file, final IndexReader reader, final Versification v11n) {
+        final int[] docOrdinals = new int[reader.maxDoc()];
+        final List<String> keys = new ArrayList<String>(32768);
+        final List<int[]> infos = new ArrayList<int[]>(32768);
+        final VarIntBuffer postings = new VarIntBuffer();
+
+        TermEnum terms = null;
+        TermPositions termPositions = null;
+        try {
+            readDocOrdinals(reader, v11n, docOrdinals);
+            termPositions = reader.termPositions();
+            for (final String field : FIELDS) {
+                terms = reader.terms(new Term(field, ""));
+                do {
+                    final Term term = terms.term();
+                    if (term == null || !field.equals(term.field())) {
+                        break;
+                    }
+
+                    final byte[] key = getKey(field, term.text()).getBytes(UTF8);
+                    if (key.length > 0xFFFF) {
+                        continue;
+                    }
+
+                    termPositions.seek(terms);
+                    final int start = postings.size();
+                    final int[] counts = writeOccurrences(termPositions, docOrdinals, postings);
+                    if (counts[1] > 0) {
+                        keys.add(getKey(field, term.text()));
+                        infos.add(new int[]{start, counts[0], counts[1]});
+                    }
+                } while (terms.next());
+                terms.close();
+                terms = null;
+            }
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to build concordance", e);
+        } finally {
+            IOUtils.closeQuietly(terms);
+            IOUtils.closeQuietly(termPositions);
+        }
+
+        writeFile(file, reader.getVersion(), keys, infos, postings);
+    }
+
+    /**
+     * Compresses the occurrences of a term, in the order of the verses
+     *
+     * @param termPositions the positions of the term
+     * @param docOrdinals   the ordinal of the verse of each document
+     * @param postings      the compressed occurrences
+     * @return the number of occurrences, and the number of verses
+     * @throws IOException if the index can't be read
+     */
+    private static int[] writeOccurrences(final TermPositions termPositions, final int[] docOrdinals,
+                                          final VarIntBuffer postings) throws IOException {
+        final List<int[]> verses = new ArrayList<int[]>(64);
+        while (termPositions.next()) {
+            final int ordinal = docOrdinals[termPositions.doc()];
+            if (ordinal < 0) {
+                continue;
+            }
+
+            // the ordinal, followed by the positions
+            final int[] verse = new int[termPositions.freq() + 1];
+            verse[0] = ordinal;
+            for (int ii = 1; ii < verse.length; ii++) {
+                verse[ii] = termPositions.nextPosition();
+            }
+            Arrays.sort(verse, 1, verse.length);
+            verses.add(verse);
+        }
+
+        // documents are not necessarily in the order of the verses
+        final int[][] sorted = verses.toArray(new int[verses.size()][]);
+        Arrays.sort(sorted, new Comparator<int[]>() {
+            @Override
+            public int compare(final int[] o1, final int[] o2) {
+                return o1[0] < o2[0] ? -1 : o1[0] == o2[0] ? 0 : 1;
+            }
+        });
+
+        int count = 0;
+        int previousVerse = 0;
+        for (final int[] verse : sorted) {
+            postings.write(verse[0] - previousVerse);
+            postings.write(verse.length - 1);
+            int previousPosition = 0;
+            for (int ii = 1; ii < verse.length; ii++) {
+                postings.write(verse[ii] - previousPosition);
+                previousPosition = verse[ii];
+            }
+            previousVerse = verse[0];
+            count += verse.length - 1;
+        }
+        return new int[]{count, sorted.length};
+    }
+
+    /**
+     * @param reader      the reader
+     * @param v11n        the versification of the version
+     * @param docOrdinals the ordinal of the verse of each document, -1 if unknown
+     * @throws IOException if the index can't be read
+     */
+    private static void readDocOrdinals(final IndexReader reader, final Versification v11n, final int[] docOrdinals)
+            throws IOException {
+        final MapFieldSelector keyOnly = new MapFieldSelector(new String[]{LuceneIndex.FIELD_KEY});
+        for (int ii = 0; ii < docOrdinals.length; ii++) {
+            docOrdinals[ii] = -1;
+            if (reader.isDeleted(ii)) {
+                continue;
+            }
+
+            final Document doc = reader.document(ii, keyOnly);
+            final String key = doc.get(LuceneIndex.FIELD_KEY);
+            if (key == null) {
+                continue;
+            }
+
+            try {
+                docOrdinals[ii] = VerseFactory.fromString(v11n, key).getOrdinal();
+            } catch (final NoSuchVerseException ex) {
+                // not a verse of this versification, so left out
+                docOrdinals[ii] = -1;
+            }
+        }
+    }
+
+    /**
+     * @param file         the file to write
+     * @param indexVersion the version of the index
+     * @param keys         the terms, keyed by field and text
+     * @param infos        the start of the occurrences, the number of occurrences and the number of verses of each
+     *                     term
+     * @param postings     the compressed occurrences
+     */
+    private static void writeFile(final File file, final long indexVersion, final List<String> keys,
+                                  final List<int[]> infos, final VarIntBuffer postings) {
+        MappedFiles.write(file, MAGIC, FORMAT_VERSION, new MappedFiles.Contents() {
+            @Override
+            public void write(final DataOutputStream out) throws IOException {
+                out.writeLong(indexVersion);
+                out.writeInt(keys.size());
+                for (final String key : keys) {
+                    MappedFiles.writeString(out, key);
+                }
+
+                MappedFiles.align(out);
+                for (final int[] info : infos) {
+                    for (final int value : info) {
+                        out.writeInt(value);
+                    }
+                }
+                postings.writeTo(out);
+            }
+        });
+    }
+
+    /**
+     * A growing array of compressed values
+     */
+    private static final class VarIntBuffer {
+        private byte[] bytes = new byte[1 << 16];
+        private int size;
+
+        /**
+         * @param value the value to compress, not negative
+         */
+        private void write(final int value) {
+            if (this.size + 5 > this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, this.bytes.length * 2);
+            }
+
+            int remaining = value;
+            while (remaining > 0x7F) {
+                this.bytes[this.size++] = (byte) ((remaining & 0x7F) | 0x80);
+                remaining >>>= 7;
+            }
+            this.bytes[this.size++] = (byte) remaining;
+        }
+
+        /**
+         * @return the number of bytes written
+         */
+        private int size() {
+            return this.size;
+        }
+
+        /**
+         * @param out the output
+         * @throws IOException if the bytes can't be written
+         */
+        private void writeTo(final DataOutputStream out) throws IOException {
+            out.write(this.bytes, 0, this.size);
+        }
+    }
+}
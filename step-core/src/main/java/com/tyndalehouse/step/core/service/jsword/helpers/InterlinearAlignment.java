@@ -0,0 +1,351 @@
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.book.BookData;
+import org.crosswire.jsword.book.BookException;
+import org.crosswire.jsword.passage.NoSuchVerseException;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseFactory;
+import org.crosswire.jsword.passage.VerseRange;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tyndalehouse.step.core.utils.JSwordUtils;
+import com.tyndalehouse.step.core.xsl.impl.DualKey;
+import com.tyndalehouse.step.core.xsl.impl.InterlinearProviderImpl;
+import com.tyndalehouse.step.core.xsl.impl.Word;
+
+/**
+ * The words of a version, keyed by strong number and verse, as the interlinear provider collects them from the OSIS
+ * of the version. Alignments are built once per version by a tool, and written to a file that is memory-mapped at
+ * runtime, so that the interlinear doesn't need to read and walk through the OSIS of the interlinear version on every
+ * request.
+ * <p/>
+ * An alignment only depends on the interlinear version. The verses of the base version are mapped to the verses of
+ * the interlinear version when the words are looked up.
+ *
+ * @author chrisburrell
+ */
+public final class InterlinearAlignment {
+    /**
+     * the extension of alignment files, which are named after the initials of the version
+     */
+    public static final String FILE_EXTENSION = ".alignment";
+    private static final Logger LOGGER = LoggerFactory.getLogger(InterlinearAlignment.class);
+    private static final int MAGIC = 0x53544941;
+    private static final int FORMAT_VERSION = 2;
+    private static final int WORD_INTS = 4;
+    private static final int FLAG_PARTIAL = 1;
+    private static final int FLAG_NO_VERSE = 2;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final String moduleVersion;
+    private final IntBuffer verseOffsets;
+    private final IntBuffer words;
+    private final IntBuffer stringOffsets;
+    private final ByteBuffer strings;
+
+    /**
+     * @param moduleVersion the version of the module the alignment was built from
+     * @param verseOffsets  the index of the first word of each verse, by ordinal, followed by the number of words
+     * @param words         the strong number, text, untagged text and flags of each word
+     * @param stringOffsets the start of each string, followed by the end of the last string
+     * @param strings       the strings, in UTF-8
+     */
+    private InterlinearAlignment(final String moduleVersion, final IntBuffer verseOffsets, final IntBuffer words,
+                                 final IntBuffer stringOffsets, final ByteBuffer strings) {
+        this.moduleVersion = moduleVersion;
+        this.verseOffsets = verseOffsets;
+        this.words = words;
+        this.stringOffsets = stringOffsets;
+        this.strings = strings;
+    }
+
+    /**
+     * @return the version of the module the alignment was built from
+     */
+    public String getModuleVersion() {
+        return this.moduleVersion;
+    }
+
+    /**
+     * @param ordinal the ordinal of the verse in the version's versification
+     * @return the index of the first word of the verse
+     */
+    public int getFirstWord(final int ordinal) {
+        return ordinal < 0 || ordinal + 1 >= this.verseOffsets.limit() ? 0 : this.verseOffsets.get(ordinal);
+    }
+
+    /**
+     * @param ordinal the ordinal of the verse in the version's versification
+     * @return the index after the last word of the verse
+     */
+    public int getEndWord(final int ordinal) {
+        return ordinal < 0 || ordinal + 1 >= this.verseOffsets.limit() ? 0 : this.verseOffsets.get(ordinal + 1);
+    }
+
+    /**
+     * @param word the index of the word
+     * @return the strong number the word is tagged with
+     */
+    public String getStrong(final int word) {
+        return getString(this.words.get(word * WORD_INTS));
+    }
+
+    /**
+     * @param word the index of the word
+     * @return the text of the word
+     */
+    public String getText(final int word) {
+        return getString(this.words.get(word * WORD_INTS + 1));
+    }
+
+    /**
+     * @param word the index of the word
+     * @return the untagged text preceding the word, or null
+     */
+    public String getUntaggedText(final int word) {
+        return getString(this.words.get(word * WORD_INTS + 2));
+    }
+
+    /**
+     * @param word the index of the word
+     * @return true if the word was tagged with several strong numbers, not all of which are shown
+     */
+    public boolean isPartial(final int word) {
+        return (this.words.get(word * WORD_INTS + 3) & FLAG_PARTIAL) != 0;
+    }
+
+    /**
+     * @param word the index of the word
+     * @return true if the word appeared before the first verse marker of its chapter
+     */
+    public boolean isOutsideVerse(final int word) {
+        return (this.words.get(word * WORD_INTS + 3) & FLAG_NO_VERSE) != 0;
+    }
+
+    /**
+     * @param index the index of the string
+     * @return the string, or null for a negative index
+     */
+    private String getString(final int index) {
+        if (index < 0) {
+            return null;
+        }
+
+        final int start = this.stringOffsets.get(index);
+        final int length = this.stringOffsets.get(index + 1) - start;
+        final byte[] bytes = new byte[length];
+        final ByteBuffer view = this.strings.duplicate();
+        view.position(start);
+        view.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Reads an alignment, mapping it into memory
+     *
+     * @param file the file written by {@link #build(Book, Versification, File)}
+     * @return the alignment, or null if the file was written in another format
+     */
+    public static InterlinearAlignment read(final File file) {
+        final MappedByteBuffer buffer = MappedFiles.map(file, MAGIC, FORMAT_VERSION);
+        if (buffer == null) {
+            return null;
+        }
+
+        final String moduleVersion = MappedFiles.readString(buffer);
+        final int verseCount = buffer.getInt();
+        final int wordCount = buffer.getInt();
+        final int stringCount = buffer.getInt();
+        MappedFiles.align(buffer);
+
+        final IntBuffer verseOffsets = MappedFiles.slice(buffer, (verseCount + 1) * 4).asIntBuffer();
+        final IntBuffer words = MappedFiles.slice(buffer, wordCount * WORD_INTS * 4).asIntBuffer();
+        final IntBuffer stringOffsets = MappedFiles.slice(buffer, (stringCount + 1) * 4).asIntBuffer();
+        return new InterlinearAlignment(moduleVersion, verseOffsets, words, stringOffsets, buffer.slice());
+    }
+
+    /**
+     * Collects the words of every chapter of a version, in the same way as the interlinear provider does, and writes
+     * them to a temporary file first so that readers never see a half-written alignment
+     *
+     * @param book          the version
+     * @param versification the versification of the version
+     * @param file          the file to write
+     * @return the number of words written
+     */
+    public static int build(final Book book, final Versification versification, final File file) {
+        final InterlinearProviderImpl collector = new InterlinearProviderImpl(versification);
+
+        final int verseCount = versification.maxOrdinal() + 1;
+        final List<int[]> wordsByVerse = new ArrayList<int[]>(verseCount);
+        final Map<String, Integer> stringIndexes = new HashMap<String, Integer>(65536);
+        final List<String> strings = new ArrayList<String>(65536);
+        for (int ii = 0; ii < verseCount; ii++) {
+            wordsByVerse.add(null);
+        }
+
+        for (final BibleBook bibleBook : versification.getBooks()) {
+            for (int chapter = 1; chapter <= versification.getLastChapter(bibleBook); chapter++) {
+                final VerseRange range = new VerseRange(versification,
+                        new Verse(versification, bibleBook, chapter, 0),
+                        new Verse(versification, bibleBook, chapter, versification.getLastVerse(bibleBook, chapter)));
+                if (!book.contains(range)) {
+                    continue;
+                }
+
+                try {
+                    final Map<DualKey<String, String>, Deque<Word>> chapterWords = collector.collectWords(
+                            new BookData(book, range).getOsisFragment(),
+                            versification.getTestament(range.getStart().getOrdinal()));
+                    addChapter(versification, new Verse(versification, bibleBook, chapter, 1).getOrdinal(),
+                            chapterWords, wordsByVerse, stringIndexes, strings);
+                } catch (final BookException e) {
+                    LOGGER.warn("Unable to read [{}] in [{}]: {}", range.getOsisRef(), book.getInitials(),
+                            e.getMessage());
+                }
+            }
+        }
+
+        return writeFile(file, JSwordUtils.getModuleVersion(book), wordsByVerse, strings);
+    }
+
+    /**
+     * Adds the words of a chapter. Words before the first verse, such as the titles of psalms, are filed under verse
+     * 1, as the interlinear reads verse 1 when asked for verse 0, and the OSIS of verse 1 holds them.
+     *
+     * @param versification the versification of the version
+     * @param firstOrdinal  the ordinal of verse 1 of the chapter, to which words outside verses are attached
+     * @param chapterWords  the words collected from the chapter
+     * @param wordsByVerse  the words of each verse, as indexes to strings and flags
+     * @param stringIndexes the index of each string
+     * @param strings       the strings
+     */
+    static void addChapter(final Versification versification, final int firstOrdinal,
+                                   final Map<DualKey<String, String>, Deque<Word>> chapterWords,
+                                   final List<int[]> wordsByVerse, final Map<String, Integer> stringIndexes,
+                                   final List<String> strings) {
+        for (final Map.Entry<DualKey<String, String>, Deque<Word>> entry : chapterWords.entrySet()) {
+            final String verseId = entry.getKey().getSecond();
+            final boolean outsideVerse = InterlinearProviderImpl.NO_VERSE.equals(verseId);
+            int ordinal = firstOrdinal;
+            if (!outsideVerse) {
+                try {
+                    ordinal = VerseFactory.fromString(versification, verseId).getOrdinal();
+                } catch (final NoSuchVerseException e) {
+                    LOGGER.trace("Ignoring words of [{}]", verseId, e);
+                    continue;
+                }
+            }
+
+            final int strong = indexOf(entry.getKey().getFirst(), stringIndexes, strings);
+            int[] verseWords = wordsByVerse.get(ordinal);
+            int offset = verseWords == null ? 0 : verseWords.length;
+            verseWords = verseWords == null ? new int[entry.getValue().size() * WORD_INTS]
+                    : Arrays.copyOf(verseWords, offset + entry.getValue().size() * WORD_INTS);
+            for (final Word w : entry.getValue()) {
+                verseWords[offset++] = strong;
+                verseWords[offset++] = indexOf(w.getText(), stringIndexes, strings);
+                verseWords[offset++] = indexOf(w.getUntaggedText(), stringIndexes, strings);
+                verseWords[offset++] = (w.isPartial() ? FLAG_PARTIAL : 0) | (outsideVerse ? FLAG_NO_VERSE : 0);
+            }
+            wordsByVerse.set(ordinal, verseWords);
+        }
+    }
+
+    /**
+     * @param value         the string
+     * @param stringIndexes the index of each string
+     * @param strings       the strings
+     * @return the index of the string, -1 for null
+     */
+    private static int indexOf(final String value, final Map<String, Integer> stringIndexes,
+                               final List<String> strings) {
+        if (value == null) {
+            return -1;
+        }
+
+        Integer index = stringIndexes.get(value);
+        if (index == null) {
+            index = strings.size();
+            strings.add(value);
+            stringIndexes.put(value, index);
+        }
+        return index;
+    }
+
+    /**
+     * @param file          the file to write
+     * @param moduleVersion the version of the module
+     * @param wordsByVerse  the words of each verse, as the strong number, text, untagged text and flags of each word
+     * @param strings       the strings
+     * @return the number of words written
+     */
+    static int writeFile(final File file, final String moduleVersion, final List<int[]> wordsByVerse,
+                         final List<String> strings) {
+        int wordCount = 0;
+        for (final int[] verseWords : wordsByVerse) {
+            wordCount += verseWords == null ? 0 : verseWords.length / WORD_INTS;
+        }
+
+        final byte[][] encoded = new byte[strings.size()][];
+        for (int ii = 0; ii < encoded.length; ii++) {
+            encoded[ii] = strings.get(ii).getBytes(UTF8);
+        }
+
+        final int totalWords = wordCount;
+        MappedFiles.write(file, MAGIC, FORMAT_VERSION, new MappedFiles.Contents() {
+            @Override
+            public void write(final DataOutputStream out) throws IOException {
+                MappedFiles.writeString(out, moduleVersion);
+                out.writeInt(wordsByVerse.size());
+                out.writeInt(totalWords);
+                out.writeInt(encoded.length);
+                MappedFiles.align(out);
+
+                int offset = 0;
+                for (final int[] verseWords : wordsByVerse) {
+                    out.writeInt(offset);
+                    offset += verseWords == null ? 0 : verseWords.length / WORD_INTS;
+                }
+                out.writeInt(offset);
+
+                for (final int[] verseWords : wordsByVerse) {
+                    if (verseWords != null) {
+                        for (final int value : verseWords) {
+                            out.writeInt(value);
+                        }
+                    }
+                }
+
+                int stringOffset = 0;
+                for (final byte[] bytes : encoded) {
+                    out.writeInt(stringOffset);
+                    stringOffset += bytes.length;
+                }
+                out.writeInt(stringOffset);
+                for (final byte[] bytes : encoded) {
+                    out.write(bytes);
+                }
+            }
+        });
+        return wordCount;
+    }
+}
@@ -42,6 +42,7 @@ import com.tyndalehouse.step.core.models.search.StrongCountsAndSubjects;
 import com.tyndalehouse.step.core.service.StrongAugmentationService;
 import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
 import com.tyndalehouse.step.core.service.jsword.JSwordSearchService;
+import com.tyndalehouse.step.core.service.jsword.JSwordStrongCountService;
 import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
 import com.tyndalehouse.step.core.utils.JSwordUtils;
 import com.tyndalehouse.step.core.utils.StringConversionUtils;
@@ -69,6 +70,7 @@ import org.slf4j.Logger;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -89,6 +91,7 @@ public class JSwordStrongNumberHelper {
     private static volatile Versification otV11n;
     private final JSwordVersificationService versification;
     private final JSwordSearchService jSwordSearchService;
+    private final JSwordStrongCountService strongCountService;
     private final StrongAugmentationService strongAugmentationService;
     private final EntityIndexReader definitions;
     private final Verse reference;
@@ -102,14 +105,17 @@ public class JSwordStrongNumberHelper {
      * @param manager                   the manager that helps look up references
      * @param reference                 the reference in the KJV versification equivalent
      * @param versification             the versification service to lookup the versification of the reference book
+     * @param strongCountService        the service providing precomputed counts of strong numbers
      * @param strongAugmentationService the strong augmentation service
      */
     public JSwordStrongNumberHelper(final EntityManager manager, final Verse reference,
                                     final JSwordVersificationService versification,
                                     final JSwordSearchService jSwordSearchService,
+                                    final JSwordStrongCountService strongCountService,
                                     final StrongAugmentationService strongAugmentationService) {
         this.versification = versification;
         this.jSwordSearchService = jSwordSearchService;
+        this.strongCountService = strongCountService;
         this.strongAugmentationService = strongAugmentationService;
         this.definitions = manager.getReader("definition");
         this.reference = reference;
@@ -155,18 +161,20 @@ public class JSwordStrongNumberHelper {
             final Book preferredCountBook = getPreferredCountBook(this.isOT);
             final List<Element> elements = JSwordUtils.getOsisElements(new BookData(preferredCountBook, key));
             Map<String, EntityDoc> augmentedReferences = new HashMap<>(16);
+            final Map<String, String[]> strongsByVerse = new LinkedHashMap<>(elements.size() * 2);
+            boolean missingStrongs = false;
             for (final Element e : elements) {
                 final String verseRef = e.getAttributeValue(OSISUtil.OSIS_ATTR_OSISID);
                 final String strongsNumbers = OSISUtil.getStrongsNumbers(e);
                 if (StringUtils.isBlank(strongsNumbers)) {
                     LOG.warn("Attempting to search for 'no strongs' in verse [{}]", verseRef);
-                    return;
+                    missingStrongs = true;
+                    break;
                 }
 
                 final String strongQuery = StringConversionUtils.getStrongPaddedKey(strongsNumbers);
                 final StrongAugmentationService.AugmentedStrongs augmentedStrongs = strongAugmentationService.augment(preferredCountBook.getInitials(), verseRef, strongQuery);
-                final String augmentedStrongNumbers = StringUtils.join(augmentedStrongs.getStrongList(), ' ');
-                readDataFromLexicon(this.definitions, verseRef, augmentedStrongNumbers);
+                strongsByVerse.put(verseRef, augmentedStrongs.getStrongList());
 
                 //build references that apply to each augmented strong number
                 final EntityDoc[] entityDocs = augmentedStrongs.getEntityDocs();
@@ -176,6 +184,11 @@ public class JSwordStrongNumberHelper {
                 }
             }
 
+            readDataFromLexicon(this.definitions, strongsByVerse);
+            if (missingStrongs) {
+                return;
+            }
+
             // now get counts in the relevant portion of text
             applySearchCounts(getBookFromKey(key), augmentedReferences);
         } catch (final NoSuchKeyException ex) {
@@ -209,10 +222,25 @@ public class JSwordStrongNumberHelper {
      * @param augmentedByStrong the augmented strongs found in the original augmentation querys
      */
     private void applySearchCounts(final String bookName, final Map<String, EntityDoc> augmentedByStrong) {
+        final String countVersion = getPreferredCountBook(this.isOT).getInitials();
+        final StrongCountMatrix counts = this.strongCountService.getCounts(countVersion);
+        if (counts != null) {
+            final BibleBook book = BibleBook.fromExactOSIS(bookName);
+            for (final Entry<String, BookAndBibleCount> strong : this.allStrongs.entrySet()) {
+                // augmented strongs only count in the verses they apply to, the others count everywhere
+                final String strongKey = strong.getKey();
+                final String countKey = augmentedByStrong.containsKey(strongKey) ? strongKey
+                        : this.strongAugmentationService.reduce(strongKey);
+
+                final BookAndBibleCount value = strong.getValue();
+                value.setBible(counts.getBibleCount(countKey));
+                value.setBook(counts.getBookCount(countKey, book));
+            }
+            return;
+        }
 
         try {
-            final IndexSearcher is = jSwordSearchService.getIndexSearcher(
-                    this.isOT ? STRONG_OT_VERSION_BOOK.getInitials() : STRONG_NT_VERSION_BOOK.getInitials());
+            final IndexSearcher is = jSwordSearchService.getIndexSearcher(countVersion);
             final TermDocs termDocs = is.getIndexReader().termDocs();
             for (final Entry<String, BookAndBibleCount> strong : this.allStrongs.entrySet()) {
                 final String strongKey = strong.getKey();
@@ -256,36 +284,45 @@ public class JSwordStrongNumberHelper {
     }
 
     /**
-     * Read data from lexicon.
+     * Read data from lexicon, looking up the strong numbers of all verses at once.
      *
-     * @param reader        the reader
-     * @param verseRef      the verse ref
-     * @param augmentedStrongNumbers the strong numbers
+     * @param reader         the reader
+     * @param strongsByVerse the augmented strong numbers of each verse
      */
     private void readDataFromLexicon(final EntityIndexReader reader,
-                                     final String verseRef,
-                                     final String augmentedStrongNumbers) {
+                                     final Map<String, String[]> strongsByVerse) {
+        final Map<String, LexiconSuggestion> suggestionsFromSearch = new LinkedHashMap<>(strongsByVerse.size() * 32);
+        for (final String[] strongs : strongsByVerse.values()) {
+            for (final String s : strongs) {
+                suggestionsFromSearch.put(s, null);
+            }
+        }
 
-        final EntityDoc[] docs = reader.search("strongNumber", augmentedStrongNumbers);
-        final List<LexiconSuggestion> verseSuggestions = new ArrayList<>();
+        final String[] allStrongNumbers = suggestionsFromSearch.keySet().toArray(new String[suggestionsFromSearch.size()]);
+        final EntityDoc[] docs = reader.lookupUniqueBySingleField("strongNumber", allStrongNumbers);
+        for (int ii = 0; ii < docs.length; ii++) {
+            final EntityDoc d = docs[ii];
+            if (d == null) {
+                continue;
+            }
 
-        Map<String, LexiconSuggestion> suggestionsFromSearch = new HashMap<>(docs.length * 2);
-        for (final EntityDoc d : docs) {
             final LexiconSuggestion ls = new LexiconSuggestion();
             ls.setStrongNumber(d.get("strongNumber"));
             ls.setGloss(d.get("stepGloss"));
             ls.setMatchingForm(d.get("accentedUnicode"));
             ls.setStepTransliteration(d.get("stepTransliteration"));
-            suggestionsFromSearch.put(ls.getStrongNumber(), ls);
+            suggestionsFromSearch.put(allStrongNumbers[ii], ls);
 
             this.allStrongs.put(ls.getStrongNumber(), new BookAndBibleCount());
         }
 
-        String[] strongs = StringUtils.split(augmentedStrongNumbers);
-        for (String s : strongs) {
-            verseSuggestions.add(suggestionsFromSearch.get(s));
+        for (final Entry<String, String[]> verse : strongsByVerse.entrySet()) {
+            final List<LexiconSuggestion> verseSuggestions = new ArrayList<>(verse.getValue().length);
+            for (final String s : verse.getValue()) {
+                verseSuggestions.add(suggestionsFromSearch.get(s));
+            }
+            this.verseStrongs.put(verse.getKey(), verseSuggestions);
         }
-        this.verseStrongs.put(verseRef, verseSuggestions);
     }
 
 
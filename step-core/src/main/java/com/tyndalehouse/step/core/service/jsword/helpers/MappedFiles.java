@@ -0,0 +1,177 @@
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.utils.IOUtils;
+
+/**
+ * Writes and maps the files holding precomputed data, such as concordances and strong counts. Each file starts with
+ * a magic number and the version of its format, so that a file written by an older release is ignored rather than
+ * misread, and is written to a temporary file first, renamed once complete, so that readers never see a
+ * half-written file.
+ *
+ * @author chrisburrell
+ */
+public final class MappedFiles {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedFiles.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+    private static final int HEADER_LENGTH = 8;
+
+    /**
+     * Writes the contents of a file, following its header
+     */
+    public interface Contents {
+        /**
+         * @param out the output
+         * @throws IOException if the contents can't be written
+         */
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * hiding implementation
+     */
+    private MappedFiles() {
+        // no implementation
+    }
+
+    /**
+     * @param file          the file to write
+     * @param magic         identifies the type of file
+     * @param formatVersion the version of the format of the file
+     * @param contents      writes the contents of the file
+     */
+    public static void write(final File file, final int magic, final int formatVersion, final Contents contents) {
+        final File temporary = new File(file.getPath() + TEMPORARY_EXTENSION);
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary), 65536));
+            out.writeInt(magic);
+            out.writeInt(formatVersion);
+            contents.write(out);
+            out.close();
+            out = null;
+
+            if (file.exists() && !file.delete() || !temporary.renameTo(file)) {
+                throw new StepInternalException("Unable to replace " + file);
+            }
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to write " + file, e);
+        } finally {
+            IOUtils.closeQuietly(out);
+            if (temporary.exists() && !temporary.delete()) {
+                LOGGER.warn("Unable to delete [{}]", temporary);
+            }
+        }
+    }
+
+    /**
+     * Maps a file into memory. The mapping remains valid once the file is closed, and for as long as the buffer, or
+     * any slice of it, is in use.
+     *
+     * @param file          the file written by {@link #write(File, int, int, Contents)}
+     * @param magic         identifies the type of file
+     * @param formatVersion the version of the format of the file
+     * @return the contents of the file, positioned after the header, or null if the file was written in another
+     *         format
+     */
+    public static MappedByteBuffer map(final File file, final int magic, final int formatVersion) {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            final FileChannel channel = raf.getChannel();
+            if (channel.size() < HEADER_LENGTH) {
+                return null;
+            }
+
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return buffer.getInt() == magic && buffer.getInt() == formatVersion ? buffer : null;
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to read " + file, e);
+        } finally {
+            IOUtils.closeQuietly(raf);
+        }
+    }
+
+    /**
+     * Pads the output so that the ints that follow can be mapped as an {@link IntBuffer}
+     *
+     * @param out the output
+     * @throws IOException if the padding can't be written
+     */
+    public static void align(final DataOutputStream out) throws IOException {
+        while (out.size() % 4 != 0) {
+            out.writeByte(0);
+        }
+    }
+
+    /**
+     * @param buffer the buffer, positioned after the padding written by {@link #align(DataOutputStream)}
+     */
+    public static void align(final ByteBuffer buffer) {
+        buffer.position((buffer.position() + 3) & ~3);
+    }
+
+    /**
+     * @param buffer the buffer, positioned at the start of the section
+     * @param length the length of the section in bytes
+     * @return the section, the buffer being positioned after it
+     */
+    public static ByteBuffer slice(final ByteBuffer buffer, final int length) {
+        final ByteBuffer section = buffer.slice();
+        section.limit(length);
+        buffer.position(buffer.position() + length);
+        return section;
+    }
+
+    /**
+     * @param ints   the buffer, positioned at the start of the section
+     * @param length the number of ints in the section
+     * @return the section, the buffer being positioned after it
+     */
+    public static IntBuffer slice(final IntBuffer ints, final int length) {
+        final IntBuffer section = ints.slice();
+        section.limit(length);
+        ints.position(ints.position() + length);
+        return section;
+    }
+
+    /**
+     * @param out   the output
+     * @param value the string, of up to 65535 bytes in UTF-8
+     * @throws IOException if the string can't be written
+     */
+    public static void writeString(final DataOutputStream out, final String value) throws IOException {
+        final byte[] bytes = value.getBytes(UTF8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("String too long: " + bytes.length + " bytes");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * @param buffer the buffer, positioned at a string written by {@link #writeString(DataOutputStream, String)}
+     * @return the string
+     */
+    public static String readString(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+}
@@ -0,0 +1,389 @@
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.crosswire.jsword.index.lucene.LuceneIndex;
+import org.crosswire.jsword.versification.Versification;
+
+/**
+ * The verses most related to each verse of a version, by the strong numbers they share. Only strong numbers occurring
+ * in fewer than {@link #SIGNIFICANT_CUT_OFF} verses are taken into account, and a verse is only related to another if
+ * they share at least two of them. Verses are scored as the index would score a query for the strong numbers of a
+ * verse, weighting the rarer strong numbers more heavily and favouring shorter verses.
+ * <p/>
+ * The related verses are worked out for every verse at once from the version's concordance, and written to a file,
+ * indexed by the ordinal of each verse, which is then memory-mapped.
+ *
+ * @author chrisburrell
+ */
+public final class RelatedVerseIndex {
+    /**
+     * the number of verses a strong number may occur in, to be taken into account
+     */
+    public static final int SIGNIFICANT_CUT_OFF = 200;
+    /**
+     * the number of related verses kept for each verse, and returned by a query for related verses
+     */
+    public static final int MAX_RELATED = 50;
+    private static final int MAGIC = 0x5354524C;
+    private static final int FORMAT_VERSION = 2;
+    private static final int MIN_SHARED_STRONGS = 2;
+
+    private final long indexVersion;
+    private final IntBuffer verseOffsets;
+    private final IntBuffer related;
+
+    /**
+     * @param indexVersion the version of the Lucene index the related verses were found from
+     * @param verseOffsets the first related verse of each verse, by ordinal, followed by the number of related verses
+     * @param related      the ordinal and score of each related verse, the most related first
+     */
+    private RelatedVerseIndex(final long indexVersion, final IntBuffer verseOffsets, final IntBuffer related) {
+        this.indexVersion = indexVersion;
+        this.verseOffsets = verseOffsets;
+        this.related = related;
+    }
+
+    /**
+     * @return the version of the Lucene index the related verses were found from
+     */
+    public long getIndexVersion() {
+        return this.indexVersion;
+    }
+
+    /**
+     * Finds the verses related to a set of verses. Verses related to several of them are scored on the sum of their
+     * scores.
+     *
+     * @param ordinals the ordinals of the verses
+     * @param max      the maximum number of related verses
+     * @return the ordinals of the related verses, the most related first
+     */
+    public int[] getRelatedVerses(final int[] ordinals, final int max) {
+        if (ordinals.length == 1) {
+            final int ordinal = ordinals[0];
+            if (ordinal < 0 || ordinal + 1 >= this.verseOffsets.limit()) {
+                return new int[0];
+            }
+
+            final int start = this.verseOffsets.get(ordinal);
+            final int[] verses = new int[Math.min(max, this.verseOffsets.get(ordinal + 1) - start)];
+            for (int ii = 0; ii < verses.length; ii++) {
+                verses[ii] = this.related.get((start + ii) * 2);
+            }
+            return verses;
+        }
+
+        final Map<Integer, Float> scores = new HashMap<Integer, Float>(ordinals.length * 64);
+        for (final int ordinal : ordinals) {
+            if (ordinal < 0 || ordinal + 1 >= this.verseOffsets.limit()) {
+                continue;
+            }
+
+            for (int ii = this.verseOffsets.get(ordinal); ii < this.verseOffsets.get(ordinal + 1); ii++) {
+                final Integer verse = this.related.get(ii * 2);
+                final Float score = scores.get(verse);
+                final float added = Float.intBitsToFloat(this.related.get(ii * 2 + 1));
+                scores.put(verse, score == null ? added : score + added);
+            }
+        }
+
+        final List<Map.Entry<Integer, Float>> ranked = new ArrayList<Map.Entry<Integer, Float>>(scores.entrySet());
+        Collections.sort(ranked, new Comparator<Map.Entry<Integer, Float>>() {
+            @Override
+            public int compare(final Map.Entry<Integer, Float> o1, final Map.Entry<Integer, Float> o2) {
+                return o2.getValue().compareTo(o1.getValue());
+            }
+        });
+
+        final int[] verses = new int[Math.min(max, ranked.size())];
+        for (int ii = 0; ii < verses.length; ii++) {
+            verses[ii] = ranked.get(ii).getKey();
+        }
+        return verses;
+    }
+
+    /**
+     * Reads the related verses, mapping them into memory
+     *
+     * @param file the file written by {@link #write(File, Concordance, Versification, int)}
+     * @return the related verses, or null if the file was written in another format
+     */
+    public static RelatedVerseIndex read(final File file) {
+        final MappedByteBuffer buffer = MappedFiles.map(file, MAGIC, FORMAT_VERSION);
+        if (buffer == null) {
+            return null;
+        }
+
+        final long indexVersion = buffer.getLong();
+        final int verseCount = buffer.getInt();
+        final IntBuffer ints = buffer.slice().asIntBuffer();
+        final IntBuffer verseOffsets = MappedFiles.slice(ints, verseCount + 1);
+        return new RelatedVerseIndex(indexVersion, verseOffsets, ints.slice());
+    }
+
+    /**
+     * Finds the related verses of every verse from the version's concordance, writing them to a temporary file first
+     * so that readers never see half-written related verses
+     *
+     * @param file        the file to write
+     * @param concordance the concordance of the version
+     * @param v11n        the versification of the version
+     * @param maxRelated  the number of related verses to keep for each verse
+     */
+    public static void write(final File file, final Concordance concordance, final Versification v11n,
+                             final int maxRelated) {
+        final int verseCount = v11n.maxOrdinal() + 1;
+        final int[] verseLengths = new int[verseCount];
+        final BitSet tagged = new BitSet(verseCount);
+        final List<int[]> postings = new ArrayList<int[]>(8192);
+        final List<Integer> verseFrequencies = new ArrayList<Integer>(8192);
+
+        for (final String strong : concordance.getTerms(LuceneIndex.FIELD_STRONG)) {
+            // the verses and frequencies of the significant strong numbers are kept
+            final Concordance.Occurrences occurrences = concordance.getOccurrences(LuceneIndex.FIELD_STRONG, strong);
+            final boolean significant = occurrences.getVerseCount() < SIGNIFICANT_CUT_OFF;
+            final int[] termPostings = significant ? new int[occurrences.getVerseCount() * 2] : null;
+            int count = 0;
+            while (occurrences.nextVerse()) {
+                final int verse = occurrences.getVerse();
+                if (verse >= verseCount) {
+                    continue;
+                }
+
+                verseLengths[verse] += occurrences.getFrequency();
+                tagged.set(verse);
+                if (significant) {
+                    termPostings[count++] = verse;
+                    termPostings[count++] = occurrences.getFrequency();
+                }
+            }
+
+            if (significant && count > 0) {
+                postings.add(count == termPostings.length ? termPostings : Arrays.copyOf(termPostings, count));
+                verseFrequencies.add(occurrences.getVerseCount());
+            }
+        }
+
+        // verses are scored as documents of the index were, counting only the verses tagged with strong numbers
+        final int taggedVerses = tagged.cardinality();
+        final List<Float> idfs = new ArrayList<Float>(verseFrequencies.size());
+        for (final Integer verseFrequency : verseFrequencies) {
+            idfs.add((float) (Math.log(taggedVerses / (double) (verseFrequency + 1)) + 1.0));
+        }
+
+        final int[] verseOrdinals = new int[verseCount];
+        for (int ii = 0; ii < verseCount; ii++) {
+            verseOrdinals[ii] = ii;
+        }
+        writeFile(file, concordance.getIndexVersion(), verseCount,
+                relate(verseCount, verseOrdinals, verseLengths, postings, idfs, verseCount, maxRelated));
+    }
+
+    /**
+     * Scores every document against every other document sharing its significant strong numbers
+     *
+     * @param maxDoc      the number of documents
+     * @param docOrdinals the ordinal of the verse of each document
+     * @param docLengths  the number of strong numbers in each document
+     * @param postings    the documents and frequencies of each significant strong number
+     * @param idfs        the inverse document frequency of each significant strong number
+     * @param verseCount  the number of verses in the versification
+     * @param maxRelated  the number of related verses to keep for each verse
+     * @return the ordinals and scores of the related verses of each verse, the most related first
+     */
+    private static int[][] relate(final int maxDoc, final int[] docOrdinals, final int[] docLengths,
+                                  final List<int[]> postings, final List<Float> idfs, final int verseCount,
+                                  final int maxRelated) {
+        // the significant strong numbers of each document
+        final int[] docTermOffsets = new int[maxDoc + 1];
+        for (final int[] termPostings : postings) {
+            for (int ii = 0; ii < termPostings.length; ii += 2) {
+                docTermOffsets[termPostings[ii] + 1]++;
+            }
+        }
+        for (int ii = 0; ii < maxDoc; ii++) {
+            docTermOffsets[ii + 1] += docTermOffsets[ii];
+        }
+
+        final int[] docTerms = new int[docTermOffsets[maxDoc]];
+        final int[] next = Arrays.copyOf(docTermOffsets, maxDoc);
+        for (int term = 0; term < postings.size(); term++) {
+            final int[] termPostings = postings.get(term);
+            for (int ii = 0; ii < termPostings.length; ii += 2) {
+                docTerms[next[termPostings[ii]]++] = term;
+            }
+        }
+
+        final int[][] related = new int[verseCount][];
+        final float[] scores = new float[maxDoc];
+        final int[] shared = new int[maxDoc];
+        final int[] touched = new int[maxDoc];
+        for (int doc = 0; doc < maxDoc; doc++) {
+            final int ordinal = docOrdinals[doc];
+            final int queryTerms = docTermOffsets[doc + 1] - docTermOffsets[doc];
+            if (ordinal < 0 || ordinal >= verseCount || queryTerms < MIN_SHARED_STRONGS) {
+                continue;
+            }
+
+            int touchedCount = 0;
+            for (int ii = docTermOffsets[doc]; ii < docTermOffsets[doc + 1]; ii++) {
+                final int[] termPostings = postings.get(docTerms[ii]);
+                final float idf = idfs.get(docTerms[ii]);
+                for (int jj = 0; jj < termPostings.length; jj += 2) {
+                    final int other = termPostings[jj];
+                    if (shared[other]++ == 0) {
+                        touched[touchedCount++] = other;
+                    }
+                    scores[other] += (float) Math.sqrt(termPostings[jj + 1]) * idf * idf;
+                }
+            }
+
+            related[ordinal] = keepMostRelated(docOrdinals, docLengths, scores, shared, touched, touchedCount,
+                    queryTerms, maxRelated);
+            for (int ii = 0; ii < touchedCount; ii++) {
+                scores[touched[ii]] = 0;
+                shared[touched[ii]] = 0;
+            }
+        }
+        return related;
+    }
+
+    /**
+     * @param docOrdinals  the ordinal of the verse of each document
+     * @param docLengths   the number of strong numbers in each document
+     * @param scores       the score of each document
+     * @param shared       the number of strong numbers each document shares with the verse
+     * @param touched      the documents sharing strong numbers with the verse
+     * @param touchedCount the number of documents sharing strong numbers with the verse
+     * @param queryTerms   the number of significant strong numbers in the verse
+     * @param maxRelated   the number of related verses to keep
+     * @return the ordinals and scores of the related verses, the most related first
+     */
+    private static int[] keepMostRelated(final int[] docOrdinals, final int[] docLengths, final float[] scores,
+                                         final int[] shared, final int[] touched, final int touchedCount,
+                                         final int queryTerms, final int maxRelated) {
+        // a min-heap of the best documents so far
+        final int[] heap = new int[maxRelated];
+        int heapSize = 0;
+        for (int ii = 0; ii < touchedCount; ii++) {
+            final int doc = touched[ii];
+            if (shared[doc] < MIN_SHARED_STRONGS || docOrdinals[doc] < 0) {
+                continue;
+            }
+
+            scores[doc] *= shared[doc] / (float) queryTerms / (float) Math.sqrt(docLengths[doc]);
+            if (heapSize < maxRelated) {
+                heap[heapSize] = doc;
+                siftUp(heap, heapSize++, scores);
+            } else if (scores[doc] > scores[heap[0]]) {
+                heap[0] = doc;
+                siftDown(heap, heapSize, scores);
+            }
+        }
+
+        final int[] best = new int[heapSize * 2];
+        for (int ii = heapSize - 1; ii >= 0; ii--) {
+            best[ii * 2] = docOrdinals[heap[0]];
+            best[ii * 2 + 1] = Float.floatToIntBits(scores[heap[0]]);
+            heap[0] = heap[ii];
+            siftDown(heap, ii, scores);
+        }
+        return best;
+    }
+
+    /**
+     * @param heap     the heap of documents
+     * @param position the position of the document just added
+     * @param scores   the score of each document
+     */
+    private static void siftUp(final int[] heap, final int position, final float[] scores) {
+        int child = position;
+        while (child > 0) {
+            final int parent = (child - 1) >>> 1;
+            if (scores[heap[parent]] <= scores[heap[child]]) {
+                return;
+            }
+            swap(heap, parent, child);
+            child = parent;
+        }
+    }
+
+    /**
+     * @param heap   the heap of documents, whose worst document has just been replaced
+     * @param size   the size of the heap
+     * @param scores the score of each document
+     */
+    private static void siftDown(final int[] heap, final int size, final float[] scores) {
+        int parent = 0;
+        while (true) {
+            final int left = parent * 2 + 1;
+            if (left >= size) {
+                return;
+            }
+
+            final int right = left + 1;
+            final int worst = right < size && scores[heap[right]] < scores[heap[left]] ? right : left;
+            if (scores[heap[parent]] <= scores[heap[worst]]) {
+                return;
+            }
+            swap(heap, parent, worst);
+            parent = worst;
+        }
+    }
+
+    /**
+     * @param heap   the heap
+     * @param first  the first position
+     * @param second the second position
+     */
+    private static void swap(final int[] heap, final int first, final int second) {
+        final int value = heap[first];
+        heap[first] = heap[second];
+        heap[second] = value;
+    }
+
+    /**
+     * @param file         the file to write
+     * @param indexVersion the version of the index
+     * @param verseCount   the number of verses in the versification
+     * @param related      the ordinals and scores of the related verses of each verse
+     */
+    private static void writeFile(final File file, final long indexVersion, final int verseCount,
+                                  final int[][] related) {
+        MappedFiles.write(file, MAGIC, FORMAT_VERSION, new MappedFiles.Contents() {
+            @Override
+            public void write(final DataOutputStream out) throws IOException {
+                out.writeLong(indexVersion);
+                out.writeInt(verseCount);
+
+                int offset = 0;
+                for (final int[] verses : related) {
+                    out.writeInt(offset);
+                    offset += verses == null ? 0 : verses.length / 2;
+                }
+                out.writeInt(offset);
+
+                for (final int[] verses : related) {
+                    if (verses != null) {
+                        for (final int value : verses) {
+                            out.writeInt(value);
+                        }
+                    }
+                }
+            }
+        });
+    }
+}
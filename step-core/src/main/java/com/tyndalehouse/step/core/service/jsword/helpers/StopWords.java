@@ -0,0 +1,135 @@
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import java.util.Arrays;
+
+import com.tyndalehouse.step.core.utils.StringUtils;
+
+/**
+ * The stop words of a language, folded to upper case and stripped of their accents. The words are held in an
+ * open-addressing table of characters, so that the words of a text can be looked up straight from the text, without
+ * creating a string for each of them. A set is immutable once created, and can be shared between threads.
+ *
+ * @author chrisburrell
+ */
+public final class StopWords {
+    private final char[][] words;
+    private final int mask;
+    private final int fingerprint;
+
+    /**
+     * @param words       the table of words
+     * @param fingerprint identifies the set of words
+     */
+    private StopWords(final char[][] words, final int fingerprint) {
+        this.words = words;
+        this.mask = words.length - 1;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * @param wordList the words, separated by spaces, or null for no stop words
+     * @return the stop words
+     */
+    public static StopWords create(final String wordList) {
+        final String[] splitWords = StringUtils.split(wordList);
+        int capacity = 16;
+        while (capacity < splitWords.length * 2) {
+            capacity <<= 1;
+        }
+
+        final char[][] table = new char[capacity][];
+        int fingerprint = 0;
+        for (final String word : splitWords) {
+            final char[] folded = fold(word);
+            final int hash = hash(folded, 0, folded.length);
+            int slot = hash & (capacity - 1);
+            while (table[slot] != null && !matches(table[slot], folded, 0, folded.length)) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            if (table[slot] == null) {
+                fingerprint += hash;
+            }
+            table[slot] = folded;
+        }
+        return new StopWords(table, fingerprint * 31 + table.length);
+    }
+
+    /**
+     * @return identifies the set of words, so that counts that left them out can be told apart from counts that
+     * left out other words
+     */
+    public int getFingerprint() {
+        return this.fingerprint;
+    }
+
+    /**
+     * @param text  the text
+     * @param start the start of the word
+     * @param end   the end of the word, exclusive
+     * @return true if the word, once folded, is a stop word
+     */
+    public boolean contains(final char[] text, final int start, final int end) {
+        int slot = hash(text, start, end) & this.mask;
+        while (this.words[slot] != null) {
+            if (matches(this.words[slot], text, start, end)) {
+                return true;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        return false;
+    }
+
+    /**
+     * @param word the word
+     * @return the folded characters of the word
+     */
+    private static char[] fold(final String word) {
+        final char[] folded = new char[word.length()];
+        int length = 0;
+        for (int ii = 0; ii < word.length(); ii++) {
+            final char c = TextStatsTokenizer.fold(word.charAt(ii));
+            if (c != TextStatsTokenizer.DROPPED) {
+                folded[length++] = c;
+            }
+        }
+        return length == folded.length ? folded : Arrays.copyOf(folded, length);
+    }
+
+    /**
+     * @param text  the text
+     * @param start the start of the word
+     * @param end   the end of the word, exclusive
+     * @return the hash of the folded word
+     */
+    private static int hash(final char[] text, final int start, final int end) {
+        int hash = 0;
+        for (int ii = start; ii < end; ii++) {
+            final char c = TextStatsTokenizer.fold(text[ii]);
+            if (c != TextStatsTokenizer.DROPPED) {
+                hash = 31 * hash + c;
+            }
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @param folded a folded stop word
+     * @param text   the text
+     * @param start  the start of the word
+     * @param end    the end of the word, exclusive
+     * @return true if the word, once folded, is the stop word
+     */
+    private static boolean matches(final char[] folded, final char[] text, final int start, final int end) {
+        int position = 0;
+        for (int ii = start; ii < end; ii++) {
+            final char c = TextStatsTokenizer.fold(text[ii]);
+            if (c == TextStatsTokenizer.DROPPED) {
+                continue;
+            }
+            if (position == folded.length || folded[position++] != c) {
+                return false;
+            }
+        }
+        return position == folded.length;
+    }
+}
@@ -0,0 +1,207 @@
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.crosswire.jsword.index.lucene.LuceneIndex;
+import org.crosswire.jsword.passage.NoSuchVerseException;
+import org.crosswire.jsword.passage.VerseFactory;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+
+import com.tyndalehouse.step.core.data.EntityDoc;
+import com.tyndalehouse.step.core.service.StrongAugmentationService;
+import com.tyndalehouse.step.core.utils.StringUtils;
+
+/**
+ * The number of occurrences of each strong number in each book of a version, and in the whole version. The matrix
+ * is built once from the version's concordance and written to a file, which is then memory-mapped, so that the
+ * counts of common words don't require walking through thousands of verses.
+ * <p/>
+ * Augmented strong numbers have rows of their own, counting only the verses the augmented strong applies to.
+ *
+ * @author chrisburrell
+ */
+public final class StrongCountMatrix {
+    private static final int MAGIC = 0x5354434D;
+    private static final int FORMAT_VERSION = 2;
+    private static final int BOOKS = BibleBook.values().length;
+
+    private final long indexVersion;
+    private final Map<String, Integer> rows;
+    private final IntBuffer counts;
+    private final int rowLength;
+
+    /**
+     * @param indexVersion the version of the Lucene index the counts were built from
+     * @param rows         the row of each strong number
+     * @param counts       the counts, the whole bible first, then each book
+     * @param rowLength    the number of counts per row
+     */
+    private StrongCountMatrix(final long indexVersion, final Map<String, Integer> rows, final IntBuffer counts,
+                              final int rowLength) {
+        this.indexVersion = indexVersion;
+        this.rows = rows;
+        this.counts = counts;
+        this.rowLength = rowLength;
+    }
+
+    /**
+     * @return the version of the Lucene index the counts were built from
+     */
+    public long getIndexVersion() {
+        return this.indexVersion;
+    }
+
+    /**
+     * @param strong the strong number, as indexed, or augmented
+     * @return the number of occurrences in the version
+     */
+    public int getBibleCount(final String strong) {
+        final Integer row = this.rows.get(strong);
+        return row == null ? 0 : this.counts.get(row * this.rowLength);
+    }
+
+    /**
+     * @param strong the strong number, as indexed, or augmented
+     * @param book   the book
+     * @return the number of occurrences in the book
+     */
+    public int getBookCount(final String strong, final BibleBook book) {
+        final Integer row = this.rows.get(strong);
+        if (row == null || book == null) {
+            return 0;
+        }
+        return this.counts.get(row * this.rowLength + 1 + book.ordinal());
+    }
+
+    /**
+     * Reads a matrix, mapping its counts into memory
+     *
+     * @param file the file written by
+     *             {@link #write(File, Concordance, Versification, EntityDoc[], StrongAugmentationService)}
+     * @return the matrix, or null if the file was written in another format
+     */
+    public static StrongCountMatrix read(final File file) {
+        final MappedByteBuffer buffer = MappedFiles.map(file, MAGIC, FORMAT_VERSION);
+        if (buffer == null) {
+            return null;
+        }
+
+        final long indexVersion = buffer.getLong();
+        final int rowLength = buffer.getInt();
+        final int rowCount = buffer.getInt();
+        if (rowLength != BOOKS + 1) {
+            // the number of books has changed since
+            return null;
+        }
+
+        final Map<String, Integer> rows = new HashMap<String, Integer>(rowCount * 2);
+        for (int ii = 0; ii < rowCount; ii++) {
+            rows.put(MappedFiles.readString(buffer), ii);
+        }
+
+        MappedFiles.align(buffer);
+        return new StrongCountMatrix(indexVersion, rows, buffer.slice().asIntBuffer(), rowLength);
+    }
+
+    /**
+     * Counts every strong number in the version's concordance, writing the matrix to a temporary file first so that
+     * readers never see a half-written matrix
+     *
+     * @param file             the file to write
+     * @param concordance      the concordance of the version
+     * @param v11n             the versification of the version
+     * @param augmentedStrongs the augmented strong numbers, with the verses they apply to
+     * @param augmentation     the service reducing augmented strong numbers to the indexed strong number
+     */
+    public static void write(final File file, final Concordance concordance, final Versification v11n,
+                             final EntityDoc[] augmentedStrongs, final StrongAugmentationService augmentation) {
+        final List<String> keys = new ArrayList<String>(16384);
+        final List<int[]> rowCounts = new ArrayList<int[]>(16384);
+        for (final String strong : concordance.getTerms(LuceneIndex.FIELD_STRONG)) {
+            keys.add(strong);
+            rowCounts.add(count(concordance.getOccurrences(LuceneIndex.FIELD_STRONG, strong), v11n, null));
+        }
+
+        for (final EntityDoc augmented : augmentedStrongs) {
+            final String augmentedStrong = augmented.get("augmentedStrong");
+            final String references = augmented.get("references");
+            if (StringUtils.isBlank(augmentedStrong) || references == null) {
+                continue;
+            }
+
+            final BitSet verses = new BitSet(v11n.maxOrdinal() + 1);
+            for (final String verse : StringUtils.split(references)) {
+                try {
+                    verses.set(VerseFactory.fromString(v11n, verse).getOrdinal());
+                } catch (final NoSuchVerseException ex) {
+                    // not a verse of this versification, so never counted
+                }
+            }
+            keys.add(augmentedStrong);
+            rowCounts.add(count(concordance.getOccurrences(LuceneIndex.FIELD_STRONG,
+                    augmentation.reduce(augmentedStrong)), v11n, verses));
+        }
+
+        writeFile(file, concordance.getIndexVersion(), keys, rowCounts);
+    }
+
+    /**
+     * @param occurrences the occurrences of a strong number
+     * @param v11n        the versification of the version
+     * @param verses      the ordinals of the only verses to count, or null for all verses
+     * @return the counts for the bible, then each book
+     */
+    private static int[] count(final Concordance.Occurrences occurrences, final Versification v11n,
+                               final BitSet verses) {
+        final int[] row = new int[BOOKS + 1];
+        while (occurrences.nextVerse()) {
+            final int verse = occurrences.getVerse();
+            if (verses != null && !verses.get(verse)) {
+                continue;
+            }
+
+            final int freq = occurrences.getFrequency();
+            row[0] += freq;
+            row[1 + v11n.getBook(verse).ordinal()] += freq;
+        }
+        return row;
+    }
+
+    /**
+     * @param file         the file to write
+     * @param indexVersion the version of the index
+     * @param keys         the strong numbers
+     * @param rowCounts    the counts of each strong number
+     */
+    private static void writeFile(final File file, final long indexVersion, final List<String> keys,
+                                  final List<int[]> rowCounts) {
+        MappedFiles.write(file, MAGIC, FORMAT_VERSION, new MappedFiles.Contents() {
+            @Override
+            public void write(final DataOutputStream out) throws IOException {
+                out.writeLong(indexVersion);
+                out.writeInt(BOOKS + 1);
+                out.writeInt(keys.size());
+                for (final String key : keys) {
+                    MappedFiles.writeString(out, key);
+                }
+
+                MappedFiles.align(out);
+                for (final int[] row : rowCounts) {
+                    for (final int count : row) {
+                        out.writeInt(count);
+                    }
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,212 @@
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import java.text.Normalizer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts the words of a text for the text statistics, in a single pass over its characters. Words are separated by
+ * spaces and punctuation, and are counted as they appear in the text. A word is left out if, once folded to upper
+ * case and stripped of its accents, it is one of the stop words.
+ * <p/>
+ * Folding goes through a table built once for every character, and words are counted in an open-addressing table
+ * that refers back to the text, so that a string is only created for each distinct word, rather than for each
+ * occurrence.
+ *
+ * @author chrisburrell
+ */
+public final class TextStatsTokenizer {
+    /**
+     * the folded value of characters that are dropped when folding, such as combining accents
+     */
+    static final char DROPPED = 0;
+    private static final String DELIMITERS = ",./<>?!;:'[]{}\"-\u2013 ()";
+    private static final boolean[] IS_DELIMITER = new boolean['\u2013' + 1];
+    private static final char[] FOLDED = new char[Character.MAX_VALUE + 1];
+    private static final int INITIAL_CAPACITY = 256;
+
+    static {
+        for (int ii = 0; ii < DELIMITERS.length(); ii++) {
+            IS_DELIMITER[DELIMITERS.charAt(ii)] = true;
+        }
+
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            FOLDED[c] = computeFold((char) c);
+        }
+    }
+
+    private final char[] text;
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int[] counts = new int[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * @param text the text whose words are counted
+     */
+    private TextStatsTokenizer(final char[] text) {
+        this.text = text;
+    }
+
+    /**
+     * @param text      the text
+     * @param stopWords the words to leave out
+     * @return the number of occurrences of each word
+     */
+    public static Map<String, Integer> countWords(final String text, final StopWords stopWords) {
+        final char[] chars = text.toCharArray();
+        final TextStatsTokenizer tokenizer = new TextStatsTokenizer(chars);
+
+        int start = -1;
+        for (int ii = 0; ii <= chars.length; ii++) {
+            if (ii == chars.length || isDelimiter(chars[ii])) {
+                if (start != -1 && !stopWords.contains(chars, start, ii)) {
+                    tokenizer.add(start, ii);
+                }
+                start = -1;
+            } else if (start == -1) {
+                start = ii;
+            }
+        }
+        return tokenizer.toMap();
+    }
+
+    /**
+     * @param c a character
+     * @return the character in upper case, without its accents, or {@link #DROPPED} if it is an accent itself
+     */
+    static char fold(final char c) {
+        return FOLDED[c];
+    }
+
+    /**
+     * @param c a character
+     * @return true if the character separates words
+     */
+    private static boolean isDelimiter(final char c) {
+        return c < IS_DELIMITER.length && IS_DELIMITER[c];
+    }
+
+    /**
+     * @param c a character
+     * @return the character in upper case, decomposed and stripped of its combining marks, if that leaves a single
+     * character
+     */
+    private static char computeFold(final char c) {
+        if (c >= '\u0300' && c <= '\u036f' || c >= '\u2e00' && c <= '\u2e3b') {
+            return DROPPED;
+        }
+
+        final char upper = Character.toUpperCase(c);
+        if (upper < 0x80 || Character.isSurrogate(upper)) {
+            return upper;
+        }
+
+        final String decomposed = Normalizer.normalize(String.valueOf(upper), Normalizer.Form.NFD);
+        char base = DROPPED;
+        for (int ii = 0; ii < decomposed.length(); ii++) {
+            final char d = decomposed.charAt(ii);
+            if (d >= '\u0300' && d <= '\u036f') {
+                continue;
+            }
+            if (base != DROPPED) {
+                // decomposes to several letters, so leave it as it is
+                return upper;
+            }
+            base = d;
+        }
+        return base == DROPPED ? upper : base;
+    }
+
+    /**
+     * Counts an occurrence of a word
+     *
+     * @param start the start of the word in the text
+     * @param end   the end of the word, exclusive
+     */
+    private void add(final int start, final int end) {
+        final int length = end - start;
+        int hash = 0;
+        for (int ii = start; ii < end; ii++) {
+            hash = 31 * hash + this.text[ii];
+        }
+        hash ^= hash >>> 16;
+
+        final int mask = this.starts.length - 1;
+        int slot = hash & mask;
+        while (this.counts[slot] != 0) {
+            if (this.hashes[slot] == hash && this.lengths[slot] == length && sameWord(this.starts[slot], start, length)) {
+                this.counts[slot]++;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        this.starts[slot] = start;
+        this.lengths[slot] = length;
+        this.hashes[slot] = hash;
+        this.counts[slot] = 1;
+        if (++this.size * 2 > this.starts.length) {
+            resize();
+        }
+    }
+
+    /**
+     * @param first  the start of the first word
+     * @param second the start of the second word
+     * @param length the length of both words
+     * @return true if the words are the same
+     */
+    private boolean sameWord(final int first, final int second, final int length) {
+        for (int ii = 0; ii < length; ii++) {
+            if (this.text[first + ii] != this.text[second + ii]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Doubles the size of the table
+     */
+    private void resize() {
+        final int[] oldStarts = this.starts;
+        final int[] oldLengths = this.lengths;
+        final int[] oldHashes = this.hashes;
+        final int[] oldCounts = this.counts;
+        final int capacity = oldStarts.length * 2;
+        this.starts = new int[capacity];
+        this.lengths = new int[capacity];
+        this.hashes = new int[capacity];
+        this.counts = new int[capacity];
+
+        for (int ii = 0; ii < oldStarts.length; ii++) {
+            if (oldCounts[ii] == 0) {
+                continue;
+            }
+
+            int slot = oldHashes[ii] & (capacity - 1);
+            while (this.counts[slot] != 0) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            this.starts[slot] = oldStarts[ii];
+            this.lengths[slot] = oldLengths[ii];
+            this.hashes[slot] = oldHashes[ii];
+            this.counts[slot] = oldCounts[ii];
+        }
+    }
+
+    /**
+     * @return the words and their counts
+     */
+    private Map<String, Integer> toMap() {
+        final Map<String, Integer> words = new HashMap<String, Integer>(this.size * 4 / 3 + 1);
+        for (int ii = 0; ii < this.starts.length; ii++) {
+            if (this.counts[ii] != 0) {
+                words.put(new String(this.text, this.starts[ii], this.lengths[ii]), this.counts[ii]);
+            }
+        }
+        return words;
+    }
+}
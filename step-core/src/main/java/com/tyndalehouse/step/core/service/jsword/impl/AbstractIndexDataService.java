@@ -0,0 +1,263 @@
+package com.tyndalehouse.step.core.service.jsword.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.lucene.index.IndexReader;
+import org.crosswire.common.util.CWProject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.service.helpers.BackgroundBuilder;
+import com.tyndalehouse.step.core.service.jsword.JSwordSearchService;
+
+/**
+ * Keeps data precomputed from the index of each version, such as its concordance. As JSword creates indexes in the
+ * background, the data is built the first time it is asked for after its index is created, and written to disk,
+ * named after the version of the index, so that it is built only once for each index, and so that a file mapped into
+ * memory is never overwritten.
+ * <p/>
+ * Requests never wait for a build: the data is built by the {@link BackgroundBuilder}, and requests are told it isn't
+ * available until it is. Looking up data that is available takes no lock. A build that fails is not tried again
+ * until the index is re-created.
+ *
+ * @param <T> the type of the data
+ * @author chrisburrell
+ */
+public abstract class AbstractIndexDataService<T> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AbstractIndexDataService.class);
+    private final JSwordSearchService jSwordSearchService;
+    private final BackgroundBuilder builder;
+    private final String path;
+    private final String extension;
+    private final ConcurrentMap<String, T> data = new ConcurrentHashMap<String, T>();
+    private final ConcurrentMap<String, Long> failedIndexVersions = new ConcurrentHashMap<String, Long>();
+    private final ConcurrentMap<String, FutureTask<T>> builds = new ConcurrentHashMap<String, FutureTask<T>>();
+
+    /**
+     * @param jSwordSearchService the service giving access to the versions' indexes
+     * @param builder             the builder of precomputed data
+     * @param path                the directory holding the data, relative to the STEP home directory
+     * @param extension           the extension of the files holding the data
+     */
+    protected AbstractIndexDataService(final JSwordSearchService jSwordSearchService,
+                                       final BackgroundBuilder builder, final String path,
+                                       final String extension) {
+        this.jSwordSearchService = jSwordSearchService;
+        this.builder = builder;
+        this.path = path;
+        this.extension = extension;
+    }
+
+    /**
+     * @param data the data
+     * @return the version of the index the data was built from
+     */
+    protected abstract long getIndexVersion(T data);
+
+    /**
+     * @param file the file holding the data
+     * @return the data, or null if the file was written in another format
+     */
+    protected abstract T read(File file);
+
+    /**
+     * Builds the data, writing it to the file
+     *
+     * @param version the version
+     * @param reader  the reader of the version's index
+     * @param file    the file to write
+     */
+    protected abstract void write(String version, IndexReader reader, File file);
+
+    /**
+     * @param version the version
+     * @return the data, or null if it isn't available yet, in which case it is built in the background
+     */
+    protected T get(final String version) {
+        return get(version, false);
+    }
+
+    /**
+     * Gets the data for background jobs and for builds depending on it. The data is built in the calling thread,
+     * unless it is being built already, in which case the calling thread waits for it.
+     *
+     * @param version the version
+     * @return the data, or null if it can't be built
+     */
+    protected T await(final String version) {
+        return get(version, true);
+    }
+
+    /**
+     * @param version the version
+     * @param wait    true to wait for the data to be built
+     * @return the data, or null if it isn't available
+     */
+    private T get(final String version, final boolean wait) {
+        final long indexVersion;
+        try {
+            indexVersion = getReader(version).getVersion();
+        } catch (final StepInternalException ex) {
+            LOGGER.warn("Unable to read the index of [{}]: {}", version, ex.getMessage());
+            return null;
+        }
+
+        final T current = this.data.get(version);
+        if (current != null && getIndexVersion(current) == indexVersion) {
+            return current;
+        }
+
+        final Long failed = this.failedIndexVersions.get(version);
+        if (failed != null && failed == indexVersion) {
+            return null;
+        }
+
+        final String name = version + '-' + indexVersion + this.extension;
+        FutureTask<T> build = this.builds.get(name);
+        if (build == null) {
+            // data built before the server restarted is only mapped, which is quick enough to do here
+            final T existing = readExisting(new File(getDirectory(), name), indexVersion);
+            if (existing != null) {
+                this.data.put(version, existing);
+                return existing;
+            }
+
+            final FutureTask<T> created = new FutureTask<T>(new Callable<T>() {
+                @Override
+                public T call() {
+                    return build(version, name);
+                }
+            });
+            build = this.builds.putIfAbsent(name, created);
+            if (build == null) {
+                build = created;
+                if (!wait) {
+                    this.builder.submit(created);
+                }
+            }
+        }
+
+        if (!wait) {
+            return null;
+        }
+
+        // does nothing if the build has started elsewhere
+        build.run();
+        try {
+            return build.get();
+        } catch (final ExecutionException ex) {
+            throw new StepInternalException("Unable to build " + name, ex.getCause());
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Builds the data, recording the version of the index should the build fail
+     *
+     * @param version the version
+     * @param name    the name of the build
+     * @return the data, or null if it can't be built
+     */
+    private T build(final String version, final String name) {
+        long indexVersion = -1;
+        try {
+            final IndexReader reader = getReader(version);
+            indexVersion = reader.getVersion();
+
+            final File directory = getDirectory();
+            final File file = new File(directory, version + '-' + indexVersion + this.extension);
+            T built = readExisting(file, indexVersion);
+            if (built == null) {
+                final long start = System.currentTimeMillis();
+                write(version, reader, file);
+                LOGGER.info("Built [{}] in [{}] ms ({} KB)", new Object[]{
+                        file.getName(), System.currentTimeMillis() - start, file.length() / 1024});
+                deleteOthers(directory, version, file);
+
+                built = read(file);
+                if (built == null) {
+                    throw new StepInternalException("Unable to read back " + file);
+                }
+            }
+
+            this.data.put(version, built);
+            this.failedIndexVersions.remove(version);
+            return built;
+        } catch (final RuntimeException ex) {
+            this.failedIndexVersions.put(version, indexVersion);
+            LOGGER.error("Unable to build [{}], which won't be tried again until the index changes", name, ex);
+            return null;
+        } finally {
+            this.builds.remove(name);
+        }
+    }
+
+    /**
+     * @param file         the file holding the data
+     * @param indexVersion the version of the index
+     * @return the data, or null if it hasn't been built from this index
+     */
+    private T readExisting(final File file, final long indexVersion) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        try {
+            final T existing = read(file);
+            return existing != null && getIndexVersion(existing) == indexVersion ? existing : null;
+        } catch (final StepInternalException ex) {
+            LOGGER.warn("Unable to read [{}], which will be built again", file, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Deletes data built from previous indexes, leaving files still mapped into memory for the next restart
+     *
+     * @param directory the directory holding the data
+     * @param version   the version
+     * @param current   the current data
+     */
+    private void deleteOthers(final File directory, final String version, final File current) {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        final String prefix = version + '-';
+        for (final File f : files) {
+            final String name = f.getName();
+            if (name.startsWith(prefix) && name.endsWith(this.extension) && !f.equals(current) && !f.delete()) {
+                LOGGER.debug("Unable to delete [{}], it may still be in use", f);
+            }
+        }
+    }
+
+    /**
+     * @param version the version
+     * @return the reader of the version's index
+     */
+    private IndexReader getReader(final String version) {
+        return this.jSwordSearchService.getIndexSearcher(version).getIndexReader();
+    }
+
+    /**
+     * @return the directory holding the data
+     */
+    protected File getDirectory() {
+        try {
+            return new File(CWProject.instance().getWriteableProjectSubdir(this.path, true));
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to create directory " + this.path, e);
+        }
+    }
+}
@@ -37,10 +37,18 @@ import static com.tyndalehouse.step.core.utils.StringUtils.split;
 import javax.inject.Inject;
 import javax.inject.Named;
 
+import com.tyndalehouse.step.core.models.stats.Collocation;
+import com.tyndalehouse.step.core.models.stats.CollocationMeasure;
 import com.tyndalehouse.step.core.models.stats.ScopeType;
 import com.tyndalehouse.step.core.service.StrongAugmentationService;
+import com.tyndalehouse.step.core.service.jsword.JSwordCollocationService;
 import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
 import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
+import com.tyndalehouse.step.core.service.jsword.JSwordWordStatsService;
+import com.tyndalehouse.step.core.service.jsword.helpers.ChapterCounts;
+import com.tyndalehouse.step.core.service.jsword.helpers.CollocationMatrix;
+import com.tyndalehouse.step.core.service.jsword.helpers.StopWords;
+import com.tyndalehouse.step.core.service.jsword.helpers.TextStatsTokenizer;
 import com.tyndalehouse.step.core.utils.StringConversionUtils;
 import com.tyndalehouse.step.core.utils.StringUtils;
 import org.crosswire.jsword.book.Book;
@@ -55,6 +63,8 @@ import com.tyndalehouse.step.core.service.jsword.JSwordAnalysisService;
 import org.crosswire.jsword.versification.Versification;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * The Class JSwordAnalysisServiceImpl.
@@ -62,29 +72,40 @@ import java.util.*;
  * @author chrisburrell
  */
 public class JSwordAnalysisServiceImpl implements JSwordAnalysisService {
-    static final String WORD_SPLIT = "[,./<>?!;:'\\[\\]\\{\\}!\"\\-\u2013 ()]+";
     private static final String LANGUAGE_STOP_LIST = "analysis.stopWords.%s";
     private final JSwordVersificationService versification;
-    private final Map<String, Set<String>> stopWords = new HashMap<String, Set<String>>(32);
+    private final ConcurrentMap<String, StopWords> stopWords = new ConcurrentHashMap<String, StopWords>(32);
     private final Set<String> stopStrongs;
     private final Versification strongsV11n;
     private final Book strongsBook;
     private final Properties stopWordsProperties;
     private StrongAugmentationService strongAugmentationService;
+    private final JSwordWordStatsService wordStatsService;
+    private final JSwordCollocationService collocationService;
+    private final int maxWords;
 
     /**
      * Instantiates a new jsword analysis service impl.
      *
-     * @param versification the versification
+     * @param versification    the versification
+     * @param wordStatsService the precomputed counts of each chapter
+     * @param collocationService the precomputed collocations of each tagged version
+     * @param maxWords         the number of words below which all words of a passage are kept
      */
     @Inject
     public JSwordAnalysisServiceImpl(final JSwordVersificationService versification,
                                      @Named("StepCoreProperties") final Properties stopWordsProperties,
                                      @Named("analysis.stopStrongs") final String configuredStopStrongs,
-                                     final StrongAugmentationService strongAugmentationService) {
+                                     final StrongAugmentationService strongAugmentationService,
+                                     final JSwordWordStatsService wordStatsService,
+                                     final JSwordCollocationService collocationService,
+                                     @Named("analysis.maxWords") final int maxWords) {
         this.versification = versification;
         this.stopWordsProperties = stopWordsProperties;
         this.strongAugmentationService = strongAugmentationService;
+        this.wordStatsService = wordStatsService;
+        this.collocationService = collocationService;
+        this.maxWords = maxWords;
         stopStrongs = StringUtils.createSet(configuredStopStrongs);
         strongsBook = this.versification.getBookFromVersion(JSwordPassageService.REFERENCE_BOOK);
         strongsV11n = this.versification.getVersificationForVersion(strongsBook);
@@ -95,6 +116,13 @@ public class JSwordAnalysisServiceImpl implements JSwordAnalysisService {
         try {
             //change the reference to match what we need
             final BookData expandedBook = getExpandedBookData(reference, scopeType, strongsV11n, strongsBook);
+            if (scopeType != ScopeType.PASSAGE) {
+                final PassageStat precomputed = getPrecomputedStats(
+                        this.wordStatsService.getStrongCounts(), expandedBook.getKey(), this.stopStrongs);
+                if (precomputed != null) {
+                    return precomputed;
+                }
+            }
             return getStatsFromStrongArray(expandedBook.getFirstBook().getInitials(), expandedBook.getKey(), split(OSISUtil.getStrongsNumbers(expandedBook.getOsisFragment())));
         } catch (final BookException e) {
             throw new StepInternalException("Unable to read passage text", e);
@@ -107,46 +135,84 @@ public class JSwordAnalysisServiceImpl implements JSwordAnalysisService {
             final Book book = this.versification.getBookFromVersion(version);
             final Versification av11n = this.versification.getVersificationForVersion(book);
             final BookData bookData = getExpandedBookData(reference, scopeType, av11n, book);
+            final StopWords languageStopList = getLanguageStopList(book);
+            if (scopeType != ScopeType.PASSAGE) {
+                final PassageStat precomputed = getPrecomputedStats(
+                        this.wordStatsService.getTextCounts(version, languageStopList), bookData.getKey(),
+                        Collections.<String>emptySet());
+                if (precomputed != null) {
+                    return precomputed;
+                }
+            }
 
             final String canonicalText = OSISUtil.getCanonicalText(bookData.getOsisFragment());
-            final String[] words = split(canonicalText, WORD_SPLIT);
-
-            Set<String> languageStopWords = getLanguageStopList(book);
 
             final PassageStat stat = new PassageStat();
-            for (final String word : words) {
-                //only add word if not in STOP list
-                if (!languageStopWords.contains(StringConversionUtils.unAccent(word.toUpperCase(), true))) {
-                    stat.addWord(word);
-                }
-            }
+            stat.setStats(TextStatsTokenizer.countWords(canonicalText, languageStopList));
             return stat;
         } catch (final BookException e) {
             throw new StepInternalException("Unable to read passage text", e);
         }
     }
 
+    @Override
+    public List<Collocation> getCollocations(final String version, final String strong, final Key reference,
+                                             final ScopeType scopeType, final CollocationMeasure measure,
+                                             final int window) {
+        final CollocationMatrix matrix = this.collocationService.getCollocations(version);
+        if (matrix == null) {
+            throw new StepInternalException("The collocations of " + version
+                    + " are not available yet, they are being built, please try again later");
+        }
+
+        BitSet scope = null;
+        if (reference != null) {
+            final Book book = this.versification.getBookFromVersion(version);
+            final Versification av11n = this.versification.getVersificationForVersion(book);
+            scope = getOrdinals(getExpandedBookData(reference, scopeType, av11n, book).getKey());
+        }
+        return matrix.getCollocations(StringConversionUtils.getStrongPaddedKey(strong), scope, window, measure,
+                Math.max(this.maxWords, 1), this.stopStrongs);
+    }
+
+    /**
+     * @param key the expanded key
+     * @return the ordinals of its verses
+     */
+    private BitSet getOrdinals(final Key key) {
+        final BitSet ordinals = new BitSet();
+        if (key instanceof VerseRange) {
+            final VerseRange range = (VerseRange) key;
+            ordinals.set(range.getStart().getOrdinal(), range.getEnd().getOrdinal() + 1);
+            return ordinals;
+        }
+
+        for (final Key k : key) {
+            if (k instanceof Verse) {
+                ordinals.set(((Verse) k).getOrdinal());
+            }
+        }
+        return ordinals;
+    }
+
     /**
      * Lazily obtains the stop list for the specific language of a book
      *
      * @param book the book that the viewer is looking at
      * @return the set of words that form part of the stop list
      */
-    private Set<String> getLanguageStopList(final Book book) {
-        String code = book.getLanguage().getCode();
-        Set<String> languageStopList = this.stopWords.get(code);
-        if (languageStopList == null) {
-            //only one language gets loaded at any one time
-            synchronized (this) {
-                languageStopList = this.stopWords.get(code);
-                if (languageStopList == null) {
-                    languageStopList = StringUtils.createSet(this.stopWordsProperties.getProperty(String.format(LANGUAGE_STOP_LIST, code.toLowerCase())), true);
-                    this.stopWords.put(code, languageStopList);
-                }
-            }
+    private StopWords getLanguageStopList(final Book book) {
+        final String code = book.getLanguage().getCode();
+        final StopWords languageStopList = this.stopWords.get(code);
+        if (languageStopList != null) {
+            return languageStopList;
         }
 
-        return languageStopList;
+        //the stop list is immutable, so it doesn't matter if two threads create it at the same time
+        final StopWords created = StopWords.create(this.stopWordsProperties.getProperty(
+                String.format(LANGUAGE_STOP_LIST, code.toLowerCase())));
+        final StopWords existing = this.stopWords.putIfAbsent(code, created);
+        return existing != null ? existing : created;
     }
 
 
@@ -229,6 +295,33 @@ public class JSwordAnalysisServiceImpl implements JSwordAnalysisService {
 
     }
 
+    /**
+     * Sums the precomputed counts of the chapters making up the expanded key, which for scopes other than the passage
+     * is always a range of whole chapters, keeping only the most frequent words.
+     *
+     * @param chapterStats the precomputed counts, or null if they are not available
+     * @param expandedKey  the expanded key
+     * @param excluded     the words to leave out, in upper case
+     * @return the stats, or null if the counts are not available
+     */
+    private PassageStat getPrecomputedStats(final ChapterCounts chapterStats, final Key expandedKey,
+                                            final Set<String> excluded) {
+        if (chapterStats == null || !(expandedKey instanceof VerseRange)) {
+            return null;
+        }
+
+        final VerseRange range = (VerseRange) expandedKey;
+        final int firstChapter = chapterStats.getChapterIndex(range.getStart().getBook(), range.getStart().getChapter());
+        final int lastChapter = chapterStats.getChapterIndex(range.getEnd().getBook(), range.getEnd().getChapter());
+        if (firstChapter == -1 || lastChapter < firstChapter) {
+            return null;
+        }
+
+        final PassageStat stat = new PassageStat();
+        stat.setStats(chapterStats.getTopCounts(firstChapter, lastChapter, Math.max(this.maxWords, 1), excluded));
+        return stat;
+    }
+
     /**
      * Gets the stats from word array, counting words one by one and using the {@link PassageStat} to do the
      * incrementing word by word
@@ -240,13 +333,10 @@ public class JSwordAnalysisServiceImpl implements JSwordAnalysisService {
         final PassageStat stat = new PassageStat();
         //slight annoyance that we are deserializing the key to re-serialise later
         final String ref = reference.getOsisRef();
-        for (final String unaugmentedWord : words) {
-            StrongAugmentationService.AugmentedStrongs strongs = this.strongAugmentationService.augment(version, ref, unaugmentedWord);
-            for(String word : strongs.getStrongList()) {
-                final String paddedStrongNumber = StringConversionUtils.getStrongPaddedKey(word);
-                if (!this.stopStrongs.contains(paddedStrongNumber.toUpperCase())) {
-                    stat.addWord(paddedStrongNumber);
-                }
+        for (final String word : this.strongAugmentationService.augmentPassage(version, ref, words)) {
+            final String paddedStrongNumber = StringConversionUtils.getStrongPaddedKey(word);
+            if (!this.stopStrongs.contains(paddedStrongNumber.toUpperCase())) {
+                stat.addWord(paddedStrongNumber);
             }
         }
         return stat;
@@ -0,0 +1,74 @@
+package com.tyndalehouse.step.core.service.jsword.impl;
+
+import java.io.File;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.lucene.index.IndexReader;
+
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.service.helpers.BackgroundBuilder;
+import com.tyndalehouse.step.core.service.jsword.JSwordCollocationService;
+import com.tyndalehouse.step.core.service.jsword.JSwordConcordanceService;
+import com.tyndalehouse.step.core.service.jsword.JSwordSearchService;
+import com.tyndalehouse.step.core.service.jsword.helpers.CollocationMatrix;
+import com.tyndalehouse.step.core.service.jsword.helpers.Concordance;
+
+/**
+ * Keeps a matrix of collocations for each tagged version, built in the background from its concordance the first
+ * time it is needed after its index is created.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class JSwordCollocationServiceImpl extends AbstractIndexDataService<CollocationMatrix> implements
+        JSwordCollocationService {
+    private static final String COLLOCATIONS_EXTENSION = ".collocations";
+    private final JSwordConcordanceService concordanceService;
+
+    /**
+     * @param jSwordSearchService the service giving access to the versions' indexes
+     * @param concordanceService  the service providing the concordance of each version
+     * @param builder             the builder of precomputed data
+     * @param collocationsPath    the directory holding the matrices, relative to the STEP home directory
+     */
+    @Inject
+    public JSwordCollocationServiceImpl(final JSwordSearchService jSwordSearchService,
+                                        final JSwordConcordanceService concordanceService,
+                                        final BackgroundBuilder builder,
+                                        @Named("app.collocations.path") final String collocationsPath) {
+        super(jSwordSearchService, builder, collocationsPath, COLLOCATIONS_EXTENSION);
+        this.concordanceService = concordanceService;
+    }
+
+    @Override
+    public CollocationMatrix getCollocations(final String version) {
+        return get(version);
+    }
+
+    @Override
+    public CollocationMatrix awaitCollocations(final String version) {
+        return await(version);
+    }
+
+    @Override
+    protected long getIndexVersion(final CollocationMatrix matrix) {
+        return matrix.getIndexVersion();
+    }
+
+    @Override
+    protected CollocationMatrix read(final File file) {
+        return CollocationMatrix.read(file);
+    }
+
+    @Override
+    protected void write(final String version, final IndexReader reader, final File file) {
+        final Concordance concordance = this.concordanceService.awaitConcordance(version);
+        if (concordance == null || concordance.getIndexVersion() != reader.getVersion()) {
+            throw new StepInternalException("The concordance of " + version + " isn't available");
+        }
+        CollocationMatrix.write(file, concordance);
+    }
+}
@@ -0,0 +1,68 @@
+package com.tyndalehouse.step.core.service.jsword.impl;
+
+import java.io.File;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.lucene.index.IndexReader;
+
+import com.tyndalehouse.step.core.service.helpers.BackgroundBuilder;
+import com.tyndalehouse.step.core.service.jsword.JSwordConcordanceService;
+import com.tyndalehouse.step.core.service.jsword.JSwordSearchService;
+import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
+import com.tyndalehouse.step.core.service.jsword.helpers.Concordance;
+
+/**
+ * Keeps a concordance for each version, built in the background the first time it is needed after its index is
+ * created.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class JSwordConcordanceServiceImpl extends AbstractIndexDataService<Concordance> implements
+        JSwordConcordanceService {
+    private static final String CONCORDANCE_EXTENSION = ".concordance";
+    private final JSwordVersificationService jSwordVersificationService;
+
+    /**
+     * @param jSwordSearchService        the service giving access to the versions' indexes
+     * @param jSwordVersificationService the versification service
+     * @param builder                    the builder of precomputed data
+     * @param concordancePath            the directory holding the concordances, relative to the STEP home directory
+     */
+    @Inject
+    public JSwordConcordanceServiceImpl(final JSwordSearchService jSwordSearchService,
+                                        final JSwordVersificationService jSwordVersificationService,
+                                        final BackgroundBuilder builder,
+                                        @Named("app.concordance.path") final String concordancePath) {
+        super(jSwordSearchService, builder, concordancePath, CONCORDANCE_EXTENSION);
+        this.jSwordVersificationService = jSwordVersificationService;
+    }
+
+    @Override
+    public Concordance getConcordance(final String version) {
+        return get(version);
+    }
+
+    @Override
+    public Concordance awaitConcordance(final String version) {
+        return await(version);
+    }
+
+    @Override
+    protected long getIndexVersion(final Concordance concordance) {
+        return concordance.getIndexVersion();
+    }
+
+    @Override
+    protected Concordance read(final File file) {
+        return Concordance.read(file);
+    }
+
+    @Override
+    protected void write(final String version, final IndexReader reader, final File file) {
+        Concordance.write(file, reader, this.jSwordVersificationService.getVersificationForVersion(version));
+    }
+}
@@ -0,0 +1,149 @@
+package com.tyndalehouse.step.core.service.jsword.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.crosswire.common.util.CWProject;
+import org.crosswire.jsword.book.Book;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.service.jsword.JSwordInterlinearAlignmentService;
+import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
+import com.tyndalehouse.step.core.service.jsword.helpers.InterlinearAlignment;
+import com.tyndalehouse.step.core.utils.JSwordUtils;
+import com.tyndalehouse.step.core.xsl.impl.InterlinearVersion;
+
+/**
+ * Reads the interlinear alignments built by the tools, mapping each into memory the first time it is needed. An
+ * alignment built from a different version of the module than the one installed is ignored, in which case the
+ * interlinear reads the words from the module itself. Versions without an alignment are looked up again once their
+ * alignment file changes, so that an alignment built while the server is running is picked up.
+ * <p/>
+ * The state of each interlinear version is kept too, so that it is worked out once rather than on every request, and
+ * replaced whenever the module or its alignment changes.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class JSwordInterlinearAlignmentServiceImpl implements JSwordInterlinearAlignmentService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JSwordInterlinearAlignmentServiceImpl.class);
+    private final JSwordVersificationService versificationService;
+    private final String alignmentPath;
+    private final ConcurrentMap<String, InterlinearAlignment> alignments = new ConcurrentHashMap<String, InterlinearAlignment>();
+    private final ConcurrentMap<String, InterlinearVersion> versions = new ConcurrentHashMap<String, InterlinearVersion>();
+    private final ConcurrentMap<String, Long> unavailable = new ConcurrentHashMap<String, Long>();
+
+    /**
+     * @param versificationService the versification service, to look up the versions
+     * @param alignmentPath        the directory holding the alignments, relative to the STEP home directory
+     */
+    @Inject
+    public JSwordInterlinearAlignmentServiceImpl(final JSwordVersificationService versificationService,
+                                                 @Named("app.interlinearAlignment.path") final String alignmentPath) {
+        this.versificationService = versificationService;
+        this.alignmentPath = alignmentPath;
+    }
+
+    @Override
+    public InterlinearAlignment getAlignment(final String version) {
+        final Book book = this.versificationService.getBookFromVersion(version);
+        return book == null ? null : getAlignment(book);
+    }
+
+    @Override
+    public InterlinearVersion getInterlinearVersion(final String version) {
+        final Book book = this.versificationService.getBookFromVersion(version);
+        if (book == null) {
+            return null;
+        }
+
+        final InterlinearAlignment alignment = getAlignment(book);
+        final InterlinearVersion cached = this.versions.get(version);
+        if (cached != null && cached.getBook() == book && cached.getAlignment() == alignment) {
+            return cached;
+        }
+
+        // two threads may both create the state, which is harmless as it is immutable
+        final InterlinearVersion interlinearVersion = new InterlinearVersion(book,
+                this.versificationService.getVersificationForVersion(book), alignment);
+        this.versions.put(version, interlinearVersion);
+        return interlinearVersion;
+    }
+
+    /**
+     * @param book the version
+     * @return the alignment, or null if none has been built for the installed module
+     */
+    private InterlinearAlignment getAlignment(final Book book) {
+        final String initials = book.getInitials();
+        final String moduleVersion = JSwordUtils.getModuleVersion(book);
+        final InterlinearAlignment alignment = this.alignments.get(initials);
+        if (alignment != null && alignment.getModuleVersion().equals(moduleVersion)) {
+            return alignment;
+        }
+
+        // a missing file has no modification time, so the first alignment written for the version is noticed too
+        final File file = new File(getDirectory(), initials + InterlinearAlignment.FILE_EXTENSION);
+        final String unavailableKey = initials + '|' + moduleVersion;
+        final long lastModified = file.lastModified();
+        final Long missed = this.unavailable.get(unavailableKey);
+        if (missed != null && missed == lastModified) {
+            return null;
+        }
+
+        final InterlinearAlignment read = read(file, initials, moduleVersion);
+        if (read == null) {
+            this.unavailable.put(unavailableKey, lastModified);
+            return null;
+        }
+
+        this.unavailable.remove(unavailableKey);
+
+        this.alignments.put(initials, read);
+        return read;
+    }
+
+    /**
+     * @param file          the file holding the alignment
+     * @param initials      the initials of the version
+     * @param moduleVersion the version of the installed module
+     * @return the alignment, or null if there is none for the installed module
+     */
+    private InterlinearAlignment read(final File file, final String initials, final String moduleVersion) {
+        if (!file.exists()) {
+            LOGGER.debug("No interlinear alignment for [{}]", initials);
+            return null;
+        }
+
+        try {
+            final InterlinearAlignment alignment = InterlinearAlignment.read(file);
+            if (alignment == null || !alignment.getModuleVersion().equals(moduleVersion)) {
+                LOGGER.warn("Interlinear alignment for [{}] is out of date and will be ignored", initials);
+                return null;
+            }
+            return alignment;
+        } catch (final StepInternalException ex) {
+            LOGGER.error("Unable to read interlinear alignment for [{}]", initials, ex);
+            return null;
+        }
+    }
+
+    /**
+     * @return the directory holding the alignments
+     */
+    private File getDirectory() {
+        try {
+            return new File(CWProject.instance().getWriteableProjectSubdir(this.alignmentPath, true));
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to create directory for interlinear alignments", e);
+        }
+    }
+}
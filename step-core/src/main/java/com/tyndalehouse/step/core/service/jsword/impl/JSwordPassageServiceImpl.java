@@ -45,6 +45,8 @@ import com.tyndalehouse.step.core.service.PassageOptionsValidationService;
 import com.tyndalehouse.step.core.service.VocabularyService;
 import com.tyndalehouse.step.core.service.helpers.VersionResolver;
 import com.tyndalehouse.step.core.service.impl.MorphologyServiceImpl;
+import com.tyndalehouse.step.core.service.impl.PassageLookupContext;
+import com.tyndalehouse.step.core.service.jsword.JSwordInterlinearAlignmentService;
 import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
 import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
 import com.tyndalehouse.step.core.utils.JSwordUtils;
@@ -132,6 +134,7 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
     private final ColorCoderProviderImpl colorCoder;
     private final VersionResolver resolver;
     private final PassageOptionsValidationService optionsValidationService;
+    private final JSwordInterlinearAlignmentService alignmentService;
     private final Book kjvaBook;
     private final Book esvBook;
 
@@ -144,18 +147,21 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
      * @param colorCoder               the service to color code a passage
      * @param resolver                 the resolver
      * @param optionsValidationService
+     * @param alignmentService         the service providing precomputed interlinear alignments
      */
     @Inject
     public JSwordPassageServiceImpl(final JSwordVersificationService versificationService,
                                     final MorphologyServiceImpl morphologyProvider, final VocabularyService vocabProvider,
                                     final ColorCoderProviderImpl colorCoder, final VersionResolver resolver,
-                                    final PassageOptionsValidationService optionsValidationService) {
+                                    final PassageOptionsValidationService optionsValidationService,
+                                    final JSwordInterlinearAlignmentService alignmentService) {
         this.versificationService = versificationService;
         this.morphologyProvider = morphologyProvider;
         this.vocabProvider = vocabProvider;
         this.colorCoder = colorCoder;
         this.resolver = resolver;
         this.optionsValidationService = optionsValidationService;
+        this.alignmentService = alignmentService;
 
         kjvaBook = Books.installed().getBook("KJVA");
         esvBook = Books.installed().getBook(JSwordPassageService.REFERENCE_BOOK);
@@ -1182,7 +1188,7 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
                             osissep);
 
                     // set parameters here
-                    setOptions(tsep, options, bookData.getBooks());
+                    setOptions(tsep, options, bookData.getBooks(), createLookupContext(options, bookData));
                     setInterlinearOptions(tsep,
                             bookData.getBooks()[0].getInitials(),
                             masterVersification,
@@ -1199,6 +1205,29 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
 
     }
 
+    /**
+     * Scans the passage ahead of the transformation, so that the words looked up by the stylesheet are looked up
+     * together rather than one at a time
+     *
+     * @param options  the options of the passage
+     * @param bookData the book data, containing book and reference
+     * @return the context for the extension functions of the stylesheet, or null if no words need looking up
+     */
+    private PassageLookupContext createLookupContext(final List<LookupOption> options, final BookData bookData) {
+        if (!PassageLookupContext.isRequired(options)) {
+            return null;
+        }
+
+        final PassageLookupContext context = new PassageLookupContext(this.vocabProvider, this.morphologyProvider,
+                this.colorCoder, this.resolver.getShortName(bookData.getBooks()[0].getInitials()));
+        try {
+            context.prefetch(bookData.getOsisFragment(), options);
+        } catch (final BookException e) {
+            throw new StepInternalException(e.getMessage(), e);
+        }
+        return context;
+    }
+
     /**
      * At the moment, we only support one stylesheet at the moment, so we only need to return one This may change, but
      * at that point we'll have a cleared view on requirements. For now, if one of the options triggers anything but the
@@ -1281,7 +1310,8 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
             }
 
             final MultiInterlinearProviderImpl multiInterlinear = new MultiInterlinearProviderImpl(masterVersion, masterVersification,
-                    interlinearVersion, reference, this.versificationService, this.vocabProvider, stripGreekAccents, stripHebrewAccents, stripVowels);
+                    interlinearVersion, reference, this.versificationService, this.vocabProvider, stripGreekAccents, stripHebrewAccents, stripVowels,
+                    this.alignmentService);
             tsep.setParameter("interlinearProvider", multiInterlinear);
             return multiInterlinear;
         }
@@ -1328,9 +1358,10 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
      * @param tsep    the xslt transformer
      * @param options the options available
      * @param books   the version to initialise a potential interlinear with
+     * @param lookupContext the context looking up the words of the passage, null if none are looked up
      */
     protected void setOptions(final TransformingSAXEventProvider tsep, final List<LookupOption> options,
-                              final Book[] books) {
+                              final Book[] books, final PassageLookupContext lookupContext) {
         final boolean isHebrew = JSwordUtils.isAncientHebrewBook(books);
         final boolean isGreek = JSwordUtils.isAncientGreekBook(books);
 //        options.remove(LookupOption.VERSE_NEW_LINE);
@@ -1347,16 +1378,16 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
                         tsep.setParameter(LookupOption.VERSE_NUMBERS.getXsltParameterName(), true);
                         break;
                     case MORPHOLOGY:
-                        tsep.setParameter("morphologyProvider", this.morphologyProvider);
+                        tsep.setParameter("morphologyProvider", lookupContext);
                         break;
                     case ENGLISH_VOCAB:
                     case TRANSLITERATION:
                     case GREEK_VOCAB:
                     case TRANSLITERATE_ORIGINAL:
-                        tsep.setParameter("vocabProvider", this.vocabProvider);
+                        tsep.setParameter("vocabProvider", lookupContext);
                         break;
                     case COLOUR_CODE:
-                        tsep.setParameter("colorCodingProvider", this.colorCoder);
+                        tsep.setParameter("colorCodingProvider", lookupContext);
                         break;
                     case GREEK_ACCENTS:
                         if (isGreek) {
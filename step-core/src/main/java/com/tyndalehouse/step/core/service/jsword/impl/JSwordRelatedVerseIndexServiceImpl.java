@@ -0,0 +1,80 @@
+package com.tyndalehouse.step.core.service.jsword.impl;
+
+import java.io.File;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.lucene.index.IndexReader;
+
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.service.helpers.BackgroundBuilder;
+import com.tyndalehouse.step.core.service.jsword.JSwordConcordanceService;
+import com.tyndalehouse.step.core.service.jsword.JSwordRelatedVerseIndexService;
+import com.tyndalehouse.step.core.service.jsword.JSwordSearchService;
+import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
+import com.tyndalehouse.step.core.service.jsword.helpers.Concordance;
+import com.tyndalehouse.step.core.service.jsword.helpers.RelatedVerseIndex;
+
+/**
+ * Keeps the related verses of every verse of each strong-tagged version, worked out in the background from its
+ * concordance the first time they are needed after its index is created.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class JSwordRelatedVerseIndexServiceImpl extends AbstractIndexDataService<RelatedVerseIndex> implements
+        JSwordRelatedVerseIndexService {
+    private static final String RELATED_EXTENSION = ".related";
+    private final JSwordConcordanceService concordanceService;
+    private final JSwordVersificationService jSwordVersificationService;
+
+    /**
+     * @param jSwordSearchService        the service giving access to the versions' indexes
+     * @param concordanceService         the service providing the concordance of each version
+     * @param jSwordVersificationService the versification service
+     * @param builder                    the builder of precomputed data
+     * @param relatedPath                the directory holding the related verses, relative to the STEP home directory
+     */
+    @Inject
+    public JSwordRelatedVerseIndexServiceImpl(final JSwordSearchService jSwordSearchService,
+                                              final JSwordConcordanceService concordanceService,
+                                              final JSwordVersificationService jSwordVersificationService,
+                                              final BackgroundBuilder builder,
+                                              @Named("app.relatedVerses.path") final String relatedPath) {
+        super(jSwordSearchService, builder, relatedPath, RELATED_EXTENSION);
+        this.concordanceService = concordanceService;
+        this.jSwordVersificationService = jSwordVersificationService;
+    }
+
+    @Override
+    public RelatedVerseIndex getRelatedVerseIndex(final String version) {
+        return get(version);
+    }
+
+    @Override
+    public RelatedVerseIndex awaitRelatedVerseIndex(final String version) {
+        return await(version);
+    }
+
+    @Override
+    protected long getIndexVersion(final RelatedVerseIndex index) {
+        return index.getIndexVersion();
+    }
+
+    @Override
+    protected RelatedVerseIndex read(final File file) {
+        return RelatedVerseIndex.read(file);
+    }
+
+    @Override
+    protected void write(final String version, final IndexReader reader, final File file) {
+        final Concordance concordance = this.concordanceService.awaitConcordance(version);
+        if (concordance == null || concordance.getIndexVersion() != reader.getVersion()) {
+            throw new StepInternalException("The concordance of " + version + " isn't available");
+        }
+        RelatedVerseIndex.write(file, concordance,
+                this.jSwordVersificationService.getVersificationForVersion(version), RelatedVerseIndex.MAX_RELATED);
+    }
+}
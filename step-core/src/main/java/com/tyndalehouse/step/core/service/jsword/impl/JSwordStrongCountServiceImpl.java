@@ -0,0 +1,87 @@
+package com.tyndalehouse.step.core.service.jsword.impl;
+
+import java.io.File;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.MatchAllDocsQuery;
+
+import com.tyndalehouse.step.core.data.EntityIndexReader;
+import com.tyndalehouse.step.core.data.EntityManager;
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.service.StrongAugmentationService;
+import com.tyndalehouse.step.core.service.helpers.BackgroundBuilder;
+import com.tyndalehouse.step.core.service.jsword.JSwordConcordanceService;
+import com.tyndalehouse.step.core.service.jsword.JSwordSearchService;
+import com.tyndalehouse.step.core.service.jsword.JSwordStrongCountService;
+import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
+import com.tyndalehouse.step.core.service.jsword.helpers.Concordance;
+import com.tyndalehouse.step.core.service.jsword.helpers.StrongCountMatrix;
+
+/**
+ * Keeps a matrix of strong number counts for each tagged version, built in the background from its concordance the
+ * first time it is needed after its index is created.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class JSwordStrongCountServiceImpl extends AbstractIndexDataService<StrongCountMatrix> implements
+        JSwordStrongCountService {
+    private static final String COUNTS_EXTENSION = ".counts";
+    private final JSwordConcordanceService concordanceService;
+    private final JSwordVersificationService jSwordVersificationService;
+    private final StrongAugmentationService strongAugmentationService;
+    private final EntityIndexReader augmentedStrongs;
+
+    /**
+     * @param jSwordSearchService        the service giving access to the versions' indexes
+     * @param concordanceService         the service providing the concordance of each version
+     * @param jSwordVersificationService the versification service
+     * @param strongAugmentationService the strong augmentation service
+     * @param manager                   the entity manager, to read the augmented strongs
+     * @param builder                   the builder of precomputed data
+     * @param countsPath                the directory holding the matrices, relative to the STEP home directory
+     */
+    @Inject
+    public JSwordStrongCountServiceImpl(final JSwordSearchService jSwordSearchService,
+                                        final JSwordConcordanceService concordanceService,
+                                        final JSwordVersificationService jSwordVersificationService,
+                                        final StrongAugmentationService strongAugmentationService,
+                                        final EntityManager manager,
+                                        final BackgroundBuilder builder,
+                                        @Named("app.strongCounts.path") final String countsPath) {
+        super(jSwordSearchService, builder, countsPath, COUNTS_EXTENSION);
+        this.concordanceService = concordanceService;
+        this.jSwordVersificationService = jSwordVersificationService;
+        this.strongAugmentationService = strongAugmentationService;
+        this.augmentedStrongs = manager.getReader("augmentedStrongs");
+    }
+
+    @Override
+    public StrongCountMatrix getCounts(final String version) {
+        return get(version);
+    }
+
+    @Override
+    protected long getIndexVersion(final StrongCountMatrix matrix) {
+        return matrix.getIndexVersion();
+    }
+
+    @Override
+    protected StrongCountMatrix read(final File file) {
+        return StrongCountMatrix.read(file);
+    }
+
+    @Override
+    protected void write(final String version, final IndexReader reader, final File file) {
+        final Concordance concordance = this.concordanceService.awaitConcordance(version);
+        if (concordance == null || concordance.getIndexVersion() != reader.getVersion()) {
+            throw new StepInternalException("The concordance of " + version + " isn't available");
+        }
+        StrongCountMatrix.write(file, concordance, this.jSwordVersificationService.getVersificationForVersion(version),
+                this.augmentedStrongs.search(new MatchAllDocsQuery()), this.strongAugmentationService);
+    }
+}
@@ -0,0 +1,260 @@
+package com.tyndalehouse.step.core.service.jsword.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.FutureTask;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.crosswire.common.util.CWProject;
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.book.BookData;
+import org.crosswire.jsword.book.BookException;
+import org.crosswire.jsword.book.OSISUtil;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseRange;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.service.StrongAugmentationService;
+import com.tyndalehouse.step.core.service.helpers.BackgroundBuilder;
+import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
+import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
+import com.tyndalehouse.step.core.service.jsword.JSwordWordStatsService;
+import com.tyndalehouse.step.core.service.jsword.helpers.ChapterCounts;
+import com.tyndalehouse.step.core.service.jsword.helpers.StopWords;
+import com.tyndalehouse.step.core.service.jsword.helpers.TextStatsTokenizer;
+import com.tyndalehouse.step.core.utils.JSwordUtils;
+import com.tyndalehouse.step.core.utils.StringConversionUtils;
+import com.tyndalehouse.step.core.utils.StringUtils;
+
+/**
+ * Keeps the strong number and word counts of each chapter of the versions that have been analysed. The counts are
+ * read from disk if they were built for the installed module, and otherwise built by the {@link BackgroundBuilder},
+ * reading the version chapter by chapter, as building them takes far longer than a request should.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class JSwordWordStatsServiceImpl implements JSwordWordStatsService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JSwordWordStatsServiceImpl.class);
+    private static final String STRONG_EXTENSION = ".wordStats";
+    private static final String TEXT_EXTENSION = ".textStats";
+    private final JSwordVersificationService versificationService;
+    private final StrongAugmentationService strongAugmentationService;
+    private final BackgroundBuilder builder;
+    private final String statsPath;
+    private final ConcurrentMap<String, ChapterCounts> counts = new ConcurrentHashMap<String, ChapterCounts>();
+    private final ConcurrentMap<String, String> failedKeys = new ConcurrentHashMap<String, String>();
+    private final Set<String> building = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Counts the occurrences of something in a chapter of a version
+     */
+    private interface ChapterCounter {
+        /**
+         * @param book  the version
+         * @param range the chapter
+         * @return the number of occurrences of each strong number or word
+         * @throws BookException if the chapter can't be read
+         */
+        Map<String, Integer> count(Book book, VerseRange range) throws BookException;
+    }
+
+    /**
+     * @param versificationService      the versification service, to look up the versions
+     * @param strongAugmentationService the strong augmentation service
+     * @param builder                   the builder of precomputed data
+     * @param statsPath                 the directory holding the counts, relative to the STEP home directory
+     */
+    @Inject
+    public JSwordWordStatsServiceImpl(final JSwordVersificationService versificationService,
+                                      final StrongAugmentationService strongAugmentationService,
+                                      final BackgroundBuilder builder,
+                                      @Named("app.wordStats.path") final String statsPath) {
+        this.versificationService = versificationService;
+        this.strongAugmentationService = strongAugmentationService;
+        this.builder = builder;
+        this.statsPath = statsPath;
+    }
+
+    @Override
+    public ChapterCounts getStrongCounts() {
+        final Book book = this.versificationService.getBookFromVersion(JSwordPassageService.REFERENCE_BOOK);
+        if (book == null) {
+            return null;
+        }
+
+        return getCounts(book, STRONG_EXTENSION, JSwordUtils.getModuleVersion(book), new ChapterCounter() {
+            @Override
+            public Map<String, Integer> count(final Book book, final VerseRange range) throws BookException {
+                return countStrongs(book, range);
+            }
+        });
+    }
+
+    @Override
+    public ChapterCounts getTextCounts(final String version, final StopWords stopWords) {
+        final Book book = this.versificationService.getBookFromVersion(version);
+        if (book == null) {
+            return null;
+        }
+
+        // counts that left out other stop words are built again
+        final String key = JSwordUtils.getModuleVersion(book) + '|' + stopWords.getFingerprint();
+        return getCounts(book, TEXT_EXTENSION, key, new ChapterCounter() {
+            @Override
+            public Map<String, Integer> count(final Book book, final VerseRange range) throws BookException {
+                return TextStatsTokenizer.countWords(
+                        OSISUtil.getCanonicalText(new BookData(book, range).getOsisFragment()), stopWords);
+            }
+        });
+    }
+
+    /**
+     * @param book      the version
+     * @param extension the extension of the file holding the counts
+     * @param key       identifies what the counts are built from
+     * @param counter   counts a chapter
+     * @return the counts, or null if they are not available yet
+     */
+    private ChapterCounts getCounts(final Book book, final String extension, final String key,
+                                    final ChapterCounter counter) {
+        final String name = book.getInitials() + extension;
+        final ChapterCounts current = this.counts.get(name);
+        if (current != null && current.getKey().equals(key)) {
+            return current;
+        }
+
+        if (key.equals(this.failedKeys.get(name)) || !this.building.add(name)) {
+            return null;
+        }
+
+        boolean started = false;
+        try {
+            final Versification v11n = this.versificationService.getVersificationForVersion(book);
+            final File file = new File(getDirectory(), name);
+            final ChapterCounts read = read(file, v11n, key);
+            if (read != null) {
+                this.counts.put(name, read);
+                return read;
+            }
+
+            this.builder.submit(new FutureTask<Void>(new Runnable() {
+                @Override
+                public void run() {
+                    build(book, v11n, key, file, counter);
+                }
+            }, null));
+            started = true;
+            return null;
+        } finally {
+            if (!started) {
+                this.building.remove(name);
+            }
+        }
+    }
+
+    /**
+     * @param file the file holding the counts
+     * @param v11n the versification of the version
+     * @param key  identifies what the counts should have been built from
+     * @return the counts, or null if none were built for the installed module
+     */
+    private ChapterCounts read(final File file, final Versification v11n, final String key) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        try {
+            final ChapterCounts read = ChapterCounts.read(file, v11n);
+            return read != null && read.getKey().equals(key) ? read : null;
+        } catch (final StepInternalException ex) {
+            LOGGER.warn("Unable to read chapter counts, which will be built again", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Counts every chapter of the version, and writes the counts to disk
+     *
+     * @param book    the version
+     * @param v11n    the versification of the version
+     * @param key     identifies what the counts are built from
+     * @param file    the file to write
+     * @param counter counts a chapter
+     */
+    private void build(final Book book, final Versification v11n, final String key, final File file,
+                       final ChapterCounter counter) {
+        final String name = file.getName();
+        try {
+            final long start = System.currentTimeMillis();
+            final List<Map<String, Integer>> chapters = new ArrayList<Map<String, Integer>>(1200);
+            for (final BibleBook bibleBook : v11n.getBooks()) {
+                for (int chapter = 1; chapter <= v11n.getLastChapter(bibleBook); chapter++) {
+                    final VerseRange range = new VerseRange(v11n, new Verse(v11n, bibleBook, chapter, 0),
+                            new Verse(v11n, bibleBook, chapter, v11n.getLastVerse(bibleBook, chapter)));
+                    chapters.add(book.contains(range) ? counter.count(book, range) : null);
+                }
+            }
+
+            ChapterCounts.write(file, key, chapters);
+            this.counts.put(name, ChapterCounts.read(file, v11n));
+            LOGGER.info("Built chapter counts [{}] in [{}] ms ({} KB)", new Object[]{
+                    name, System.currentTimeMillis() - start, file.length() / 1024});
+        } catch (final BookException ex) {
+            this.failedKeys.put(name, key);
+            LOGGER.error("Unable to build chapter counts [{}]", name, ex);
+        } catch (final StepInternalException ex) {
+            this.failedKeys.put(name, key);
+            LOGGER.error("Unable to build chapter counts [{}]", name, ex);
+        } finally {
+            this.building.remove(name);
+        }
+    }
+
+    /**
+     * Counts the strong numbers of a chapter, augmented and padded as in the word statistics of a passage
+     *
+     * @param book  the version
+     * @param range the chapter
+     * @return the number of occurrences of each strong number
+     * @throws BookException if the chapter can't be read
+     */
+    private Map<String, Integer> countStrongs(final Book book, final VerseRange range) throws BookException {
+        final String[] strongs = StringUtils.split(OSISUtil.getStrongsNumbers(
+                new BookData(book, range).getOsisFragment()));
+        final Map<String, Integer> strongCounts = new HashMap<String, Integer>(strongs.length);
+        for (final String strong : this.strongAugmentationService.augmentPassage(
+                book.getInitials(), range.getOsisRef(), strongs)) {
+            final String paddedStrongNumber = StringConversionUtils.getStrongPaddedKey(strong);
+            final Integer count = strongCounts.get(paddedStrongNumber);
+            strongCounts.put(paddedStrongNumber, count == null ? 1 : count + 1);
+        }
+        return strongCounts;
+    }
+
+    /**
+     * @return the directory holding the counts
+     */
+    private File getDirectory() {
+        try {
+            return new File(CWProject.instance().getWriteableProjectSubdir(this.statsPath, true));
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to create directory for word statistics", e);
+        }
+    }
+}
@@ -70,6 +70,15 @@ public interface SubjectSearchService {
      */
     SearchResult searchByReference(String referenceQuerySyntax);
 
+    /**
+     * Finds the subjects of whole chapters or books, as {@link #searchByReference(String)} would for the query
+     * Gen.1.* or Gen.*, without running the query.
+     *
+     * @param chapters the chapters, as in Gen.1, or books, as in Gen
+     * @return the search result a list of topics that match.
+     */
+    SearchResult searchByChapters(List<String> chapters);
+
     /**
      * First resolves the reference and expands it to its full form (e.g. Gen.1.1-3 goes to Gen.1.1 Gen.1.2
      * Gen 1.3), Then carries out a search against all subjects.
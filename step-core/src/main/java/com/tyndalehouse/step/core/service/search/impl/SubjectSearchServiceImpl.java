@@ -45,6 +45,7 @@ import com.tyndalehouse.step.core.models.search.ExpandableSubjectHeadingEntry;
 import com.tyndalehouse.step.core.models.search.SearchEntry;
 import com.tyndalehouse.step.core.models.search.SearchResult;
 import com.tyndalehouse.step.core.models.search.SubjectHeadingSearchEntry;
+import com.tyndalehouse.step.core.service.helpers.SubjectChapterIndex;
 import com.tyndalehouse.step.core.service.impl.IndividualSearch;
 import com.tyndalehouse.step.core.service.impl.SearchQuery;
 import com.tyndalehouse.step.core.service.jsword.JSwordMetadataService;
@@ -55,6 +56,7 @@ import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
 import com.tyndalehouse.step.core.service.jsword.impl.JSwordPassageServiceImpl;
 import com.tyndalehouse.step.core.service.search.SubjectSearchService;
 import com.tyndalehouse.step.core.utils.StringUtils;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.queryParser.QueryParser;
 import org.apache.lucene.search.Sort;
@@ -101,6 +103,7 @@ public class SubjectSearchServiceImpl extends AbstractSubjectSearchServiceImpl i
     private final JSwordMetadataService jSwordMetadataService;
     private final JSwordModuleService jSwordModuleService;
     private final JSwordVersificationService jSwordVersificationService;
+    private volatile SubjectChapterIndex subjectsByChapter;
 
     /**
      * Instantiates a new subject search service impl.
@@ -154,6 +157,69 @@ public class SubjectSearchServiceImpl extends AbstractSubjectSearchServiceImpl i
         return sr;
     }
 
+    @Override
+    public SearchResult searchByChapters(final List<String> chapters) {
+        final StringBuilder referenceQuerySyntax = new StringBuilder(chapters.size() * 10);
+        for (final String chapter : chapters) {
+            referenceQuerySyntax.append(chapter).append(".* ");
+        }
+
+        final SubjectChapterIndex index = getSubjectsByChapter();
+        if (index == null) {
+            return searchByReference(referenceQuerySyntax.toString());
+        }
+
+        final SearchResult sr = new SearchResult();
+        sr.setQuery("sr=" + referenceQuerySyntax);
+
+        final int[] subjects = index.getSubjects(chapters);
+        final List<SearchEntry> resultList = new ArrayList<SearchEntry>(subjects.length);
+        for (final int subject : subjects) {
+            resultList.add(new ExpandableSubjectHeadingEntry(index.getRoot(subject), index.getHeading(subject),
+                    index.getAlternate(subject)));
+        }
+
+        sr.setResults(resultList);
+        sr.setTotal(resultList.size());
+        return sr;
+    }
+
+    /**
+     * @return the subjects of each chapter, read again from the index if the index has been refreshed since, or null
+     * if there is no index
+     */
+    private SubjectChapterIndex getSubjectsByChapter() {
+        final SubjectChapterIndex current = this.subjectsByChapter;
+        final int generation = this.naves.getGeneration();
+        if (current != null && current.getGeneration() == generation || generation == 0) {
+            return current;
+        }
+
+        synchronized (this) {
+            final SubjectChapterIndex latest = this.subjectsByChapter;
+            if (latest != null && latest.getGeneration() == this.naves.getGeneration()) {
+                return latest;
+            }
+
+            // read the generation first, so that a refresh while reading causes another read
+            final int readGeneration = this.naves.getGeneration();
+            final IndexReader reader = this.naves.getIndexReader();
+            if (reader == null) {
+                return null;
+            }
+
+            try {
+                final long start = System.currentTimeMillis();
+                this.subjectsByChapter = SubjectChapterIndex.read(reader, readGeneration);
+                LOGGER.info("Read subjects by chapter in [{}] ms", System.currentTimeMillis() - start);
+                return this.subjectsByChapter;
+            } catch (final StepInternalException ex) {
+                LOGGER.error("Unable to read subjects by chapter", ex);
+                return null;
+            }
+        }
+    }
+
     /**
      * @param referenceQuerySyntax ther
      * @return
@@ -0,0 +1,291 @@
+package com.tyndalehouse.step.core.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A thread-safe, least-recently-used cache, bounded by number of entries and/or by the estimated size of its
+ * values. Entries can optionally expire after a fixed time. The cache is split into segments, each with its own lock,
+ * so that concurrent lookups rarely contend. Hits, misses and evictions are counted, and logged every so often.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ * @author chrisburrell
+ */
+public class BoundedCache<K, V> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BoundedCache.class);
+    private static final int SEGMENTS = 16;
+    private static final long LOG_EVERY = 100000;
+
+    private final String name;
+    private final Segment<K, V>[] segments;
+    private final Weigher<? super V> weigher;
+    private final long timeToLive;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Estimates the size of a value, in bytes
+     *
+     * @param <V> the type of the values
+     */
+    public interface Weigher<V> {
+        /**
+         * @param value the value
+         * @return its estimated size in bytes
+         */
+        long weigh(V value);
+    }
+
+    /**
+     * @param name       the name of the cache, used in the logs
+     * @param maxEntries the maximum number of entries, 0 for no limit
+     * @param maxWeight  the maximum total size of the values, 0 for no limit
+     * @param timeToLive the time after which entries expire, in milliseconds, 0 for never
+     * @param weigher    estimates the size of the values, may be null if the cache is not bounded by size
+     */
+    @SuppressWarnings("unchecked")
+    public BoundedCache(final String name, final int maxEntries, final long maxWeight, final long timeToLive,
+                        final Weigher<? super V> weigher) {
+        this.name = name;
+        this.weigher = maxWeight > 0 ? weigher : null;
+        this.timeToLive = timeToLive;
+        this.segments = new Segment[SEGMENTS];
+        for (int ii = 0; ii < SEGMENTS; ii++) {
+            this.segments[ii] = new Segment<K, V>(perSegment(maxEntries), perSegment(maxWeight));
+        }
+    }
+
+    /**
+     * @param key the key
+     * @return the cached value, or null if there isn't one, or it has expired
+     */
+    public V get(final K key) {
+        final Segment<K, V> segment = segmentFor(key);
+        final CacheEntry<V> entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+            if (entry != null && entry.isExpired()) {
+                segment.removeEntry(key);
+                this.evictions.incrementAndGet();
+                return miss();
+            }
+        }
+
+        if (entry == null) {
+            return miss();
+        }
+
+        count(this.hits);
+        return entry.value;
+    }
+
+    /**
+     * Caches a value, evicting the least recently used entries if the cache is full
+     *
+     * @param key   the key
+     * @param value the value, which must not be null
+     */
+    public void put(final K key, final V value) {
+        final long weight = this.weigher != null ? this.weigher.weigh(value) : 0;
+        final long expiresAt = this.timeToLive > 0 ? System.currentTimeMillis() + this.timeToLive : Long.MAX_VALUE;
+        final Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.removeEntry(key);
+            segment.put(key, new CacheEntry<V>(value, weight, expiresAt));
+            segment.weight += weight;
+            this.evictions.addAndGet(segment.evict());
+        }
+    }
+
+    /**
+     * Removes all entries from the cache
+     */
+    public void clear() {
+        for (final Segment<K, V> segment : this.segments) {
+            synchronized (segment) {
+                segment.clear();
+                segment.weight = 0;
+            }
+        }
+    }
+
+    /**
+     * @return the number of entries in the cache
+     */
+    public int size() {
+        int size = 0;
+        for (final Segment<K, V> segment : this.segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the estimated total size of the cached values, 0 if the cache is not bounded by size
+     */
+    public long weight() {
+        long weight = 0;
+        for (final Segment<K, V> segment : this.segments) {
+            synchronized (segment) {
+                weight += segment.weight;
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * @return the number of lookups that found a value
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return the number of lookups that didn't find a value
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return the number of entries that were evicted, either to make space, or because they had expired
+     */
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        final long hitCount = getHits();
+        final long total = hitCount + getMisses();
+        return String.format("Cache [%s]: %d entries, %d KB, %d hits, %d misses (%.1f%% hit rate), %d evictions",
+                this.name, size(), weight() / 1024, hitCount, getMisses(),
+                total == 0 ? 0.0 : hitCount * 100.0 / total, getEvictions());
+    }
+
+    /**
+     * @return null, having counted the miss
+     */
+    private V miss() {
+        count(this.misses);
+        return null;
+    }
+
+    /**
+     * Counts a lookup, logging the statistics of the cache every so often
+     *
+     * @param counter the counter to increment
+     */
+    private void count(final AtomicLong counter) {
+        counter.incrementAndGet();
+        if ((this.hits.get() + this.misses.get()) % LOG_EVERY == 0) {
+            LOGGER.info(toString());
+        }
+    }
+
+    /**
+     * @param key the key
+     * @return the segment holding the key
+     */
+    private Segment<K, V> segmentFor(final K key) {
+        final int hash = key.hashCode();
+        return this.segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * @param limit the limit for the whole cache
+     * @return the limit for a single segment, 0 if there is no limit
+     */
+    private static long perSegment(final long limit) {
+        return limit > 0 ? (limit + SEGMENTS - 1) / SEGMENTS : 0;
+    }
+
+    /**
+     * A cached value, with its size and expiry time
+     *
+     * @param <V> the type of the value
+     */
+    private static final class CacheEntry<V> {
+        private final V value;
+        private final long weight;
+        private final long expiresAt;
+
+        /**
+         * @param value     the value
+         * @param weight    the estimated size of the value
+         * @param expiresAt the time at which the value expires
+         */
+        private CacheEntry(final V value, final long weight, final long expiresAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * @return true if the entry has expired
+         */
+        private boolean isExpired() {
+            return this.expiresAt != Long.MAX_VALUE && System.currentTimeMillis() > this.expiresAt;
+        }
+    }
+
+    /**
+     * A segment of the cache, keeping its entries in access order. All access must be synchronized on the segment.
+     *
+     * @param <K> the type of the keys
+     * @param <V> the type of the values
+     */
+    private static final class Segment<K, V> extends LinkedHashMap<K, CacheEntry<V>> {
+        private static final long serialVersionUID = 5178446429133937474L;
+        private final long maxEntries;
+        private final long maxWeight;
+        private long weight;
+
+        /**
+         * @param maxEntries the maximum number of entries in the segment, 0 for no limit
+         * @param maxWeight  the maximum size of the segment, 0 for no limit
+         */
+        private Segment(final long maxEntries, final long maxWeight) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+            this.maxWeight = maxWeight;
+        }
+
+        /**
+         * @param key the key to remove, keeping track of the size of the segment
+         */
+        private void removeEntry(final Object key) {
+            final CacheEntry<V> removed = remove(key);
+            if (removed != null) {
+                this.weight -= removed.weight;
+            }
+        }
+
+        /**
+         * Removes the least recently used entries until the segment is within its limits
+         *
+         * @return the number of entries evicted
+         */
+        private int evict() {
+            int evicted = 0;
+            final Iterator<Map.Entry<K, CacheEntry<V>>> iterator = entrySet().iterator();
+            while (iterator.hasNext() && (this.maxEntries > 0 && size() > this.maxEntries
+                    || this.maxWeight > 0 && this.weight > this.maxWeight)) {
+                final Map.Entry<K, CacheEntry<V>> eldest = iterator.next();
+                this.weight -= eldest.getValue().weight;
+                iterator.remove();
+                evicted++;
+            }
+            return evicted;
+        }
+    }
+}
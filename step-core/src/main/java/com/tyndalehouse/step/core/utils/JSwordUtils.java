@@ -35,6 +35,8 @@ package com.tyndalehouse.step.core.utils;
 import static java.util.Collections.sort;
 import static org.crosswire.jsword.book.OSISUtil.OSIS_ELEMENT_VERSE;
 
+import java.io.File;
+import java.net.URI;
 import java.util.*;
 
 import org.crosswire.common.util.Language;
@@ -42,6 +44,7 @@ import org.crosswire.common.util.Languages;
 import org.crosswire.jsword.book.Book;
 import org.crosswire.jsword.book.BookData;
 import org.crosswire.jsword.book.BookException;
+import org.crosswire.jsword.book.BookMetaData;
 import org.crosswire.jsword.book.FeatureType;
 import org.crosswire.jsword.book.basic.AbstractPassageBook;
 import org.crosswire.jsword.passage.Key;
@@ -70,6 +73,7 @@ public final class JSwordUtils {
     private static final Logger LOGGER = LoggerFactory.getLogger(JSwordUtils.class);
     private static final String ANCIENT_GREEK = "grc";
     private static final String ANCIENT_HEBREW = "he";
+    private static final String MODULE_VERSION = "Version";
 
     /**
      * hiding implementaiton
@@ -287,4 +291,37 @@ public final class JSwordUtils {
     public static String getChapterOsis(final BibleBook bibleBook, final int chapterNumber) {
         return bibleBook.isShortBook() ? bibleBook.getOSIS() : String.format(BOOK_CHAPTER_OSIS_FORMAT, bibleBook.getOSIS(), chapterNumber);
     }
+
+    /**
+     * Identifies the installed copy of a module, so that what was built from a module is built again once the
+     * module is replaced. Modules without a version in their configuration are identified by the size and last
+     * modification of their files instead.
+     *
+     * @param book the version
+     * @return the version of the module
+     */
+    public static String getModuleVersion(final Book book) {
+        final BookMetaData metaData = book.getBookMetaData();
+        final Object version = metaData.getProperty(MODULE_VERSION);
+        if (version != null) {
+            return version.toString();
+        }
+
+        final URI location = metaData.getLocation();
+        if (location == null || !"file".equals(location.getScheme())) {
+            return "";
+        }
+
+        final File data = new File(location);
+        final File[] files = data.isDirectory() ? data.listFiles() : new File[]{data};
+        long size = 0;
+        long lastModified = 0;
+        if (files != null) {
+            for (final File f : files) {
+                size += f.length();
+                lastModified = Math.max(lastModified, f.lastModified());
+            }
+        }
+        return size + "-" + lastModified;
+    }
 }
@@ -32,10 +32,10 @@
  ******************************************************************************/
 package com.tyndalehouse.step.core.utils;
 
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 /**
@@ -45,7 +45,7 @@ import java.util.regex.Pattern;
  * @author chrisburrell
  */
 public final class StringUtils {
-    private static final Map<String, Pattern> PATTERNS = new HashMap<String, Pattern>();
+    private static final Map<String, Pattern> PATTERNS = new ConcurrentHashMap<String, Pattern>();
     private static final Pattern CLEAN_RESTRICTION = Pattern.compile("[\\[\\]+]");
 
     /**
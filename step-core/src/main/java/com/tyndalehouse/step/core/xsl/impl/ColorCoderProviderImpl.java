@@ -36,6 +36,7 @@ import static com.tyndalehouse.step.core.utils.StringUtils.isBlank;
 
 import javax.inject.Inject;
 
+import org.apache.lucene.search.MatchAllDocsQuery;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -71,7 +72,9 @@ import com.tyndalehouse.step.core.data.EntityManager;
  * Pale for Genative or Dative (ie the person/thing owning another thing or doing to/by/from a thing)
  * <p>
  * ie anything ending GSM GSN GSF GPM GPN or GPF or DSM DSN DSF DPM DPN or DPF
- * 
+ * <p>
+ * The classes of every morphology code are read from the index into a table, which is read again if the index is
+ * refreshed. Looking up a code neither locks nor allocates.
  * 
  * @author chrisburrell
  */
@@ -83,6 +86,7 @@ public class ColorCoderProviderImpl {
 
     // css classes
     private final EntityIndexReader morphology;
+    private volatile ColorTable table = new ColorTable(0, new EntityDoc[0]);
 
     /**
      * @param manager the manager from which to obtain an index reader for morphology information
@@ -90,6 +94,7 @@ public class ColorCoderProviderImpl {
     @Inject
     public ColorCoderProviderImpl(final EntityManager manager) {
         this.morphology = manager.getReader("morphology");
+        getTable();
     }
 
     /**
@@ -97,34 +102,126 @@ public class ColorCoderProviderImpl {
      * @return the classname
      */
     public String getColorClass(final String morph) {
-        if (morph == null || morph.length() < MINIMUM_MORPH_LENGTH) {
+        if (morph == null) {
             return "";
         }
 
-        String classes = null;
-        if (morph.startsWith(ROBINSON_PREFIX_LC) || morph.startsWith(ROBINSON_PREFIX_UC)) {
-            // we're in business and we know we have at least 3 characters
-            LOGGER.debug("Identifying grammar for [{}]", morph);
+        final ColorTable currentTable = getTable();
+        int start = 0;
+        while (morph.length() - start >= MINIMUM_MORPH_LENGTH
+                && (morph.startsWith(ROBINSON_PREFIX_LC, start) || morph.startsWith(ROBINSON_PREFIX_UC, start))) {
+            final int codeStart = start + ROBINSON_PREFIX_LC.length();
+            final int firstSpace = morph.indexOf(' ', codeStart);
+            final String classes = currentTable.get(morph, codeStart, firstSpace != -1 ? firstSpace : morph.length());
+            if (classes != null || firstSpace == -1) {
+                return classes != null ? classes : "";
+            }
 
-            final int length = ROBINSON_PREFIX_LC.length();
-            final int firstSpace = morph.indexOf(' ', length);
-            String code;
-            if (firstSpace != -1) {
-                code = morph.substring(length, firstSpace);
-            } else {
-                code = morph.substring(length);
+            // redo the same process, but with the next code in the string
+            start = firstSpace + 1;
+        }
+        return "";
+    }
+
+    /**
+     * @return the table of classes, read again from the index if the index has been refreshed since
+     */
+    private ColorTable getTable() {
+        final ColorTable currentTable = this.table;
+        final int generation = this.morphology.getGeneration();
+        if (currentTable.generation == generation || generation == 0) {
+            return currentTable;
+        }
+
+        synchronized (this) {
+            final int latestGeneration = this.morphology.getGeneration();
+            if (this.table.generation != latestGeneration) {
+                final long start = System.currentTimeMillis();
+                this.table = new ColorTable(latestGeneration, this.morphology.search(new MatchAllDocsQuery()));
+                LOGGER.info("Read colour classes of [{}] morphology codes in [{}] ms", this.table.size,
+                        System.currentTimeMillis() - start);
             }
+            return this.table;
+        }
+    }
 
-            final EntityDoc[] results = this.morphology.searchExactTermBySingleField("code", 1, code);
-            if (results.length > 0) {
-                classes = results[0].get("cssClasses");
+    /**
+     * An immutable open-addressing table of code to css classes, which can be searched with part of a string
+     */
+    private static final class ColorTable {
+        private final int generation;
+        private final String[] codes;
+        private final String[] classes;
+        private final int mask;
+        private final int size;
+
+        /**
+         * @param generation the generation of the index the table was read from
+         * @param docs       all the morphology entities, codes without classes are left out
+         */
+        private ColorTable(final int generation, final EntityDoc[] docs) {
+            this.generation = generation;
+
+            int capacity = 16;
+            while (capacity < docs.length * 2) {
+                capacity <<= 1;
+            }
+            this.codes = new String[capacity];
+            this.classes = new String[capacity];
+            this.mask = capacity - 1;
+
+            int count = 0;
+            for (final EntityDoc doc : docs) {
+                final String code = doc.get("code");
+                final String cssClasses = doc.get("cssClasses");
+                if (code == null || isBlank(cssClasses)) {
+                    continue;
+                }
+
+                int slot = hash(code, 0, code.length()) & this.mask;
+                while (this.codes[slot] != null && !this.codes[slot].equals(code)) {
+                    slot = (slot + 1) & this.mask;
+                }
+                if (this.codes[slot] == null) {
+                    count++;
+                }
+                this.codes[slot] = code;
+                this.classes[slot] = cssClasses;
+            }
+            this.size = count;
+        }
+
+        /**
+         * @param morph the string containing the code
+         * @param start the start of the code
+         * @param end   the end of the code
+         * @return the css classes for the code, or null if it has none
+         */
+        private String get(final String morph, final int start, final int end) {
+            final int length = end - start;
+            int slot = hash(morph, start, end) & this.mask;
+            String code;
+            while ((code = this.codes[slot]) != null) {
+                if (code.length() == length && morph.regionMatches(start, code, 0, length)) {
+                    return this.classes[slot];
+                }
+                slot = (slot + 1) & this.mask;
             }
+            return null;
+        }
 
-            if (isBlank(classes) && firstSpace != -1) {
-                // redo the same process, but with less of the string,
-                return getColorClass(morph.substring(firstSpace + 1));
+        /**
+         * @param value the string containing the code
+         * @param start the start of the code
+         * @param end   the end of the code
+         * @return the hash of the code, computed without extracting it from the string
+         */
+        private static int hash(final String value, final int start, final int end) {
+            int hash = 0;
+            for (int ii = start; ii < end; ii++) {
+                hash = 31 * hash + value.charAt(ii);
             }
+            return hash ^ (hash >>> 16);
         }
-        return classes != null ? classes : "";
     }
 }
@@ -58,6 +58,20 @@ public class DualKey<T, S> {
         this.s = s;
     }
 
+    /**
+     * @return the first part of the key
+     */
+    public T getFirst() {
+        return this.t;
+    }
+
+    /**
+     * @return the second part of the key
+     */
+    public S getSecond() {
+        return this.s;
+    }
+
     @Override
     public boolean equals(final Object obj) {
         if (obj == this) {
@@ -35,8 +35,7 @@ package com.tyndalehouse.step.core.xsl.impl;
 import com.tyndalehouse.step.core.data.EntityDoc;
 import com.tyndalehouse.step.core.exceptions.StepInternalException;
 import com.tyndalehouse.step.core.service.VocabularyService;
-import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
-import com.tyndalehouse.step.core.utils.JSwordUtils;
+import com.tyndalehouse.step.core.service.jsword.helpers.InterlinearAlignment;
 import com.tyndalehouse.step.core.utils.StringConversionUtils;
 import com.tyndalehouse.step.core.utils.StringUtils;
 import com.tyndalehouse.step.core.xsl.InterlinearProvider;
@@ -45,7 +44,6 @@ import org.crosswire.jsword.passage.*;
 import org.crosswire.jsword.versification.Testament;
 import org.crosswire.jsword.versification.Versification;
 import org.crosswire.jsword.versification.VersificationsMapper;
-import org.crosswire.jsword.versification.system.Versifications;
 import org.jdom2.Content;
 import org.jdom2.Element;
 import org.jdom2.Text;
@@ -56,12 +54,13 @@ import java.util.*;
 
 import static com.tyndalehouse.step.core.utils.StringConversionUtils.getAnyKey;
 import static com.tyndalehouse.step.core.utils.StringUtils.*;
-import static java.lang.String.format;
 
 /**
  * This object is not purposed to be used as a singleton. It builds up textual information on initialisation, and is
- * specific to requests. On initialisation, the OSIS XML is retrieved and iterated through to find all strong/morph
- * candidates
+ * specific to requests. On initialisation, the words of the passage are read from the alignment of the version, or
+ * failing that the OSIS XML is retrieved and iterated through to find all strong/morph candidates. Everything that
+ * doesn't depend on the passage is held by the shared {@link InterlinearVersion}, so that this object is no more than
+ * a cursor over the words of the passage.
  *
  * @author chrisburrell
  */
@@ -86,8 +85,6 @@ public class InterlinearProviderImpl implements InterlinearProvider {
     // a temporary, non-thread-safe, transient, working variable, which keeps track of the verse we're in.
     private Verse currentVerse;
     private Book currentBook;
-    private Map<String, String> hebrewDirectMapping;
-    private Map<String, String> hebrewIndirectMappings;
     private Testament testament;
     private String masterVersion;
     private Versification masterVersification;
@@ -114,47 +111,41 @@ public class InterlinearProviderImpl implements InterlinearProvider {
     /**
      * sets up the interlinear provider with the correct version and text scope.
      *
-     * @param versificationService   versification service
-     * @param version                the version to use to set up the interlinear
-     * @param versifiedKey           the text scope reference, defining the bounds of the lookup
-     * @param hebrewDirectMapping    the hebrew overriding mappings
-     * @param hebrewIndirectMappings the mappings used if no other mapping is found
+     * @param masterVersion       the master version
+     * @param masterVersification the versification of the master version
+     * @param interlinearVersion  the shared state of the version to use to set up the interlinear
+     * @param versifiedKey        the text scope reference, defining the bounds of the lookup
+     * @param vocabProvider       the provider of vocabulary
+     * @param stripGreekAccents   true to ensure Greek accents are stripped off Greek texts
+     * @param stripHebrewAccents  true to ensure Hebrew accents are stripped off Hebrew texts
+     * @param stripVowels         true to ensure vowels are stripped off Hebrew texts
      */
-    public InterlinearProviderImpl(final String masterVersion, Versification masterVersification, JSwordVersificationService versificationService,
-                                   final String version, final Key versifiedKey, final Map<String, String> hebrewDirectMapping,
-                                   final Map<String, String> hebrewIndirectMappings, final VocabularyService vocabProvider,
-                                   boolean stripGreekAccents, boolean stripHebrewAccents, boolean stripVowels) {
+    public InterlinearProviderImpl(final String masterVersion, final Versification masterVersification,
+                                   final InterlinearVersion interlinearVersion, final Key versifiedKey,
+                                   final VocabularyService vocabProvider, boolean stripGreekAccents,
+                                   boolean stripHebrewAccents, boolean stripVowels) {
         this.masterVersion = masterVersion;
         this.masterVersification = masterVersification;
         this.vocabularyService = vocabProvider;
-
-        // first check whether the values passed in are correct
-        if (areAnyBlank(version)) {
-            this.originalLanguage = false;
-            return;
-        }
-
-        this.hebrewIndirectMappings = hebrewIndirectMappings;
-        this.hebrewDirectMapping = hebrewDirectMapping;
-        this.currentBook = versificationService.getBookFromVersion(version);
-        this.versification = versificationService.getVersificationForVersion(currentBook);
-        if (this.currentBook == null) {
-            throw new StepInternalException(format("Couldn't look up book: [%s]", version));
-        }
+        this.currentBook = interlinearVersion.getBook();
+        this.versification = interlinearVersion.getVersification();
 
         //mark the book as original language
-        this.originalLanguage = JSwordUtils.isAncientBook(currentBook);
-        final boolean ancientHebrewBook = JSwordUtils.isAncientHebrewBook(currentBook);
-        this.stripAccents = stripGreekAccents && JSwordUtils.isAncientGreekBook(currentBook) ||
-                stripHebrewAccents && ancientHebrewBook;
-        this.stripVowels = ancientHebrewBook && this.stripAccents && stripVowels;
+        this.originalLanguage = interlinearVersion.isOriginalLanguage();
+        this.stripAccents = stripGreekAccents && interlinearVersion.isAncientGreek() ||
+                stripHebrewAccents && interlinearVersion.isAncientHebrew();
+        this.stripVowels = interlinearVersion.isAncientHebrew() && this.stripAccents && stripVowels;
 
-        BookData bookData;
         try {
             setTestamentType(versifiedKey);
 
-            bookData = getBookDataWithVerse0(versifiedKey);
-            scanForTextualInformation(bookData.getOsisFragment(), null);
+            final Key key = getKeyWithVerse0(versifiedKey);
+            final InterlinearAlignment alignment = interlinearVersion.getAlignment();
+            if (alignment != null) {
+                readAlignedWords(alignment, key);
+            } else {
+                scanForTextualInformation(new BookData(this.currentBook, key).getOsisFragment(), null);
+            }
         } catch (final BookException e) {
             throw new StepInternalException(e.getMessage(), e);
         }
@@ -162,6 +153,58 @@ public class InterlinearProviderImpl implements InterlinearProvider {
         this.disabled = this.limitedAccuracy.size() == 0;
     }
 
+    /**
+     * sets up a provider that only collects the words of the OSIS it is given, used to precompute alignments
+     *
+     * @param versification the versification of the version
+     */
+    public InterlinearProviderImpl(final Versification versification) {
+        this.originalLanguage = false;
+        this.versification = versification;
+    }
+
+    /**
+     * Collects the words of a passage, as they would be collected for an interlinear
+     *
+     * @param osis      the OSIS of the passage
+     * @param testament the testament of the passage
+     * @return the words, keyed by strong number and verse
+     */
+    public Map<DualKey<String, String>, Deque<Word>> collectWords(final Element osis, final Testament testament) {
+        this.limitedAccuracy.clear();
+        this.currentVerse = null;
+        this.testament = testament;
+        scanForTextualInformation(osis, null);
+        return this.limitedAccuracy;
+    }
+
+    /**
+     * Reads the words of the passage from the precomputed alignment of the version, rather than from its OSIS
+     *
+     * @param alignment the alignment of the version
+     * @param key       the passage
+     */
+    private void readAlignedWords(final InterlinearAlignment alignment, final Key key) {
+        final Passage passage = VersificationsMapper.instance().map(KeyUtil.getPassage(key), this.versification);
+        final Iterator<Key> verses = passage.iterator();
+        while (verses.hasNext()) {
+            final Verse verse = (Verse) verses.next();
+            final String verseId = verse.getOsisIDNoSubIdentifier();
+            final int ordinal = verse.getOrdinal();
+            for (int ii = alignment.getFirstWord(ordinal); ii < alignment.getEndWord(ordinal); ii++) {
+                final DualKey<String, String> strongVerseKey = new DualKey<String, String>(alignment.getStrong(ii),
+                        alignment.isOutsideVerse(ii) ? NO_VERSE : verseId);
+                Deque<Word> verseKeyedStrongs = this.limitedAccuracy.get(strongVerseKey);
+                if (verseKeyedStrongs == null) {
+                    verseKeyedStrongs = new LinkedList<>();
+                    this.limitedAccuracy.put(strongVerseKey, verseKeyedStrongs);
+                }
+                verseKeyedStrongs.add(new Word(alignment.getText(ii), alignment.isPartial(ii),
+                        alignment.getUntaggedText(ii)));
+            }
+        }
+    }
+
     /**
      * package private version for testing purposes.
      */
@@ -176,9 +219,9 @@ public class InterlinearProviderImpl implements InterlinearProvider {
      * verse 1, etc. then we continue as normal.
      *
      * @param versifiedKey the key from the original versification
-     * @return a bookdata with the correct verse
+     * @return the key with the correct verse
      */
-    private BookData getBookDataWithVerse0(final Key versifiedKey) {
+    private Key getKeyWithVerse0(final Key versifiedKey) {
         final Iterator<Key> iterator = versifiedKey.iterator();
         Verse v = (Verse) iterator.next();
         if (v != null && !iterator.hasNext()) {
@@ -189,13 +232,12 @@ public class InterlinearProviderImpl implements InterlinearProvider {
             if (mappedVerse.getCardinality() == 1) {
                 final Verse next = (Verse) mappedVerse.iterator().next();
                 if (next.getVerse() == 0) {
-                    return new BookData(this.currentBook,
-                            new Verse(this.versification, next.getBook(), next.getChapter(), next.getVerse() + 1));
+                    return new Verse(this.versification, next.getBook(), next.getChapter(), next.getVerse() + 1);
                 }
             }
         }
 
-        return new BookData(this.currentBook, versifiedKey);
+        return versifiedKey;
     }
 
     @Override
@@ -326,12 +368,12 @@ public class InterlinearProviderImpl implements InterlinearProvider {
         if (!originalLanguage) {
             // currently only supporting OLD Testament
             if (isOT) {
-                final String direct = this.hebrewDirectMapping.get(strong);
+                final String direct = MultiInterlinearProviderImpl.HEBREW_DIRECT_MAPPING.get(strong);
                 if (direct != null) {
                     return direct;
                 }
 
-                final String indirect = this.hebrewIndirectMappings.get(strong);
+                final String indirect = MultiInterlinearProviderImpl.HEBREW_INDIRECT_MAPPINGS.get(strong);
                 if (indirect != null) {
                     return indirect;
                 }
@@ -555,7 +597,7 @@ public class InterlinearProviderImpl implements InterlinearProvider {
      * @return true, if successful
      */
     private boolean blacklisted(final String strongKey) {
-        return this.testament == Testament.OLD && this.hebrewDirectMapping.containsKey(strongKey);
+        return this.testament == Testament.OLD && MultiInterlinearProviderImpl.HEBREW_DIRECT_MAPPING.containsKey(strongKey);
     }
 
     /**
@@ -607,10 +649,8 @@ public class InterlinearProviderImpl implements InterlinearProvider {
      * @param key the key to the passage being looked up
      */
     private void setTestamentType(final Key key) {
-        final Versification v11n = Versifications.instance().getVersification(
-                (String) this.currentBook.getBookMetaData().getProperty(BookMetaData.KEY_VERSIFICATION));
         final Passage passage = KeyUtil.getPassage(key);
-        this.testament = v11n.getTestament(v11n.getOrdinal(passage.getVerseAt(0)));
+        this.testament = this.versification.getTestament(this.versification.getOrdinal(passage.getVerseAt(0)));
     }
 
     /**
@@ -0,0 +1,81 @@
+package com.tyndalehouse.step.core.xsl.impl;
+
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.versification.Versification;
+
+import com.tyndalehouse.step.core.service.jsword.helpers.InterlinearAlignment;
+import com.tyndalehouse.step.core.utils.JSwordUtils;
+
+/**
+ * What an interlinear needs to know about one of its versions, regardless of the passage being shown: the version
+ * itself, its versification and language, and its precomputed alignment if there is one. Instances are immutable and
+ * are shared by every interlinear showing the version, whichever thread renders it. The words of the passage are
+ * held by the {@link InterlinearProviderImpl} of each request, which consumes them as the passage is rendered.
+ *
+ * @author chrisburrell
+ */
+public final class InterlinearVersion {
+    private final Book book;
+    private final Versification versification;
+    private final boolean originalLanguage;
+    private final boolean ancientGreek;
+    private final boolean ancientHebrew;
+    private final InterlinearAlignment alignment;
+
+    /**
+     * @param book          the version
+     * @param versification the versification of the version
+     * @param alignment     the precomputed words of the version, or null to read them from the version
+     */
+    public InterlinearVersion(final Book book, final Versification versification,
+                              final InterlinearAlignment alignment) {
+        this.book = book;
+        this.versification = versification;
+        this.alignment = alignment;
+        this.originalLanguage = JSwordUtils.isAncientBook(book);
+        this.ancientGreek = JSwordUtils.isAncientGreekBook(book);
+        this.ancientHebrew = JSwordUtils.isAncientHebrewBook(book);
+    }
+
+    /**
+     * @return the version
+     */
+    public Book getBook() {
+        return this.book;
+    }
+
+    /**
+     * @return the versification of the version
+     */
+    public Versification getVersification() {
+        return this.versification;
+    }
+
+    /**
+     * @return true if the version is in Greek or Hebrew
+     */
+    public boolean isOriginalLanguage() {
+        return this.originalLanguage;
+    }
+
+    /**
+     * @return true if the version is in ancient Greek
+     */
+    public boolean isAncientGreek() {
+        return this.ancientGreek;
+    }
+
+    /**
+     * @return true if the version is in ancient Hebrew
+     */
+    public boolean isAncientHebrew() {
+        return this.ancientHebrew;
+    }
+
+    /**
+     * @return the precomputed words of the version, or null if there are none
+     */
+    public InterlinearAlignment getAlignment() {
+        return this.alignment;
+    }
+}
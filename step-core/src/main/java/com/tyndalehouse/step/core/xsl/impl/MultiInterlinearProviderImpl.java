@@ -34,16 +34,19 @@ package com.tyndalehouse.step.core.xsl.impl;
 
 import com.tyndalehouse.step.core.exceptions.StepInternalException;
 import com.tyndalehouse.step.core.service.VocabularyService;
+import com.tyndalehouse.step.core.service.jsword.JSwordInterlinearAlignmentService;
 import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
 import com.tyndalehouse.step.core.utils.StringUtils;
 import com.tyndalehouse.step.core.xsl.InterlinearProvider;
 import com.tyndalehouse.step.core.xsl.MultiInterlinearProvider;
+import org.crosswire.jsword.book.Book;
 import org.crosswire.jsword.passage.Key;
 import org.crosswire.jsword.passage.PassageKeyFactory;
 import org.crosswire.jsword.versification.Versification;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -62,9 +65,17 @@ public class MultiInterlinearProviderImpl implements MultiInterlinearProvider {
      * we separate by commas and spaces.
      */
     static final String VERSION_SEPARATOR = ", ?";
+    /**
+     * The override, regardless of whether the interlineared text contains a mapping
+     */
+    static final Map<String, String> HEBREW_DIRECT_MAPPING = initHebrewDirectMapping();
+    /**
+     * The mappings used if no link is found
+     */
+    static final Map<String, String> HEBREW_INDIRECT_MAPPINGS = initHebrewIndirectMappings();
     private static final Logger LOGGER = LoggerFactory.getLogger(MultiInterlinearProviderImpl.class);
     /**
-     * The interlinear providers.
+     * The interlinear providers, which are cursors over the words of this request's passage.
      */
     private final Map<String, InterlinearProvider> interlinearProviders = new HashMap<String, InterlinearProvider>();
     private final JSwordVersificationService versificationService;
@@ -82,6 +93,8 @@ public class MultiInterlinearProviderImpl implements MultiInterlinearProvider {
      * @param stripGreekAccents    true to ensure Greek accents are stripped off Hebrew texts
      * @param stripHebrewAccents   true to ensure Hebrew accents are stripped off Hebrew texts
      * @param stripVowels          true to ensure accents are stripped off Greek texts
+     * @param alignmentService     the service sharing the state of interlinear versions across requests, may be
+     *                             null
      */
     public MultiInterlinearProviderImpl(
             final String masterVersion,
@@ -89,7 +102,8 @@ public class MultiInterlinearProviderImpl implements MultiInterlinearProvider {
             String versions,
             final String textScope,
             final JSwordVersificationService versificationService, final VocabularyService vocabProvider,
-            final boolean stripGreekAccents, final boolean stripHebrewAccents, final boolean stripVowels) {
+            final boolean stripGreekAccents, final boolean stripHebrewAccents, final boolean stripVowels,
+            final JSwordInterlinearAlignmentService alignmentService) {
         this.versificationService = versificationService;
 
         // first check whether the values passed in are correct
@@ -98,8 +112,6 @@ public class MultiInterlinearProviderImpl implements MultiInterlinearProvider {
         }
 
         try {
-            final Map<String, String> hebrewDirectMapping = initHebrewDirectMapping();
-            final Map<String, String> hebrewIndirectMappings = initHebrewIndirectMappings();
             final String[] differentVersions = split(versions, VERSION_SEPARATOR);
 
             Key versifiedKey = PassageKeyFactory.instance().getKey(masterVersification, textScope);
@@ -107,9 +119,11 @@ public class MultiInterlinearProviderImpl implements MultiInterlinearProvider {
             for (final String version : differentVersions) {
                 if (isNotBlank(version)) {
                     final String normalisedVersion = version.trim();
+                    final InterlinearVersion interlinearVersion = getInterlinearVersion(normalisedVersion,
+                            alignmentService);
                     this.interlinearProviders.put(normalisedVersion, new InterlinearProviderImpl(masterVersion, masterVersification,
-                            versificationService, normalisedVersion, versifiedKey, hebrewDirectMapping,
-                            hebrewIndirectMappings, vocabProvider, stripGreekAccents, stripHebrewAccents, stripVowels));
+                            interlinearVersion, versifiedKey, vocabProvider, stripGreekAccents, stripHebrewAccents,
+                            stripVowels));
                 }
             }
             // CHECKSTYLE:OFF
@@ -122,12 +136,34 @@ public class MultiInterlinearProviderImpl implements MultiInterlinearProvider {
 
     }
 
+    /**
+     * @param version          the interlinear version
+     * @param alignmentService the service sharing the state of interlinear versions, may be null
+     * @return the state of the version, shared with other requests if possible
+     */
+    private InterlinearVersion getInterlinearVersion(final String version,
+                                                     final JSwordInterlinearAlignmentService alignmentService) {
+        if (alignmentService != null) {
+            final InterlinearVersion interlinearVersion = alignmentService.getInterlinearVersion(version);
+            if (interlinearVersion == null) {
+                throw new StepInternalException(String.format("Couldn't look up book: [%s]", version));
+            }
+            return interlinearVersion;
+        }
+
+        final Book book = this.versificationService.getBookFromVersion(version);
+        if (book == null) {
+            throw new StepInternalException(String.format("Couldn't look up book: [%s]", version));
+        }
+        return new InterlinearVersion(book, this.versificationService.getVersificationForVersion(book), null);
+    }
+
     /**
      * Inits the hebrew indirect mappings. These are used if no link is found.
      *
      * @return the mapping between the strong numbers and their corresponding English.
      */
-    private Map<String, String> initHebrewIndirectMappings() {
+    private static Map<String, String> initHebrewIndirectMappings() {
         final Map<String, String> hebrewLexicon = new HashMap<String, String>(9);
         hebrewLexicon.put("1961", "#to be");
         hebrewLexicon.put("3588", "#that");
@@ -139,7 +175,7 @@ public class MultiInterlinearProviderImpl implements MultiInterlinearProvider {
         hebrewLexicon.put("5921", "#on");
         hebrewLexicon.put("4480", "#from");
         hebrewLexicon.put("3651", "#thus");
-        return hebrewLexicon;
+        return Collections.unmodifiableMap(hebrewLexicon);
     }
 
     /**
@@ -147,11 +183,11 @@ public class MultiInterlinearProviderImpl implements MultiInterlinearProvider {
      *
      * @return the mappings between strong numbers and the words that should appear
      */
-    private Map<String, String> initHebrewDirectMapping() {
+    private static Map<String, String> initHebrewDirectMapping() {
         final Map<String, String> blackList = new HashMap<String, String>(2);
         blackList.put("853", "#the");
         blackList.put("854", "#the");
-        return blackList;
+        return Collections.unmodifiableMap(blackList);
     }
 
     @Override
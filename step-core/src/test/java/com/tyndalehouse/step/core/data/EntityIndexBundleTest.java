@@ -0,0 +1,179 @@
+package com.tyndalehouse.step.core.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.Properties;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.tyndalehouse.step.core.data.entities.impl.TestEntityManager;
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+
+/**
+ * Tests that bundles of entity indexes can be exported and installed on another node
+ *
+ * @author chrisburrell
+ */
+public class EntityIndexBundleTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private TestEntityManager entityManager;
+    private File bundleFile;
+
+    /**
+     * builds a bundle out of a fake nave index
+     *
+     * @throws IOException if the index can't be written
+     */
+    @Before
+    public void setUp() throws IOException {
+        this.entityManager = new TestEntityManager();
+
+        final File source = this.folder.newFolder("source");
+        final File nave = new File(source, "nave");
+        assertTrue(nave.mkdirs());
+        write(new File(nave, "segments.gen"), "some index data");
+
+        final EntityIndexManifest manifest = new EntityIndexManifest("nave",
+                this.entityManager.getConfig("nave").getConfigChecksum());
+        manifest.setEntries(3);
+        manifest.write(nave);
+
+        this.bundleFile = new File(this.folder.getRoot(), "entities.zip");
+        assertEquals(1, new EntityIndexBundle(this.entityManager, source, "1.0").export(this.bundleFile));
+    }
+
+    /**
+     * the bundle is installed along with the manifests, and only once
+     *
+     * @throws IOException if the bundle can't be read
+     */
+    @Test
+    public void testInstall() throws IOException {
+        final File target = new File(this.folder.getRoot(), "entities");
+        final EntityIndexBundle bundle = new EntityIndexBundle(this.entityManager, target, "1.0");
+
+        assertTrue(bundle.install(this.bundleFile));
+        assertTrue(new File(target, "nave/segments.gen").exists());
+        final EntityIndexManifest manifest = EntityIndexManifest.read(new File(target, "nave"));
+        assertNotNull(manifest);
+        assertEquals(3, manifest.getEntries());
+
+        assertFalse(bundle.install(this.bundleFile));
+    }
+
+    /**
+     * indexes of entities that aren't in the bundle are kept, those that are in it are replaced
+     *
+     * @throws IOException if the bundle can't be read
+     */
+    @Test
+    public void testInstallKeepsOtherEntities() throws IOException {
+        final File target = new File(this.folder.getRoot(), "entities");
+        final File timeline = new File(target, "timelineEvent");
+        assertTrue(timeline.mkdirs());
+        write(new File(timeline, "segments.gen"), "timeline data");
+        final File oldNave = new File(target, "nave");
+        assertTrue(oldNave.mkdirs());
+        write(new File(oldNave, "_0.cfs"), "old nave data");
+
+        assertTrue(new EntityIndexBundle(this.entityManager, target, "1.0").install(this.bundleFile));
+        assertTrue(new File(timeline, "segments.gen").exists());
+        assertTrue(new File(target, "nave/segments.gen").exists());
+        assertFalse(new File(target, "nave/_0.cfs").exists());
+        assertFalse(new File(target, "nave.previous").exists());
+    }
+
+    /**
+     * bundles built for another version of the data are ignored
+     *
+     * @throws IOException if the bundle can't be read
+     */
+    @Test
+    public void testDifferentDataVersion() throws IOException {
+        final File target = new File(this.folder.getRoot(), "entities");
+        assertFalse(new EntityIndexBundle(this.entityManager, target, "2.0").install(this.bundleFile));
+        assertFalse(target.exists());
+    }
+
+    /**
+     * files that would be extracted outside the staging directory are rejected, even if the manifest lists them
+     *
+     * @throws IOException if the bundle can't be read
+     */
+    @Test
+    public void testFileOutsideBundleRejected() throws IOException {
+        final File tampered = new File(this.folder.getRoot(), "tampered.zip");
+        final ZipFile zip = new ZipFile(this.bundleFile);
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(tampered));
+        try {
+            final Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                final ZipEntry entry = entries.nextElement();
+                final InputStream in = zip.getInputStream(entry);
+                try {
+                    if (EntityIndexBundle.BUNDLE_MANIFEST.equals(entry.getName())) {
+                        final Properties manifest = new Properties();
+                        manifest.load(in);
+                        manifest.setProperty("file.../escaped", "0");
+                        out.putNextEntry(new ZipEntry(entry.getName()));
+                        manifest.store(out, null);
+                    } else {
+                        out.putNextEntry(new ZipEntry(entry.getName()));
+                        final byte[] buffer = new byte[4096];
+                        int read;
+                        while ((read = in.read(buffer)) != -1) {
+                            out.write(buffer, 0, read);
+                        }
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+            out.putNextEntry(new ZipEntry("../escaped"));
+            out.write("escaped".getBytes("UTF-8"));
+        } finally {
+            out.close();
+            zip.close();
+        }
+
+        final File target = new File(this.folder.getRoot(), "entities");
+        try {
+            new EntityIndexBundle(this.entityManager, target, "1.0").install(tampered);
+            fail("The file outside the bundle should have been rejected");
+        } catch (final StepInternalException ex) {
+            assertTrue(ex.getMessage().contains("../escaped"));
+        }
+        assertFalse(new File(this.folder.getRoot(), "escaped").exists());
+        assertFalse(target.exists());
+    }
+
+    /**
+     * @param file    the file to write
+     * @param content the content of the file
+     * @throws IOException if the file can't be written
+     */
+    private void write(final File file, final String content) throws IOException {
+        final FileOutputStream stream = new FileOutputStream(file);
+        try {
+            stream.write(content.getBytes("UTF-8"));
+        } finally {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.tyndalehouse.step.core.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.tyndalehouse.step.core.data.entities.impl.TestEntityManager;
+
+/**
+ * Tests that manifests survive a round trip to disk and detect changes in the sources
+ *
+ * @author chrisburrell
+ */
+public class EntityIndexManifestTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private EntityConfiguration config;
+
+    /**
+     * sets up the configuration of a test entity
+     */
+    @Before
+    public void setUp() {
+        this.config = new TestEntityManager().getConfig("nave");
+    }
+
+    /**
+     * a manifest written to disk should match the manifest of the same sources
+     */
+    @Test
+    public void testRoundTrip() {
+        final File directory = this.folder.getRoot();
+        final EntityIndexManifest manifest = EntityIndexManifest.forSources(this.config, Arrays.asList("nave.txt"));
+        manifest.setEntries(5);
+        manifest.write(directory);
+
+        final EntityIndexManifest existing = EntityIndexManifest.read(directory);
+        assertTrue(EntityIndexManifest.forSources(this.config, Arrays.asList("nave.txt")).matches(existing));
+        assertEquals(5, existing.getEntries());
+    }
+
+    /**
+     * different sources should make the index stale
+     */
+    @Test
+    public void testChangedSources() {
+        final File directory = this.folder.getRoot();
+        EntityIndexManifest.forSources(this.config, Arrays.asList("nave.txt")).write(directory);
+
+        final EntityIndexManifest existing = EntityIndexManifest.read(directory);
+        assertFalse(EntityIndexManifest.forSources(this.config, Arrays.asList("nave.txt", "hotspots.csv"))
+                .matches(existing));
+    }
+
+    /**
+     * a missing manifest never matches
+     */
+    @Test
+    public void testMissingManifest() {
+        final File directory = this.folder.getRoot();
+        EntityIndexManifest.forSources(this.config, Arrays.asList("nave.txt")).write(directory);
+        EntityIndexManifest.delete(directory);
+
+        assertNull(EntityIndexManifest.read(directory));
+        assertFalse(EntityIndexManifest.forSources(this.config, Arrays.asList("nave.txt")).matches(null));
+    }
+}
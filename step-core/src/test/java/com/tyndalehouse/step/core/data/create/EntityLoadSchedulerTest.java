@@ -0,0 +1,100 @@
+package com.tyndalehouse.step.core.data.create;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.inject.Provider;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.models.ClientSession;
+
+/**
+ * Tests the scheduling of entity loads
+ *
+ * @author chrisburrell
+ */
+public class EntityLoadSchedulerTest {
+    private final List<String> loaded = new CopyOnWriteArrayList<String>();
+    private Loader loader;
+
+    /**
+     * sets up a loader to report progress to
+     */
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        final Provider<ClientSession> clientSessionProvider = mock(Provider.class);
+        final ClientSession session = mock(ClientSession.class);
+        when(clientSessionProvider.get()).thenReturn(session);
+        when(session.getLocale()).thenReturn(Locale.ENGLISH);
+        this.loader = new Loader(null, null, new Properties(), null, clientSessionProvider, null);
+    }
+
+    /**
+     * dependencies are loaded before the entities that need them
+     */
+    @Test
+    public void testDependenciesLoadFirst() {
+        final EntityLoadScheduler scheduler = new EntityLoadScheduler(this.loader, 4);
+        scheduler.add("a", load("a", 50));
+        scheduler.add("b", load("b", 0), "a");
+        scheduler.add("c", load("c", 0));
+        scheduler.run();
+
+        assertEquals(3, this.loaded.size());
+        assertTrue(this.loaded.indexOf("a") < this.loaded.indexOf("b"));
+        assertEquals(3, this.loader.readOnceProgress().size());
+    }
+
+    /**
+     * a failure stops dependent entities from loading, but not the others
+     */
+    @Test
+    public void testFailureSkipsDependents() {
+        final EntityLoadScheduler scheduler = new EntityLoadScheduler(this.loader, 2);
+        scheduler.add("a", new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                throw new StepInternalException("broken data");
+            }
+        });
+        scheduler.add("b", load("b", 0), "a");
+        scheduler.add("c", load("c", 0));
+
+        try {
+            scheduler.run();
+            fail("Should have failed to load a");
+        } catch (final StepInternalException ex) {
+            assertEquals(1, this.loaded.size());
+            assertEquals("c", this.loaded.get(0));
+        }
+    }
+
+    /**
+     * @param name  the name of the entity
+     * @param sleep the time the load should take
+     * @return a load which records when it completes
+     */
+    private Callable<Integer> load(final String name, final long sleep) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() throws InterruptedException {
+                Thread.sleep(sleep);
+                EntityLoadSchedulerTest.this.loaded.add(name);
+                return 1;
+            }
+        };
+    }
+}
@@ -0,0 +1,55 @@
+package com.tyndalehouse.step.core.data.loaders;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+
+/**
+ * Tests the parsing of csv files for the entity loaders
+ *
+ * @author chrisburrell
+ */
+public class CsvRowReaderTest {
+    /**
+     * quoted values can contain separators, quotes and new lines
+     */
+    @Test
+    public void testQuotedValues() {
+        final CsvRowReader reader = new CsvRowReader(new StringReader(
+                "# comment\r\ncode,\"name\"\r\nG1,\"a, \"\"b\"\"\nc\"\r\n\r\nG2,d"), ',', '"', 1);
+
+        assertArrayEquals(new String[] { "code", "name" }, reader.readHeader());
+        assertTrue(reader.next());
+        assertEquals("G1", reader.getString(0));
+        assertEquals("a, \"b\"\nc", reader.getString("name"));
+
+        assertTrue(reader.next());
+        assertEquals("G2", reader.getColumn(0).toString());
+        assertEquals("d", reader.getString(1));
+        assertEquals("", reader.getString(2));
+        assertFalse(reader.next());
+    }
+
+    /**
+     * repeated values share the same instance, and quotes are kept when quoting is disabled
+     */
+    @Test
+    public void testInterning() {
+        final CsvRowReader reader = new CsvRowReader(new StringReader("H1\t\"x\"\nH1\ty"), '\t',
+                CsvRowReader.NO_QUOTE, 0);
+
+        assertTrue(reader.next());
+        final String first = reader.getInternedString(0);
+        assertEquals("\"x\"", reader.getString(1));
+
+        assertTrue(reader.next());
+        assertSame(first, reader.getInternedString(0));
+        assertEquals(-1, reader.getColumnIndex("missing"));
+    }
+}
@@ -0,0 +1,76 @@
+package com.tyndalehouse.step.core.service.helpers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Test;
+
+/**
+ * Tests that the subjects of chapters and books are read from the nave index
+ *
+ * @author chrisburrell
+ */
+public class SubjectChapterIndexTest {
+
+    /**
+     * subjects are found by chapter and by book, in the order of a subject search
+     *
+     * @throws IOException if the index can't be written
+     */
+    @Test
+    public void testSubjectsByChapter() throws IOException {
+        final RAMDirectory directory = new RAMDirectory();
+        final IndexWriter writer = new IndexWriter(directory, new WhitespaceAnalyzer(),
+                IndexWriter.MaxFieldLength.UNLIMITED);
+        addSubject(writer, "MOSES", "Birth", "exod.2.1 exod.2.2");
+        addSubject(writer, "CREATION", null, "gen.1.1 gen.2.1");
+        addSubject(writer, "ADAM", "Creation", "gen.2.7");
+        writer.close();
+
+        final IndexReader reader = IndexReader.open(directory, true);
+        try {
+            final SubjectChapterIndex index = SubjectChapterIndex.read(reader, 1);
+            assertEquals(1, index.getGeneration());
+
+            final int[] genesisTwo = index.getSubjects(Collections.singletonList("Gen.2"));
+            assertEquals(2, genesisTwo.length);
+            assertEquals("ADAM", index.getRoot(genesisTwo[0]));
+            assertEquals("Creation", index.getHeading(genesisTwo[0]));
+            assertEquals("CREATION", index.getRoot(genesisTwo[1]));
+
+            assertArrayEquals(genesisTwo, index.getSubjects(Collections.singletonList("Gen")));
+            assertEquals(3, index.getSubjects(Arrays.asList("Gen.1", "Gen.2", "Exod.2", "Exod.3")).length);
+            assertEquals(0, index.getSubjects(Collections.singletonList("Gen.0")).length);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @param writer     the writer of the index
+     * @param root       the root of the subject
+     * @param heading    the heading of the subject
+     * @param references the verses of the subject
+     * @throws IOException if the subject can't be added
+     */
+    private void addSubject(final IndexWriter writer, final String root, final String heading,
+                            final String references) throws IOException {
+        final Document doc = new Document();
+        doc.add(new Field("root", root, Field.Store.YES, Field.Index.NOT_ANALYZED));
+        if (heading != null) {
+            doc.add(new Field("fullHeader", heading, Field.Store.YES, Field.Index.NOT_ANALYZED));
+        }
+        doc.add(new Field("expandedReferences", references, Field.Store.NO, Field.Index.ANALYZED));
+        writer.addDocument(doc);
+    }
+}
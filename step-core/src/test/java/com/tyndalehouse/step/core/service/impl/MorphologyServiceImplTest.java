@@ -0,0 +1,84 @@
+package com.tyndalehouse.step.core.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.search.Query;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.tyndalehouse.step.core.data.EntityDoc;
+import com.tyndalehouse.step.core.data.EntityIndexReader;
+import com.tyndalehouse.step.core.data.EntityManager;
+
+/**
+ * Tests the display of morphology codes from the in-memory table
+ *
+ * @author chrisburrell
+ */
+public class MorphologyServiceImplTest {
+    private MorphologyServiceImpl morphology;
+
+    /**
+     * sets up a morphology index of two codes
+     */
+    @Before
+    public void setUp() {
+        final EntityIndexReader reader = mock(EntityIndexReader.class);
+        when(reader.getGeneration()).thenReturn(1);
+        when(reader.search(any(Query.class))).thenReturn(new EntityDoc[]{
+                getMorphology("N-NSM", "noun"), getMorphology("V-PAI-3S", "verb")});
+
+        final EntityManager manager = mock(EntityManager.class);
+        when(manager.getReader("morphology")).thenReturn(reader);
+        this.morphology = new MorphologyServiceImpl(manager);
+    }
+
+    /**
+     * a single code is displayed with or without its scheme
+     */
+    @Test
+    public void testSingleCode() {
+        assertEquals("noun&nbsp;", this.morphology.getDisplayMorphology("robinson:N-NSM"));
+        assertEquals("verb&nbsp;", this.morphology.getDisplayMorphology("V-PAI-3S"));
+        assertEquals("", this.morphology.getDisplayMorphology("robinson:X-UNKNOWN"));
+    }
+
+    /**
+     * several codes are displayed in order, skipping unknown ones
+     */
+    @Test
+    public void testMultipleCodes() {
+        assertEquals("noun&nbsp;verb&nbsp;",
+                this.morphology.getDisplayMorphology("robinson:N-NSM robinson:X-UNKNOWN robinson:V-PAI-3S"));
+        assertEquals(2, this.morphology.getMorphology("robinson:N-NSM robinson:V-PAI-3S").size());
+    }
+
+    /**
+     * no code, or a blank one, displays nothing
+     */
+    @Test
+    public void testBlankCode() {
+        assertEquals("", this.morphology.getDisplayMorphology(null));
+        assertEquals("", this.morphology.getDisplayMorphology(""));
+        assertEquals("", this.morphology.getDisplayMorphology("  "));
+        assertTrue(this.morphology.getMorphology(null).isEmpty());
+    }
+
+    /**
+     * @param code       the morphology code
+     * @param inlineHtml the html displayed for the code
+     * @return the morphology entity
+     */
+    private EntityDoc getMorphology(final String code, final String inlineHtml) {
+        final Document doc = new Document();
+        doc.add(new Field("code", code, Field.Store.YES, Field.Index.NOT_ANALYZED));
+        doc.add(new Field("inlineHtml", inlineHtml, Field.Store.YES, Field.Index.NO));
+        return new EntityDoc(doc);
+    }
+}
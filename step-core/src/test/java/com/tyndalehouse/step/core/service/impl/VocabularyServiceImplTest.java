@@ -21,7 +21,7 @@ public class VocabularyServiceImplTest {
      */
     @Test
     public void testKeyExtraction() {
-        final VocabularyServiceImpl vocab = new VocabularyServiceImpl(mock(EntityManagerImpl.class), mock(StrongAugmentationService.class));
+        final VocabularyServiceImpl vocab = new VocabularyServiceImpl(mock(EntityManagerImpl.class), mock(StrongAugmentationService.class), 0, 0, 0);
         assertEquals("G0016", vocab.getKeys("strong:G16")[0]);
         assertEquals("G0016", vocab.getKeys("strong:G16,strong:G019")[0]);
 
@@ -32,7 +32,7 @@ public class VocabularyServiceImplTest {
      */
     @Test
     public void testMultipleKeyExtraction() {
-        final VocabularyServiceImpl vocab = new VocabularyServiceImpl(mock(EntityManagerImpl.class), mock(StrongAugmentationService.class));
+        final VocabularyServiceImpl vocab = new VocabularyServiceImpl(mock(EntityManagerImpl.class), mock(StrongAugmentationService.class), 0, 0, 0);
         final String[] keys = vocab.getKeys("strong:G16,strong:G09");
         assertEquals("G0016", keys[0]);
         assertEquals("G0009", keys[1]);
@@ -0,0 +1,187 @@
+package com.tyndalehouse.step.core.service.jobs.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.tyndalehouse.step.core.models.jobs.JobState;
+import com.tyndalehouse.step.core.models.jobs.JobStatus;
+import com.tyndalehouse.step.core.service.jobs.JobHandler;
+import com.tyndalehouse.step.core.service.jobs.JobProgress;
+
+/**
+ * Tests that jobs are run in the background, de-duplicated, and kept on disk
+ *
+ * @author chrisburrell
+ */
+public class JobServiceImplTest {
+    private static final long TIMEOUT = 10000;
+    private final CountDownLatch release = new CountDownLatch(1);
+    private File directory;
+
+    /**
+     * creates a directory for the job table
+     */
+    @Before
+    public void setUp() {
+        this.directory = new File(System.getProperty("java.io.tmpdir"), "step-jobs-" + System.nanoTime());
+        this.directory.mkdirs();
+    }
+
+    /**
+     * removes the job table and results
+     */
+    @After
+    public void tearDown() {
+        final File[] files = this.directory.listFiles();
+        if (files != null) {
+            for (final File f : files) {
+                f.delete();
+            }
+        }
+        this.directory.delete();
+    }
+
+    /**
+     * identical jobs submitted while the first is running share the same job, whose result survives a restart
+     *
+     * @throws InterruptedException if interrupted while waiting for the job
+     */
+    @Test
+    public void testJobIsDeduplicatedAndKept() throws InterruptedException {
+        final JobServiceImpl jobs = createService();
+        final JobStatus first = jobs.submit("echo", Arrays.asList("Gen.1"));
+        assertEquals(first.getId(), jobs.submit("echo", Arrays.asList("Gen.1")).getId());
+        final JobStatus second = jobs.submit("echo", Arrays.asList("Gen.2"));
+        assertFalse(first.getId().equals(second.getId()));
+
+        this.release.countDown();
+        assertEquals(JobState.COMPLETE, waitFor(jobs, first.getId()).getState());
+        assertEquals(JobState.COMPLETE, waitFor(jobs, second.getId()).getState());
+        assertEquals("Gen.1", jobs.getResult(first.getId()).get(0).getTextValue());
+
+        final JobServiceImpl restarted = createService();
+        assertEquals(JobState.COMPLETE, restarted.getStatus(first.getId()).getState());
+        assertEquals("Gen.1", restarted.getResult(first.getId()).get(0).getTextValue());
+    }
+
+    /**
+     * results larger than the space allowed are not kept
+     *
+     * @throws InterruptedException if interrupted while waiting for the job
+     */
+    @Test
+    public void testLargeResultIsDropped() throws InterruptedException {
+        this.release.countDown();
+        final JobServiceImpl jobs = new JobServiceImpl(Collections.<JobHandler>singletonList(new EchoHandler()),
+                this.directory, 1, 10, TimeUnit.MINUTES.toMillis(1), 4, 3);
+        final JobStatus job = jobs.submit("echo", Arrays.asList("a long result"));
+        assertEquals(JobState.FAILED, waitFor(jobs, job.getId()).getState());
+    }
+
+    /**
+     * a job still running when the server stops is run again, until it has been started too many times
+     *
+     * @throws InterruptedException if interrupted while waiting for the job
+     */
+    @Test
+    public void testInterruptedJobIsRetriedThenFailed() throws InterruptedException {
+        try {
+            final JobServiceImpl jobs = createService(2);
+            final String jobId = jobs.submit("echo", Arrays.asList("Gen.1")).getId();
+            waitForAttempt(jobs, jobId, 1);
+
+            final JobServiceImpl restarted = createService(2);
+            waitForAttempt(restarted, jobId, 2);
+
+            final JobStatus failed = createService(2).getStatus(jobId);
+            assertEquals(JobState.FAILED, failed.getState());
+            assertEquals(2, failed.getAttempts());
+        } finally {
+            this.release.countDown();
+        }
+    }
+
+    /**
+     * @return a service running one job at a time
+     */
+    private JobServiceImpl createService() {
+        return createService(3);
+    }
+
+    /**
+     * @param maxAttempts the number of times a job is started before it is failed
+     * @return a service running one job at a time
+     */
+    private JobServiceImpl createService(final int maxAttempts) {
+        return new JobServiceImpl(Collections.<JobHandler>singletonList(new EchoHandler()), this.directory, 1, 10,
+                TimeUnit.MINUTES.toMillis(1), 1024 * 1024, maxAttempts);
+    }
+
+    /**
+     * @param jobs     the job service
+     * @param jobId    the id of the job
+     * @param attempts the attempt to wait for
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private void waitForAttempt(final JobServiceImpl jobs, final String jobId, final int attempts)
+            throws InterruptedException {
+        final long end = System.currentTimeMillis() + TIMEOUT;
+        JobStatus status = jobs.getStatus(jobId);
+        while ((status.getState() != JobState.RUNNING || status.getAttempts() < attempts)
+                && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+            status = jobs.getStatus(jobId);
+        }
+        assertEquals(JobState.RUNNING, status.getState());
+        assertEquals(attempts, status.getAttempts());
+    }
+
+    /**
+     * @param jobs  the job service
+     * @param jobId the id of the job
+     * @return the status of the job once it has finished
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private JobStatus waitFor(final JobServiceImpl jobs, final String jobId) throws InterruptedException {
+        final long end = System.currentTimeMillis() + TIMEOUT;
+        JobStatus status = jobs.getStatus(jobId);
+        while ((status.getState() == JobState.QUEUED || status.getState() == JobState.RUNNING)
+                && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+            status = jobs.getStatus(jobId);
+        }
+        return status;
+    }
+
+    /**
+     * Returns its arguments, once released
+     */
+    private final class EchoHandler implements JobHandler {
+        @Override
+        public String getType() {
+            return "echo";
+        }
+
+        @Override
+        public Object run(final List<String> arguments, final JobProgress progress) {
+            try {
+                release.await(TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            progress.update(1, 1);
+            return arguments;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+import org.junit.Test;
+
+import com.tyndalehouse.step.core.utils.IOUtils;
+
+/**
+ * Tests that chapter counts are written, read back and summed correctly
+ *
+ * @author chrisburrell
+ */
+public class ChapterCountsTest {
+
+    /**
+     * counts of a range of chapters are the sum of the counts of each chapter
+     *
+     * @throws IOException if the temporary file can't be created
+     */
+    @Test
+    public void testSumChapters() throws IOException {
+        final Versification kjv = Versifications.instance().getVersification("KJV");
+        final List<Map<String, Integer>> chapters = new ArrayList<Map<String, Integer>>();
+        for (final BibleBook book : kjv.getBooks()) {
+            for (int chapter = 1; chapter <= kjv.getLastChapter(book); chapter++) {
+                chapters.add(null);
+            }
+        }
+        chapters.set(0, counts("H0430", 32, "H0776", 21));
+        chapters.set(1, counts("H0430", 9));
+        chapters.set(2, counts("H0430", 1, "H0776", 1));
+        chapters.set(50, counts("H4872", 3));
+
+        final File file = File.createTempFile("chapterStats", ".wordStats");
+        try {
+            ChapterCounts.write(file, "1.0", chapters);
+            final ChapterCounts stats = ChapterCounts.read(file, kjv);
+
+            assertEquals("1.0", stats.getKey());
+            assertEquals(0, stats.getChapterIndex(BibleBook.GEN, 1));
+            assertEquals(50, stats.getChapterIndex(BibleBook.EXOD, 1));
+            assertEquals(-1, stats.getChapterIndex(BibleBook.GEN, 51));
+
+            assertEquals(32, (int) stats.getCounts(0, 0).get("H0430"));
+
+            final Map<String, Integer> genesis = stats.getCounts(0, 49);
+            assertEquals(42, (int) genesis.get("H0430"));
+            assertEquals(22, (int) genesis.get("H0776"));
+            assertNull(genesis.get("H4872"));
+
+            final Map<String, Integer> nearBy = stats.getCounts(1, 50);
+            assertEquals(10, (int) nearBy.get("H0430"));
+            assertEquals(1, (int) nearBy.get("H0776"));
+            assertEquals(3, (int) nearBy.get("H4872"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * only the words occurring more often than the word ranked maxWords are kept, as when trimming a passage stat
+     *
+     * @throws IOException if the temporary file can't be created
+     */
+    @Test
+    public void testTopCounts() throws IOException {
+        final Versification kjv = Versifications.instance().getVersification("KJV");
+        final List<Map<String, Integer>> chapters = new ArrayList<Map<String, Integer>>();
+        for (final BibleBook book : kjv.getBooks()) {
+            for (int chapter = 1; chapter <= kjv.getLastChapter(book); chapter++) {
+                chapters.add(counts("H0430", 3, "H0776", 2, "H4872", 2, "H1254", 1));
+            }
+        }
+
+        final File file = File.createTempFile("chapterStats", ".wordStats");
+        try {
+            ChapterCounts.write(file, "1.0", chapters);
+            final ChapterCounts stats = ChapterCounts.read(file, kjv);
+            final Set<String> none = Collections.emptySet();
+
+            assertEquals(1, stats.getTopCounts(0, 49, 2, none).size());
+            assertEquals(150, (int) stats.getTopCounts(0, 49, 2, none).get("H0430"));
+            assertEquals(3, stats.getTopCounts(0, 49, 4, none).size());
+            assertEquals(4, stats.getTopCounts(0, 49, 5, none).size());
+
+            final Map<String, Integer> withoutGod = stats.getTopCounts(0, 49, 3, Collections.singleton("H0430"));
+            assertNull(withoutGod.get("H0430"));
+            assertEquals(2, withoutGod.size());
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * a key longer than 32767 bytes, as with a long list of stop words, is read back rather than failing
+     *
+     * @throws IOException if the temporary file can't be created
+     */
+    @Test
+    public void testLongKey() throws IOException {
+        final Versification kjv = Versifications.instance().getVersification("KJV");
+        final List<Map<String, Integer>> chapters = new ArrayList<Map<String, Integer>>();
+        for (final BibleBook book : kjv.getBooks()) {
+            for (int chapter = 1; chapter <= kjv.getLastChapter(book); chapter++) {
+                chapters.add(null);
+            }
+        }
+
+        final char[] key = new char[40000];
+        Arrays.fill(key, 'k');
+        final File file = File.createTempFile("chapterStats", ".textStats");
+        try {
+            ChapterCounts.write(file, new String(key), chapters);
+            assertEquals(key.length, ChapterCounts.read(file, kjv).getKey().length());
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * counts written in the format of the first release, by module version only, are ignored so that they are built
+     * again rather than misread
+     *
+     * @throws IOException if the temporary file can't be written
+     */
+    @Test
+    public void testFirstFormatIgnored() throws IOException {
+        final File file = File.createTempFile("chapterStats", ".wordStats");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new FileOutputStream(file));
+            out.writeInt(0x53545753);
+            out.writeInt(1);
+            out.writeShort(3);
+            out.writeBytes("1.0");
+            out.writeInt(0);
+            out.close();
+            out = null;
+
+            assertNull(ChapterCounts.read(file, Versifications.instance().getVersification("KJV")));
+        } finally {
+            IOUtils.closeQuietly(out);
+            file.delete();
+        }
+    }
+
+    /**
+     * @param values pairs of strong numbers and counts
+     * @return the counts
+     */
+    private Map<String, Integer> counts(final Object... values) {
+        final Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (int ii = 0; ii < values.length; ii += 2) {
+            counts.put((String) values[ii], (Integer) values[ii + 1]);
+        }
+        return counts;
+    }
+}
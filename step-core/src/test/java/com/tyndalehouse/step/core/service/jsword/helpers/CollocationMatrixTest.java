@@ -0,0 +1,118 @@
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.RAMDirectory;
+import org.crosswire.jsword.index.lucene.LuceneIndex;
+import org.crosswire.jsword.passage.NoSuchVerseException;
+import org.crosswire.jsword.passage.VerseFactory;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+import org.junit.Test;
+
+import com.tyndalehouse.step.core.models.stats.Collocation;
+import com.tyndalehouse.step.core.models.stats.CollocationMeasure;
+
+/**
+ * Tests that collocations are built from a concordance, written and read back
+ *
+ * @author chrisburrell
+ */
+public class CollocationMatrixTest {
+    private static final Set<String> NONE = Collections.emptySet();
+
+    /**
+     * strong numbers are ranked by the verses they share, within a scope or a window of words
+     *
+     * @throws Exception if the index can't be written, or a verse is not recognised
+     */
+    @Test
+    public void testCollocations() throws Exception {
+        final Versification kjv = Versifications.instance().getVersification("KJV");
+        final RAMDirectory directory = new RAMDirectory();
+        final IndexWriter writer = new IndexWriter(directory, new WhitespaceAnalyzer(),
+                IndexWriter.MaxFieldLength.UNLIMITED);
+        addVerse(writer, "Gen.1.1", "H0001 H0002 H0003");
+        addVerse(writer, "Gen.1.2", "H0001 H0002");
+        addVerse(writer, "Gen.1.3", "H0004 H0005 H0006 H0001");
+        addVerse(writer, "Exod.1.1", "H0002 H0003");
+        writer.close();
+
+        final IndexReader reader = IndexReader.open(directory, true);
+        final File concordanceFile = File.createTempFile("concordance", ".concordance");
+        final File file = File.createTempFile("collocations", ".collocations");
+        try {
+            Concordance.write(concordanceFile, reader, kjv);
+            CollocationMatrix.write(file, Concordance.read(concordanceFile));
+            final CollocationMatrix matrix = CollocationMatrix.read(file);
+            assertEquals(reader.getVersion(), matrix.getIndexVersion());
+
+            final List<Collocation> byCount = matrix.getCollocations("H0001", null, 0, CollocationMeasure.COUNT,
+                    10, NONE);
+            assertEquals(5, byCount.size());
+            assertEquals("H0002", byCount.get(0).getStrongNumber());
+            assertEquals(2, byCount.get(0).getCount());
+            assertEquals("H0003", byCount.get(1).getStrongNumber());
+
+            final BitSet scope = new BitSet();
+            scope.set(ordinal(kjv, "Gen.1.3"));
+            assertEquals(3, matrix.getCollocations("H0001", scope, 0, CollocationMeasure.COUNT, 10, NONE).size());
+
+            final List<Collocation> byWindow = matrix.getCollocations("H0001", null, 1, CollocationMeasure.COUNT,
+                    10, NONE);
+            assertEquals(2, byWindow.size());
+            assertEquals("H0002", byWindow.get(0).getStrongNumber());
+            assertEquals("H0006", byWindow.get(1).getStrongNumber());
+
+            assertEquals("H0003", matrix.getCollocations("H0001", null, 0, CollocationMeasure.COUNT, 10,
+                    Collections.singleton("H0002")).get(0).getStrongNumber());
+            assertEquals(1, matrix.getCollocations("H0001", null, 0, CollocationMeasure.PMI, 10, NONE).size());
+
+            final List<Collocation> byLikelihood = matrix.getCollocations("H0001", null, 0,
+                    CollocationMeasure.LOG_LIKELIHOOD, 10, NONE);
+            assertEquals("H0004", byLikelihood.get(0).getStrongNumber());
+            assertTrue(byLikelihood.get(4).getScore() < 0);
+            assertEquals(0, matrix.getCollocations("H9999", null, 0, CollocationMeasure.COUNT, 10, NONE).size());
+        } finally {
+            reader.close();
+            concordanceFile.delete();
+            file.delete();
+        }
+    }
+
+    /**
+     * @param writer  the writer of the index
+     * @param key     the verse
+     * @param strongs the strong numbers of the verse
+     * @throws IOException if the verse can't be added
+     */
+    private void addVerse(final IndexWriter writer, final String key, final String strongs) throws IOException {
+        final Document doc = new Document();
+        doc.add(new Field(LuceneIndex.FIELD_KEY, key, Field.Store.YES, Field.Index.NOT_ANALYZED));
+        doc.add(new Field(LuceneIndex.FIELD_STRONG, strongs, Field.Store.NO, Field.Index.ANALYZED));
+        writer.addDocument(doc);
+    }
+
+    /**
+     * @param v11n the versification
+     * @param osis the verse
+     * @return the ordinal of the verse
+     * @throws NoSuchVerseException if the verse is not recognised
+     */
+    private int ordinal(final Versification v11n, final String osis) throws NoSuchVerseException {
+        return VerseFactory.fromString(v11n, osis).getOrdinal();
+    }
+}
@@ -0,0 +1,110 @@
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.RAMDirectory;
+import org.crosswire.jsword.index.lucene.LuceneIndex;
+import org.crosswire.jsword.passage.NoSuchVerseException;
+import org.crosswire.jsword.passage.VerseFactory;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+import org.junit.Test;
+
+/**
+ * Tests that the occurrences of strong numbers and words are written and read back
+ *
+ * @author chrisburrell
+ */
+public class ConcordanceTest {
+
+    /**
+     * occurrences are read back in the order of the verses, whatever the order of the documents
+     *
+     * @throws Exception if the index can't be written, or a verse is not recognised
+     */
+    @Test
+    public void testOccurrences() throws Exception {
+        final Versification kjv = Versifications.instance().getVersification("KJV");
+        final RAMDirectory directory = new RAMDirectory();
+        final IndexWriter writer = new IndexWriter(directory, new WhitespaceAnalyzer(),
+                IndexWriter.MaxFieldLength.UNLIMITED);
+        addVerse(writer, "Exod.1.1", "H0001", "now these are the names");
+        addVerse(writer, "Gen.1.1", "H0001 H0002 H0001", "in the beginning the god");
+        addVerse(writer, "Gen.1.2", "H0002", "and the earth");
+        writer.close();
+
+        final IndexReader reader = IndexReader.open(directory, true);
+        final File file = File.createTempFile("concordance", ".concordance");
+        try {
+            Concordance.write(file, reader, kjv);
+            final Concordance concordance = Concordance.read(file);
+            assertEquals(reader.getVersion(), concordance.getIndexVersion());
+
+            assertEquals(3, concordance.getCount(LuceneIndex.FIELD_STRONG, "H0001"));
+            assertEquals(2, concordance.getVerseCount(LuceneIndex.FIELD_STRONG, "H0001"));
+            assertArrayEquals(new int[]{ordinal(kjv, "Gen.1.1"), ordinal(kjv, "Exod.1.1")},
+                    concordance.getVerses(LuceneIndex.FIELD_STRONG, "H0001"));
+            assertEquals(0, concordance.getCount(LuceneIndex.FIELD_STRONG, "H9999"));
+            assertEquals(0, concordance.getVerses(LuceneIndex.FIELD_BODY, "moses").length);
+
+            final int[] bookCounts = concordance.getBookCounts(LuceneIndex.FIELD_BODY, "the", kjv);
+            assertEquals(3, bookCounts[BibleBook.GEN.ordinal()]);
+            assertEquals(1, bookCounts[BibleBook.EXOD.ordinal()]);
+
+            final Concordance.Occurrences occurrences = concordance.getOccurrences(LuceneIndex.FIELD_BODY, "the");
+            assertTrue(occurrences.nextVerse());
+            assertEquals(ordinal(kjv, "Gen.1.1"), occurrences.getVerse());
+            assertEquals(2, occurrences.getFrequency());
+            assertEquals(1, occurrences.nextPosition());
+            assertEquals(3, occurrences.nextPosition());
+            assertEquals(-1, occurrences.nextPosition());
+            assertTrue(occurrences.nextVerse());
+            assertEquals(ordinal(kjv, "Gen.1.2"), occurrences.getVerse());
+            assertTrue(occurrences.nextVerse());
+            assertEquals(ordinal(kjv, "Exod.1.1"), occurrences.getVerse());
+            assertEquals(3, occurrences.nextPosition());
+            assertFalse(occurrences.nextVerse());
+        } finally {
+            reader.close();
+            file.delete();
+        }
+    }
+
+    /**
+     * @param writer  the writer of the index
+     * @param key     the verse
+     * @param strongs the strong numbers of the verse
+     * @param text    the text of the verse
+     * @throws IOException if the verse can't be added
+     */
+    private void addVerse(final IndexWriter writer, final String key, final String strongs, final String text)
+            throws IOException {
+        final Document doc = new Document();
+        doc.add(new Field(LuceneIndex.FIELD_KEY, key, Field.Store.YES, Field.Index.NOT_ANALYZED));
+        doc.add(new Field(LuceneIndex.FIELD_STRONG, strongs, Field.Store.NO, Field.Index.ANALYZED));
+        doc.add(new Field(LuceneIndex.FIELD_BODY, text, Field.Store.NO, Field.Index.ANALYZED));
+        writer.addDocument(doc);
+    }
+
+    /**
+     * @param v11n the versification
+     * @param osis the verse
+     * @return the ordinal of the verse
+     * @throws NoSuchVerseException if the verse is not recognised
+     */
+    private int ordinal(final Versification v11n, final String osis) throws NoSuchVerseException {
+        return VerseFactory.fromString(v11n, osis).getOrdinal();
+    }
+}
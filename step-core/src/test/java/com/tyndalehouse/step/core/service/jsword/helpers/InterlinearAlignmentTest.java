@@ -0,0 +1,137 @@
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+import org.junit.Test;
+
+import com.tyndalehouse.step.core.xsl.impl.DualKey;
+import com.tyndalehouse.step.core.xsl.impl.InterlinearProviderImpl;
+import com.tyndalehouse.step.core.xsl.impl.Word;
+
+/**
+ * Tests that an interlinear alignment is read back as it was written
+ *
+ * @author chrisburrell
+ */
+public class InterlinearAlignmentTest {
+
+    /**
+     * the words of each verse, and the version of the module, survive a write and a read
+     *
+     * @throws IOException if the temporary file can't be created
+     */
+    @Test
+    public void testWriteAndRead() throws IOException {
+        final List<String> strings = Arrays.asList("G2316", "God", "the", "G3056", "word", "λόγος");
+        final List<int[]> wordsByVerse = new ArrayList<int[]>();
+        wordsByVerse.add(null);
+        wordsByVerse.add(new int[]{0, 1, 2, 0, 3, 4, -1, 1});
+        wordsByVerse.add(null);
+        wordsByVerse.add(new int[]{3, 5, -1, 2});
+
+        final File file = File.createTempFile("interlinear", InterlinearAlignment.FILE_EXTENSION);
+        try {
+            assertEquals(3, InterlinearAlignment.writeFile(file, "2.1", wordsByVerse, strings));
+            final InterlinearAlignment alignment = InterlinearAlignment.read(file);
+
+            assertEquals("2.1", alignment.getModuleVersion());
+            assertEquals(0, alignment.getFirstWord(0));
+            assertEquals(0, alignment.getEndWord(0));
+            assertEquals(0, alignment.getFirstWord(1));
+            assertEquals(2, alignment.getEndWord(1));
+            assertEquals(2, alignment.getFirstWord(3));
+            assertEquals(3, alignment.getEndWord(3));
+
+            assertEquals("G2316", alignment.getStrong(0));
+            assertEquals("God", alignment.getText(0));
+            assertEquals("the", alignment.getUntaggedText(0));
+            assertFalse(alignment.isPartial(0));
+            assertFalse(alignment.isOutsideVerse(0));
+
+            assertEquals("word", alignment.getText(1));
+            assertNull(alignment.getUntaggedText(1));
+            assertTrue(alignment.isPartial(1));
+
+            assertEquals("λόγος", alignment.getText(2));
+            assertTrue(alignment.isOutsideVerse(2));
+            assertFalse(alignment.isPartial(2));
+
+            assertEquals(0, alignment.getFirstWord(10));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * the title of a psalm, which comes before its first verse, is read along with verse 1, as the interlinear reads
+     * verse 1 when asked for verse 0
+     *
+     * @throws IOException if the temporary file can't be created
+     */
+    @Test
+    public void testTitledPsalm() throws IOException {
+        final Versification kjv = Versifications.instance().getVersification("KJV");
+        final int verse0 = new Verse(kjv, BibleBook.PS, 3, 0).getOrdinal();
+        final int verse1 = new Verse(kjv, BibleBook.PS, 3, 1).getOrdinal();
+
+        final Map<DualKey<String, String>, Deque<Word>> chapterWords =
+                new LinkedHashMap<DualKey<String, String>, Deque<Word>>();
+        addWord(chapterWords, "H4210", InterlinearProviderImpl.NO_VERSE, "A Psalm");
+        addWord(chapterWords, "H3068", "Ps.3.1", "LORD");
+
+        final List<int[]> wordsByVerse = new ArrayList<int[]>();
+        for (int ii = 0; ii <= kjv.maxOrdinal(); ii++) {
+            wordsByVerse.add(null);
+        }
+        final List<String> strings = new ArrayList<String>();
+        InterlinearAlignment.addChapter(kjv, verse1, chapterWords, wordsByVerse, new HashMap<String, Integer>(),
+                strings);
+
+        final File file = File.createTempFile("interlinear", InterlinearAlignment.FILE_EXTENSION);
+        try {
+            assertEquals(2, InterlinearAlignment.writeFile(file, "1.0", wordsByVerse, strings));
+            final InterlinearAlignment alignment = InterlinearAlignment.read(file);
+
+            assertEquals(alignment.getFirstWord(verse0), alignment.getEndWord(verse0));
+            final int first = alignment.getFirstWord(verse1);
+            assertEquals(first + 2, alignment.getEndWord(verse1));
+            assertEquals("A Psalm", alignment.getText(first));
+            assertTrue(alignment.isOutsideVerse(first));
+            assertEquals("LORD", alignment.getText(first + 1));
+            assertFalse(alignment.isOutsideVerse(first + 1));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * @param chapterWords the words of the chapter
+     * @param strong       the strong number of the word
+     * @param verseId      the verse of the word
+     * @param text         the text of the word
+     */
+    private void addWord(final Map<DualKey<String, String>, Deque<Word>> chapterWords, final String strong,
+                         final String verseId, final String text) {
+        final Deque<Word> words = new LinkedList<Word>();
+        words.add(new Word(text, false, null));
+        chapterWords.put(new DualKey<String, String>(strong, verseId), words);
+    }
+}
@@ -0,0 +1,98 @@
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.RAMDirectory;
+import org.crosswire.jsword.index.lucene.LuceneIndex;
+import org.crosswire.jsword.passage.NoSuchVerseException;
+import org.crosswire.jsword.passage.VerseFactory;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+import org.junit.Test;
+
+/**
+ * Tests that related verses are found from a concordance, written and read back
+ *
+ * @author chrisburrell
+ */
+public class RelatedVerseIndexTest {
+
+    /**
+     * verses are related if they share at least two strong numbers, the verses sharing rarer ones first
+     *
+     * @throws Exception if the index can't be written, or a verse is not recognised
+     */
+    @Test
+    public void testRelatedVerses() throws Exception {
+        final Versification kjv = Versifications.instance().getVersification("KJV");
+        final RAMDirectory directory = new RAMDirectory();
+        final IndexWriter writer = new IndexWriter(directory, new WhitespaceAnalyzer(),
+                IndexWriter.MaxFieldLength.UNLIMITED);
+        addVerse(writer, "Gen.1.1", "H0001 H0002 H0003");
+        addVerse(writer, "Gen.1.2", "H0001 H0002 H0004");
+        addVerse(writer, "Gen.1.3", "H0001 H0004 H0005");
+        addVerse(writer, "Gen.1.4", "H0003 H0006");
+        addVerse(writer, "Gen.1.5", "H0001 H0003 H0007");
+        addVerse(writer, "Gen.1.6", "H0008");
+        writer.close();
+
+        final IndexReader reader = IndexReader.open(directory, true);
+        final File concordanceFile = File.createTempFile("concordance", ".concordance");
+        final File file = File.createTempFile("relatedVerses", ".related");
+        try {
+            Concordance.write(concordanceFile, reader, kjv);
+            RelatedVerseIndex.write(file, Concordance.read(concordanceFile), kjv, 50);
+            final RelatedVerseIndex index = RelatedVerseIndex.read(file);
+
+            assertEquals(reader.getVersion(), index.getIndexVersion());
+            final int[] related = index.getRelatedVerses(new int[]{ordinal(kjv, "Gen.1.1")}, 50);
+            assertEquals(3, related.length);
+            assertEquals(ordinal(kjv, "Gen.1.1"), related[0]);
+
+            assertArrayEquals(new int[]{ordinal(kjv, "Gen.1.1")},
+                    index.getRelatedVerses(new int[]{ordinal(kjv, "Gen.1.1")}, 1));
+            assertArrayEquals(new int[]{ordinal(kjv, "Gen.1.4")},
+                    index.getRelatedVerses(new int[]{ordinal(kjv, "Gen.1.4")}, 50));
+            assertEquals(0, index.getRelatedVerses(new int[]{ordinal(kjv, "Gen.1.6")}, 50).length);
+            assertEquals(0, index.getRelatedVerses(new int[]{ordinal(kjv, "Exod.1.1")}, 50).length);
+            assertEquals(4, index.getRelatedVerses(
+                    new int[]{ordinal(kjv, "Gen.1.1"), ordinal(kjv, "Gen.1.3")}, 50).length);
+        } finally {
+            reader.close();
+            concordanceFile.delete();
+            file.delete();
+        }
+    }
+
+    /**
+     * @param writer  the writer of the index
+     * @param key     the verse
+     * @param strongs the strong numbers of the verse
+     * @throws IOException if the verse can't be added
+     */
+    private void addVerse(final IndexWriter writer, final String key, final String strongs) throws IOException {
+        final Document doc = new Document();
+        doc.add(new Field(LuceneIndex.FIELD_KEY, key, Field.Store.YES, Field.Index.NOT_ANALYZED));
+        doc.add(new Field(LuceneIndex.FIELD_STRONG, strongs, Field.Store.NO, Field.Index.ANALYZED));
+        writer.addDocument(doc);
+    }
+
+    /**
+     * @param v11n the versification
+     * @param osis the verse
+     * @return the ordinal of the verse
+     * @throws NoSuchVerseException if the verse is not recognised
+     */
+    private int ordinal(final Versification v11n, final String osis) throws NoSuchVerseException {
+        return VerseFactory.fromString(v11n, osis).getOrdinal();
+    }
+}
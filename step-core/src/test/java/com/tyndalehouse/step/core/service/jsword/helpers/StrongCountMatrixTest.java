@@ -0,0 +1,98 @@
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.RAMDirectory;
+import org.crosswire.jsword.index.lucene.LuceneIndex;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+import org.junit.Test;
+
+import com.tyndalehouse.step.core.data.EntityDoc;
+import com.tyndalehouse.step.core.service.StrongAugmentationService;
+
+/**
+ * Tests that strong numbers are counted from a concordance, written and read back
+ *
+ * @author chrisburrell
+ */
+public class StrongCountMatrixTest {
+
+    /**
+     * strong numbers are counted by book and across the version, augmented strongs only in their own verses
+     *
+     * @throws Exception if the index can't be written
+     */
+    @Test
+    public void testCounts() throws Exception {
+        final Versification kjv = Versifications.instance().getVersification("KJV");
+        final RAMDirectory directory = new RAMDirectory();
+        final IndexWriter writer = new IndexWriter(directory, new WhitespaceAnalyzer(),
+                IndexWriter.MaxFieldLength.UNLIMITED);
+        addVerse(writer, "Gen.1.1", "H0001 H0002 H0001");
+        addVerse(writer, "Gen.1.2", "H0001");
+        addVerse(writer, "Exod.1.1", "H0001 H0002");
+        writer.close();
+
+        final StrongAugmentationService augmentation = mock(StrongAugmentationService.class);
+        when(augmentation.reduce("H0001A")).thenReturn("H0001");
+
+        final IndexReader reader = IndexReader.open(directory, true);
+        final File concordanceFile = File.createTempFile("concordance", ".concordance");
+        final File file = File.createTempFile("strongCounts", ".counts");
+        try {
+            Concordance.write(concordanceFile, reader, kjv);
+            StrongCountMatrix.write(file, Concordance.read(concordanceFile), kjv,
+                    new EntityDoc[]{getAugmentedStrong("H0001A", "Gen.1.1 Exod.1.1")}, augmentation);
+            final StrongCountMatrix counts = StrongCountMatrix.read(file);
+
+            assertEquals(reader.getVersion(), counts.getIndexVersion());
+            assertEquals(4, counts.getBibleCount("H0001"));
+            assertEquals(3, counts.getBookCount("H0001", BibleBook.GEN));
+            assertEquals(1, counts.getBookCount("H0002", BibleBook.EXOD));
+            assertEquals(3, counts.getBibleCount("H0001A"));
+            assertEquals(2, counts.getBookCount("H0001A", BibleBook.GEN));
+            assertEquals(0, counts.getBibleCount("H9999"));
+        } finally {
+            reader.close();
+            concordanceFile.delete();
+            file.delete();
+        }
+    }
+
+    /**
+     * @param writer  the writer of the index
+     * @param key     the verse
+     * @param strongs the strong numbers of the verse
+     * @throws IOException if the verse can't be added
+     */
+    private void addVerse(final IndexWriter writer, final String key, final String strongs) throws IOException {
+        final Document doc = new Document();
+        doc.add(new Field(LuceneIndex.FIELD_KEY, key, Field.Store.YES, Field.Index.NOT_ANALYZED));
+        doc.add(new Field(LuceneIndex.FIELD_STRONG, strongs, Field.Store.NO, Field.Index.ANALYZED));
+        writer.addDocument(doc);
+    }
+
+    /**
+     * @param strong     the augmented strong number
+     * @param references the verses it applies to
+     * @return the augmented strong entity
+     */
+    private EntityDoc getAugmentedStrong(final String strong, final String references) {
+        final Document doc = new Document();
+        doc.add(new Field("augmentedStrong", strong, Field.Store.YES, Field.Index.NOT_ANALYZED));
+        doc.add(new Field("references", references, Field.Store.YES, Field.Index.NO));
+        return new EntityDoc(doc);
+    }
+}
@@ -0,0 +1,64 @@
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests the counting of words for the text statistics
+ *
+ * @author chrisburrell
+ */
+public class TextStatsTokenizerTest {
+
+    /**
+     * words are split on punctuation, and stop words are left out regardless of case and accents
+     */
+    @Test
+    public void testCountWords() {
+        final StopWords stopWords = StopWords.create("the and ΚΑΙ Ο");
+        final Map<String, Integer> words = TextStatsTokenizer.countWords(
+                "In the beginning God created the heaven and the earth. And the earth was (without) form; "
+                        + "καὶ ὁ λόγος ἦν καὶ "
+                        + "λόγος", stopWords);
+
+        assertEquals(2, (int) words.get("earth"));
+        assertEquals(1, (int) words.get("God"));
+        assertEquals(1, (int) words.get("without"));
+        assertEquals(2, (int) words.get("λόγος"));
+        assertNull(words.get("the"));
+        assertNull(words.get("And"));
+        assertNull(words.get("καὶ"));
+        assertNull(words.get("ὁ"));
+        assertEquals(11, words.size());
+    }
+
+    /**
+     * every punctuation character separates words, as the regular expression of the text statistics used to
+     */
+    @Test
+    public void testDelimiters() {
+        final Map<String, Integer> words = TextStatsTokenizer.countWords(
+                "a,b.c/d<e>f?g!h;i:j'k[l]m{n}o\"p-q\u2013r s(t)u,,  v", StopWords.create(null));
+        assertEquals(22, words.size());
+        assertEquals(1, (int) words.get("v"));
+    }
+
+    /**
+     * counts survive the table growing
+     */
+    @Test
+    public void testManyWords() {
+        final StringBuilder text = new StringBuilder();
+        for (int ii = 0; ii < 5000; ii++) {
+            text.append('w').append(ii % 700).append(' ');
+        }
+
+        final Map<String, Integer> words = TextStatsTokenizer.countWords(text.toString(), StopWords.create(null));
+        assertEquals(700, words.size());
+        assertEquals(8, (int) words.get("w5"));
+    }
+}
@@ -0,0 +1,203 @@
+package com.tyndalehouse.step.core.service.jsword.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.service.helpers.BackgroundBuilder;
+import com.tyndalehouse.step.core.service.jsword.JSwordSearchService;
+import com.tyndalehouse.step.core.utils.IOUtils;
+
+/**
+ * Tests that data is built in the background once per index, and that failed builds aren't retried until the index
+ * changes
+ *
+ * @author chrisburrell
+ */
+public class AbstractIndexDataServiceTest {
+    private File directory;
+    private IndexReader reader;
+    private BackgroundBuilder builder;
+    private TestService service;
+
+    /**
+     * sets up a service keeping the version of the index it was built from
+     *
+     * @throws IOException if the temporary directory can't be created
+     */
+    @Before
+    public void setUp() throws IOException {
+        this.directory = File.createTempFile("indexData", "");
+        if (!this.directory.delete() || !this.directory.mkdir()) {
+            throw new IOException("Unable to create " + this.directory);
+        }
+
+        this.reader = mock(IndexReader.class);
+        when(this.reader.getVersion()).thenReturn(1L);
+        final IndexSearcher searcher = mock(IndexSearcher.class);
+        when(searcher.getIndexReader()).thenReturn(this.reader);
+        final JSwordSearchService search = mock(JSwordSearchService.class);
+        when(search.getIndexSearcher("ESV")).thenReturn(searcher);
+
+        this.builder = mock(BackgroundBuilder.class);
+        this.service = new TestService(search, this.builder, this.directory);
+    }
+
+    /**
+     * deletes the data written by the test
+     */
+    @After
+    public void tearDown() {
+        final File[] files = this.directory.listFiles();
+        if (files != null) {
+            for (final File f : files) {
+                f.delete();
+            }
+        }
+        this.directory.delete();
+    }
+
+    /**
+     * data that isn't available is built in the background, once, and then found without building it again
+     */
+    @Test
+    public void testBuiltInBackground() {
+        assertNull(this.service.get("ESV"));
+        assertNull(this.service.get("ESV"));
+
+        final ArgumentCaptor<FutureTask> build = ArgumentCaptor.forClass(FutureTask.class);
+        verify(this.builder).submit(build.capture());
+        build.getValue().run();
+
+        assertEquals(Long.valueOf(1), this.service.get("ESV"));
+        assertEquals(1, this.service.writes.get());
+        assertEquals(1, this.directory.listFiles().length);
+    }
+
+    /**
+     * awaiting data builds it in the calling thread, and a new index causes it to be built again, replacing the file
+     */
+    @Test
+    public void testAwaitAndRebuild() {
+        assertEquals(Long.valueOf(1), this.service.await("ESV"));
+        when(this.reader.getVersion()).thenReturn(2L);
+        assertEquals(Long.valueOf(2), this.service.await("ESV"));
+
+        assertEquals(2, this.service.writes.get());
+        final File[] files = this.directory.listFiles();
+        assertEquals(1, files.length);
+        assertEquals("ESV-2.test", files[0].getName());
+    }
+
+    /**
+     * a build that fails isn't tried again until the index changes
+     */
+    @Test
+    public void testFailureRecordedPerIndexVersion() {
+        this.service.fail = true;
+        assertNull(this.service.await("ESV"));
+        assertNull(this.service.await("ESV"));
+        assertNull(this.service.get("ESV"));
+        assertEquals(1, this.service.writes.get());
+        verify(this.builder, times(0)).submit(any(FutureTask.class));
+
+        this.service.fail = false;
+        when(this.reader.getVersion()).thenReturn(2L);
+        assertEquals(Long.valueOf(2), this.service.await("ESV"));
+    }
+
+    /**
+     * data written before a restart is read rather than built again
+     */
+    @Test
+    public void testReadsExistingData() {
+        this.service.await("ESV");
+        final TestService restarted = new TestService(this.service.search, this.builder, this.directory);
+        assertEquals(Long.valueOf(1), restarted.get("ESV"));
+        assertEquals(0, restarted.writes.get());
+    }
+
+    /**
+     * Keeps the version of the index each version's data was built from
+     */
+    private static final class TestService extends AbstractIndexDataService<Long> {
+        private final JSwordSearchService search;
+        private final File directory;
+        private final AtomicInteger writes = new AtomicInteger();
+        private volatile boolean fail;
+
+        /**
+         * @param search    the search service
+         * @param builder   the builder
+         * @param directory the directory holding the data
+         */
+        private TestService(final JSwordSearchService search, final BackgroundBuilder builder,
+                            final File directory) {
+            super(search, builder, "test", ".test");
+            this.search = search;
+            this.directory = directory;
+        }
+
+        @Override
+        protected long getIndexVersion(final Long data) {
+            return data;
+        }
+
+        @Override
+        protected Long read(final File file) {
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream(new FileInputStream(file));
+                return in.readLong();
+            } catch (final IOException e) {
+                throw new StepInternalException("Unable to read " + file, e);
+            } finally {
+                IOUtils.closeQuietly(in);
+            }
+        }
+
+        @Override
+        protected void write(final String version, final IndexReader reader, final File file) {
+            this.writes.incrementAndGet();
+            if (this.fail) {
+                throw new StepInternalException("Failed to build " + version);
+            }
+
+            DataOutputStream out = null;
+            try {
+                out = new DataOutputStream(new FileOutputStream(file));
+                out.writeLong(reader.getVersion());
+            } catch (final IOException e) {
+                throw new StepInternalException("Unable to write " + file, e);
+            } finally {
+                IOUtils.closeQuietly(out);
+            }
+        }
+
+        @Override
+        protected File getDirectory() {
+            return this.directory;
+        }
+    }
+}
@@ -34,12 +34,13 @@ package com.tyndalehouse.step.core.service.jsword.impl;
 
 import com.tyndalehouse.step.core.models.stats.ScopeType;
 import com.tyndalehouse.step.core.service.StrongAugmentationService;
+import com.tyndalehouse.step.core.service.jsword.JSwordCollocationService;
+import com.tyndalehouse.step.core.service.jsword.JSwordWordStatsService;
 import com.tyndalehouse.step.core.utils.TestUtils;
 import org.crosswire.jsword.passage.*;
 import org.crosswire.jsword.versification.system.Versifications;
 import org.junit.Test;
 
-import java.util.regex.Pattern;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -50,17 +51,9 @@ import static org.mockito.Mockito.mock;
  */
 public class JSwordAnalysisServiceImplTest {
 
-    /**
-     * Test pattern is correct.
-     */
-    @Test
-    public void testPatternIsCorrect() {
-        Pattern.compile(JSwordAnalysisServiceImpl.WORD_SPLIT);
-    }
-
     @Test
     public void testExpand() throws NoSuchKeyException {
-        JSwordAnalysisServiceImpl impl = new JSwordAnalysisServiceImpl(TestUtils.mockVersificationService(), null, null, mock(StrongAugmentationService.class));
+        JSwordAnalysisServiceImpl impl = new JSwordAnalysisServiceImpl(TestUtils.mockVersificationService(), null, null, mock(StrongAugmentationService.class), mock(JSwordWordStatsService.class), mock(JSwordCollocationService.class), 50);
 
         //normal use cases
         assertEquals("Gen.3", impl.getExpandedBookData(get("Gen.3.3"), ScopeType.CHAPTER, impl.getStrongsV11n(), impl.getStrongsBook()).getKey().getOsisRef());
@@ -82,7 +82,7 @@ public class JSwordPassageServiceImplTest {
     @Before
     public void setUp() {
         this.jsi = new JSwordPassageServiceImpl(TestUtils.mockVersificationService(), null, mock(VocabularyService.class),
-                mock(ColorCoderProviderImpl.class), TestUtils.mockVersionResolver(), null);
+                mock(ColorCoderProviderImpl.class), TestUtils.mockVersionResolver(), null, null);
     }
 
     /**
@@ -0,0 +1,94 @@
+package com.tyndalehouse.step.core.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the limits and statistics of {@link BoundedCache}
+ *
+ * @author chrisburrell
+ */
+public class BoundedCacheTest {
+    private static final BoundedCache.Weigher<String> LENGTH = new BoundedCache.Weigher<String>() {
+        @Override
+        public long weigh(final String value) {
+            return value.length();
+        }
+    };
+
+    /**
+     * the cache never holds more entries than it is allowed to
+     */
+    @Test
+    public void testEntryLimit() {
+        final BoundedCache<Integer, String> cache = new BoundedCache<Integer, String>("test", 32, 0, 0, null);
+        for (int ii = 0; ii < 1000; ii++) {
+            cache.put(ii, "value" + ii);
+        }
+
+        assertTrue(cache.size() <= 32);
+        assertEquals(1000 - cache.size(), cache.getEvictions());
+        assertEquals("value999", cache.get(999));
+    }
+
+    /**
+     * the cache never holds more than its maximum size
+     */
+    @Test
+    public void testWeightLimit() {
+        final BoundedCache<Integer, String> cache = new BoundedCache<Integer, String>("test", 0, 160, 0, LENGTH);
+        for (int ii = 0; ii < 100; ii++) {
+            cache.put(ii, "0123456789");
+        }
+
+        assertTrue(cache.weight() <= 160);
+        assertEquals(cache.size() * 10L, cache.weight());
+    }
+
+    /**
+     * replacing a value doesn't count it twice
+     */
+    @Test
+    public void testReplace() {
+        final BoundedCache<String, String> cache = new BoundedCache<String, String>("test", 0, 1000, 0, LENGTH);
+        cache.put("a", "12345");
+        cache.put("a", "123");
+        assertEquals(1, cache.size());
+        assertEquals(3, cache.weight());
+        assertEquals("123", cache.get("a"));
+    }
+
+    /**
+     * expired entries are not returned
+     *
+     * @throws InterruptedException if interrupted while waiting for the entry to expire
+     */
+    @Test
+    public void testExpiry() throws InterruptedException {
+        final BoundedCache<String, String> cache = new BoundedCache<String, String>("test", 0, 0, 10, null);
+        cache.put("a", "value");
+        Thread.sleep(50);
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    /**
+     * hits and misses are counted
+     */
+    @Test
+    public void testStatistics() {
+        final BoundedCache<String, String> cache = new BoundedCache<String, String>("test", 10, 0, 0, null);
+        cache.put("a", "value");
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+}
@@ -33,8 +33,11 @@
 package com.tyndalehouse.step.core.xsl.impl;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.when;
 
+import org.apache.lucene.search.Query;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -63,10 +66,9 @@ public class ColorCoderProviderImplTest {
     @Before
     public void setUp() {
         when(this.mockManager.getReader("morphology")).thenReturn(this.mockReader);
-        when(this.mockReader.searchExactTermBySingleField("code", 1, "abc")).thenReturn(
-                new EntityDoc[] { this.mockDoc });
-
-        when(this.mockReader.searchExactTermBySingleField("code", 1, "def")).thenReturn(new EntityDoc[] {});
+        when(this.mockReader.getGeneration()).thenReturn(1);
+        when(this.mockReader.search(any(Query.class))).thenReturn(new EntityDoc[] { this.mockDoc });
+        when(this.mockDoc.get("code")).thenReturn("abc");
         when(this.mockDoc.get("cssClasses")).thenReturn("css");
     }
 
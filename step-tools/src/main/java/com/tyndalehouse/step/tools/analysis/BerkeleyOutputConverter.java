@@ -44,17 +44,16 @@ import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.FSDirectory;
 
 import java.io.File;
-import java.io.BufferedWriter;
-import java.io.OutputStreamWriter;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.lang.String;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -65,8 +64,8 @@ import java.util.Date;
  */
 
 public class BerkeleyOutputConverter {
-    private static final Map<String, String> entries = new HashMap<String, String>(12000);
-    private static final Map<String, String> greekEntries = new HashMap<String, String>(12000);
+    private static final Map<String, String> entries = new ConcurrentHashMap<String, String>(12000);
+    private static final Map<String, String> greekEntries = new ConcurrentHashMap<String, String>(12000);
     public static String strDebug = ""; //Will store debug information, which will then be dumped into a log file (it requires a successful execution)
 
     public static void main(String[] args) throws IOException {
@@ -114,10 +113,10 @@ public class BerkeleyOutputConverter {
         keyFile = preStringProcessing (keyFile);
 
         if (bDebug) { WriteDebug("Processing. Elapsed time: (" + (System.currentTimeMillis() - startTime) + ")"); }
-        List<String[]> strongSentences = splitByWord(strongs);
-        List<String[]> otherSentences = splitByWord(other);
-        List<String[]> resultSentences = splitByWord(results);
-        List<String[]> keyList = splitByWord(keyFile);
+        final List<String[]> strongSentences = splitByWord(strongs);
+        final List<String[]> otherSentences = splitByWord(other);
+        final List<String[]> resultSentences = splitByWord(results);
+        final List<String[]> keyList = splitByWord(keyFile);
 
 
         final File path = new File(strJSwordPath);
@@ -125,13 +124,28 @@ public class BerkeleyOutputConverter {
 //        final File path = new File("C:\\Users\\chbradsh\\AppData\\Roaming\\JSword\\step\\entities\\definition");
         FSDirectory directory = FSDirectory.open(path);
         final IndexSearcher indexSearcher = new IndexSearcher(directory);
-        final BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(strOutputFileName), "UTF8"));
 //        final BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream("C:\\Users\\David IB\\Dropbox\\STEP-Tagging\\autoTag\\BibleSample\\ChrisExperiments\\NT.tagging+Gk.txt"), "UTF8"));
 //        final BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream("C:\\Users\\chbradsh\\Documents\\GitHub\\dev\\BibleSample\\outfilename.txt"), "UTF8"));
 
 
-        String resultTagging = parseResults(resultSentences, strongSentences, otherSentences, indexSearcher, keyList, out);
-        out.close();
+        //Each book is converted on its own thread, into its own file, and resumed from the last run if it stopped part way through
+        final Map<String, int[]> books = partitionByBook(keyList, resultSentences.size());
+        final List<String> partitions = new ArrayList<String>(books.keySet());
+        final PartitionedAnalysisRunner runner = PartitionedAnalysisRunner.forJob("berkeley-" + portionPassage);
+        final String fingerprint = PartitionedAnalysisRunner.getFingerprint(new File(root + portionPassage + ".s"),
+                new File(root + portionPassage + ".u"), new File(root + portionPassage + ".align.txt"),
+                new File(root + portionPassage + ".keyList.txt"));
+        runner.run(partitions, fingerprint, new PartitionedAnalysisRunner.PartitionTask() {
+            @Override
+            public long process(final String partition, final Writer out) throws Exception {
+                final int[] range = books.get(partition);
+                parseResults(resultSentences, strongSentences, otherSentences, indexSearcher, keyList, out, range[0], range[1]);
+                return range[1] - range[0];
+            }
+        });
+        runner.concatenate(partitions, new File(strOutputFileName));
+
+        String resultTagging;
         //Postprocessing
         if (bDebug) { WriteDebug("Postprocessing. Elapsed time: (" + (System.currentTimeMillis() - startTime) + ")"); }
         resultTagging = postStringProcessing (strOutputFileName);
@@ -141,7 +155,7 @@ public class BerkeleyOutputConverter {
         strDebug="";
     }
 
-    private static void WriteDebug (final String strInput) {
+    private static synchronized void WriteDebug (final String strInput) {
         System.out.println(strInput);
         strDebug = strDebug + "\n" + strInput;
         //return Pattern.compile(strOriginalExpression).matcher(strInput).replaceAll(strReplacingExpression);
@@ -396,14 +410,31 @@ public class BerkeleyOutputConverter {
     }
 
 
-    private static String parseResults(final List<String[]> resultSentences, final List<String[]> strongSentences, final List<String[]> otherSentences, final IndexSearcher indexSearcher, final List<String[]> keyList, final BufferedWriter out) throws IOException {
-        StringBuilder resultingTagging = new StringBuilder(8000000);
+    //Splits the verses into runs of the same book, named by the book of their reference, e.g. 40_Mat
+    private static Map<String, int[]> partitionByBook(final List<String[]> keyList, final int size) {
+        final Map<String, int[]> books = new LinkedHashMap<String, int[]>(128);
+        int start = 0;
+        String book = null;
+        for (int i = 0; i <= size; i++) {
+            final String nextBook = i == size ? null : keyList.get(i)[0].split("\\.")[0];
+            if (i != 0 && (i == size || !nextBook.equals(book))) {
+                final String name = books.containsKey(book) ? book + "_" + start : book;
+                books.put(name.replaceAll("[^A-Za-z0-9_-]", "_"), new int[]{start, i});
+                start = i;
+            }
+            book = nextBook;
+        }
+        return books;
+    }
+
+    private static String parseResults(final List<String[]> resultSentences, final List<String[]> strongSentences, final List<String[]> otherSentences, final IndexSearcher indexSearcher, final List<String[]> keyList, final Writer out, final int from, final int to) throws IOException {
+        StringBuilder resultingTagging = new StringBuilder((to - from) * 256);
         int prev;
         boolean bDebug = false;
         String strTemp = "";
         prev = -1;
 
-        for (int i = 0; i < resultSentences.size(); i++) {
+        for (int i = from; i < to; i++) {
             String[] sentence = resultSentences.get(i);
 
             if (bDebug) { WriteDebug("Array number --" + i + " of " + resultSentences.size() + "-- of resultSentences. \t\t   The sentence starts with: " + keyList.get(i)[0] + "\t(" + sentence[0] + ")"); }
@@ -600,7 +631,7 @@ public class BerkeleyOutputConverter {
         return words.toArray(new String[words.size()]);
     }
 
-    private static void appendLexicalEntry(final IndexSearcher indexSearcher, final StringBuilder resultingTagging, String strong, BufferedWriter out) throws IOException {
+    private static void appendLexicalEntry(final IndexSearcher indexSearcher, final StringBuilder resultingTagging, String strong, Writer out) throws IOException {
         if (strong.length() > 5 && strong.charAt(1) == '0') {
             strong = strong.substring(0, 1) + strong.substring(2);
         }
@@ -620,7 +651,7 @@ public class BerkeleyOutputConverter {
         out.write(gloss);
     }
 
-    private static void appendGreekEntry(final IndexSearcher indexSearcher, final StringBuilder resultingTagging, String strong, final BufferedWriter out) throws IOException {
+    private static void appendGreekEntry(final IndexSearcher indexSearcher, final StringBuilder resultingTagging, String strong, final Writer out) throws IOException {
         if (strong.length() > 5 && strong.charAt(1) == '0') {
             strong = strong.substring(0, 1) + strong.substring(2);
         }
@@ -3,12 +3,15 @@ package com.tyndalehouse.step.tools.analysis;
 
 import static com.tyndalehouse.step.core.utils.StringUtils.isBlank;
 
+import java.io.BufferedReader;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -29,6 +32,8 @@ import org.jdom2.filter.Filter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.tyndalehouse.step.core.utils.IOUtils;
+
 /**
  * A tool to anaylise frequencies of each word in the bible
  * 
@@ -40,6 +45,10 @@ public class BibleAnalysis {
     Pattern punctuation = Pattern.compile("[ *0-9:.<>,!\";]+");
     Logger LOGGER = LoggerFactory.getLogger(BibleAnalysis.class);
     private static final String SCOPE = "Gen-Mal";
+    private static final String VERSE_LINE = "V";
+    private static final String WORD_LINE = "W";
+    private static final String PHRASE_LINE = "P";
+    private static final String NO_STRONG = "\\0";
     private String currentVerse;
     private int currentPosition;
     private Map<String, List<Word>> sourceWords;
@@ -326,13 +335,78 @@ public class BibleAnalysis {
         return words;
     }
 
+    /**
+     * Reads the words of each book on a pool of threads, resuming from the books read by a previous run, and then
+     * puts the words of the whole text back together in order
+     */
     public Analysis read(final String initials, final Map<String, List<Word>> currentWords,
             final Map<String, List<Word>> currentPhrases, final Map<String, List<Word>> currentVerses,
             final Map<String, Integer> currentWordsCounts) throws Exception {
         final Book b = Books.installed().getBook(initials);
+        final List<String> books = PartitionedAnalysisRunner.getBooks(b.getKey(SCOPE));
+
+        final PartitionedAnalysisRunner runner = PartitionedAnalysisRunner.forJob("bible-analysis-" + initials);
+        runner.run(books, PartitionedAnalysisRunner.getFingerprint(b), new PartitionedAnalysisRunner.PartitionTask() {
+            @Override
+            public long process(final String partition, final Writer out) throws Exception {
+                return new BibleAnalysis().writeWords(b, partition, out);
+            }
+        });
 
+        for (final String book : books) {
+            readWords(runner, book, currentWords, currentPhrases, currentVerses);
+        }
+        runner.delete();
+        // output stats
+        return analyze(currentWords);
+        // final TreeSet<WordCount> sortedKeys = sort(currentWords, currentWordsCounts);
+
+        // this.LOGGER.trace("=======================================================");
+        // this.LOGGER.trace(initials);
+        // this.LOGGER.trace("=======================================================");
+        // if (this.LOGGER.isTraceEnabled()) {
+        // for (final WordCount wordCount : sortedKeys) {
+        // final List<Word> words = currentWords.get(wordCount.key);
+        // this.LOGGER.trace(String.format("%4d ocurrences of %s", words.size(), wordCount.key));
+        // }
+        // }
+
+        // return sortedKeys;
+    }
+
+    /**
+     * Reads the words of a single book, writing a line for each verse, word and phrase
+     * 
+     * @return the number of verses read
+     */
+    private long writeWords(final Book b, final String book, final Writer out) throws Exception {
+        final Map<String, List<Word>> words = new HashMap<String, List<Word>>();
+        final Map<String, List<Word>> phrases = new HashMap<String, List<Word>>();
+        final Map<String, List<Word>> verses = new LinkedHashMap<String, List<Word>>();
+        readVerses(b, b.getKey(book), words, phrases, verses);
+
+        for (final Entry<String, List<Word>> verse : verses.entrySet()) {
+            out.write(VERSE_LINE);
+            out.write('\t');
+            out.write(escape(verse.getKey()));
+            out.write('\n');
+            for (final Word w : verse.getValue()) {
+                writeWord(out, WORD_LINE, w);
+            }
+        }
+
+        for (final List<Word> phrase : phrases.values()) {
+            for (final Word w : phrase) {
+                writeWord(out, PHRASE_LINE, w);
+            }
+        }
+        return verses.size();
+    }
+
+    private void readVerses(final Book b, final Key key, final Map<String, List<Word>> currentWords,
+            final Map<String, List<Word>> currentPhrases, final Map<String, List<Word>> currentVerses)
+            throws Exception {
         final Filter filter = new ElementFilter("verse").and(new AttributeFilter(OSISUtil.ATTRIBUTE_W_LEMMA));
-        final Key key = b.getKey(SCOPE);
         final BookData bookData = new BookData(b, key);
         final Element osis = bookData.getOsis();
         final Iterator<Element> descendants = osis.getDescendants(filter);
@@ -351,22 +425,85 @@ public class BibleAnalysis {
             processVerseChildren(next, currentWords, currentPhrases, value);
 
         }
+    }
 
-        // output stats
-        return analyze(currentWords);
-        // final TreeSet<WordCount> sortedKeys = sort(currentWords, currentWordsCounts);
+    private void writeWord(final Writer out, final String type, final Word w) throws Exception {
+        out.write(type);
+        out.write('\t');
+        out.write(escape(w.verse));
+        out.write('\t');
+        out.write(Integer.toString(w.position));
+        out.write('\t');
+        out.write(w.strongNumber == null ? NO_STRONG : escape(w.strongNumber));
+        out.write('\t');
+        out.write(escape(w.word));
+        out.write('\n');
+    }
 
-        // this.LOGGER.trace("=======================================================");
-        // this.LOGGER.trace(initials);
-        // this.LOGGER.trace("=======================================================");
-        // if (this.LOGGER.isTraceEnabled()) {
-        // for (final WordCount wordCount : sortedKeys) {
-        // final List<Word> words = currentWords.get(wordCount.key);
-        // this.LOGGER.trace(String.format("%4d ocurrences of %s", words.size(), wordCount.key));
-        // }
-        // }
+    /**
+     * Puts back the verses, words and phrases of a book, in the order in which they were read
+     */
+    private void readWords(final PartitionedAnalysisRunner runner, final String book,
+            final Map<String, List<Word>> currentWords, final Map<String, List<Word>> currentPhrases,
+            final Map<String, List<Word>> currentVerses) throws Exception {
+        final BufferedReader reader = runner.openOutput(book);
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] fields = line.split("\t", 5);
+                if (VERSE_LINE.equals(fields[0])) {
+                    currentVerses.put(unescape(fields[1]), new ArrayList<Word>());
+                    continue;
+                }
 
-        // return sortedKeys;
+                final Word w = new Word();
+                w.verse = unescape(fields[1]);
+                w.position = Integer.parseInt(fields[2]);
+                w.strongNumber = NO_STRONG.equals(fields[3]) ? null : unescape(fields[3]);
+                w.word = unescape(fields[4]);
+
+                if (WORD_LINE.equals(fields[0])) {
+                    addToList(currentWords, w.word, w);
+                    currentVerses.get(w.verse).add(w);
+                } else {
+                    addToList(currentPhrases, w.word, w);
+                }
+            }
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+    }
+
+    private void addToList(final Map<String, List<Word>> map, final String key, final Word w) {
+        List<Word> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<Word>();
+            map.put(key, list);
+        }
+        list.add(w);
+    }
+
+    private static String escape(final String text) {
+        return text.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(final String text) {
+        if (text.indexOf('\\') == -1) {
+            return text;
+        }
+
+        final StringBuilder sb = new StringBuilder(text.length());
+        for (int ii = 0; ii < text.length(); ii++) {
+            final char c = text.charAt(ii);
+            if (c != '\\' || ii + 1 == text.length()) {
+                sb.append(c);
+                continue;
+            }
+
+            final char escaped = text.charAt(++ii);
+            sb.append(escaped == 't' ? '\t' : escaped == 'n' ? '\n' : escaped == 'r' ? '\r' : escaped);
+        }
+        return sb.toString();
     }
 
     class Analysis {
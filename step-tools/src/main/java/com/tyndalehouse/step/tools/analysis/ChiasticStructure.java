@@ -1,5 +1,6 @@
 package com.tyndalehouse.step.tools.analysis;
 
+import com.tyndalehouse.step.core.utils.IOUtils;
 import com.tyndalehouse.step.core.utils.StringUtils;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.IndexSearcher;
@@ -8,12 +9,16 @@ import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.FSDirectory;
 import org.crosswire.jsword.book.*;
 import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.KeyUtil;
+import org.crosswire.jsword.passage.NoSuchKeyException;
 import org.crosswire.jsword.passage.Verse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.*;
 
 /**
@@ -76,18 +81,36 @@ public class ChiasticStructure {
         FSDirectory directory = FSDirectory.open(path);
         final IndexSearcher indexSearcher = new IndexSearcher(directory);
 
-        Book esv = Books.installed().getBook("ESV_th");
+        final Book esv = Books.installed().getBook("ESV_th");
         final Key key = esv.getKey(ref);
 
-        final Iterator<Key> iterator = key.iterator();
+        //the strong numbers of each chapter are read in parallel, the verses are then matched in order
+        final List<String> chapters = PartitionedAnalysisRunner.getChapters(key);
+        final PartitionedAnalysisRunner runner = PartitionedAnalysisRunner.forJob("chiasms-" + esv.getInitials() + "-" + ref);
+        runner.run(chapters, PartitionedAnalysisRunner.getFingerprint(esv), new PartitionedAnalysisRunner.PartitionTask() {
+            @Override
+            public long process(final String partition, final Writer out) throws Exception {
+                final Key chapter = esv.getKey(partition);
+                chapter.retainAll(key);
+                return writeStrongData(esv, chapter, out);
+            }
+        });
+
         List<KeyValuePair<Key, Set<String>>> strongsInVerses = new ArrayList<KeyValuePair<Key, Set<String>>>();
         TreeMap<Key, List<Match>> matchesByVerse = new TreeMap<Key, List<Match>>();
-        while (iterator.hasNext()) {
-            final Key singleVerse = iterator.next();
-            if (createStrongData(esv, key, strongsInVerses, singleVerse)) {
-                matchesByVerse.put(singleVerse, findPreviouslyRelatedVerses(strongsInVerses, indexSearcher));
+        for (final String chapter : chapters) {
+            final BufferedReader reader = runner.openOutput(chapter);
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final Key singleVerse = readStrongData(esv, strongsInVerses, line);
+                    matchesByVerse.put(singleVerse, findPreviouslyRelatedVerses(strongsInVerses, indexSearcher));
+                }
+            } finally {
+                IOUtils.closeQuietly(reader);
             }
         }
+        runner.delete();
 
         findChiasms(matchesByVerse);
     }
@@ -217,21 +240,43 @@ public class ChiasticStructure {
         return null;
     }
 
-    private boolean createStrongData(final Book esv, final Key key, final List<KeyValuePair<Key, Set<String>>> strongsInVerses, final Key singleVerse) throws BookException {
-        BookData data = new BookData(esv, singleVerse);
-        String strongs = OSISUtil.getStrongsNumbers(data.getOsisFragment());
+    /**
+     * Writes a line for each verse with strong numbers, holding its reference and its strong numbers
+     *
+     * @return the number of verses read
+     */
+    private long writeStrongData(final Book esv, final Key chapter, final Writer out) throws BookException, IOException {
+        long verses = 0;
+        final Iterator<Key> iterator = chapter.iterator();
+        while (iterator.hasNext()) {
+            final Verse singleVerse = KeyUtil.getVerse(iterator.next());
+            BookData data = new BookData(esv, singleVerse);
+            String strongs = OSISUtil.getStrongsNumbers(data.getOsisFragment());
+            verses++;
+
+            if (StringUtils.isBlank(strongs)) {
+                //a key without strongs
+                continue;
+            }
 
-        if (StringUtils.isBlank(strongs)) {
-            //a key without strongs
-            return false;
+            out.write(singleVerse.getOsisID());
+            out.write('\t');
+            out.write(strongs);
+            out.write('\n');
         }
+        return verses;
+    }
+
+    private Key readStrongData(final Book esv, final List<KeyValuePair<Key, Set<String>>> strongsInVerses, final String line) throws NoSuchKeyException {
+        final int separator = line.indexOf('\t');
+        final Key singleVerse = KeyUtil.getVerse(esv.getKey(line.substring(0, separator)));
 
-        String[] strongsArray = strongs.split(" ");
+        String[] strongsArray = line.substring(separator + 1).split(" ");
         Set<String> strongsSet = new HashSet<String>(Arrays.asList(strongsArray));
 
         //add set of strongs to the hash map of verse to strongs
         strongsInVerses.add(new KeyValuePair<Key, Set<String>>(singleVerse, strongsSet));
-        return true;
+        return singleVerse;
     }
 
 
@@ -0,0 +1,401 @@
+package com.tyndalehouse.step.tools.analysis;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.KeyUtil;
+import org.crosswire.jsword.passage.Verse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.utils.IOUtils;
+import com.tyndalehouse.step.core.utils.JSwordUtils;
+
+/**
+ * Runs an analysis over the books or chapters of a passage on a bounded pool of threads. Each partition writes its
+ * output to its own file and is then recorded in a checkpoint file, so that a run that stops part way through
+ * resumes with the partitions that remain. The checkpoint starts with a fingerprint of the inputs, such as the
+ * version of the module, and is discarded along with the output when the inputs change. The time taken and the
+ * throughput of each partition are logged as they complete.
+ * <p/>
+ * The working directory defaults to step-batch/&lt;job&gt; in the temporary directory, and can be changed with
+ * -Dstep.batch.dir. The number of threads defaults to the number of processors, and can be changed with
+ * -Dstep.batch.threads. The working directory is deleted once the output has been used, see {@link #delete()}.
+ *
+ * @author chrisburrell
+ */
+public class PartitionedAnalysisRunner {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionedAnalysisRunner.class);
+    private static final String CHECKPOINT_FILE = "completed.txt";
+    private static final String FINGERPRINT_PREFIX = "# ";
+    private static final String OUTPUT_EXTENSION = ".out";
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+    private static final String ENCODING = "UTF-8";
+    private final File workingDirectory;
+    private final int threads;
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private OutputStream checkpoint;
+
+    /**
+     * An analysis of a single partition
+     */
+    public interface PartitionTask {
+        /**
+         * @param partition the partition, as in Gen or Gen.1
+         * @param out       the writer of the output of the partition
+         * @return the number of items processed, reported as the throughput of the partition
+         * @throws Exception if the partition can't be processed, in which case it is retried on the next run
+         */
+        long process(String partition, Writer out) throws Exception;
+    }
+
+    /**
+     * @param workingDirectory the directory holding the output of each partition and the checkpoint
+     * @param threads          the number of partitions processed at once
+     */
+    public PartitionedAnalysisRunner(final File workingDirectory, final int threads) {
+        this.workingDirectory = workingDirectory;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @param job the name of the job, distinguishing its working directory from those of other jobs
+     * @return a runner configured from the system properties
+     */
+    public static PartitionedAnalysisRunner forJob(final String job) {
+        final String root = System.getProperty("step.batch.dir",
+                new File(System.getProperty("java.io.tmpdir"), "step-batch").getPath());
+        final int threads = Integer.getInteger("step.batch.threads", Runtime.getRuntime().availableProcessors());
+        return new PartitionedAnalysisRunner(new File(root, job.replaceAll("[^A-Za-z0-9_.-]", "_")), threads);
+    }
+
+    /**
+     * @param key a passage
+     * @return the books of the passage, in order, as in Gen
+     */
+    public static List<String> getBooks(final Key key) {
+        final Set<String> books = new LinkedHashSet<String>();
+        final Iterator<Key> verses = key.iterator();
+        while (verses.hasNext()) {
+            books.add(KeyUtil.getVerse(verses.next()).getBook().getOSIS());
+        }
+        return new ArrayList<String>(books);
+    }
+
+    /**
+     * @param key a passage
+     * @return the chapters of the passage, in order, as in Gen.1
+     */
+    public static List<String> getChapters(final Key key) {
+        final Set<String> chapters = new LinkedHashSet<String>();
+        final Iterator<Key> verses = key.iterator();
+        while (verses.hasNext()) {
+            final Verse verse = KeyUtil.getVerse(verses.next());
+            chapters.add(verse.getBook().getOSIS() + '.' + verse.getChapter());
+        }
+        return new ArrayList<String>(chapters);
+    }
+
+    /**
+     * @param book the module being analysed
+     * @return a fingerprint of the module, which changes with its version, or with its files if it has no version
+     */
+    public static String getFingerprint(final Book book) {
+        return book.getInitials() + ' ' + JSwordUtils.getModuleVersion(book);
+    }
+
+    /**
+     * @param inputs the files being analysed
+     * @return a fingerprint of the files, which changes with their size and modification time
+     */
+    public static String getFingerprint(final File... inputs) {
+        final StringBuilder fingerprint = new StringBuilder(64 * inputs.length);
+        for (final File input : inputs) {
+            fingerprint.append(input.getName()).append(' ').append(input.length()).append(' ')
+                    .append(input.lastModified()).append(' ');
+        }
+        return fingerprint.toString().trim();
+    }
+
+    /**
+     * Processes the partitions that haven't yet been completed
+     *
+     * @param partitions  the partitions, in order
+     * @param fingerprint the fingerprint of the inputs, discarding the output of previous runs if it has changed
+     * @param task        the analysis of a single partition
+     */
+    public void run(final List<String> partitions, final String fingerprint, final PartitionTask task) {
+        if (!this.workingDirectory.isDirectory() && !this.workingDirectory.mkdirs()) {
+            throw new StepInternalException("Unable to create " + this.workingDirectory.getAbsolutePath());
+        }
+
+        Set<String> completed = readCheckpoint(fingerprint);
+        if (completed == null) {
+            deleteFiles();
+            completed = new HashSet<String>();
+        }
+        final List<String> remaining = new ArrayList<String>(partitions.size());
+        for (final String partition : partitions) {
+            if (!completed.contains(partition) || !getOutput(partition).exists()) {
+                remaining.add(partition);
+            }
+        }
+        LOGGER.info("{} of {} partitions already complete in [{}], processing {} on {} threads", new Object[]{
+                partitions.size() - remaining.size(), partitions.size(),
+                this.workingDirectory.getAbsolutePath(), remaining.size(), this.threads});
+
+        final long start = System.currentTimeMillis();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(this.threads, this.threads, 0L,
+                TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(this.threads * 2), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "analysis-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+
+        final Map<String, Future<Long>> results = new LinkedHashMap<String, Future<Long>>(remaining.size() * 2);
+        final List<String> failed = new ArrayList<String>();
+        long items = 0;
+        try {
+            final File checkpointFile = new File(this.workingDirectory, CHECKPOINT_FILE);
+            final boolean created = !checkpointFile.exists();
+            this.checkpoint = new FileOutputStream(checkpointFile, true);
+            if (created) {
+                writeCheckpoint(FINGERPRINT_PREFIX + fingerprint);
+            }
+            for (final String partition : remaining) {
+                results.put(partition, executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws Exception {
+                        return processPartition(partition, task);
+                    }
+                }));
+            }
+
+            for (final Map.Entry<String, Future<Long>> result : results.entrySet()) {
+                try {
+                    items += result.getValue().get();
+                } catch (final ExecutionException e) {
+                    LOGGER.error("Partition [{}] failed", result.getKey(), e.getCause());
+                    failed.add(result.getKey());
+                }
+            }
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to open the checkpoint in " + this.workingDirectory, e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StepInternalException("Interrupted while processing partitions", e);
+        } finally {
+            executor.shutdownNow();
+            IOUtils.closeQuietly(this.checkpoint);
+        }
+
+        final long elapsed = System.currentTimeMillis() - start;
+        LOGGER.info("Processed {} partitions, {} items, in {} ms ({} items/s)", new Object[]{
+                remaining.size() - failed.size(), items, elapsed, getThroughput(items, elapsed)});
+        if (!failed.isEmpty()) {
+            throw new StepInternalException(failed.size() + " partitions failed, run again to resume: " + failed);
+        }
+    }
+
+    /**
+     * @param partition a completed partition
+     * @return the file holding its output
+     */
+    public File getOutput(final String partition) {
+        return new File(this.workingDirectory, partition + OUTPUT_EXTENSION);
+    }
+
+    /**
+     * @param partition a completed partition
+     * @return a reader of its output, to be closed by the caller
+     */
+    public BufferedReader openOutput(final String partition) {
+        try {
+            return new BufferedReader(new InputStreamReader(new FileInputStream(getOutput(partition)), ENCODING));
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to read the output of " + partition, e);
+        }
+    }
+
+    /**
+     * Concatenates the output of the partitions, in order, then deletes the working directory
+     *
+     * @param partitions the completed partitions
+     * @param target     the file to write
+     */
+    public void concatenate(final List<String> partitions, final File target) {
+        final byte[] buffer = new byte[65536];
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(target);
+            for (final String partition : partitions) {
+                InputStream in = null;
+                try {
+                    in = new FileInputStream(getOutput(partition));
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                    }
+                } finally {
+                    IOUtils.closeQuietly(in);
+                }
+            }
+            out.close();
+            out = null;
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to write " + target.getAbsolutePath(), e);
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+        delete();
+    }
+
+    /**
+     * Deletes the working directory, once the output of the partitions has been used
+     */
+    public void delete() {
+        deleteFiles();
+        if (this.workingDirectory.exists() && !this.workingDirectory.delete()) {
+            LOGGER.warn("Unable to delete [{}]", this.workingDirectory.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Deletes the output and the checkpoint of previous runs
+     */
+    private void deleteFiles() {
+        final File[] files = this.workingDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (final File f : files) {
+            if (!f.delete()) {
+                LOGGER.warn("Unable to delete [{}]", f.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * Writes the output of the partition to a temporary file, renamed once complete, before recording the
+     * partition in the checkpoint. The temporary file is deleted if the partition fails
+     *
+     * @param partition the partition
+     * @param task      the analysis of the partition
+     * @return the number of items processed
+     * @throws Exception if the partition can't be processed
+     */
+    private long processPartition(final String partition, final PartitionTask task) throws Exception {
+        final long start = System.currentTimeMillis();
+        final File output = getOutput(partition);
+        final File temporary = new File(this.workingDirectory, partition + TEMPORARY_EXTENSION);
+
+        final long items;
+        Writer out = null;
+        try {
+            out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporary), ENCODING));
+            items = task.process(partition, out);
+            out.close();
+            out = null;
+
+            if (output.exists() && !output.delete() || !temporary.renameTo(output)) {
+                throw new IOException("Unable to rename " + temporary.getAbsolutePath());
+            }
+        } finally {
+            IOUtils.closeQuietly(out);
+            if (temporary.exists() && !temporary.delete()) {
+                LOGGER.warn("Unable to delete [{}]", temporary.getAbsolutePath());
+            }
+        }
+
+        final long elapsed = System.currentTimeMillis() - start;
+        writeCheckpoint(partition);
+        LOGGER.info("Partition [{}] processed {} items in {} ms ({} items/s)", new Object[]{
+                partition, items, elapsed, getThroughput(items, elapsed)});
+        return items;
+    }
+
+    /**
+     * @param line the line to append to the checkpoint, synced to disk so that it survives a crash
+     * @throws IOException if the checkpoint can't be written
+     */
+    private synchronized void writeCheckpoint(final String line) throws IOException {
+        this.checkpoint.write((line + '\n').getBytes(ENCODING));
+        this.checkpoint.flush();
+        ((FileOutputStream) this.checkpoint).getFD().sync();
+    }
+
+    /**
+     * @param fingerprint the fingerprint of the inputs
+     * @return the partitions recorded as complete by previous runs, or null if there is no checkpoint, or it was
+     *         written for other inputs
+     */
+    private Set<String> readCheckpoint(final String fingerprint) {
+        final File file = new File(this.workingDirectory, CHECKPOINT_FILE);
+        if (!file.exists()) {
+            return null;
+        }
+
+        final Set<String> completed = new HashSet<String>();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
+            if (!(FINGERPRINT_PREFIX + fingerprint).equals(reader.readLine())) {
+                LOGGER.info("The inputs have changed since [{}] was written, starting afresh", file.getAbsolutePath());
+                return null;
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() != 0) {
+                    completed.add(line);
+                }
+            }
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to read the checkpoint " + file.getAbsolutePath(), e);
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+        return completed;
+    }
+
+    /**
+     * @param items   the number of items processed
+     * @param elapsed the time taken, in milliseconds
+     * @return the number of items processed per second
+     */
+    private static long getThroughput(final long items, final long elapsed) {
+        return elapsed == 0 ? items * 1000 : items * 1000 / elapsed;
+    }
+}
@@ -0,0 +1,73 @@
+package com.tyndalehouse.step.tools.modules;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.crosswire.common.util.CWProject;
+import org.crosswire.jsword.book.Book;
+
+import com.google.inject.Binder;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Module;
+import com.google.inject.Provider;
+import com.google.inject.name.Names;
+import com.tyndalehouse.step.core.guice.StepCoreModule;
+import com.tyndalehouse.step.core.models.ClientSession;
+import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
+import com.tyndalehouse.step.core.service.jsword.helpers.InterlinearAlignment;
+
+/**
+ * Builds the interlinear alignments of the given versions, into the directory that STEP reads them from. Alignments
+ * need building again whenever a new version of the module is installed.
+ *
+ * @author chrisburrell
+ */
+public class BuildInterlinearAlignments {
+    /**
+     * main method
+     *
+     * @param args the versions to align
+     * @throws IOException if the directory of the alignments can't be created
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: BuildInterlinearAlignments <version> [<version>...]");
+            return;
+        }
+
+        final Injector injector = Guice.createInjector(new StepCoreModule(), new Module() {
+
+            @Override
+            public void configure(final Binder binder) {
+                binder.bind(ClientSession.class).toProvider(new Provider<ClientSession>() {
+
+                    @Override
+                    public ClientSession get() {
+                        return null;
+                    }
+                });
+            }
+
+        });
+
+        final JSwordVersificationService versificationService = injector.getInstance(JSwordVersificationService.class);
+        final String path = injector.getInstance(Key.get(String.class, Names.named("app.interlinearAlignment.path")));
+        final File directory = new File(CWProject.instance().getWriteableProjectSubdir(path, true));
+
+        for (final String version : args) {
+            final Book book = versificationService.getBookFromVersion(version);
+            if (book == null) {
+                System.err.println(String.format("Version %s is not installed", version));
+                continue;
+            }
+
+            final long start = System.currentTimeMillis();
+            final int words = InterlinearAlignment.build(book, versificationService.getVersificationForVersion(book),
+                    new File(directory, book.getInitials() + InterlinearAlignment.FILE_EXTENSION));
+            System.out.println(String.format("Aligned %d words of %s in %d ms", words, book.getInitials(),
+                    System.currentTimeMillis() - start));
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.tyndalehouse.step.tools.modules;
+
+import java.io.File;
+
+import com.google.inject.Binder;
+import com.google.inject.Guice;
+import com.google.inject.Module;
+import com.google.inject.Provider;
+import com.tyndalehouse.step.core.data.create.Loader;
+import com.tyndalehouse.step.core.guice.StepCoreModule;
+import com.tyndalehouse.step.core.models.ClientSession;
+
+/**
+ * Loads all entity indexes from the source data and packages them into a bundle, which nodes install at startup
+ * when app.index.bundle points to it.
+ * 
+ * @author chrisburrell
+ *
+ */
+public class ExportEntityBundle {
+    /**
+     * main method
+     * 
+     * @param args the path of the bundle to create
+     */
+    public static void main(final String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: ExportEntityBundle <bundle.zip>");
+            return;
+        }
+
+        final Loader loader = Guice.createInjector(new StepCoreModule(), new Module() {
+
+            @Override
+            public void configure(final Binder binder) {
+                binder.bind(ClientSession.class).toProvider(new Provider<ClientSession>() {
+
+                    @Override
+                    public ClientSession get() {
+                        return null;
+                    }
+                });
+            }
+
+        }).getInstance(Loader.class);
+
+        final int entities = loader.exportBundle(new File(args[0]));
+        System.out.println(String.format("Exported %d entities to %s", entities, args[0]));
+    }
+}
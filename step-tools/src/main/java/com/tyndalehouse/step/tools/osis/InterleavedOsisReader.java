@@ -63,7 +63,7 @@ public class InterleavedOsisReader {
 
         // do the test
         final JSwordPassageServiceImpl jsi = new JSwordPassageServiceImpl(
-                TestUtils.mockVersificationService(), null, null, null, TestUtils.mockVersionResolver(), null);
+                TestUtils.mockVersificationService(), null, null, null, TestUtils.mockVersionResolver(), null, null);
         final List<LookupOption> options = new ArrayList<LookupOption>();
         options.add(LookupOption.CHAPTER_BOOK_VERSE_NUMBER);
 //        options.add(LookupOption.HEADINGS_ONLY);
@@ -56,7 +56,7 @@ public class OsisReader {
 
         // do the test
         final JSwordPassageServiceImpl jsi = new JSwordPassageServiceImpl(
-                TestUtils.mockVersificationService(), null, null, null, TestUtils.mockVersionResolver(), null);
+                TestUtils.mockVersificationService(), null, null, null, TestUtils.mockVersionResolver(), null, null);
         final List<LookupOption> options = new ArrayList<LookupOption>();
 
 //        options.add(LookupOption.DIVIDE_HEBREW);
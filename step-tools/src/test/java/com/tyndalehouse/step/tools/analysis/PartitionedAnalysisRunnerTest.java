@@ -0,0 +1,140 @@
+package com.tyndalehouse.step.tools.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+
+/**
+ * Tests that a run resumes with the partitions that failed, and starts afresh when the inputs change
+ *
+ * @author chrisburrell
+ */
+public class PartitionedAnalysisRunnerTest {
+    private static final List<String> PARTITIONS = Arrays.asList("Gen", "Exod", "Lev");
+    private File directory;
+    private File workingDirectory;
+    private List<String> processed;
+
+    /**
+     * sets up an empty working directory
+     *
+     * @throws IOException if the temporary directory can't be created
+     */
+    @Before
+    public void setUp() throws IOException {
+        this.directory = File.createTempFile("partitions", "");
+        if (!this.directory.delete() || !this.directory.mkdir()) {
+            throw new IOException("Unable to create " + this.directory);
+        }
+        this.workingDirectory = new File(this.directory, "job");
+        this.processed = new CopyOnWriteArrayList<String>();
+    }
+
+    /**
+     * removes the temporary directory
+     *
+     * @throws IOException if it can't be deleted
+     */
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(this.directory);
+    }
+
+    /**
+     * a partition that fails is reported, while the others are recorded as complete
+     */
+    @Test
+    public void testPartitionFailure() {
+        try {
+            new PartitionedAnalysisRunner(this.workingDirectory, 2).run(PARTITIONS, "v1", getTask("Exod"));
+            fail("The failed partition should have been reported");
+        } catch (final StepInternalException ex) {
+            assertTrue(ex.getMessage().contains("[Exod]"));
+        }
+
+        assertEquals(PARTITIONS.size(), this.processed.size());
+        assertTrue(new File(this.workingDirectory, "Gen.out").exists());
+        assertFalse(new File(this.workingDirectory, "Exod.out").exists());
+        assertFalse(new File(this.workingDirectory, "Exod.tmp").exists());
+        assertTrue(new File(this.workingDirectory, "Lev.out").exists());
+    }
+
+    /**
+     * a second run only processes the partition that failed, and the output is concatenated in order, after which
+     * the working directory is deleted
+     *
+     * @throws IOException if the output can't be read
+     */
+    @Test
+    public void testResume() throws IOException {
+        runIgnoringFailures("v1", getTask("Exod"));
+        this.processed.clear();
+
+        final PartitionedAnalysisRunner runner = new PartitionedAnalysisRunner(this.workingDirectory, 2);
+        runner.run(PARTITIONS, "v1", getTask(null));
+        assertEquals(Collections.singletonList("Exod"), this.processed);
+
+        final File target = new File(this.directory, "output.txt");
+        runner.concatenate(PARTITIONS, target);
+        assertEquals("Gen\nExod\nLev\n", FileUtils.readFileToString(target, "UTF-8"));
+        assertFalse(this.workingDirectory.exists());
+    }
+
+    /**
+     * output written from other inputs is discarded
+     */
+    @Test
+    public void testChangedInputsStartAfresh() {
+        runIgnoringFailures("v1", getTask("Exod"));
+        this.processed.clear();
+
+        new PartitionedAnalysisRunner(this.workingDirectory, 2).run(PARTITIONS, "v2", getTask(null));
+        assertEquals(PARTITIONS.size(), this.processed.size());
+    }
+
+    /**
+     * @param fingerprint the fingerprint of the inputs
+     * @param task        the task
+     */
+    private void runIgnoringFailures(final String fingerprint, final PartitionedAnalysisRunner.PartitionTask task) {
+        try {
+            new PartitionedAnalysisRunner(this.workingDirectory, 2).run(PARTITIONS, fingerprint, task);
+        } catch (final StepInternalException ex) {
+            // the failed partitions are processed again on the next run
+        }
+    }
+
+    /**
+     * @param failing the partition that fails, or null
+     * @return a task writing the name of each partition
+     */
+    private PartitionedAnalysisRunner.PartitionTask getTask(final String failing) {
+        return new PartitionedAnalysisRunner.PartitionTask() {
+            @Override
+            public long process(final String partition, final Writer out) throws IOException {
+                processed.add(partition);
+                if (partition.equals(failing)) {
+                    throw new IOException("Unable to process " + partition);
+                }
+                out.write(partition + '\n');
+                return 1;
+            }
+        };
+    }
+}
@@ -140,6 +140,9 @@ public class StepServletConfig extends GuiceServletContextListener {
             getInjector().getInstance(Loader.class).init();
         }
 
+        // open the entity indexes now, rather than on the first requests
+        getInjector().getInstance(EntityManager.class).warmUp();
+
     }
 
     /**
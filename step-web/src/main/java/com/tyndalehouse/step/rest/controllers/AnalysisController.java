@@ -34,10 +34,13 @@ package com.tyndalehouse.step.rest.controllers;
 
 import javax.inject.Inject;
 
+import com.tyndalehouse.step.core.models.stats.CollocationMeasure;
+import com.tyndalehouse.step.core.models.stats.CollocationStats;
 import com.tyndalehouse.step.core.models.stats.ScopeType;
 import com.tyndalehouse.step.core.models.stats.StatType;
 import com.tyndalehouse.step.core.models.stats.CombinedPassageStats;
 import com.tyndalehouse.step.core.service.AnalysisService;
+import com.tyndalehouse.step.core.utils.StringUtils;
 import com.yammer.metrics.annotation.Timed;
 
 import java.util.concurrent.TimeUnit;
@@ -73,4 +76,23 @@ public class AnalysisController {
     public CombinedPassageStats analyseStats(final String version, final String reference, final String statType, final String scope, String considerNextChapter) {
         return this.analysis.getStatsForPassage(version, reference, StatType.valueOf(statType), ScopeType.valueOf(scope), Boolean.parseBoolean(considerNextChapter));
     }
+
+    /**
+     * Ranks the strong numbers occurring with a strong number, within a verse or a window of words.
+     *
+     * @param version   the tagged version
+     * @param strong    the strong number
+     * @param reference the passage to look in, or blank for the whole version
+     * @param scope     the scope of the passage, PASSAGE, CHAPTER, NEAR_BY_CHAPTER or BOOK
+     * @param measure   COUNT, PMI or LOG_LIKELIHOOD
+     * @param window    the number of words either side to look in, or blank for the whole verse
+     * @return the collocations, with their definitions
+     */
+    @Timed(name = "collocations", group = "analysis", rateUnit = TimeUnit.SECONDS, durationUnit = TimeUnit.MILLISECONDS)
+    public CollocationStats collocations(final String version, final String strong, final String reference, final String scope, final String measure, final String window) {
+        final ScopeType scopeType = StringUtils.isBlank(scope) ? ScopeType.PASSAGE : ScopeType.valueOf(scope);
+        final CollocationMeasure collocationMeasure = StringUtils.isBlank(measure) ? CollocationMeasure.LOG_LIKELIHOOD : CollocationMeasure.valueOf(measure);
+        final int windowSize = StringUtils.isBlank(window) ? 0 : Integer.parseInt(window);
+        return this.analysis.getCollocations(version, strong, reference, scopeType, collocationMeasure, windowSize);
+    }
 }
@@ -0,0 +1,105 @@
+package com.tyndalehouse.step.rest.controllers;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.codehaus.jackson.JsonNode;
+
+import com.tyndalehouse.step.core.models.jobs.JobStatus;
+import com.tyndalehouse.step.core.models.stats.CollocationMeasure;
+import com.tyndalehouse.step.core.models.stats.ScopeType;
+import com.tyndalehouse.step.core.models.stats.StatType;
+import com.tyndalehouse.step.core.service.jobs.JobService;
+import com.tyndalehouse.step.core.service.jobs.impl.AnalyseStatsJobHandler;
+import com.tyndalehouse.step.core.service.jobs.impl.CollocationsJobHandler;
+import com.tyndalehouse.step.core.service.jobs.impl.RelatedVersesJobHandler;
+import com.tyndalehouse.step.core.utils.StringUtils;
+import com.yammer.metrics.annotation.Timed;
+
+/**
+ * Submits long analyses to be run in the background, and returns their progress and results. Each submission
+ * returns the status of the job, whose id is then polled until the job has completed.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class JobController {
+    private final JobService jobService;
+
+    /**
+     * @param jobService the job service
+     */
+    @Inject
+    public JobController(final JobService jobService) {
+        this.jobService = jobService;
+    }
+
+    /**
+     * Submits the statistics of a passage, as in {@link AnalysisController#analyseStats}
+     *
+     * @param version             the version
+     * @param reference           the reference
+     * @param statType            WORD, SUBJECT or TEXT
+     * @param scope               the scope of the passage
+     * @param considerNextChapter true to indicate we're interested in the next chapter
+     * @return the status of the job
+     */
+    @Timed(name = "submit-analyse-stats", group = "jobs", rateUnit = TimeUnit.SECONDS, durationUnit = TimeUnit.MILLISECONDS)
+    public JobStatus analyseStats(final String version, final String reference, final String statType, final String scope, final String considerNextChapter) {
+        return this.jobService.submit(AnalyseStatsJobHandler.TYPE, Arrays.asList(version, reference,
+                StatType.valueOf(statType).name(), ScopeType.valueOf(scope).name(),
+                Boolean.toString(Boolean.parseBoolean(considerNextChapter))));
+    }
+
+    /**
+     * Submits the collocations of a strong number, as in {@link AnalysisController#collocations}
+     *
+     * @param version   the tagged version
+     * @param strong    the strong number
+     * @param reference the passage to look in, or blank for the whole version
+     * @param scope     the scope of the passage, PASSAGE, CHAPTER, NEAR_BY_CHAPTER or BOOK
+     * @param measure   COUNT, PMI or LOG_LIKELIHOOD
+     * @param window    the number of words either side to look in, or blank for the whole verse
+     * @return the status of the job
+     */
+    @Timed(name = "submit-collocations", group = "jobs", rateUnit = TimeUnit.SECONDS, durationUnit = TimeUnit.MILLISECONDS)
+    public JobStatus collocations(final String version, final String strong, final String reference, final String scope, final String measure, final String window) {
+        final ScopeType scopeType = StringUtils.isBlank(scope) ? ScopeType.PASSAGE : ScopeType.valueOf(scope);
+        final CollocationMeasure collocationMeasure = StringUtils.isBlank(measure) ? CollocationMeasure.LOG_LIKELIHOOD : CollocationMeasure.valueOf(measure);
+        final int windowSize = StringUtils.isBlank(window) ? 0 : Integer.parseInt(window);
+        return this.jobService.submit(CollocationsJobHandler.TYPE, Arrays.asList(version, strong,
+                reference == null ? "" : reference, scopeType.name(), collocationMeasure.name(),
+                Integer.toString(windowSize)));
+    }
+
+    /**
+     * Submits the verses related to a passage
+     *
+     * @param version   the version
+     * @param reference the reference
+     * @return the status of the job
+     */
+    @Timed(name = "submit-related-verses", group = "jobs", rateUnit = TimeUnit.SECONDS, durationUnit = TimeUnit.MILLISECONDS)
+    public JobStatus relatedVerses(final String version, final String reference) {
+        return this.jobService.submit(RelatedVersesJobHandler.TYPE, Arrays.asList(version, reference));
+    }
+
+    /**
+     * @param jobId the id of the job
+     * @return the status of the job, including its progress
+     */
+    public JobStatus status(final String jobId) {
+        return this.jobService.getStatus(jobId);
+    }
+
+    /**
+     * @param jobId the id of a completed job
+     * @return the result of the job
+     */
+    public JsonNode result(final String jobId) {
+        return this.jobService.getResult(jobId);
+    }
+}
@@ -36,6 +36,13 @@ HISTORY_ADD =                       STEP_SERVER_BASE_URL + "favourites/addHistor
 
 ALTERNATIVE_TRANSLATIONS =          STEP_SERVER_BASE_URL + "alternativeTranslations/get/";
 ANALYSIS_STATS =                    STEP_SERVER_BASE_URL + "analysis/analyseStats/";
+ANALYSIS_COLLOCATIONS =             STEP_SERVER_BASE_URL + "analysis/collocations/";
+
+JOB_ANALYSE_STATS =                 STEP_SERVER_BASE_URL + "job/analyseStats/";
+JOB_COLLOCATIONS =                  STEP_SERVER_BASE_URL + "job/collocations/";
+JOB_RELATED_VERSES =                STEP_SERVER_BASE_URL + "job/relatedVerses/";
+JOB_STATUS =                        STEP_SERVER_BASE_URL + "job/status/";
+JOB_RESULT =                        STEP_SERVER_BASE_URL + "job/result/";
 
 BIBLE_GET_MODULES =                 STEP_SERVER_BASE_URL + "bible/getModules/";
 BIBLE_GET_BIBLE_TEXT =              STEP_SERVER_BASE_URL + "bible/getBibleText/";